@@ -1,5 +1,7 @@
 package clear;
 
+import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -20,9 +22,11 @@ import rescuecore2.standard.components.StandardSimulator;
 import rescuecore2.standard.entities.Area;
 import rescuecore2.standard.entities.Blockade;
 import rescuecore2.standard.entities.Edge;
+import rescuecore2.standard.entities.Human;
 import rescuecore2.standard.entities.PoliceForce;
 import rescuecore2.standard.entities.Road;
 import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardWorldModel;
 import rescuecore2.standard.messages.AKClear;
 import rescuecore2.standard.messages.AKClearArea;
 import rescuecore2.worldmodel.ChangeSet;
@@ -38,7 +42,7 @@ public class ClearSimulator extends StandardSimulator {
 	private static final String REPAIR_RAD_KEY = "clear.repair.rad";
     private static final String REPAIR_DISTANCE_KEY = "clear.repair.distance";
 
-    private static final double REPAIR_COST_FACTOR = 0.000001; // Converts square mm to square m.
+    static final double REPAIR_COST_FACTOR = 0.000001; // Converts square mm to square m.
 
 	@Override
     public String getName() {
@@ -146,71 +150,26 @@ public class ClearSimulator extends StandardSimulator {
 		Area agentPosition = (Area) agent
 				.getPosition(model);
 
-		Map<Blockade, java.awt.geom.Area> blockades = new HashMap<Blockade, java.awt.geom.Area>();
-		Set<EntityID> checkedAreas = new HashSet<EntityID>();
-		Queue<Area> queue = new LinkedList<Area>();
-		queue.add(agentPosition);
-		while (queue.size() > 0) {
-			Area area = queue.poll();
-			checkedAreas.add(area.getID());
-			if (area.isBlockadesDefined()) {
-				for (EntityID blockadeID : area.getBlockades()) {
-					Blockade blockade = (Blockade) model.getEntity(blockadeID);
-					if (blockade == null)
-						continue;
-					if (blockade.getShape() == null)
-						System.err.println("Blockade Shape is null");
-					blockades.put(blockade, new java.awt.geom.Area(blockade.getShape()));
-				}
-			}
-
-			for (Edge edge : area.getEdges())
-				if (edge.getNeighbour() != null
-						&& !checkedAreas.contains(edge.getNeighbour())) {
-					double dist = Math.hypot(
-							(edge.getStartX() + edge.getEndX()) / 2
-									- agent.getX(),
-							(edge.getStartY() + edge.getEndY()) / 2
-									- agent.getY());
-					if (dist < length)
-						queue.add((Area) model
-								.getEntity(edge.getNeighbour()));
-				}
-		}
-
-		int counter = 0;
-		int min = 0, max = 2 * length;
-		while (true) {
-			counter++;
-			length = (min + max) / 2;
-			java.awt.geom.Area area = Geometry.getClearArea(agent, targetX, targetY, length,
-					clearRad);
+		// Only blockades inside the longest corridor the search can try can be cleared
+		Set<Blockade> blockades = findBlockades(model, agent, agentPosition,
+				Geometry.getClearPolygon(agent, targetX, targetY, 2 * length,
+						clearRad), length);
 
-			double firstSurface = Geometry.surface(area);
-			for (java.awt.geom.Area blockade : blockades.values())
-				area.subtract(blockade);
-			double surface = Geometry.surface(area);
-			double clearedSurface = firstSurface - surface;
+		List<int[]> shapes = new ArrayList<int[]>();
+		for (Blockade blockade : blockades)
+			shapes.add(blockade.getApexes());
+		length = findClearLength(agent, targetX, targetY, clearRad, rate,
+				shapes, 2 * length);
 
-			if (clearedSurface * REPAIR_COST_FACTOR > rate) {
-				max = length;
+		Polygon corridor = Geometry.getClearPolygon(agent, targetX, targetY,
+				length, clearRad);
+		ConvexClipper clipper = new ConvexClipper(corridor);
+		java.awt.geom.Area area = new java.awt.geom.Area(corridor);
+		for (Blockade blockade : blockades) {
+			if (clipper.clippedArea(blockade.getApexes()) <= 0)
 				continue;
-			}
-
-			if (counter != 1 && counter < 15 && max - min > 5) { // 5 is a very
-																	// little
-																	// number!
-				min = length;
-				continue;
-			}
-			break;
-		}
-
-		java.awt.geom.Area area = Geometry.getClearArea(agent, targetX, targetY, length,
-				clearRad);
-		for (Map.Entry<Blockade, java.awt.geom.Area> entry : blockades.entrySet()) {
-			Blockade blockade = entry.getKey();
-			java.awt.geom.Area blockadeArea = entry.getValue();
+			java.awt.geom.Area blockadeArea = new java.awt.geom.Area(
+					blockade.getShape());
 			Road road = (Road) model.getEntity(blockade.getPosition());
 			double firstSurface = Geometry.surface(blockadeArea);
 			blockadeArea.subtract(area);
@@ -269,6 +228,187 @@ public class ClearSimulator extends StandardSimulator {
 		}
 	}
 
+	/**
+	 * Find the blockades that overlap a corridor and lie in areas the agent
+	 * can reach. An area is reachable if it is connected to the agent's
+	 * position through passable edges whose midpoints are closer than range
+	 * to the agent. Candidate areas come from the world model's spatial index
+	 * rather than from a walk over the whole map, and the walk that checks
+	 * reachability stops as soon as every candidate area has been reached.
+	 *
+	 * @param model
+	 *            The world model.
+	 * @param agent
+	 *            The police force.
+	 * @param agentPosition
+	 *            The area the agent is in.
+	 * @param corridor
+	 *            The convex corridor that blockades must overlap.
+	 * @param range
+	 *            The distance limit for the edges the agent can reach areas
+	 *            through.
+	 * @return The blockades that overlap the corridor.
+	 */
+	static Set<Blockade> findBlockades(StandardWorldModel model, Human agent,
+			Area agentPosition, Polygon corridor, int range) {
+		ConvexClipper reach = new ConvexClipper(corridor);
+		Rectangle bounds = corridor.getBounds();
+		// Blockades never extend beyond the area they are in
+		Map<EntityID, List<Blockade>> candidates = new HashMap<EntityID, List<Blockade>>();
+		for (StandardEntity next : model.getObjectsInRectangle(bounds.x,
+				bounds.y, bounds.x + bounds.width, bounds.y + bounds.height)) {
+			if (!(next instanceof Area))
+				continue;
+			Area area = (Area) next;
+			if (!area.isBlockadesDefined() || area.getBlockades().isEmpty())
+				continue;
+			if (area != agentPosition
+					&& !hasEntranceInRange(area, agent, range))
+				continue;
+			List<Blockade> inside = new ArrayList<Blockade>();
+			for (EntityID blockadeID : area.getBlockades()) {
+				Blockade blockade = (Blockade) model.getEntity(blockadeID);
+				if (blockade == null)
+					continue;
+				if (blockade.getShape() == null)
+					System.err.println("Blockade Shape is null");
+				if (reach.clippedArea(blockade.getApexes()) > 0)
+					inside.add(blockade);
+			}
+			if (!inside.isEmpty())
+				candidates.put(area.getID(), inside);
+		}
+
+		Set<Blockade> blockades = new HashSet<Blockade>();
+		Set<EntityID> checkedAreas = new HashSet<EntityID>();
+		Queue<Area> queue = new LinkedList<Area>();
+		queue.add(agentPosition);
+		while (queue.size() > 0 && !candidates.isEmpty()) {
+			Area area = queue.poll();
+			if (!checkedAreas.add(area.getID()))
+				continue;
+			List<Blockade> found = candidates.remove(area.getID());
+			if (found != null)
+				blockades.addAll(found);
+
+			for (Edge edge : area.getEdges())
+				if (edge.getNeighbour() != null
+						&& !checkedAreas.contains(edge.getNeighbour())
+						&& isInRange(edge, agent, range))
+					queue.add((Area) model.getEntity(edge.getNeighbour()));
+		}
+		return blockades;
+	}
+
+	/*
+	 * Neighbouring areas share their edges, so an area can only be entered
+	 * through one of its own passable edges.
+	 */
+	private static boolean hasEntranceInRange(Area area, Human agent,
+			int range) {
+		for (Edge edge : area.getEdges())
+			if (edge.getNeighbour() != null && isInRange(edge, agent, range))
+				return true;
+		return false;
+	}
+
+	private static boolean isInRange(Edge edge, Human agent, int range) {
+		double dist = Math.hypot((edge.getStartX() + edge.getEndX()) / 2
+				- agent.getX(), (edge.getStartY() + edge.getEndY()) / 2
+				- agent.getY());
+		return dist < range;
+	}
+
+	/**
+	 * Get the area of the part of a corridor that is covered by blockades.
+	 * Where blockades overlap, the overlap is only counted once.
+	 *
+	 * @param corridor
+	 *            The convex corridor.
+	 * @param blockades
+	 *            The apexes of the blockades.
+	 * @return The covered area in square mm.
+	 */
+	static double coveredSurface(Polygon corridor, List<int[]> blockades) {
+		ConvexClipper clipper = new ConvexClipper(corridor);
+		List<int[]> inside = new ArrayList<int[]>();
+		double sum = 0;
+		for (int[] apexes : blockades) {
+			double clipped = clipper.clippedArea(apexes);
+			if (clipped > 0) {
+				inside.add(apexes);
+				sum += clipped;
+			}
+		}
+		if (!mayOverlap(inside))
+			return sum;
+		// Measure the union of the few blockades inside the corridor
+		java.awt.geom.Area covered = new java.awt.geom.Area();
+		for (int[] apexes : inside)
+			covered.add(new java.awt.geom.Area(Geometry.toPolygon(apexes)));
+		covered.intersect(new java.awt.geom.Area(corridor));
+		return Geometry.area(covered);
+	}
+
+	private static boolean mayOverlap(List<int[]> blockades) {
+		List<Rectangle> bounds = new ArrayList<Rectangle>(blockades.size());
+		for (int[] apexes : blockades) {
+			Rectangle next = Geometry.toPolygon(apexes).getBounds();
+			for (Rectangle r : bounds)
+				if (r.intersects(next))
+					return true;
+			bounds.add(next);
+		}
+		return false;
+	}
+
+	/**
+	 * Find the longest clear length whose corridor covers no more blockade
+	 * area than can be cleared in one timestep.
+	 *
+	 * @param agent
+	 *            The police force.
+	 * @param targetX
+	 *            The X coordinate of the clear target.
+	 * @param targetY
+	 *            The Y coordinate of the clear target.
+	 * @param clearRad
+	 *            The half width of the corridor.
+	 * @param rate
+	 *            The repair rate in square metres.
+	 * @param blockades
+	 *            The apexes of the blockades that may be cleared.
+	 * @param maxLength
+	 *            The longest length to consider.
+	 * @return The clear length.
+	 */
+	static int findClearLength(Human agent, int targetX, int targetY,
+			int clearRad, int rate, List<int[]> blockades, int maxLength) {
+		int counter = 0;
+		int length;
+		int min = 0, max = maxLength;
+		while (true) {
+			counter++;
+			length = (min + max) / 2;
+			double clearedSurface = coveredSurface(Geometry.getClearPolygon(
+					agent, targetX, targetY, length, clearRad), blockades);
+
+			if (clearedSurface * REPAIR_COST_FACTOR > rate) {
+				max = length;
+				continue;
+			}
+
+			if (counter != 1 && counter < 15 && max - min > 5) { // 5 is a very
+																	// little
+																	// number!
+				min = length;
+				continue;
+			}
+			break;
+		}
+		return length;
+	}
+
 	private Blockade updateBlockadeApexes(Blockade blockade, int[] apexes) {
 		List<Point2D> points = GeometryTools2D.vertexArrayToPoints(apexes);
 		if (points.size() < 2)
@@ -0,0 +1,158 @@
+package clear;
+
+import java.awt.Polygon;
+
+/**
+ * Clips polygons against a convex polygon using the Sutherland-Hodgman
+ * algorithm. The polygons being clipped do not have to be convex: the
+ * clipped result of a concave polygon may contain zero width bridges but its
+ * area is still correct. A clipper reuses its buffers so it should not be
+ * shared between threads.
+ */
+public class ConvexClipper {
+	private double[] clip;
+	private int clipCount;
+	private double orientation;
+	private int minX;
+	private int minY;
+	private int maxX;
+	private int maxY;
+
+	private double[] input;
+	private double[] output;
+	private int outputCount;
+
+	/**
+	 * Create a clipper.
+	 *
+	 * @param convex
+	 *            The convex polygon to clip against, in either orientation.
+	 */
+	public ConvexClipper(Polygon convex) {
+		clipCount = convex.npoints;
+		clip = new double[clipCount * 2];
+		for (int i = 0; i < clipCount; i++) {
+			clip[i * 2] = convex.xpoints[i];
+			clip[i * 2 + 1] = convex.ypoints[i];
+		}
+		orientation = Math.signum(signedArea(clip, clipCount));
+		minX = convex.getBounds().x;
+		minY = convex.getBounds().y;
+		maxX = minX + convex.getBounds().width;
+		maxY = minY + convex.getBounds().height;
+		input = new double[16];
+		output = new double[16];
+	}
+
+	/**
+	 * Get the area of the part of a polygon that is inside the convex
+	 * polygon.
+	 *
+	 * @param apexes
+	 *            The polygon as a list of x, y coordinates.
+	 * @return The clipped area.
+	 */
+	public double clippedArea(int[] apexes) {
+		if (!intersectsBounds(apexes) || orientation == 0) {
+			return 0;
+		}
+		int count = apexes.length / 2;
+		if (output.length < count * 2) {
+			output = new double[count * 2];
+		}
+		for (int i = 0; i < count * 2; i++) {
+			output[i] = apexes[i];
+		}
+		outputCount = count;
+		for (int e = 0; e < clipCount && outputCount > 0; e++) {
+			clipEdge(e);
+		}
+		return Math.abs(signedArea(output, outputCount));
+	}
+
+	/**
+	 * Get the area of a polygon given as a list of coordinates.
+	 *
+	 * @param points
+	 *            The polygon as a list of x, y coordinates.
+	 * @param count
+	 *            The number of points to use.
+	 * @return The signed area: positive if the points are counter-clockwise.
+	 */
+	public static double signedArea(double[] points, int count) {
+		double sum = 0;
+		for (int i = 0; i < count; i++) {
+			int j = (i + 1) % count;
+			sum += points[i * 2] * points[j * 2 + 1] - points[i * 2 + 1]
+					* points[j * 2];
+		}
+		return sum / 2;
+	}
+
+	private boolean intersectsBounds(int[] apexes) {
+		int ax1 = Integer.MAX_VALUE;
+		int ay1 = Integer.MAX_VALUE;
+		int ax2 = Integer.MIN_VALUE;
+		int ay2 = Integer.MIN_VALUE;
+		for (int i = 0; i < apexes.length; i += 2) {
+			ax1 = Math.min(ax1, apexes[i]);
+			ax2 = Math.max(ax2, apexes[i]);
+			ay1 = Math.min(ay1, apexes[i + 1]);
+			ay2 = Math.max(ay2, apexes[i + 1]);
+		}
+		return ax1 <= maxX && ax2 >= minX && ay1 <= maxY && ay2 >= minY;
+	}
+
+	private void clipEdge(int e) {
+		double[] swap = input;
+		input = output;
+		output = swap;
+		int inputCount = outputCount;
+		outputCount = 0;
+		// Each point adds at most itself and one crossing
+		if (output.length < inputCount * 4) {
+			output = new double[inputCount * 4];
+		}
+		double ex1 = clip[e * 2];
+		double ey1 = clip[e * 2 + 1];
+		double ex2 = clip[((e + 1) % clipCount) * 2];
+		double ey2 = clip[((e + 1) % clipCount) * 2 + 1];
+		double px = input[(inputCount - 1) * 2];
+		double py = input[(inputCount - 1) * 2 + 1];
+		double pSide = side(ex1, ey1, ex2, ey2, px, py);
+		for (int i = 0; i < inputCount; i++) {
+			double qx = input[i * 2];
+			double qy = input[i * 2 + 1];
+			double qSide = side(ex1, ey1, ex2, ey2, qx, qy);
+			if (qSide >= 0) {
+				if (pSide < 0) {
+					addCrossing(px, py, pSide, qx, qy, qSide);
+				}
+				add(qx, qy);
+			}
+			else if (pSide >= 0) {
+				addCrossing(px, py, pSide, qx, qy, qSide);
+			}
+			px = qx;
+			py = qy;
+			pSide = qSide;
+		}
+	}
+
+	private double side(double ex1, double ey1, double ex2, double ey2,
+			double x, double y) {
+		return orientation * ((ex2 - ex1) * (y - ey1) - (ey2 - ey1) * (x - ex1));
+	}
+
+	private void addCrossing(double px, double py, double pSide, double qx,
+			double qy, double qSide) {
+		double t = pSide / (pSide - qSide);
+		add(px + (qx - px) * t, py + (qy - py) * t);
+	}
+
+	private void add(double x, double y) {
+		output[outputCount * 2] = x;
+		output[outputCount * 2 + 1] = y;
+		outputCount++;
+	}
+}
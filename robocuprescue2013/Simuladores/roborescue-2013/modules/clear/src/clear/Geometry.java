@@ -13,6 +13,12 @@ import rescuecore2.standard.entities.Human;
 public class Geometry {
 	public static Area getClearArea(Human agent, int targetX, int targetY,
 			int clearLength, int clearRad) {
+		return new Area(getClearPolygon(agent, targetX, targetY, clearLength,
+				clearRad));
+	}
+
+	public static Polygon getClearPolygon(Human agent, int targetX,
+			int targetY, int clearLength, int clearRad) {
 		Vector2D agentToTarget = new Vector2D(targetX - agent.getX(), targetY
 				- agent.getY());
 
@@ -39,7 +45,7 @@ public class Geometry {
 			xPoints[i] = (int) points[i].getX();
 			yPoints[i] = (int) points[i].getY();
 		}
-		return new Area(new Polygon(xPoints, yPoints, points.length));
+		return new Polygon(xPoints, yPoints, points.length);
 	}
 
 	public static double surface(Area area) {
@@ -71,6 +77,48 @@ public class Geometry {
 		return sum_all;
 	}
 
+	/**
+	 * Get the area of a shape. Unlike {@link #surface(Area)} this subtracts
+	 * the area of holes.
+	 *
+	 * @param area
+	 *            The shape.
+	 * @return The area of the shape.
+	 */
+	public static double area(Area area) {
+		PathIterator iter = area.getPathIterator(null);
+		double[] point = new double[6];
+		double startX = 0, startY = 0, lastX = 0, lastY = 0;
+		double sum = 0;
+		while (!iter.isDone()) {
+			int type = iter.currentSegment(point);
+			if (type == PathIterator.SEG_MOVETO) {
+				startX = point[0];
+				startY = point[1];
+				lastX = startX;
+				lastY = startY;
+			} else if (type == PathIterator.SEG_LINETO) {
+				sum += lastX * point[1] - lastY * point[0];
+				lastX = point[0];
+				lastY = point[1];
+			} else if (type == PathIterator.SEG_CLOSE) {
+				sum += lastX * startY - lastY * startX;
+				lastX = startX;
+				lastY = startY;
+			}
+			iter.next();
+		}
+		// Holes wind the other way round to the outlines that contain them
+		return Math.abs(sum) / 2;
+	}
+
+	public static Polygon toPolygon(int[] apexes) {
+		Polygon result = new Polygon();
+		for (int i = 0; i < apexes.length; i += 2)
+			result.addPoint(apexes[i], apexes[i + 1]);
+		return result;
+	}
+
 	public static List<int[]> getAreas(Area area) {
 		PathIterator iter = area.getPathIterator(null);
 		List<int[]> areas = new ArrayList<int[]>();
@@ -0,0 +1,307 @@
+package clear;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+
+import kernel.KernelConstants;
+import kernel.KernelException;
+import kernel.WorldModelCreator;
+
+import rescuecore2.config.Config;
+import rescuecore2.config.ConfigException;
+import rescuecore2.log.Logger;
+import rescuecore2.misc.CommandLineOptions;
+import rescuecore2.misc.java.JavaTools;
+import rescuecore2.standard.entities.Area;
+import rescuecore2.standard.entities.Blockade;
+import rescuecore2.standard.entities.Edge;
+import rescuecore2.standard.entities.PoliceForce;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.WorldModel;
+
+/**
+ * Timing test for clear area commands. Loads a map through the configured
+ * GIS, puts a blockade on some of the roads and a second, overlapping blockade
+ * on some of those, and then handles random clear commands in two ways. The
+ * old way walks every road the agent can reach and finds the clear length with
+ * java.awt.geom.Area subtraction, as the simulator used to. The new way is
+ * the simulator's spatial query and convex clipper. Checks that both find the
+ * same blockades, and that the new clear lengths match the covered area
+ * measured with java.awt.geom.Area. The old measurement added the area of
+ * blockades lying wholly inside the corridor instead of subtracting it, so
+ * clear lengths that differ from the old way are reported separately.
+ * <p>
+ * This lives with the tests because it needs the kernel to build the world
+ * and the simulator does not. Run it from the boot directory with
+ * build/clear/test on the classpath after the tests have been compiled.
+ */
+public final class ClearBenchmark {
+	private static final String CLEARS_KEY = "clear.benchmark.clears";
+	private static final int DEFAULT_CLEARS = 200;
+	private static final String BLOCKADES_KEY = "clear.benchmark.blockades";
+	private static final double DEFAULT_BLOCKADES = 0.5;
+	private static final String OVERLAPS_KEY = "clear.benchmark.overlaps";
+	private static final double DEFAULT_OVERLAPS = 0.5;
+	private static final String REPAIR_RATE_KEY = "clear.repair.rate";
+	private static final String REPAIR_RAD_KEY = "clear.repair.rad";
+	private static final String REPAIR_DISTANCE_KEY = "clear.repair.distance";
+
+	private static final String GIS_AUTO_KEY = KernelConstants.GIS_KEY + ".auto";
+	private static final int LENGTH = 1000000;
+	private static final int MAX_LENGTH = 2 * LENGTH;
+	private static final double MIN_BLOCKADE_SCALE = 0.3;
+	private static final double MAX_BLOCKADE_SCALE = 0.9;
+
+	private ClearBenchmark() {
+	}
+
+	/**
+	 * Run the benchmark.
+	 *
+	 * @param args
+	 *            Command line arguments: -c config-file
+	 *            [--clear.benchmark.clears=n]
+	 *            [--clear.benchmark.blockades=fraction]
+	 *            [--clear.benchmark.overlaps=fraction] [--gis.map.dir=dir]
+	 */
+	public static void main(String[] args) {
+		Config config = new Config();
+		try {
+			CommandLineOptions.processArgs(args, config);
+			WorldModelCreator gis = JavaTools.instantiate(config.getValue(GIS_AUTO_KEY), WorldModelCreator.class);
+			if (gis == null) {
+				Logger.error("Could not create GIS " + config.getValue(GIS_AUTO_KEY));
+				return;
+			}
+			WorldModel<? extends Entity> model = gis.buildWorldModel(config);
+			StandardWorldModel world = StandardWorldModel.createStandardWorldModel(model);
+			Random random = config.getRandom();
+			int rate = config.getIntValue(REPAIR_RATE_KEY);
+			int clearRad = config.getIntValue(REPAIR_RAD_KEY);
+			int distance = config.getIntValue(REPAIR_DISTANCE_KEY);
+			double fraction = config.getFloatValue(BLOCKADES_KEY, DEFAULT_BLOCKADES);
+			double overlaps = config.getFloatValue(OVERLAPS_KEY, DEFAULT_OVERLAPS);
+
+			int nextID = 0;
+			for (StandardEntity next : world) {
+				nextID = Math.max(nextID, next.getID().getValue() + 1);
+			}
+			List<Road> blocked = new ArrayList<Road>();
+			for (StandardEntity next : world) {
+				if (next instanceof Road && random.nextDouble() < fraction) {
+					blocked.add((Road) next);
+				}
+			}
+			if (blocked.isEmpty()) {
+				System.out.println("No roads to block");
+				return;
+			}
+			int blockadeCount = 0;
+			for (Road road : blocked) {
+				List<EntityID> ids = new ArrayList<EntityID>();
+				ids.add(addBlockade(world, road, nextID++, road.getX(), road.getY(), randomScale(random)));
+				if (random.nextDouble() < overlaps) {
+					// Shrink towards a point between the centre and an apex so the blockades overlap
+					int[] apexes = road.getApexList();
+					int apex = random.nextInt(apexes.length / 2) * 2;
+					double t = random.nextDouble();
+					int cx = road.getX() + (int) ((apexes[apex] - road.getX()) * t);
+					int cy = road.getY() + (int) ((apexes[apex + 1] - road.getY()) * t);
+					ids.add(addBlockade(world, road, nextID++, cx, cy, randomScale(random)));
+				}
+				road.setBlockades(ids);
+				blockadeCount += ids.size();
+			}
+
+			int clears = config.getIntValue(CLEARS_KEY, DEFAULT_CLEARS);
+			List<PoliceForce> agents = new ArrayList<PoliceForce>();
+			int[] targets = new int[clears * 2];
+			for (int i = 0; i < clears; ++i) {
+				Road road = blocked.get(random.nextInt(blocked.size()));
+				PoliceForce agent = new PoliceForce(new EntityID(nextID++));
+				agent.setX(road.getX());
+				agent.setY(road.getY());
+				agent.setPosition(road.getID());
+				double angle = random.nextDouble() * 2 * Math.PI;
+				double d = random.nextDouble() * distance;
+				agents.add(agent);
+				targets[i * 2] = road.getX() + (int) (Math.cos(angle) * d);
+				targets[i * 2 + 1] = road.getY() + (int) (Math.sin(angle) * d);
+			}
+			System.out.println(config.getValue("gis.map.dir", "") + ": " + blockadeCount + " blockades on " + blocked.size() + " roads, " + clears + " clears");
+
+			List<Set<Blockade>> oldBlockades = new ArrayList<Set<Blockade>>();
+			int[] oldLengths = new int[clears];
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < clears; ++i) {
+				PoliceForce agent = agents.get(i);
+				Set<Blockade> found = walkBlockades(world, agent, targets[i * 2], targets[i * 2 + 1], clearRad);
+				oldBlockades.add(found);
+				oldLengths[i] = areaClearLength(agent, targets[i * 2], targets[i * 2 + 1], clearRad, rate, found, false);
+			}
+			long oldTime = System.currentTimeMillis() - start;
+			System.out.println("Walk and java.awt.geom.Area: " + oldTime + "ms");
+
+			List<Set<Blockade>> newBlockades = new ArrayList<Set<Blockade>>();
+			int[] newLengths = new int[clears];
+			start = System.currentTimeMillis();
+			for (int i = 0; i < clears; ++i) {
+				PoliceForce agent = agents.get(i);
+				Set<Blockade> found = ClearSimulator.findBlockades(world, agent, (Area) agent.getPosition(world), Geometry.getClearPolygon(agent, targets[i * 2], targets[i * 2 + 1], MAX_LENGTH, clearRad), LENGTH);
+				newBlockades.add(found);
+				List<int[]> shapes = new ArrayList<int[]>();
+				for (Blockade blockade : found) {
+					shapes.add(blockade.getApexes());
+				}
+				newLengths[i] = ClearSimulator.findClearLength(agent, targets[i * 2], targets[i * 2 + 1], clearRad, rate, shapes, MAX_LENGTH);
+			}
+			long newTime = System.currentTimeMillis() - start;
+			System.out.println("Spatial query and convex clipper: " + newTime + "ms");
+
+			int differentBlockades = 0;
+			int mismatches = 0;
+			int changed = 0;
+			int overlapping = 0;
+			for (int i = 0; i < clears; ++i) {
+				PoliceForce agent = agents.get(i);
+				if (!oldBlockades.get(i).equals(newBlockades.get(i))) {
+					System.out.println("Clear " + i + ": " + oldBlockades.get(i).size() + " blockades found by walking, " + newBlockades.get(i).size() + " by spatial query");
+					++differentBlockades;
+				}
+				if (overlap(newBlockades.get(i))) {
+					++overlapping;
+				}
+				int exact = areaClearLength(agent, targets[i * 2], targets[i * 2 + 1], clearRad, rate, oldBlockades.get(i), true);
+				if (exact != newLengths[i]) {
+					System.out.println("Clear " + i + ": length " + exact + " with java.awt.geom.Area, " + newLengths[i] + " with clipper");
+					++mismatches;
+				}
+				if (oldLengths[i] != newLengths[i]) {
+					++changed;
+				}
+			}
+			System.out.println(differentBlockades == 0 ? "Blockades found identical" : differentBlockades + " sets of blockades differ");
+			System.out.println(mismatches == 0 ? "Clear lengths identical" : mismatches + " clear lengths differ");
+			System.out.println(overlapping + " clears with overlapping blockades, " + changed + " clear lengths differ from the old measurement");
+		} catch (IOException e) {
+			Logger.error("Error reading config", e);
+		} catch (ConfigException e) {
+			Logger.error("Config error", e);
+		} catch (KernelException e) {
+			Logger.error("Error building world model", e);
+		}
+	}
+
+	/*
+	 * The blockade search as ClearSimulator did it before the spatial query,
+	 * walking every area whose entrance is within reach.
+	 */
+	private static Set<Blockade> walkBlockades(StandardWorldModel world, PoliceForce agent, int targetX, int targetY, int clearRad) {
+		ConvexClipper reach = new ConvexClipper(Geometry.getClearPolygon(agent, targetX, targetY, MAX_LENGTH, clearRad));
+		Set<Blockade> blockades = new HashSet<Blockade>();
+		Set<EntityID> checkedAreas = new HashSet<EntityID>();
+		Queue<Area> queue = new LinkedList<Area>();
+		queue.add((Area) agent.getPosition(world));
+		while (queue.size() > 0) {
+			Area area = queue.poll();
+			checkedAreas.add(area.getID());
+			if (area.isBlockadesDefined()) {
+				for (EntityID blockadeID : area.getBlockades()) {
+					Blockade blockade = (Blockade) world.getEntity(blockadeID);
+					if (reach.clippedArea(blockade.getApexes()) > 0) {
+						blockades.add(blockade);
+					}
+				}
+			}
+			for (Edge edge : area.getEdges()) {
+				if (edge.getNeighbour() != null && !checkedAreas.contains(edge.getNeighbour())) {
+					double dist = Math.hypot((edge.getStartX() + edge.getEndX()) / 2 - agent.getX(), (edge.getStartY() + edge.getEndY()) / 2 - agent.getY());
+					if (dist < LENGTH) {
+						queue.add((Area) world.getEntity(edge.getNeighbour()));
+					}
+				}
+			}
+		}
+		return blockades;
+	}
+
+	/*
+	 * The clear length search as ClearSimulator did it before the convex
+	 * clipper, subtracting every blockade from the corridor. The old
+	 * measurement is Geometry.surface, the exact one is Geometry.area.
+	 */
+	private static int areaClearLength(PoliceForce agent, int targetX, int targetY, int clearRad, int rate, Set<Blockade> blockades, boolean exact) {
+		int counter = 0;
+		int length;
+		int min = 0, max = MAX_LENGTH;
+		while (true) {
+			counter++;
+			length = (min + max) / 2;
+			java.awt.geom.Area area = Geometry.getClearArea(agent, targetX, targetY, length, clearRad);
+			double firstSurface = exact ? Geometry.area(area) : Geometry.surface(area);
+			for (Blockade blockade : blockades)
+				area.subtract(new java.awt.geom.Area(blockade.getShape()));
+			double surface = exact ? Geometry.area(area) : Geometry.surface(area);
+			double clearedSurface = firstSurface - surface;
+			if (clearedSurface * ClearSimulator.REPAIR_COST_FACTOR > rate) {
+				max = length;
+				continue;
+			}
+			if (counter != 1 && counter < 15 && max - min > 5) {
+				min = length;
+				continue;
+			}
+			break;
+		}
+		return length;
+	}
+
+	private static boolean overlap(Set<Blockade> blockades) {
+		List<Blockade> list = new ArrayList<Blockade>(blockades);
+		for (int i = 0; i < list.size(); ++i) {
+			for (int j = i + 1; j < list.size(); ++j) {
+				java.awt.geom.Area shared = new java.awt.geom.Area(list.get(i).getShape());
+				shared.intersect(new java.awt.geom.Area(list.get(j).getShape()));
+				if (!shared.isEmpty()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static double randomScale(Random random) {
+		return MIN_BLOCKADE_SCALE + random.nextDouble() * (MAX_BLOCKADE_SCALE - MIN_BLOCKADE_SCALE);
+	}
+
+	private static EntityID addBlockade(StandardWorldModel world, Road road, int id, int cx, int cy, double scale) {
+		int[] apexes = shrink(road, cx, cy, scale);
+		Blockade blockade = new Blockade(new EntityID(id));
+		blockade.setApexes(apexes);
+		blockade.setPosition(road.getID());
+		blockade.setX(cx);
+		blockade.setY(cy);
+		blockade.setRepairCost((int) (Geometry.area(new java.awt.geom.Area(Geometry.toPolygon(apexes))) * ClearSimulator.REPAIR_COST_FACTOR));
+		world.addEntity(blockade);
+		return blockade.getID();
+	}
+
+	private static int[] shrink(Road road, int cx, int cy, double scale) {
+		int[] apexes = road.getApexList().clone();
+		for (int i = 0; i < apexes.length; i += 2) {
+			apexes[i] = cx + (int) ((apexes[i] - cx) * scale);
+			apexes[i + 1] = cy + (int) ((apexes[i + 1] - cy) * scale);
+		}
+		return apexes;
+	}
+}
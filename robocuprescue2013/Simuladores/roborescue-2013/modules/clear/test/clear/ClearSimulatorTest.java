@@ -0,0 +1,143 @@
+package clear;
+
+import static clear.ConvexClipperTest.square;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Polygon;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rescuecore2.standard.entities.PoliceForce;
+import rescuecore2.worldmodel.EntityID;
+
+public class ClearSimulatorTest {
+	private static final double DELTA = 0.0001;
+	private static final int TARGET_X = 10000;
+	private static final int CLEAR_RAD = 1000;
+	private static final int MAX_LENGTH = 10000;
+
+	private PoliceForce agent;
+	private Polygon corridor;
+
+	@Before
+	public void setup() {
+		agent = new PoliceForce(new EntityID(1));
+		agent.setX(0);
+		agent.setY(0);
+		corridor = new Polygon(new int[] { -510, 5000, 5000, -510 },
+				new int[] { -CLEAR_RAD, -CLEAR_RAD, CLEAR_RAD, CLEAR_RAD }, 4);
+	}
+
+	@Test
+	public void testCoveredSurfaceCountsOverlapsOnce() {
+		List<int[]> blockades = new ArrayList<int[]>();
+		blockades.add(square(1000, -500, 1000));
+		blockades.add(square(1500, -500, 1000));
+		assertEquals(1500000, ClearSimulator.coveredSurface(corridor,
+				blockades), DELTA);
+		blockades.add(square(1000, -500, 1000));
+		assertEquals(1500000, ClearSimulator.coveredSurface(corridor,
+				blockades), DELTA);
+	}
+
+	@Test
+	public void testCoveredSurfaceSeparateBlockades() {
+		List<int[]> blockades = new ArrayList<int[]>();
+		blockades.add(square(1000, -500, 1000));
+		blockades.add(square(3000, -500, 1000));
+		assertEquals(2000000, ClearSimulator.coveredSurface(corridor,
+				blockades), DELTA);
+	}
+
+	@Test
+	public void testCoveredSurfaceConcaveBlockade() {
+		// A U shape across the corridor with a notch from y = -500 up to
+		// beyond the corridor
+		int[] u = new int[] { 1000, -2000, 4000, -2000, 4000, 2000, 3000,
+				2000, 3000, -500, 2000, -500, 2000, 2000, 1000, 2000 };
+		double expected = 3000 * 2000 - 1000 * 1500;
+		assertEquals(expected, ClearSimulator.coveredSurface(corridor,
+				Arrays.asList(u)), DELTA);
+		// Only the quarter of the square in the notch of the U is new
+		List<int[]> blockades = new ArrayList<int[]>();
+		blockades.add(u);
+		blockades.add(square(1500, -1000, 1000));
+		assertEquals(expected + 500 * 500, ClearSimulator.coveredSurface(
+				corridor, blockades), DELTA);
+	}
+
+	@Test
+	public void testCoveredSurfaceIgnoresBlockadesOutside() {
+		List<int[]> blockades = new ArrayList<int[]>();
+		blockades.add(square(1000, 2000, 1000));
+		blockades.add(square(-3000, -500, 1000));
+		assertEquals(0, ClearSimulator.coveredSurface(corridor, blockades),
+				DELTA);
+		blockades.add(square(1000, -500, 1000));
+		assertEquals(1000000, ClearSimulator.coveredSurface(corridor,
+				blockades), DELTA);
+	}
+
+	@Test
+	public void testCoveredSurfaceZeroAreaCorridor() {
+		Polygon line = new Polygon(new int[] { -510, 5000, 5000, -510 },
+				new int[] { 0, 0, 0, 0 }, 4);
+		List<int[]> blockades = new ArrayList<int[]>();
+		blockades.add(square(1000, -500, 1000));
+		blockades.add(square(1500, -500, 1000));
+		assertEquals(0, ClearSimulator.coveredSurface(line, blockades), DELTA);
+	}
+
+	@Test
+	public void testFindClearLengthStopsAtBlockade() {
+		// The corridor starts 510mm behind the agent, so 1 square metre of
+		// the 2 square metre blockade is covered at a length of 3010
+		List<int[]> blockades = new ArrayList<int[]>();
+		blockades.add(new int[] { 2000, -1000, 3000, -1000, 3000, 1000, 2000,
+				1000 });
+		int length = findClearLength(1, CLEAR_RAD, blockades);
+		assertEquals(3010, length, 10);
+	}
+
+	@Test
+	public void testFindClearLengthCountsOverlapsOnce() {
+		int[] blockade = new int[] { 2000, -1000, 3000, -1000, 3000, 1000,
+				2000, 1000 };
+		List<int[]> blockades = new ArrayList<int[]>();
+		blockades.add(blockade);
+		// 2 square metres fit in the rate but the 4.5 the blockades add up to
+		// do not
+		int single = findClearLength(3, CLEAR_RAD, blockades);
+		blockades.add(blockade.clone());
+		blockades.add(new int[] { 2500, -1000, 3000, -1000, 3000, 0, 2500, 0 });
+		assertEquals(single, findClearLength(3, CLEAR_RAD, blockades));
+		assertEquals(findClearLength(3, CLEAR_RAD, new ArrayList<int[]>()),
+				single);
+	}
+
+	@Test
+	public void testFindClearLengthIgnoresBlockadesOutside() {
+		List<int[]> blockades = new ArrayList<int[]>();
+		blockades.add(square(2000, 1500, 5000));
+		blockades.add(square(-5000, -500, 1000));
+		assertEquals(findClearLength(1, CLEAR_RAD, new ArrayList<int[]>()),
+				findClearLength(1, CLEAR_RAD, blockades));
+	}
+
+	@Test
+	public void testFindClearLengthZeroAreaCorridor() {
+		List<int[]> blockades = new ArrayList<int[]>();
+		blockades.add(square(-2000, -2000, 8000));
+		assertEquals(findClearLength(0, 0, new ArrayList<int[]>()),
+				findClearLength(0, 0, blockades));
+	}
+
+	private int findClearLength(int rate, int clearRad, List<int[]> blockades) {
+		return ClearSimulator.findClearLength(agent, TARGET_X, 0, clearRad,
+				rate, blockades, MAX_LENGTH);
+	}
+}
@@ -0,0 +1,94 @@
+package clear;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Polygon;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConvexClipperTest {
+	private static final double DELTA = 0.0001;
+
+	private ConvexClipper clipper;
+
+	@Before
+	public void setup() {
+		clipper = new ConvexClipper(new Polygon(new int[] { 0, 100, 100, 0 },
+				new int[] { 0, 0, 100, 100 }, 4));
+	}
+
+	@Test
+	public void testPolygonInside() {
+		assertEquals(400, clipper.clippedArea(square(10, 10, 20)), DELTA);
+	}
+
+	@Test
+	public void testPolygonOutside() {
+		assertEquals(0, clipper.clippedArea(square(200, 10, 20)), DELTA);
+		// Inside the bounding box of a triangle but outside the triangle
+		ConvexClipper triangle = new ConvexClipper(new Polygon(new int[] { 0,
+				100, 0 }, new int[] { 0, 0, 100 }, 3));
+		assertEquals(0, triangle.clippedArea(square(70, 70, 20)), DELTA);
+	}
+
+	@Test
+	public void testPolygonAcrossEdge() {
+		assertEquals(200, clipper.clippedArea(square(-10, 10, 20)), DELTA);
+		assertEquals(100, clipper.clippedArea(square(90, 90, 20)), DELTA);
+	}
+
+	@Test
+	public void testPolygonCoveringClip() {
+		assertEquals(10000, clipper.clippedArea(square(-50, -50, 200)), DELTA);
+	}
+
+	@Test
+	public void testConcavePolygon() {
+		// A U shape that sticks out on both sides, with a notch from y = 40
+		// up to the top of the clip polygon
+		int[] u = new int[] { -50, 20, 150, 20, 150, 120, 80, 120, 80, 40, 20,
+				40, 20, 120, -50, 120 };
+		assertEquals(100 * 80 - 60 * 60, clipper.clippedArea(u), DELTA);
+		assertEquals(100 * 80 - 60 * 60, clipper.clippedArea(reverse(u)),
+				DELTA);
+	}
+
+	@Test
+	public void testEitherOrientation() {
+		ConvexClipper clockwise = new ConvexClipper(new Polygon(new int[] { 0,
+				0, 100, 100 }, new int[] { 0, 100, 100, 0 }, 4));
+		assertEquals(200, clockwise.clippedArea(square(-10, 10, 20)), DELTA);
+		assertEquals(200, clipper.clippedArea(reverse(square(-10, 10, 20))),
+				DELTA);
+	}
+
+	@Test
+	public void testZeroAreaClip() {
+		ConvexClipper line = new ConvexClipper(new Polygon(new int[] { 0, 50,
+				100 }, new int[] { 0, 50, 100 }, 3));
+		assertEquals(0, line.clippedArea(square(-50, -50, 200)), DELTA);
+	}
+
+	@Test
+	public void testSignedArea() {
+		double[] points = new double[] { 0, 0, 10, 0, 10, 10, 0, 10 };
+		assertEquals(100, ConvexClipper.signedArea(points, 4), DELTA);
+		assertEquals(-100, ConvexClipper.signedArea(
+				new double[] { 0, 0, 0, 10, 10, 10, 10, 0 }, 4), DELTA);
+		assertEquals(50, ConvexClipper.signedArea(points, 3), DELTA);
+	}
+
+	static int[] square(int x, int y, int size) {
+		return new int[] { x, y, x + size, y, x + size, y + size, x, y + size };
+	}
+
+	static int[] reverse(int[] apexes) {
+		int[] result = new int[apexes.length];
+		for (int i = 0; i < apexes.length; i += 2) {
+			result[apexes.length - i - 2] = apexes[i];
+			result[apexes.length - i - 1] = apexes[i + 1];
+		}
+		return result;
+	}
+}
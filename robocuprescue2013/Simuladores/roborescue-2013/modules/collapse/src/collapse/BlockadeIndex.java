@@ -0,0 +1,77 @@
+package collapse;
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import rescuecore2.standard.entities.Blockade;
+import rescuecore2.standard.entities.StandardEntity;
+
+import com.infomatiq.jsi.IntProcedure;
+import com.infomatiq.jsi.Rectangle;
+import com.infomatiq.jsi.rtree.RTree;
+
+/**
+ * The shapes of the existing blockades, indexed by their bounds. The index is
+ * built once per timestep and is only read afterwards, so several threads can
+ * query it at once.
+ */
+class BlockadeIndex {
+	private RTree index;
+	private List<java.awt.geom.Area> areas;
+
+	/**
+	 * Create an index.
+	 *
+	 * @param blockades
+	 *            The blockades to index.
+	 */
+	BlockadeIndex(Collection<StandardEntity> blockades) {
+		index = new RTree();
+		index.init(new Properties());
+		areas = new ArrayList<java.awt.geom.Area>();
+		for (StandardEntity e : blockades) {
+			int[] apexes = ((Blockade) e).getApexes();
+			if (apexes == null || apexes.length < 2) {
+				continue;
+			}
+			java.awt.geom.Area area = toArea(apexes);
+			java.awt.Rectangle bounds = area.getBounds();
+			index.add(new Rectangle(bounds.x, bounds.y, bounds.x + bounds.width,
+					bounds.y + bounds.height), areas.size());
+			areas.add(area);
+		}
+	}
+
+	/**
+	 * Get the union of all blockades whose bounds overlap a rectangle.
+	 *
+	 * @param bounds
+	 *            The rectangle.
+	 * @return A new area.
+	 */
+	java.awt.geom.Area union(java.awt.Rectangle bounds) {
+		final java.awt.geom.Area result = new java.awt.geom.Area();
+		index.intersects(new Rectangle(bounds.x, bounds.y, bounds.x
+				+ bounds.width, bounds.y + bounds.height), new IntProcedure() {
+			@Override
+			public boolean execute(int id) {
+				result.add(areas.get(id));
+				return true;
+			}
+		});
+		return result;
+	}
+
+	private static java.awt.geom.Area toArea(int[] apexes) {
+		Path2D result = new Path2D.Double();
+		result.moveTo(apexes[0], apexes[1]);
+		for (int i = 2; i < apexes.length; i += 2) {
+			result.lineTo(apexes[i], apexes[i + 1]);
+		}
+		result.closePath();
+		return new java.awt.geom.Area(result);
+	}
+}
@@ -39,6 +39,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import java.awt.geom.Path2D;
 import java.awt.geom.Ellipse2D;
@@ -72,6 +76,8 @@ public class CollapseSimulator extends StandardSimulator implements
 	private static final String FLOOR_HEIGHT_KEY = "collapse.floor-height";
 	private static final String WALL_COLLAPSE_EXTENT_MIN_KEY = "collapse.wall-extent.min";
 	private static final String WALL_COLLAPSE_EXTENT_MAX_KEY = "collapse.wall-extent.max";
+	private static final String POLICY_KEY = "collapse.blockade-policy";
+	private static final String THREADS_KEY = "collapse.threads";
 
 	/* Aftershock Requirment 2013 */
 	private static final String RANDOM_AFTERSHOCK = "collapse.aftershock.random";
@@ -125,6 +131,7 @@ public class CollapseSimulator extends StandardSimulator implements
 	private CollapseSimulatorGUI gui;
 	private Collection<Building> buildingCache;
 	private Collection<Road> roadCache;
+	private ForkJoinPool pool;
 
 	public CollapseSimulator() {
 	}
@@ -182,6 +189,22 @@ public class CollapseSimulator extends StandardSimulator implements
 				config.getFloatValue(WALL_COLLAPSE_EXTENT_MIN_KEY),
 				config.getFloatValue(WALL_COLLAPSE_EXTENT_MAX_KEY),
 				config.getRandom());
+		policy = CollapsePolicy.DONT_MERGE_BLOCKADES;
+		String policyName = config.getValue(POLICY_KEY, policy.toString());
+		for (CollapsePolicy next : CollapsePolicy.values()) {
+			if (next.toString().equals(policyName)) {
+				policy = next;
+			}
+		}
+		int threads = config.getIntValue(THREADS_KEY, 0);
+		if (threads <= 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		if (threads > 1) {
+			pool = new ForkJoinPool(threads);
+		}
+		Logger.info("Blockade policy " + policy + ", creating blockages with "
+				+ threads + " threads");
 		buildingCache = new HashSet<Building>();
 		roadCache = new HashSet<Road>();
 		for (StandardEntity next : model) {
@@ -281,10 +304,6 @@ public class CollapseSimulator extends StandardSimulator implements
 		return result;
 	}
 
-	static long t1;
-	static long t2;
-	static long t3;
-
 	private Map<Road, Collection<java.awt.geom.Area>> doBlock(
 			Collection<Building> collapsed, int time) {
 		Map<Road, Collection<java.awt.geom.Area>> result = new LazyMap<Road, Collection<java.awt.geom.Area>>() {
@@ -299,11 +318,52 @@ public class CollapseSimulator extends StandardSimulator implements
 		if (gui != null) {
 			gui.startBlock(collapsed.size());
 		}
-		for (Building b : collapsed) {
-			createBlockages(b, result, time);
-			if (gui != null) {
-				gui.bumpBlock();
+		// Existing blockades are looked up by position, so each building only
+		// merges with the blockades near it
+		final BlockadeIndex existing = policy
+				.equals(CollapsePolicy.MERGE_BLOCKADES) ? new BlockadeIndex(
+				model.getEntitiesOfType(StandardEntityURN.BLOCKADE)) : null;
+		// Draw the collapse extents in order so the random numbers each
+		// building gets do not depend on the number of threads
+		List<Callable<Map<Road, Collection<java.awt.geom.Area>>>> tasks = new ArrayList<Callable<Map<Road, Collection<java.awt.geom.Area>>>>();
+		for (final Building b : collapsed) {
+			final double d = collapseExtent(b, time);
+			tasks.add(new Callable<Map<Road, Collection<java.awt.geom.Area>>>() {
+				@Override
+				public Map<Road, Collection<java.awt.geom.Area>> call() {
+					return createBlockages(b, d, existing);
+				}
+			});
+		}
+		try {
+			List<Map<Road, Collection<java.awt.geom.Area>>> blockages = new ArrayList<Map<Road, Collection<java.awt.geom.Area>>>();
+			if (pool == null) {
+				for (Callable<Map<Road, Collection<java.awt.geom.Area>>> next : tasks) {
+					blockages.add(next.call());
+				}
+			} else {
+				for (Future<Map<Road, Collection<java.awt.geom.Area>>> next : pool
+						.invokeAll(tasks)) {
+					blockages.add(next.get());
+				}
+			}
+			// Merge in building order so the blockades are the same however
+			// the tasks were scheduled
+			for (Map<Road, Collection<java.awt.geom.Area>> next : blockages) {
+				for (Map.Entry<Road, Collection<java.awt.geom.Area>> entry : next
+						.entrySet()) {
+					result.get(entry.getKey()).addAll(entry.getValue());
+				}
+				if (gui != null) {
+					gui.bumpBlock();
+				}
 			}
+		} catch (InterruptedException e) {
+			Logger.error("Interrupted while creating blockages");
+		} catch (ExecutionException e) {
+			Logger.error("Error creating blockages", e.getCause());
+		} catch (Exception e) {
+			Logger.error("Error creating blockages", e);
 		}
 		if (gui != null) {
 			gui.endBlock();
@@ -461,10 +521,12 @@ public class CollapseSimulator extends StandardSimulator implements
 		return result;
 	}
 
-	private void createBlockages(Building b,
-			Map<Road, Collection<java.awt.geom.Area>> roadBlockages, int time) {
-		long t = System.currentTimeMillis();
-		Logger.debug("Creating blockages for " + b);
+	/**
+	 * Work out how far the walls of a collapsed building fall and record the
+	 * collapse. This uses the simulator's random number generator so it must
+	 * be called for each building in turn.
+	 */
+	private double collapseExtent(Building b, int time) {
 		/*
 		 * Aftershock's Requirement@2103: this checks the ratio of the
 		 * building's floors that is possible to collapsed
@@ -487,12 +549,21 @@ public class CollapseSimulator extends StandardSimulator implements
 		/* Aftershock's Requirement: 2013 */
 		double d = remainingfloors * (damage / (double) MAX_COLLAPSE)
 				* currentExtent;
-		t1 += System.currentTimeMillis() - t;
-		t = System.currentTimeMillis();
 		/* Aftershock's Requirement: 2013 */
 		model().getCSBuiding(b).increaseCollapseRatio(
 				(float) (d / model().getCSBuiding(b).getTotalCollapse(
 						floorHeight)));
+		return d;
+	}
+
+	/**
+	 * Find the blockages the walls of a collapsed building leave on nearby
+	 * roads. Only reads the world model, so several buildings can be done at
+	 * once.
+	 */
+	private Map<Road, Collection<java.awt.geom.Area>> createBlockages(
+			Building b, double d, BlockadeIndex blockades) {
+		Logger.debug("Creating blockages for " + b);
 		// Place some blockages on surrounding roads
 		List<java.awt.geom.Area> wallAreas = new ArrayList<java.awt.geom.Area>();
 		// Project each wall out and build a list of wall areas
@@ -511,27 +582,10 @@ public class CollapseSimulator extends StandardSimulator implements
 		 * "Expanded building area (d = " + d + ")", Color.BLACK, false) );
 		 */
 		// Find existing blockade areas
-		java.awt.geom.Area existing = new java.awt.geom.Area();
-		if (policy.equals(CollapsePolicy.MERGE_BLOCKADES)) {
-			for (StandardEntity e : model
-					.getEntitiesOfType(StandardEntityURN.BLOCKADE)) {
-				Blockade blockade = (Blockade) e;
-				existing.add(blockadeToArea(blockade));
-			}
-		}
-		t2 += System.currentTimeMillis() - t;
+		java.awt.geom.Area existing = blockades == null ? new java.awt.geom.Area()
+				: blockades.union(fullArea.getBounds());
 		// Intersect wall areas with roads
-		t = System.currentTimeMillis();
-		Map<Road, Collection<java.awt.geom.Area>> blockadesForRoads = createRoadBlockades(
-				fullArea, existing);
-		t3 += System.currentTimeMillis() - t;
-		// Add to roadBlockages
-		for (Map.Entry<Road, Collection<java.awt.geom.Area>> entry : blockadesForRoads
-				.entrySet()) {
-			Road r = entry.getKey();
-			Collection<java.awt.geom.Area> c = entry.getValue();
-			roadBlockages.get(r).addAll(c);
-		}
+		return createRoadBlockades(fullArea, existing);
 	}
 
 	private void projectWall(Edge edge,
@@ -766,17 +820,6 @@ public class CollapseSimulator extends StandardSimulator implements
 		return result;
 	}
 
-	private java.awt.geom.Area blockadeToArea(Blockade b) {
-		Path2D result = new Path2D.Double();
-		int[] apexes = b.getApexes();
-		result.moveTo(apexes[0], apexes[1]);
-		for (int i = 2; i < apexes.length; i += 2) {
-			result.lineTo(apexes[i], apexes[i + 1]);
-		}
-		result.closePath();
-		return new java.awt.geom.Area(result);
-	}
-
 	private class CollapseStats {
 		private double pDestroyed;
 		private double pSevere;
@@ -17,6 +17,7 @@ import rescuecore2.standard.entities.StandardWorldModel;
 import rescuecore2.standard.entities.Building;
 import rescuecore2.standard.entities.Road;
 import rescuecore2.standard.entities.Edge;
+import rescuecore2.standard.entities.StandardEntity;
 
 import maps.MapReader;
 import maps.MapException;
@@ -37,6 +38,7 @@ import org.dom4j.DocumentException;
 import org.dom4j.io.SAXReader;
 
 import java.io.File;
+import java.io.IOException;
 
 //import rescuecore2.misc.gui.ShapeDebugFrame;
 
@@ -49,6 +51,7 @@ public class GMLWorldModelCreator implements WorldModelCreator {
 	private static final String DEFAULT_MAP_FILE = "map.gml";
 	private static final String SCENARIO_FILE_KEY = "gis.map.scenario";
 	private static final String DEFAULT_SCENARIO_FILE = "scenario.xml";
+	private static final String MAP_CACHE_DIRECTORY_KEY = "gis.map.cache.dir";
 
 	private static final double SQ_MM_TO_SQ_M = 0.000001;
 
@@ -76,7 +79,8 @@ public class GMLWorldModelCreator implements WorldModelCreator {
 					DEFAULT_MAP_FILE));
 			File scenarioFile = new File(dir, config.getValue(
 					SCENARIO_FILE_KEY, DEFAULT_SCENARIO_FILE));
-			readMapData(mapFile, result);
+			readMapData(mapFile, result,
+					config.getValue(MAP_CACHE_DIRECTORY_KEY, ""));
 			readScenarioAndApply(scenarioFile, result, config);
 			for (Entity e : result) {
 				nextID = Math.max(nextID, e.getID().getValue());
@@ -98,7 +102,36 @@ public class GMLWorldModelCreator implements WorldModelCreator {
 		return new EntityID(nextID++);
 	}
 
-	private void readMapData(File mapFile, StandardWorldModel result)
+	private void readMapData(File mapFile, StandardWorldModel result,
+			String cacheDirectory) throws MapException {
+		File cacheFile = null;
+		if (!cacheDirectory.isEmpty()) {
+			try {
+				cacheFile = MapCache.getFile(new File(cacheDirectory), mapFile);
+			} catch (IOException e) {
+				Logger.warn("Couldn't hash map file " + mapFile, e);
+			}
+		}
+		List<StandardEntity> entities = new ArrayList<StandardEntity>();
+		if (cacheFile != null && MapCache.load(cacheFile, entities)) {
+			Logger.info("Read precompiled map " + cacheFile);
+		} else {
+			createEntities(mapFile, entities);
+			if (cacheFile != null) {
+				try {
+					MapCache.save(cacheFile, entities);
+					Logger.info("Wrote precompiled map " + cacheFile);
+				} catch (IOException e) {
+					Logger.warn("Couldn't write precompiled map " + cacheFile, e);
+				}
+			}
+		}
+		for (StandardEntity next : entities) {
+			result.addEntity(next);
+		}
+	}
+
+	private void createEntities(File mapFile, List<StandardEntity> result)
 			throws MapException {
 		GMLMap map = (GMLMap) MapReader.readMap(mapFile);
 		CoordinateConversion conversion = getCoordinateConversion(map);
@@ -130,7 +163,7 @@ public class GMLWorldModelCreator implements WorldModelCreator {
 			b.setEdges(createEdges(next, conversion));
 			b.setX((int) centroid.getX());
 			b.setY((int) centroid.getY());
-			result.addEntity(b);
+			result.add(b);
 			// Logger.debug(b.getFullDescription());
 		}
 		for (GMLRoad next : map.getRoads()) {
@@ -148,7 +181,7 @@ public class GMLWorldModelCreator implements WorldModelCreator {
 			r.setX((int) centroid.getX());
 			r.setY((int) centroid.getY());
 			r.setEdges(createEdges(next, conversion));
-			result.addEntity(r);
+			result.add(r);
 			// Logger.debug(b.getFullDescription());
 		}
 	}
@@ -0,0 +1,249 @@
+package gis2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import rescuecore2.log.Logger;
+import rescuecore2.standard.entities.Area;
+import rescuecore2.standard.entities.Building;
+import rescuecore2.standard.entities.Edge;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.worldmodel.EntityID;
+
+/**
+ * Reads and writes the buildings and roads created from a GML map in a binary
+ * file. Files are named after the SHA-1 hash of the map file and the format
+ * version, so a changed map is never read from an old precompiled file.
+ */
+final class MapCache {
+	private static final int MAGIC = 0x524d4150; // "RMAP"
+	// The cache only notices changes to the map file. Bump this whenever the
+	// file layout or the way GMLWorldModelCreator turns GML shapes into
+	// entities changes, or old precompiled maps will still be used.
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".rcrmap";
+
+	private static final byte BUILDING = 0;
+	private static final byte ROAD = 1;
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private MapCache() {
+	}
+
+	/**
+	 * Get the precompiled file for a map file.
+	 *
+	 * @param dir
+	 *            The directory that holds precompiled maps.
+	 * @param mapFile
+	 *            The GML map file.
+	 * @return The precompiled file, which may not exist yet.
+	 * @throws IOException
+	 *             If the map file cannot be read.
+	 */
+	static File getFile(File dir, File mapFile) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		InputStream in = new FileInputStream(mapFile);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		StringBuilder name = new StringBuilder();
+		for (byte b : digest.digest()) {
+			name.append(String.format("%02x", b));
+		}
+		name.append("-v").append(VERSION).append(SUFFIX);
+		return new File(dir, name.toString());
+	}
+
+	/**
+	 * Read the buildings and roads of a map from a precompiled file.
+	 *
+	 * @param file
+	 *            The file to read.
+	 * @param result
+	 *            The list to add the entities to. Nothing is added unless the
+	 *            whole file could be read.
+	 * @return True if the file was read, false if it does not exist or is not
+	 *         a valid precompiled map.
+	 */
+	static boolean load(File file, List<StandardEntity> result) {
+		if (!file.exists()) {
+			return false;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), BUFFER_SIZE));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					Logger.warn("\"" + file + "\" is not a version " + VERSION
+							+ " precompiled map");
+					return false;
+				}
+				int count = in.readInt();
+				List<StandardEntity> entities = new ArrayList<StandardEntity>(
+						count);
+				for (int i = 0; i < count; i++) {
+					byte type = in.readByte();
+					if (type == BUILDING) {
+						entities.add(readBuilding(in));
+					} else if (type == ROAD) {
+						entities.add(readRoad(in));
+					} else {
+						Logger.warn("\"" + file
+								+ "\" contains an unknown entity type " + type);
+						return false;
+					}
+				}
+				result.addAll(entities);
+				return true;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			Logger.warn("Unable to read precompiled map \"" + file + "\"", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Write the buildings and roads of a map to a precompiled file. The file
+	 * is written under a temporary name first so that an interrupted write
+	 * never leaves a truncated file behind.
+	 *
+	 * @param file
+	 *            The file to write.
+	 * @param entities
+	 *            The buildings and roads of the map.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	static void save(File file, List<StandardEntity> entities)
+			throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Couldn't create directory " + dir);
+		}
+		File temp = File.createTempFile(file.getName(), ".tmp", dir);
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp),
+							BUFFER_SIZE));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(entities.size());
+				for (StandardEntity next : entities) {
+					if (next instanceof Building) {
+						out.writeByte(BUILDING);
+						writeBuilding((Building) next, out);
+					} else if (next instanceof Road) {
+						out.writeByte(ROAD);
+						writeArea((Road) next, out);
+					} else {
+						throw new IllegalArgumentException(
+								"Can't precompile entity " + next);
+					}
+				}
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(file)) {
+				throw new IOException("Couldn't rename " + temp + " to " + file);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private static Building readBuilding(DataInputStream in) throws IOException {
+		Building b = new Building(new EntityID(in.readInt()));
+		b.setX(in.readInt());
+		b.setY(in.readInt());
+		b.setEdges(readEdges(in));
+		b.setFloors(in.readInt());
+		b.setFieryness(0);
+		b.setBrokenness(0);
+		b.setBuildingCode(in.readInt());
+		b.setBuildingAttributes(0);
+		b.setGroundArea(in.readInt());
+		b.setTotalArea(in.readInt());
+		b.setImportance(in.readInt());
+		return b;
+	}
+
+	private static Road readRoad(DataInputStream in) throws IOException {
+		Road r = new Road(new EntityID(in.readInt()));
+		r.setX(in.readInt());
+		r.setY(in.readInt());
+		r.setEdges(readEdges(in));
+		return r;
+	}
+
+	private static List<Edge> readEdges(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		List<Edge> edges = new ArrayList<Edge>(count);
+		for (int i = 0; i < count; i++) {
+			int sx = in.readInt();
+			int sy = in.readInt();
+			int ex = in.readInt();
+			int ey = in.readInt();
+			EntityID neighbour = in.readBoolean() ? new EntityID(in.readInt())
+					: null;
+			edges.add(new Edge(sx, sy, ex, ey, neighbour));
+		}
+		return edges;
+	}
+
+	private static void writeBuilding(Building b, DataOutputStream out)
+			throws IOException {
+		writeArea(b, out);
+		out.writeInt(b.getFloors());
+		out.writeInt(b.getBuildingCode());
+		out.writeInt(b.getGroundArea());
+		out.writeInt(b.getTotalArea());
+		out.writeInt(b.getImportance());
+	}
+
+	private static void writeArea(Area a, DataOutputStream out)
+			throws IOException {
+		out.writeInt(a.getID().getValue());
+		out.writeInt(a.getX());
+		out.writeInt(a.getY());
+		List<Edge> edges = a.getEdges();
+		out.writeInt(edges.size());
+		for (Edge next : edges) {
+			out.writeInt(next.getStartX());
+			out.writeInt(next.getStartY());
+			out.writeInt(next.getEndX());
+			out.writeInt(next.getEndY());
+			out.writeBoolean(next.getNeighbour() != null);
+			if (next.getNeighbour() != null) {
+				out.writeInt(next.getNeighbour().getValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package gis2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rescuecore2.config.Config;
+import rescuecore2.standard.entities.Area;
+import rescuecore2.standard.entities.Building;
+import rescuecore2.standard.entities.Edge;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.worldmodel.EntityID;
+
+public class MapCacheTest {
+	private static final String TEST_MAP_DIR = "../../../maps/gml/test";
+
+	private File dir;
+
+	@Before
+	public void setup() throws IOException {
+		dir = File.createTempFile("mapcache", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@After
+	public void cleanup() {
+		for (File next : dir.listFiles()) {
+			next.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		List<StandardEntity> entities = new ArrayList<StandardEntity>();
+		Building b = new Building(new EntityID(1));
+		b.setX(500);
+		b.setY(500);
+		b.setEdges(square(0, 0, 1000, new EntityID(2)));
+		b.setFloors(3);
+		b.setFieryness(0);
+		b.setBrokenness(0);
+		b.setBuildingCode(2);
+		b.setBuildingAttributes(0);
+		b.setGroundArea(1);
+		b.setTotalArea(3);
+		b.setImportance(5);
+		entities.add(b);
+		Road r = new Road(new EntityID(2));
+		r.setX(1500);
+		r.setY(500);
+		r.setEdges(square(1000, 0, 1000, null));
+		entities.add(r);
+		File file = new File(dir, "test.rcrmap");
+		MapCache.save(file, entities);
+		List<StandardEntity> loaded = new ArrayList<StandardEntity>();
+		assertTrue(MapCache.load(file, loaded));
+		assertEquals(describe(entities), describe(loaded));
+		assertEquals(1, dir.listFiles().length);
+	}
+
+	@Test
+	public void testSaveAndLoadMap() throws Exception {
+		File mapDir = new File(System.getProperty("tests.basedir", "modules/gis2/test"), TEST_MAP_DIR);
+		Config config = new Config();
+		config.setValue("gis.map.dir", mapDir.getPath());
+		config.setValue("gis.map.scenario", "no-scenario.xml");
+		config.setValue("gis.map.cache.dir", dir.getPath());
+		StandardWorldModel fromGML = (StandardWorldModel) new GMLWorldModelCreator().buildWorldModel(config);
+		File file = MapCache.getFile(dir, new File(mapDir, "map.gml"));
+		assertTrue(file.exists());
+		assertEquals(1, dir.listFiles().length);
+
+		List<StandardEntity> expected = new ArrayList<StandardEntity>();
+		for (StandardEntity next : fromGML) {
+			expected.add(next);
+		}
+		assertFalse(expected.isEmpty());
+		List<StandardEntity> loaded = new ArrayList<StandardEntity>();
+		assertTrue(MapCache.load(file, loaded));
+		assertEquals(describe(expected), describe(loaded));
+
+		StandardWorldModel fromCache = (StandardWorldModel) new GMLWorldModelCreator().buildWorldModel(config);
+		loaded.clear();
+		for (StandardEntity next : fromCache) {
+			loaded.add(next);
+		}
+		assertEquals(describe(expected), describe(loaded));
+	}
+
+	@Test
+	public void testFileNamedAfterMapAndVersion() throws IOException {
+		File mapDir = new File(System.getProperty("tests.basedir", "modules/gis2/test"), TEST_MAP_DIR);
+		File file = MapCache.getFile(dir, new File(mapDir, "map.gml"));
+		assertTrue(file.getName().matches("[0-9a-f]{40}-v[0-9]+\\.rcrmap"));
+		assertEquals(file, MapCache.getFile(dir, new File(mapDir, "map.gml")));
+		File other = new File(dir, "other.gml");
+		FileOutputStream out = new FileOutputStream(other);
+		out.write(1);
+		out.close();
+		assertFalse(file.equals(MapCache.getFile(dir, other)));
+	}
+
+	@Test
+	public void testLoadRejectsBadFiles() throws IOException {
+		List<StandardEntity> loaded = new ArrayList<StandardEntity>();
+		assertFalse(MapCache.load(new File(dir, "missing.rcrmap"), loaded));
+		File file = new File(dir, "old.rcrmap");
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		out.writeInt(0x524d4150);
+		out.writeInt(0);
+		out.writeInt(0);
+		out.close();
+		assertFalse(MapCache.load(file, loaded));
+		// A truncated file adds nothing
+		out = new DataOutputStream(new FileOutputStream(file));
+		out.writeInt(0x524d4150);
+		out.writeInt(1);
+		out.writeInt(2);
+		out.writeByte(1);
+		out.writeInt(7);
+		out.close();
+		assertFalse(MapCache.load(file, loaded));
+		assertTrue(loaded.isEmpty());
+	}
+
+	private static List<Edge> square(int x, int y, int size, EntityID right) {
+		List<Edge> edges = new ArrayList<Edge>();
+		edges.add(new Edge(x, y, x + size, y));
+		edges.add(new Edge(x + size, y, x + size, y + size, right));
+		edges.add(new Edge(x + size, y + size, x, y + size));
+		edges.add(new Edge(x, y + size, x, y));
+		return edges;
+	}
+
+	private static List<String> describe(List<StandardEntity> entities) {
+		List<String> result = new ArrayList<String>();
+		for (StandardEntity next : entities) {
+			if (!(next instanceof Area)) {
+				continue;
+			}
+			Area a = (Area) next;
+			StringBuilder s = new StringBuilder();
+			s.append(a.getStandardURN()).append(" ").append(a.getID()).append(" ").append(a.getX()).append(",").append(a.getY());
+			for (Edge e : a.getEdges()) {
+				s.append(" ").append(e.getStartX()).append(",").append(e.getStartY()).append("-").append(e.getEndX()).append(",").append(e.getEndY()).append(":").append(e.getNeighbour());
+			}
+			if (a instanceof Building) {
+				Building b = (Building) a;
+				s.append(" floors ").append(b.getFloors());
+				s.append(" fieryness ").append(b.getFieryness());
+				s.append(" brokenness ").append(b.getBrokenness());
+				s.append(" code ").append(b.getBuildingCode());
+				s.append(" attributes ").append(b.getBuildingAttributes());
+				s.append(" area ").append(b.getGroundArea()).append("/").append(b.getTotalArea());
+				s.append(" importance ").append(b.getImportance());
+			}
+			result.add(s.toString());
+		}
+		Collections.sort(result);
+		return result;
+	}
+}
@@ -11,12 +11,16 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
 
+import rescuecore2.Constants;
 import rescuecore2.config.Config;
+import rescuecore2.registry.Registry;
+import rescuecore2.registry.URNDictionary;
 import rescuecore2.connection.Connection;
 import rescuecore2.connection.ConnectionException;
 import rescuecore2.connection.ConnectionListener;
 import rescuecore2.connection.ConnectionManagerListener;
 import rescuecore2.messages.Message;
+import rescuecore2.messages.components.EntityEncodingCache;
 import rescuecore2.messages.control.KSAfterShocksInfo;
 import rescuecore2.messages.control.VKConnect;
 import rescuecore2.messages.control.VKAcknowledge;
@@ -68,6 +72,9 @@ public class ComponentManager implements ConnectionManagerListener,
 
 	// World information
 	private WorldModel<? extends Entity> world;
+	// Every connect reply carries most of the world, so each entity is only
+	// encoded again if it has changed
+	private EntityEncodingCache encodings;
 
 	private Config config;
 
@@ -95,6 +102,7 @@ public class ComponentManager implements ConnectionManagerListener,
 		this.world = world;
 		this.config = config;
 		this.scenario = scenario;
+		encodings = new EntityEncodingCache(world);
 		uncontrolledEntities = new HashMap<String, Queue<ControlledEntityInfo>>();
 		agentsToAcknowledge = new HashSet<AgentAck>();
 		simsToAcknowledge = new HashSet<SimulatorAck>();
@@ -356,6 +364,46 @@ public class ComponentManager implements ConnectionManagerListener,
 			}
 		}
 
+		/**
+		 * Create a URN dictionary for a component that has just connected.
+		 * 
+		 * @param version
+		 *            The version number from the connect message.
+		 * @param connection
+		 *            The connection to the component.
+		 * @return A new URNDictionary, or null if the component only
+		 *         understands URN strings or dictionaries are disabled.
+		 */
+		private URNDictionary createURNDictionary(int version,
+				Connection connection) {
+			if (version < Constants.CONNECT_VERSION_URN_DICTIONARY
+					|| !config.getBooleanValue(Constants.URN_DICTIONARY_KEY,
+							true)) {
+				return null;
+			}
+			Registry registry = connection.getRegistry();
+			if (registry == null) {
+				registry = Registry.getCurrentRegistry();
+			}
+			return registry.createURNDictionary();
+		}
+
+		/**
+		 * Get the ChangeSet keyframe interval to offer a component that has
+		 * just connected. Delta-coded ChangeSets are only switched on together
+		 * with a URN dictionary.
+		 * 
+		 * @return The keyframe interval, or zero if ChangeSets should be sent
+		 *         in full.
+		 */
+		private int getChangeSetKeyframeInterval() {
+			if (!config.getBooleanValue(Constants.CHANGESET_DELTA_KEY, false)) {
+				return 0;
+			}
+			return config.getIntValue(Constants.CHANGESET_KEYFRAME_INTERVAL_KEY,
+					Constants.DEFAULT_CHANGESET_KEYFRAME_INTERVAL);
+		}
+
 		private void handleAKConnect(AKConnect connect, Connection connection) {
 			// Pull out the request ID and requested entity type list
 			int requestID = connect.getRequestID();
@@ -381,7 +429,9 @@ public class ComponentManager implements ConnectionManagerListener,
 							+ " request ID " + requestID + ") connected");
 					// Send an OK
 					reply = new KAConnectOK(requestID, entity.getID(),
-							result.visibleSet, result.config);
+							result.visibleSet, result.config, createURNDictionary(
+									connect.getVersion(), connection),
+							getChangeSetKeyframeInterval(), encodings);
 				}
 			}
 			if (reply != null) {
@@ -424,7 +474,9 @@ public class ComponentManager implements ConnectionManagerListener,
 			}
 			// Send an OK
 			sim.send(Collections.singleton(new KSConnectOK(simID, requestID,
-					world.getAllEntities(), config)));
+					world.getAllEntities(), config, createURNDictionary(
+							msg.getVersion(), connection),
+					getChangeSetKeyframeInterval(), encodings)));
 			sendAdditionalInfoToSim(sim);
 			updateGUISimulatorAck();
 		}
@@ -469,7 +521,9 @@ public class ComponentManager implements ConnectionManagerListener,
 			}
 			// Send an OK
 			viewer.send(Collections.singleton(new KVConnectOK(viewerID,
-					requestID, world.getAllEntities(), config)));
+					requestID, world.getAllEntities(), config,
+					createURNDictionary(msg.getVersion(), connection),
+					getChangeSetKeyframeInterval(), encodings)));
 			updateGUIViewerAck();
 		}
 
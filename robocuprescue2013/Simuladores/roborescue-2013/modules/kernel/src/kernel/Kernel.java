@@ -9,10 +9,15 @@ import java.util.List;
 import java.util.ArrayList;
 import java.io.IOException;
 import java.io.File;
+import java.io.OutputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
 
 import rescuecore2.config.Config;
 import rescuecore2.worldmodel.Entity;
@@ -22,11 +27,14 @@ import rescuecore2.worldmodel.ChangeSet;
 import rescuecore2.messages.Command;
 import rescuecore2.Constants;
 import rescuecore2.Timestep;
+import rescuecore2.misc.Pair;
 import rescuecore2.score.ScoreFunction;
 //import rescuecore2.misc.gui.ChangeSetComponent;
 
 import rescuecore2.log.LogWriter;
-import rescuecore2.log.FileLogWriter;
+import rescuecore2.log.StreamLogWriter;
+import rescuecore2.log.ChunkedLogOutputStream;
+import rescuecore2.log.AsyncLogWriter;
 import rescuecore2.log.InitialConditionsRecord;
 import rescuecore2.log.StartLogRecord;
 import rescuecore2.log.EndLogRecord;
@@ -34,6 +42,7 @@ import rescuecore2.log.ConfigRecord;
 import rescuecore2.log.PerceptionRecord;
 import rescuecore2.log.CommandsRecord;
 import rescuecore2.log.UpdatesRecord;
+import rescuecore2.log.SnapshotRecord;
 import rescuecore2.log.LogException;
 import rescuecore2.log.Logger;
 
@@ -44,11 +53,14 @@ public class Kernel {
     /** The log context for kernel log messages. */
     public static final String KERNEL_LOG_CONTEXT = "kernel";
 
+    private static final int DEFAULT_PERCEPTION_THREADS = 1;
+
     private Config config;
     private Perception perception;
     private CommunicationModel communicationModel;
     private WorldModel<? extends Entity> worldModel;
     private LogWriter log;
+    private int snapshotInterval;
 
     private Set<KernelListener> listeners;
 
@@ -65,6 +77,8 @@ public class Kernel {
     private ScoreFunction score;
     private CommandCollector commandCollector;
 
+    private ExecutorService perceptionExecutor;
+
     private boolean isShutdown;
 
     //    private ChangeSetComponent simulatorChanges;
@@ -117,10 +131,23 @@ public class Kernel {
                 if (logFile.createNewFile()) {
                     Logger.info("Created log file: " + logFile.getAbsolutePath());
                 }
-                log = new FileLogWriter(logFile);
+                OutputStream logStream;
+                if (config.getBooleanValue(KernelConstants.LOG_CHUNKED_KEY, false)) {
+                    logStream = new ChunkedLogOutputStream(logFile, config.getIntValue(KernelConstants.LOG_CHUNK_SIZE_KEY, ChunkedLogOutputStream.DEFAULT_CHUNK_SIZE));
+                }
+                else {
+                    logStream = new BufferedOutputStream(new FileOutputStream(logFile));
+                }
+                if (config.getBooleanValue(KernelConstants.LOG_ASYNC_KEY, false)) {
+                    log = new AsyncLogWriter(logStream, config.getIntValue(KernelConstants.LOG_QUEUE_CAPACITY_KEY, AsyncLogWriter.DEFAULT_CAPACITY));
+                }
+                else {
+                    log = new StreamLogWriter(logStream);
+                }
                 log.writeRecord(new StartLogRecord());
                 log.writeRecord(new InitialConditionsRecord(worldModel));
                 log.writeRecord(new ConfigRecord(config));
+                snapshotInterval = config.getIntValue(KernelConstants.LOG_SNAPSHOT_INTERVAL_KEY, 0);
             }
             catch (IOException e) {
                 throw new KernelException("Couldn't open log file for writing", e);
@@ -140,11 +167,20 @@ public class Kernel {
             score.initialise(worldModel, config);
             termination.initialise(config);
             commandCollector.initialise(config);
+            if (perception instanceof KernelListener) {
+                addKernelListener((KernelListener)perception);
+            }
+
+            int perceptionThreads = config.getIntValue(KernelConstants.PERCEPTION_THREADS_KEY, DEFAULT_PERCEPTION_THREADS);
+            if (perceptionThreads > 1) {
+                perceptionExecutor = Executors.newFixedThreadPool(perceptionThreads);
+            }
 
             isShutdown = false;
 
             Logger.info("Kernel initialised");
             Logger.info("Perception module: " + perception);
+            Logger.info("Perception threads: " + perceptionThreads);
             Logger.info("Communication module: " + communicationModel);
             Logger.info("Command filter: " + commandFilter);
             Logger.info("Score function: " + score);
@@ -358,6 +394,9 @@ public class Kernel {
                 long updatesTime = System.currentTimeMillis();
                 // Merge updates into world model
                 worldModel.merge(changes);
+                if (snapshotInterval > 0 && time % snapshotInterval == 0) {
+                    log.writeRecord(new SnapshotRecord(time, worldModel));
+                }
                 long mergeTime = System.currentTimeMillis();
                 Logger.debug("Broadcasting updates");
                 sendUpdatesToSimulators(time, changes);
@@ -431,6 +470,9 @@ public class Kernel {
             catch (InterruptedException e) {
                 Logger.warn("Interrupted during shutdown");
             }
+            if (perceptionExecutor != null) {
+                perceptionExecutor.shutdownNow();
+            }
             try {
                 log.writeRecord(new EndLogRecord());
                 log.close();
@@ -447,17 +489,68 @@ public class Kernel {
     private void sendAgentUpdates(Timestep timestep, Collection<Command> commandsLastTimestep) throws InterruptedException, KernelException, LogException {
         perception.setTime(time);
         communicationModel.process(time, commandsLastTimestep);
+        if (perceptionExecutor != null) {
+            sendAgentUpdatesParallel(timestep);
+            return;
+        }
         for (AgentProxy next : agents) {
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
             ChangeSet visible = perception.getVisibleEntities(next);
             Collection<Command> heard = communicationModel.getHearing(next.getControlledEntity());
-            EntityID id = next.getControlledEntity().getID();
-            timestep.registerPerception(id, visible, heard);
-            log.writeRecord(new PerceptionRecord(time, id, visible, heard));
-            next.sendPerceptionUpdate(time, visible, heard);
+            publishPerception(timestep, next, visible, heard);
+        }
+    }
+
+    /**
+       Compute perception for all agents on the perception thread pool. Results are registered, logged and sent in agent iteration order so the log is the same as for the serial loop.
+    */
+    private void sendAgentUpdatesParallel(Timestep timestep) throws InterruptedException, KernelException, LogException {
+        List<AgentProxy> ordered = new ArrayList<AgentProxy>(agents);
+        List<Future<Pair<ChangeSet, Collection<Command>>>> results = new ArrayList<Future<Pair<ChangeSet, Collection<Command>>>>(ordered.size());
+        for (AgentProxy next : ordered) {
+            final AgentProxy agent = next;
+            results.add(perceptionExecutor.submit(new Callable<Pair<ChangeSet, Collection<Command>>>() {
+                    @Override
+                    public Pair<ChangeSet, Collection<Command>> call() {
+                        Logger.pushLogContext(KERNEL_LOG_CONTEXT);
+                        try {
+                            ChangeSet visible = perception.getVisibleEntities(agent);
+                            Collection<Command> heard;
+                            // Communication models are not required to be thread-safe
+                            synchronized (communicationModel) {
+                                heard = communicationModel.getHearing(agent.getControlledEntity());
+                            }
+                            return new Pair<ChangeSet, Collection<Command>>(visible, heard);
+                        }
+                        finally {
+                            Logger.popLogContext();
+                        }
+                    }
+                }));
+        }
+        try {
+            for (int i = 0; i < ordered.size(); ++i) {
+                Pair<ChangeSet, Collection<Command>> result = results.get(i).get();
+                publishPerception(timestep, ordered.get(i), result.first(), result.second());
+            }
+        }
+        catch (ExecutionException e) {
+            throw new KernelException("Error computing perception", e.getCause());
         }
+        finally {
+            for (Future<Pair<ChangeSet, Collection<Command>>> next : results) {
+                next.cancel(true);
+            }
+        }
+    }
+
+    private void publishPerception(Timestep timestep, AgentProxy agent, ChangeSet visible, Collection<Command> heard) throws LogException {
+        EntityID id = agent.getControlledEntity().getID();
+        timestep.registerPerception(id, visible, heard);
+        log.writeRecord(new PerceptionRecord(time, id, visible, heard));
+        agent.sendPerceptionUpdate(time, visible, heard);
     }
 
     private Collection<Command> waitForCommands(int timestep) throws InterruptedException {
@@ -10,6 +10,9 @@ public final class KernelConstants {
     /** The config key for perception implementations. */
     public static final String PERCEPTION_KEY = "kernel.perception";
 
+    /** The config key for the number of threads used to compute agent perception. */
+    public static final String PERCEPTION_THREADS_KEY = "kernel.perception.threads";
+
     /** The config key for communication model implementations. */
     public static final String COMMUNICATION_MODEL_KEY = "kernel.communication";
 
@@ -31,5 +34,20 @@ public final class KernelConstants {
     /** The config key for ignoring agent commands at the start of the simulation. */
     public static final String IGNORE_AGENT_COMMANDS_KEY = "kernel.agents.ignoreuntil";
 
+    /** The config key for writing the kernel log on a separate thread. */
+    public static final String LOG_ASYNC_KEY = "kernel.log.async";
+
+    /** The config key for the number of log records that can be queued before the kernel waits for the log writer. */
+    public static final String LOG_QUEUE_CAPACITY_KEY = "kernel.log.async.capacity";
+
+    /** The config key for writing the kernel log in the compressed, indexed chunked format. */
+    public static final String LOG_CHUNKED_KEY = "kernel.log.chunked";
+
+    /** The config key for the uncompressed size in bytes of each chunk of a chunked log. */
+    public static final String LOG_CHUNK_SIZE_KEY = "kernel.log.chunked.chunk-size";
+
+    /** The config key for the number of timesteps between full world snapshots in the kernel log. Zero turns snapshots off. */
+    public static final String LOG_SNAPSHOT_INTERVAL_KEY = "kernel.log.snapshot-interval";
+
     private KernelConstants() {}
 }
@@ -125,8 +125,11 @@ public class SimulatorProxy extends AbstractKernelComponent {
                         int requestID = req.getRequestID();
                         int count = req.getCount();
                         List<EntityID> result = new ArrayList<EntityID>(count);
-                        for (int i = 0; i < count; ++i) {
-                            result.add(idGenerator.generateID());
+                        // Other simulators may be asking for IDs at the same time, so hand out the whole batch at once
+                        synchronized (idGenerator) {
+                            for (int i = 0; i < count; ++i) {
+                                result.add(idGenerator.generateID());
+                            }
                         }
                         Logger.debug("Simulator proxy " + id + " sending new IDs: " + result);
                         send(new EntityIDResponse(id, requestID, result));
@@ -42,6 +42,7 @@ import rescuecore2.registry.MessageFactory;
 import rescuecore2.registry.EntityFactory;
 import rescuecore2.registry.PropertyFactory;
 import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.worldmodel.DefaultWorldModel;
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.misc.Pair;
 import rescuecore2.misc.MutableBoolean;
@@ -282,6 +283,8 @@ public final class StartKernel {
 		CommandCollector collector = makeCommandCollector(config);
 
 		// Get the world model
+		DefaultWorldModel.setIntKeyedByDefault(config.getBooleanValue(
+				Constants.INT_KEYED_WORLD_MODEL_KEY, false));
 		WorldModel<? extends Entity> worldModel = gis.buildWorldModel(config);
 		Scenario scenario = gis.getScenario(config);
 		// Create the kernel
@@ -303,7 +306,7 @@ public final class StartKernel {
 				kernel.kernel.getWorldModel());
 		if (!config.getBooleanValue(KernelConstants.INLINE_ONLY_KEY, false)) {
 			// Start the connection manager
-			ConnectionManager connectionManager = new ConnectionManager();
+			ConnectionManager connectionManager = new ConnectionManager(config);
 			try {
 				connectionManager.listen(
 						config.getIntValue(Constants.KERNEL_PORT_NUMBER_KEY),
@@ -19,6 +19,13 @@ import org.dom4j.QName;
 import org.dom4j.Namespace;
 import org.dom4j.DocumentHelper;
 
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import java.io.Reader;
+
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
@@ -31,7 +38,7 @@ import rescuecore2.misc.Pair;
 import rescuecore2.log.Logger;
 
 /**
-   A MapFormat that can handle Robocup Rescue GML maps.
+   A MapFormat that can handle Robocup Rescue GML maps. Maps are read with a streaming parser rather than by building a document tree first.
  */
 public final class RobocupFormat extends GMLMapFormat {
     /** Singleton instance. */
@@ -108,6 +115,29 @@ public final class RobocupFormat extends GMLMapFormat {
         return result;
     }
 
+    /**
+       Read a GMLMap from a Reader without building a document tree. The map is identical to the one read from the equivalent Document.
+       @param reader The Reader to read.
+       @return A new GMLMap.
+       @throws MapException If there is a problem parsing the XML or reading the map.
+    */
+    @Override
+    public GMLMap read(Reader reader) throws MapException {
+        Logger.debug("Parsing GML");
+        try {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(reader);
+            try {
+                return new MapStreamReader(xml).read();
+            }
+            finally {
+                xml.close();
+            }
+        }
+        catch (XMLStreamException e) {
+            throw new MapException(e);
+        }
+    }
+
     @Override
     public Document write(GMLMap map) {
         Element root = DocumentHelper.createElement(RCR_ROOT_QNAME);
@@ -270,31 +300,11 @@ public final class RobocupFormat extends GMLMapFormat {
             Element directedEdge = (Element)nextEdge;
             //            Logger.debug("Next directed edge: " + directedEdge);
             int nextID = readHref(directedEdge, "underlying edge");
-            String orientation = directedEdge.attributeValue(Common.GML_ORIENTATION_QNAME);
-            boolean forward;
-            if (orientation == null) {
-                throw new MapException("Directed edge has no orientation attribute: " + e);
-            }
-            if ("+".equals(orientation)) {
-                forward = true;
-            }
-            else if ("-".equals(orientation)) {
-                forward = false;
-            }
-            else {
-                throw new MapException("Directed edge has invalid orientation attribute: " + e);
-            }
+            boolean forward = parseOrientation(directedEdge.attributeValue(Common.GML_ORIENTATION_QNAME), e);
             GMLEdge edge = map.getEdge(nextID);
             GMLDirectedEdge dEdge = new GMLDirectedEdge(edge, forward);
-            String neighbourString = directedEdge.attributeValue(RCR_NEIGHBOUR_QNAME);
-            Integer neighbourID = null;
-            if (neighbourString != null) {
-                try {
-                    neighbourID = Integer.valueOf(neighbourString);
-                }
-                catch (NumberFormatException ex) {
-                    throw new MapException("Directed edge has invalid neighbour: " + e, ex);
-                }
+            Integer neighbourID = parseNeighbour(directedEdge.attributeValue(RCR_NEIGHBOUR_QNAME), e);
+            if (neighbourID != null) {
                 edge.setPassable(true);
             }
             edges.add(dEdge);
@@ -307,9 +317,12 @@ public final class RobocupFormat extends GMLMapFormat {
     }
 
     private int readID(Element e) throws MapException {
-        String s = e.attributeValue(Common.GML_ID_QNAME);
+        return parseID(e.attributeValue(Common.GML_ID_QNAME), e);
+    }
+
+    private static int parseID(String s, Object source) throws MapException {
         if (s == null) {
-            throw new MapException("No ID attribute found: " + e);
+            throw new MapException("No ID attribute found: " + source);
         }
         try {
             return Integer.parseInt(s);
@@ -336,7 +349,10 @@ public final class RobocupFormat extends GMLMapFormat {
     }
 
     private int readHref(Element e, String type) throws MapException {
-        String href = e.attributeValue(Common.XLINK_HREF_QNAME);
+        return parseHref(e.attributeValue(Common.XLINK_HREF_QNAME), type);
+    }
+
+    private static int parseHref(String href, String type) throws MapException {
         if (href == null || href.length() == 0) {
             throw new MapException("Edge has no " + type + " ID");
         }
@@ -349,7 +365,10 @@ public final class RobocupFormat extends GMLMapFormat {
     }
 
     private int readInt(Element e, QName attributeName, int defaultValue) throws MapException {
-        String s = e.attributeValue(attributeName);
+        return parseInt(e.attributeValue(attributeName), attributeName, defaultValue, e);
+    }
+
+    private static int parseInt(String s, QName attributeName, int defaultValue, Object source) throws MapException {
         if (s == null) {
             return defaultValue;
         }
@@ -357,7 +376,263 @@ public final class RobocupFormat extends GMLMapFormat {
             return Integer.parseInt(s);
         }
         catch (NumberFormatException ex) {
-            throw new MapException("Attribute " + attributeName + " is not an integer: " + e);
+            throw new MapException("Attribute " + attributeName + " is not an integer: " + source);
+        }
+    }
+
+    private static boolean parseOrientation(String orientation, Object source) throws MapException {
+        if (orientation == null) {
+            throw new MapException("Directed edge has no orientation attribute: " + source);
+        }
+        if ("+".equals(orientation)) {
+            return true;
+        }
+        if ("-".equals(orientation)) {
+            return false;
+        }
+        throw new MapException("Directed edge has invalid orientation attribute: " + source);
+    }
+
+    private static Integer parseNeighbour(String neighbour, Object source) throws MapException {
+        if (neighbour == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(neighbour);
+        }
+        catch (NumberFormatException ex) {
+            throw new MapException("Directed edge has invalid neighbour: " + source, ex);
+        }
+    }
+
+    /**
+       Reads a map from an XML stream. Edges and shapes refer to objects that may appear later in the document so they are only recorded while parsing and created once the whole document has been read, in the same order as the Document reader creates them.
+    */
+    private static class MapStreamReader {
+        private final XMLStreamReader xml;
+        private final GMLMap result;
+        private final List<int[]> edges;
+        private final List<ShapeRecord> buildings;
+        private final List<ShapeRecord> roads;
+        private final List<ShapeRecord> spaces;
+
+        MapStreamReader(XMLStreamReader xml) {
+            this.xml = xml;
+            result = new GMLMap();
+            edges = new ArrayList<int[]>();
+            buildings = new ArrayList<ShapeRecord>();
+            roads = new ArrayList<ShapeRecord>();
+            spaces = new ArrayList<ShapeRecord>();
+        }
+
+        GMLMap read() throws XMLStreamException, MapException {
+            while (xml.hasNext()) {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT) {
+                    readRoot();
+                    break;
+                }
+            }
+            Logger.debug("Building map");
+            createEdges();
+            Logger.debug("Read " + result.getNodes().size() + " nodes");
+            Logger.debug("Read " + result.getEdges().size() + " edges");
+            for (ShapeRecord next : buildings) {
+                GMLBuilding b = new GMLBuilding(next.id, next.createEdges(result), next.neighbours);
+                b.setFloors(next.floors);
+                b.setCode(next.code);
+                b.setImportance(next.importance);
+                result.addBuilding(b);
+            }
+            Logger.debug("Read " + result.getBuildings().size() + " buildings");
+            for (ShapeRecord next : roads) {
+                result.addRoad(new GMLRoad(next.id, next.createEdges(result), next.neighbours));
+            }
+            Logger.debug("Read " + result.getRoads().size() + " roads");
+            for (ShapeRecord next : spaces) {
+                result.addSpace(new GMLSpace(next.id, next.createEdges(result), next.neighbours));
+            }
+            Logger.debug("Read " + result.getSpaces().size() + " spaces");
+            return result;
+        }
+
+        private void readRoot() throws XMLStreamException, MapException {
+            while (nextChild(null)) {
+                if (isElement(RCR_NODE_LIST_QNAME)) {
+                    while (nextChild(Common.GML_NODE_QNAME)) {
+                        readNode();
+                    }
+                }
+                else if (isElement(RCR_EDGE_LIST_QNAME)) {
+                    while (nextChild(Common.GML_EDGE_QNAME)) {
+                        readEdge();
+                    }
+                }
+                else if (isElement(RCR_BUILDING_LIST_QNAME)) {
+                    while (nextChild(RCR_BUILDING_QNAME)) {
+                        buildings.add(readShape(true));
+                    }
+                }
+                else if (isElement(RCR_ROAD_LIST_QNAME)) {
+                    while (nextChild(RCR_ROAD_QNAME)) {
+                        roads.add(readShape(false));
+                    }
+                }
+                else if (isElement(RCR_SPACE_LIST_QNAME)) {
+                    while (nextChild(RCR_SPACE_QNAME)) {
+                        spaces.add(readShape(false));
+                    }
+                }
+                else {
+                    skipElement();
+                }
+            }
+        }
+
+        private void readNode() throws XMLStreamException, MapException {
+            int id = parseID(attribute(Common.GML_ID_QNAME), "node");
+            if (!nextChild(Common.GML_POINT_PROPERTY_QNAME)) {
+                throw new MapException("Couldn't find gml:pointProperty child of node");
+            }
+            if (!nextChild(Common.GML_POINT_QNAME)) {
+                throw new MapException("Couldn't find gml:Point child of node");
+            }
+            if (!nextChild(Common.GML_COORDINATES_QNAME)) {
+                throw new MapException("Couldn't find gml:coordinates child of node");
+            }
+            GMLCoordinates c = new GMLCoordinates(xml.getElementText());
+            // Skip the rest of the point, point property and node
+            for (int i = 0; i < 3; ++i) {
+                skipElement();
+            }
+            result.addNode(new GMLNode(id, c));
+        }
+
+        private void readEdge() throws XMLStreamException, MapException {
+            int id = parseID(attribute(Common.GML_ID_QNAME), "edge");
+            int startID = -1;
+            int endID = -1;
+            while (nextChild(Common.GML_DIRECTED_NODE_QNAME)) {
+                String orientation = attribute(Common.GML_ORIENTATION_QNAME);
+                if ("-".equals(orientation)) {
+                    if (startID != -1) {
+                        throw new MapException("Edge has multiple start nodes: edge " + id);
+                    }
+                    startID = parseHref(attribute(Common.XLINK_HREF_QNAME), "start node");
+                }
+                if ("+".equals(orientation)) {
+                    if (endID != -1) {
+                        throw new MapException("Edge has multiple end nodes: edge " + id);
+                    }
+                    endID = parseHref(attribute(Common.XLINK_HREF_QNAME), "end node");
+                }
+                skipElement();
+            }
+            edges.add(new int[] {id, startID, endID});
+        }
+
+        private ShapeRecord readShape(boolean building) throws XMLStreamException, MapException {
+            ShapeRecord shape = new ShapeRecord(parseID(attribute(Common.GML_ID_QNAME), "shape"));
+            String source = "shape " + shape.id;
+            if (!nextChild(Common.GML_FACE_QNAME)) {
+                throw new MapException("Shape does not contain a gml:Face: " + source);
+            }
+            if (building) {
+                shape.floors = parseInt(attribute(RCR_FLOORS_QNAME), RCR_FLOORS_QNAME, 1, source);
+                shape.code = parseInt(attribute(RCR_BUILDING_CODE_QNAME), RCR_BUILDING_CODE_QNAME, 0, source);
+                shape.importance = parseInt(attribute(RCR_IMPORTANCE_QNAME), RCR_IMPORTANCE_QNAME, 1, source);
+            }
+            while (nextChild(Common.GML_DIRECTED_EDGE_QNAME)) {
+                shape.edgeIDs.add(parseHref(attribute(Common.XLINK_HREF_QNAME), "underlying edge"));
+                shape.forward.add(parseOrientation(attribute(Common.GML_ORIENTATION_QNAME), source));
+                shape.neighbours.add(parseNeighbour(attribute(RCR_NEIGHBOUR_QNAME), source));
+                skipElement();
+            }
+            if (shape.edgeIDs.isEmpty()) {
+                throw new MapException("Shape contains no edges: " + source);
+            }
+            // Skip the rest of the shape
+            skipElement();
+            return shape;
+        }
+
+        private void createEdges() {
+            for (int[] next : edges) {
+                result.addEdge(new GMLEdge(next[0], result.getNode(next[1]), result.getNode(next[2]), false));
+            }
+        }
+
+        /**
+           Move to the next child of the current element with a particular name, skipping any other children.
+           @param name The name of the child to find, or null for any child.
+           @return True if the reader is at the start of a matching child, false if it is at the end of the current element.
+        */
+        private boolean nextChild(QName name) throws XMLStreamException {
+            while (true) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    return false;
+                }
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (name == null || isElement(name)) {
+                        return true;
+                    }
+                    skipElement();
+                }
+            }
+        }
+
+        /**
+           Move to the end of the current element.
+        */
+        private void skipElement() throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    ++depth;
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT) {
+                    --depth;
+                }
+            }
+        }
+
+        private boolean isElement(QName name) {
+            return name.getName().equals(xml.getLocalName()) && name.getNamespaceURI().equals(xml.getNamespaceURI() == null ? "" : xml.getNamespaceURI());
+        }
+
+        private String attribute(QName name) {
+            String uri = name.getNamespaceURI();
+            return xml.getAttributeValue(uri.length() == 0 ? null : uri, name.getName());
+        }
+    }
+
+    private static class ShapeRecord {
+        final int id;
+        final List<Integer> edgeIDs;
+        final List<Boolean> forward;
+        final List<Integer> neighbours;
+        int floors;
+        int code;
+        int importance;
+
+        ShapeRecord(int id) {
+            this.id = id;
+            edgeIDs = new ArrayList<Integer>();
+            forward = new ArrayList<Boolean>();
+            neighbours = new ArrayList<Integer>();
+        }
+
+        List<GMLDirectedEdge> createEdges(GMLMap map) {
+            List<GMLDirectedEdge> result = new ArrayList<GMLDirectedEdge>(edgeIDs.size());
+            for (int i = 0; i < edgeIDs.size(); ++i) {
+                GMLEdge edge = map.getEdge(edgeIDs.get(i));
+                if (neighbours.get(i) != null) {
+                    edge.setPassable(true);
+                }
+                result.add(new GMLDirectedEdge(edge, forward.get(i)));
+            }
+            return result;
         }
     }
 }
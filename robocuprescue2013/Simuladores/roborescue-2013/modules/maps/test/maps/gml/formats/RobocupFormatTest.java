@@ -0,0 +1,99 @@
+package maps.gml.formats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.dom4j.Document;
+import org.dom4j.io.SAXReader;
+
+import maps.MapException;
+import maps.gml.GMLBuilding;
+import maps.gml.GMLDirectedEdge;
+import maps.gml.GMLEdge;
+import maps.gml.GMLMap;
+import maps.gml.GMLNode;
+import maps.gml.GMLShape;
+
+public class RobocupFormatTest {
+    private static final String TEST_MAP = "../../../maps/gml/test/map.gml";
+
+    @Test
+    public void testStreamMatchesDocument() throws Exception {
+        File file = new File(System.getProperty("tests.basedir", "modules/maps/test"), TEST_MAP);
+        GMLMap streamed;
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            streamed = RobocupFormat.INSTANCE.read(reader);
+        }
+        finally {
+            reader.close();
+        }
+        Document doc = new SAXReader().read(file);
+        GMLMap parsed = RobocupFormat.INSTANCE.read(doc);
+        assertTrue(parsed.getBuildings().size() > 0);
+        assertTrue(parsed.getRoads().size() > 0);
+        assertEquals(describe(parsed), describe(streamed));
+    }
+
+    @Test
+    public void testStreamMatchesDocumentWrittenByFormat() throws Exception {
+        File file = new File(System.getProperty("tests.basedir", "modules/maps/test"), TEST_MAP);
+        GMLMap original = RobocupFormat.INSTANCE.read(new SAXReader().read(file));
+        String xml = RobocupFormat.INSTANCE.write(original).asXML();
+        GMLMap streamed = RobocupFormat.INSTANCE.read(new StringReader(xml));
+        assertEquals(describe(original), describe(streamed));
+    }
+
+    @Test(expected = MapException.class)
+    public void testStreamRejectsShapeWithoutFace() throws Exception {
+        String xml = "<rcr:map xmlns:rcr=\"urn:roborescue:map:gml\" xmlns:gml=\"http://www.opengis.net/gml\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">"
+            + "<rcr:buildinglist><rcr:building gml:id=\"1\"><gml:directedEdge orientation=\"+\" xlink:href=\"#2\"/></rcr:building></rcr:buildinglist>"
+            + "</rcr:map>";
+        RobocupFormat.INSTANCE.read(new StringReader(xml));
+    }
+
+    private List<String> describe(GMLMap map) {
+        List<String> result = new ArrayList<String>();
+        for (GMLNode next : map.getNodes()) {
+            result.add("node " + next.getID() + " " + next.getX() + "," + next.getY());
+        }
+        for (GMLEdge next : map.getEdges()) {
+            result.add("edge " + next.getID() + " " + next.getStart().getID() + "-" + next.getEnd().getID() + " " + next.isPassable() + " " + next.getPoints());
+        }
+        for (GMLShape next : map.getBuildings()) {
+            GMLBuilding b = (GMLBuilding)next;
+            result.add("building " + describe(b) + " floors " + b.getFloors() + " code " + b.getCode() + " importance " + b.getImportance());
+        }
+        for (GMLShape next : map.getRoads()) {
+            result.add("road " + describe(next));
+        }
+        for (GMLShape next : map.getSpaces()) {
+            result.add("space " + describe(next));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private String describe(GMLShape shape) {
+        StringBuilder result = new StringBuilder();
+        result.append(shape.getID());
+        for (GMLDirectedEdge edge : shape.getEdges()) {
+            result.append(" ");
+            result.append(edge.getEdge().getID());
+            result.append(edge.isForward() ? "+" : "-");
+            result.append(shape.getNeighbour(edge));
+        }
+        return result.toString();
+    }
+}
@@ -36,6 +36,39 @@ public final class Constants {
     /** Default gis port number. */
     public static final int DEFAULT_GIS_PORT_NUMBER = 7001;
 
+    /** Config key for using non-blocking NIO connections instead of one reader and writer thread per connection. */
+    public static final String NIO_KEY = "connection.nio";
+    /** Config key for the number of NIO selector threads. */
+    public static final String NIO_IO_THREADS_KEY = "connection.nio.io-threads";
+    /** Config key for the number of threads that deliver messages received on NIO connections. */
+    public static final String NIO_DISPATCH_THREADS_KEY = "connection.nio.dispatch-threads";
+    /** Config key for negotiating a compact URN dictionary when a component connects to the kernel. */
+    public static final String URN_DICTIONARY_KEY = "connection.urn-dictionary";
+    /** Connect message version sent by components that only understand URN strings. */
+    public static final int CONNECT_VERSION = 1;
+    /** Connect message version sent by components that can switch to a compact URN dictionary. */
+    public static final int CONNECT_VERSION_URN_DICTIONARY = 2;
+    /** Config key for delta-coding ChangeSets on connections that have switched to a URN dictionary. */
+    public static final String CHANGESET_DELTA_KEY = "connection.changeset-delta";
+    /** Config key for the number of delta-coded ChangeSets between keyframes. */
+    public static final String CHANGESET_KEYFRAME_INTERVAL_KEY = "connection.changeset-delta.keyframe-interval";
+    /** Default number of delta-coded ChangeSets between keyframes. */
+    public static final int DEFAULT_CHANGESET_KEYFRAME_INTERVAL = 100;
+    /** Config key for keeping world model entities in a table keyed by numeric ID instead of a HashMap keyed by EntityID. */
+    public static final String INT_KEYED_WORLD_MODEL_KEY = "worldmodel.int-keyed";
+    /** Config key for the maximum number of bytes a stream connection writes between flushes. */
+    public static final String WRITE_MAX_BATCH_SIZE_KEY = "connection.write.max-batch";
+    /** Default maximum number of bytes a stream connection writes between flushes. */
+    public static final int DEFAULT_WRITE_MAX_BATCH_SIZE = 64 * 1024;
+    /** Config key for the maximum time in milliseconds a stream connection waits for more messages before flushing. */
+    public static final String WRITE_MAX_DELAY_KEY = "connection.write.max-delay";
+    /** Default maximum time in milliseconds a stream connection waits for more messages before flushing. */
+    public static final int DEFAULT_WRITE_MAX_DELAY = 0;
+    /** Config key for the number of entity IDs a simulator reserves ahead of time. 0 requests IDs from the kernel only when they are needed. */
+    public static final String ENTITY_ID_BATCH_KEY = "simulator.entity-ids.batch";
+    /** Default number of entity IDs a simulator reserves ahead of time. */
+    public static final int DEFAULT_ENTITY_ID_BATCH = 100;
+
     /** The random seed key. */
     public static final String RANDOM_SEED_KEY = "random.seed";
     /** The random implementation class key. */
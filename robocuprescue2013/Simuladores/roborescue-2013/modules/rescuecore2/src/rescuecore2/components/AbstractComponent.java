@@ -1,5 +1,6 @@
 package rescuecore2.components;
 
+import rescuecore2.Constants;
 import rescuecore2.config.Config;
 import rescuecore2.connection.Connection;
 import rescuecore2.connection.ConnectionException;
@@ -7,6 +8,7 @@ import rescuecore2.connection.ConnectionListener;
 import rescuecore2.messages.Message;
 import rescuecore2.messages.control.Shutdown;
 import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.worldmodel.DefaultWorldModel;
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.log.Logger;
 import rescuecore2.misc.WorkerThread;
@@ -63,9 +65,10 @@ public abstract class AbstractComponent<T extends WorldModel<? extends Entity>>
     */
     protected final void postConnect(Connection c, Collection<Entity> entities, Config kernelConfig) {
         connection = c;
+        config.merge(kernelConfig);
+        DefaultWorldModel.setIntKeyedByDefault(config.getBooleanValue(Constants.INT_KEYED_WORLD_MODEL_KEY, false));
         model = createWorldModel();
         model.addEntities(entities);
-        config.merge(kernelConfig);
         random = config.getRandom();
         String ndc = getPreferredNDC();
         if (ndc != null) {
@@ -97,6 +100,17 @@ public abstract class AbstractComponent<T extends WorldModel<? extends Entity>>
     */
     protected abstract T createWorldModel();
 
+    /**
+       Get the version number to send in the connect message. Components advertise support for the compact URN dictionary unless it has been disabled in the config.
+       @return The connect message version.
+    */
+    protected int getConnectVersion() {
+        if (config.getBooleanValue(Constants.URN_DICTIONARY_KEY, true)) {
+            return Constants.CONNECT_VERSION_URN_DICTIONARY;
+        }
+        return Constants.CONNECT_VERSION;
+    }
+
     /**
        Send a message to the kernel and silently ignore any errors.
        @param msg The message to send.
@@ -19,8 +19,11 @@ import rescuecore2.worldmodel.ChangeSet;
 import rescuecore2.worldmodel.WorldModel;
 import rescuecore2.config.Config;
 import rescuecore2.log.Logger;
+import rescuecore2.Constants;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
@@ -38,8 +41,13 @@ public abstract class AbstractSimulator<T extends WorldModel<? extends Entity>>
 
     private int lastUpdateTime;
 
+    private static final int NO_REQUEST = -1;
+
     private Map<Integer, List<EntityID>> idRequests;
     private int nextIDRequest;
+    private int idBatchSize;
+    private LinkedList<EntityID> idPool;
+    private int refillRequest;
 
     /**
        Create a new AbstractSimulator.
@@ -61,14 +69,17 @@ public abstract class AbstractSimulator<T extends WorldModel<? extends Entity>>
         lastUpdateTime = 0;
         nextIDRequest = 0;
         idRequests = new HashMap<Integer, List<EntityID>>();
+        idPool = new LinkedList<EntityID>();
+        refillRequest = NO_REQUEST;
         super.postConnect(c, entities, kernelConfig);
+        idBatchSize = config.getIntValue(Constants.ENTITY_ID_BATCH_KEY, Constants.DEFAULT_ENTITY_ID_BATCH);
     }
 
     @Override
     public void connect(Connection connection, RequestIDGenerator generator, Config config) throws ConnectionException, ComponentConnectionException, InterruptedException {
         this.config = config;
         int requestID = generator.generateRequestID();
-        SKConnect connect = new SKConnect(requestID, 1, getName());
+        SKConnect connect = new SKConnect(requestID, getConnectVersion(), getName());
         CountDownLatch latch = new CountDownLatch(1);
         SimulatorConnectionListener l = new SimulatorConnectionListener(requestID, latch);
         connection.addConnectionListener(l);
@@ -76,6 +87,10 @@ public abstract class AbstractSimulator<T extends WorldModel<? extends Entity>>
         // Wait for a reply
         latch.await();
         l.testSuccess();
+        // Reserve some entity IDs now the kernel knows about this simulator
+        synchronized (idRequests) {
+            refillIDs();
+        }
     }
 
     @Override
@@ -116,12 +131,27 @@ public abstract class AbstractSimulator<T extends WorldModel<? extends Entity>>
     }
 
     /**
-       Request some new entity IDs from the kernel.
+       Request some new entity IDs from the kernel. IDs are taken from the IDs reserved ahead of time if there are enough; otherwise this blocks until the kernel replies.
        @param count The number to request.
        @return A list of new entity IDs.
     */
     protected List<EntityID> requestNewEntityIDs(int count) throws InterruptedException {
         synchronized (idRequests) {
+            if (idBatchSize > 0) {
+                // Wait for a refill that is already on its way rather than making a second request
+                while (idPool.size() < count && refillRequest != NO_REQUEST) {
+                    Logger.debug("Waiting for reserved IDs");
+                    idRequests.wait();
+                }
+                if (idPool.size() >= count) {
+                    List<EntityID> result = new ArrayList<EntityID>(count);
+                    for (int i = 0; i < count; ++i) {
+                        result.add(idPool.removeFirst());
+                    }
+                    refillIDs();
+                    return result;
+                }
+            }
             int id = nextIDRequest++;
             Logger.debug("Requesting " + count + " new IDs: request number " + id);
             send(new EntityIDRequest(simulatorID, id, count));
@@ -137,6 +167,18 @@ public abstract class AbstractSimulator<T extends WorldModel<? extends Entity>>
         }
     }
 
+    /**
+       Ask the kernel for another batch of IDs if fewer than half a batch are left. The reply is handled when it arrives. Callers must hold the idRequests lock.
+    */
+    private void refillIDs() {
+        if (idBatchSize <= 0 || refillRequest != NO_REQUEST || idPool.size() >= idBatchSize / 2) {
+            return;
+        }
+        refillRequest = nextIDRequest++;
+        Logger.debug("Reserving " + idBatchSize + " new IDs: request number " + refillRequest);
+        send(new EntityIDRequest(simulatorID, refillRequest, idBatchSize));
+    }
+
     @Override
     protected void processMessage(Message msg) {
         if (msg instanceof KSUpdate) {
@@ -164,7 +206,13 @@ public abstract class AbstractSimulator<T extends WorldModel<? extends Entity>>
             if (resp.getSimulatorID() == simulatorID) {
                 synchronized (idRequests) {
                     Logger.debug("ID response: " + resp.getRequestID() + ", " + resp.getEntityIDs());
-                    idRequests.put(resp.getRequestID(), resp.getEntityIDs());
+                    if (resp.getRequestID() == refillRequest) {
+                        idPool.addAll(resp.getEntityIDs());
+                        refillRequest = NO_REQUEST;
+                    }
+                    else {
+                        idRequests.put(resp.getRequestID(), resp.getEntityIDs());
+                    }
                     idRequests.notifyAll();
                 }
             }
@@ -55,7 +55,7 @@ public abstract class AbstractViewer<T extends WorldModel<? extends Entity>> ext
     public void connect(Connection connection, RequestIDGenerator generator, Config config) throws ConnectionException, ComponentConnectionException, InterruptedException {
         this.config = config;
         int requestID = generator.generateRequestID();
-        VKConnect connect = new VKConnect(requestID, 1, getName());
+        VKConnect connect = new VKConnect(requestID, getConnectVersion(), getName());
         CountDownLatch latch = new CountDownLatch(1);
         ViewerConnectionListener l = new ViewerConnectionListener(requestID, latch);
         connection.addConnectionListener(l);
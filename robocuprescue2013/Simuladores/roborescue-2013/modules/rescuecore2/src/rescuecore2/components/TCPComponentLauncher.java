@@ -1,8 +1,11 @@
 package rescuecore2.components;
 
+import rescuecore2.Constants;
 import rescuecore2.config.Config;
 import rescuecore2.connection.Connection;
 import rescuecore2.connection.TCPConnection;
+import rescuecore2.connection.NIOConnection;
+import rescuecore2.connection.NIOReactor;
 import rescuecore2.connection.ConnectionException;
 
 import java.io.IOException;
@@ -13,6 +16,7 @@ import java.io.IOException;
 public class TCPComponentLauncher extends ComponentLauncher {
     private String host;
     private int port;
+    private Config config;
 
     /**
        Construct a new TCPComponentLauncher.
@@ -24,12 +28,19 @@ public class TCPComponentLauncher extends ComponentLauncher {
         super(config);
         this.host = host;
         this.port = port;
+        this.config = config;
     }
 
     @Override
     protected Connection makeConnection() throws ConnectionException {
         try {
-            return new TCPConnection(host, port);
+            if (config.getBooleanValue(Constants.NIO_KEY, false)) {
+                return new NIOConnection(host, port, NIOReactor.getInstance(config));
+            }
+            TCPConnection result = new TCPConnection(host, port);
+            result.setMaxBatchSize(config.getIntValue(Constants.WRITE_MAX_BATCH_SIZE_KEY, Constants.DEFAULT_WRITE_MAX_BATCH_SIZE));
+            result.setMaxBatchDelay(config.getIntValue(Constants.WRITE_MAX_DELAY_KEY, Constants.DEFAULT_WRITE_MAX_DELAY));
+            return result;
         }
         catch (IOException e) {
             throw new ConnectionException(e);
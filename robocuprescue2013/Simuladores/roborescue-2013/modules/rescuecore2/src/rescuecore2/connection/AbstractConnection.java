@@ -5,8 +5,12 @@ import static rescuecore2.misc.EncodingTools.readMessage;
 import static rescuecore2.misc.EncodingTools.writeMessage;
 
 import rescuecore2.messages.Message;
+import rescuecore2.messages.URNDictionaryMessage;
 import rescuecore2.misc.WorkerThread;
+import rescuecore2.misc.ByteBufferInputStream;
 import rescuecore2.registry.Registry;
+import rescuecore2.registry.URNDictionary;
+import rescuecore2.worldmodel.ChangeSetDelta;
 import rescuecore2.log.Logger;
 
 import java.util.List;
@@ -14,9 +18,9 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.Executor;
 
 import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 
@@ -29,7 +33,13 @@ public abstract class AbstractConnection implements Connection {
     private List<ConnectionListener> listeners;
     private List<Message> toSend;
     private MessageBroadcastThread broadcast;
+    private Executor dispatcher;
+    private boolean dispatchScheduled;
+    private String logContext;
     private Registry registry;
+    private volatile URNDictionary urnDictionary;
+    private volatile ChangeSetDelta sendDelta;
+    private volatile ChangeSetDelta receiveDelta;
 
     private boolean logBytes;
     private String name;
@@ -37,11 +47,22 @@ public abstract class AbstractConnection implements Connection {
     private volatile State state;
 
     private final Object stateLock = new Object();
+    private final Object sendLock = new Object();
 
     /**
-       Construct an abstract connection.
+       Construct an abstract connection that delivers received messages to listeners on its own thread.
     */
     protected AbstractConnection() {
+        this(null);
+    }
+
+    /**
+       Construct an abstract connection.
+       @param dispatcher The executor that delivers received messages to listeners, or null to start a dedicated thread for this connection. Messages are delivered one at a time in the order they were received either way.
+    */
+    protected AbstractConnection(Executor dispatcher) {
+        this.dispatcher = dispatcher;
+        dispatchScheduled = false;
         listeners = new ArrayList<ConnectionListener>();
         toSend = new LinkedList<Message>();
         logBytes = false;
@@ -62,8 +83,11 @@ public abstract class AbstractConnection implements Connection {
                 Registry old = Registry.getCurrentRegistry();
                 Registry.setCurrentRegistry(registry);
                 try {
-                    broadcast = new MessageBroadcastThread();
-                    broadcast.start();
+                    logContext = Logger.getLogContext();
+                    if (dispatcher == null) {
+                        broadcast = new MessageBroadcastThread();
+                        broadcast.start();
+                    }
                     startupImpl();
                     state = State.STARTED;
                 }
@@ -78,11 +102,13 @@ public abstract class AbstractConnection implements Connection {
     public final void shutdown() {
         synchronized (stateLock) {
             if (state == State.STARTED) {
-                try {
-                    broadcast.kill();
-                }
-                catch (InterruptedException e) {
-                    Logger.error("AbstractConnection interrupted while shutting down broadcast thread", e);
+                if (broadcast != null) {
+                    try {
+                        broadcast.kill();
+                    }
+                    catch (InterruptedException e) {
+                        Logger.error("AbstractConnection interrupted while shutting down broadcast thread", e);
+                    }
                 }
                 shutdownImpl();
                 state = State.SHUTDOWN;
@@ -137,21 +163,33 @@ public abstract class AbstractConnection implements Connection {
                 throw new ConnectionException("Connection is dead");
             }
         }
-        try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            for (Message next : messages) {
-                writeMessage(next, out);
+        URNDictionary oldDictionary = URNDictionary.getCurrent();
+        ChangeSetDelta oldDelta = ChangeSetDelta.getCurrent();
+        // Delta-coded ChangeSets must reach the wire in the order they were encoded
+        synchronized (sendLock) {
+            URNDictionary.setCurrent(urnDictionary);
+            ChangeSetDelta.setCurrent(sendDelta);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                for (Message next : messages) {
+                    writeMessage(next, out);
+                    switchDictionary(next, true);
+                }
+                // Add a zero to indicate no more messages
+                writeInt32(0, out);
+                // Send the bytes
+                if (logBytes) {
+                    ByteLogger.log(out.toByteArray());
+                }
+                sendBytes(out.toByteArray());
             }
-            // Add a zero to indicate no more messages
-            writeInt32(0, out);
-            // Send the bytes
-            if (logBytes) {
-                ByteLogger.log(out.toByteArray());
+            catch (IOException e) {
+                throw new ConnectionException(e);
+            }
+            finally {
+                URNDictionary.setCurrent(oldDictionary);
+                ChangeSetDelta.setCurrent(oldDelta);
             }
-            sendBytes(out.toByteArray());
-        }
-        catch (IOException e) {
-            throw new ConnectionException(e);
         }
     }
 
@@ -205,12 +243,17 @@ public abstract class AbstractConnection implements Connection {
        @param b The received bytes.
     */
     protected void bytesReceived(byte[] b) {
-        InputStream decode = new ByteArrayInputStream(b);
+        InputStream decode = new ByteBufferInputStream(b);
         Message m = null;
+        URNDictionary oldDictionary = URNDictionary.getCurrent();
+        ChangeSetDelta oldDelta = ChangeSetDelta.getCurrent();
+        URNDictionary.setCurrent(urnDictionary);
+        ChangeSetDelta.setCurrent(receiveDelta);
         try {
             do {
                 m = readMessage(decode);
                 if (m != null) {
+                    switchDictionary(m, false);
                     fireMessageReceived(m);
                 }
             } while (m != null);
@@ -231,6 +274,26 @@ public abstract class AbstractConnection implements Connection {
             throw e;
         }
         // CHECKSTYLE:ON:IllegalCatch
+        finally {
+            URNDictionary.setCurrent(oldDictionary);
+            ChangeSetDelta.setCurrent(oldDelta);
+        }
+    }
+
+    /**
+       Get the URN dictionary this connection uses to encode and decode URNs.
+       @return The URN dictionary, or null if URNs are sent as strings.
+    */
+    public URNDictionary getURNDictionary() {
+        return urnDictionary;
+    }
+
+    /**
+       Find out whether ChangeSets sent on this connection are delta-coded.
+       @return True if ChangeSets are delta-coded.
+    */
+    public boolean isChangeSetDeltaEnabled() {
+        return sendDelta != null;
     }
 
     /**
@@ -241,6 +304,47 @@ public abstract class AbstractConnection implements Connection {
         synchronized (toSend) {
             toSend.add(m);
             toSend.notifyAll();
+            if (dispatcher == null || dispatchScheduled) {
+                return;
+            }
+            dispatchScheduled = true;
+        }
+        dispatcher.execute(new DispatchTask());
+    }
+
+    /**
+       Switch to a new URN dictionary, and possibly to delta-coded ChangeSets, if a message carries one. This is called for each message after it has been encoded or decoded, so both ends of the connection switch at the same point in the message stream.
+       @param m The message.
+       @param sending Whether the message is being sent or has been received.
+    */
+    private void switchDictionary(Message m, boolean sending) {
+        if (m instanceof URNDictionaryMessage) {
+            URNDictionaryMessage message = (URNDictionaryMessage)m;
+            URNDictionary d = message.getURNDictionary();
+            if (d != null) {
+                Logger.debug(this + " switching to " + d);
+                urnDictionary = d;
+                URNDictionary.setCurrent(d);
+                int keyframeInterval = message.getChangeSetKeyframeInterval();
+                // Only switch once: resetting the state later could race with ChangeSets the other end has already encoded
+                if (keyframeInterval > 0 && sendDelta == null) {
+                    Logger.debug(this + " switching to delta-coded ChangeSets with a keyframe every " + keyframeInterval);
+                    sendDelta = new ChangeSetDelta(keyframeInterval);
+                    receiveDelta = new ChangeSetDelta(keyframeInterval);
+                    ChangeSetDelta.setCurrent(sending ? sendDelta : receiveDelta);
+                }
+            }
+        }
+    }
+
+    private void deliver(Message m) {
+        ConnectionListener[] l;
+        synchronized (listeners) {
+            l = new ConnectionListener[listeners.size()];
+            listeners.toArray(l);
+        }
+        for (ConnectionListener next : l) {
+            next.messageReceived(AbstractConnection.this, m);
         }
     }
 
@@ -274,15 +378,49 @@ public abstract class AbstractConnection implements Connection {
             if (m == null) {
                 return true;
             }
-            ConnectionListener[] l;
-            synchronized (listeners) {
-                l = new ConnectionListener[listeners.size()];
-                listeners.toArray(l);
+            deliver(m);
+            return true;
+        }
+    }
+
+    /**
+       Task that delivers queued messages to listeners on a shared executor. Only one task per connection is scheduled at a time so messages stay in order.
+    */
+    private class DispatchTask implements Runnable {
+        @Override
+        public void run() {
+            Registry old = Registry.getCurrentRegistry();
+            Registry.setCurrentRegistry(registry);
+            if (logContext != null) {
+                Logger.pushLogContext(logContext);
             }
-            for (ConnectionListener next : l) {
-                next.messageReceived(AbstractConnection.this, m);
+            try {
+                while (true) {
+                    Message m;
+                    synchronized (toSend) {
+                        if (toSend.isEmpty()) {
+                            dispatchScheduled = false;
+                            return;
+                        }
+                        m = toSend.remove(0);
+                    }
+                    // CHECKSTYLE:OFF:IllegalCatch
+                    try {
+                        deliver(m);
+                    }
+                    catch (RuntimeException e) {
+                        // Keep delivering: the executor is shared with other connections
+                        Logger.error("AbstractConnection error delivering message " + m, e);
+                    }
+                    // CHECKSTYLE:ON:IllegalCatch
+                }
+            }
+            finally {
+                if (logContext != null) {
+                    Logger.popLogContext();
+                }
+                Registry.setCurrentRegistry(old);
             }
-            return true;
         }
     }
 }
@@ -1,13 +1,19 @@
 package rescuecore2.connection;
 
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.io.InterruptedIOException;
 import java.io.IOException;
 
 import java.util.Set;
 import java.util.HashSet;
 
+import rescuecore2.Constants;
+import rescuecore2.config.Config;
 import rescuecore2.misc.WorkerThread;
 import rescuecore2.registry.Registry;
 import rescuecore2.log.Logger;
@@ -16,8 +22,9 @@ import rescuecore2.log.Logger;
    A class for managing incoming connections.
  */
 public class ConnectionManager {
-    private Set<Reader> readers;
+    private Set<WorkerThread> readers;
     private boolean shutdown;
+    private Config config;
 
     private final Object lock = new Object();
 
@@ -25,8 +32,17 @@ public class ConnectionManager {
        Construct a new ConnectionManager.
     */
     public ConnectionManager() {
-        readers = new HashSet<Reader>();
+        this(null);
+    }
+
+    /**
+       Construct a new ConnectionManager that chooses the connection implementation from the configuration. If the connection.nio key is true then incoming connections will be NIOConnections, otherwise TCPConnections.
+       @param config The system configuration. May be null, in which case TCPConnections are used.
+    */
+    public ConnectionManager(Config config) {
+        readers = new HashSet<WorkerThread>();
         shutdown = false;
+        this.config = config;
     }
 
     /**
@@ -42,6 +58,24 @@ public class ConnectionManager {
                 throw new IOException("Connection manager has been shut down");
             }
             Logger.info("Listening for connections on port " + port);
+            if (config != null && config.getBooleanValue(Constants.NIO_KEY, false)) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                channel.socket().setReuseAddress(true);
+                channel.socket().bind(new InetSocketAddress(port));
+                NIOReactor reactor = NIOReactor.getInstance(config);
+                if (!reactor.acquire()) {
+                    // The shared reactor shut down after its last connection closed: use a new one
+                    reactor = NIOReactor.getInstance(config);
+                    if (!reactor.acquire()) {
+                        channel.close();
+                        throw new IOException("NIO reactor has been shut down");
+                    }
+                }
+                NIOReader r = new NIOReader(channel, reactor, registry, listener);
+                readers.add(r);
+                r.start();
+                return;
+            }
             ServerSocket socket = new ServerSocket(port);
             socket.setSoTimeout(1000);
             socket.setReuseAddress(true);
@@ -61,7 +95,7 @@ public class ConnectionManager {
             }
             shutdown = true;
         }
-        for (Reader next : readers) {
+        for (WorkerThread next : readers) {
             try {
                 next.kill();
             }
@@ -97,6 +131,10 @@ public class ConnectionManager {
             try {
                 Socket s = socket.accept();
                 TCPConnection conn = new TCPConnection(s);
+                if (config != null) {
+                    conn.setMaxBatchSize(config.getIntValue(Constants.WRITE_MAX_BATCH_SIZE_KEY, Constants.DEFAULT_WRITE_MAX_BATCH_SIZE));
+                    conn.setMaxBatchDelay(config.getIntValue(Constants.WRITE_MAX_DELAY_KEY, Constants.DEFAULT_WRITE_MAX_DELAY));
+                }
                 if (ConnectionManager.this.isAlive()) {
                     conn.setRegistry(registry);
                     callback.newConnection(conn);
@@ -124,4 +162,50 @@ public class ConnectionManager {
             }
         }
     }
+
+    private class NIOReader extends WorkerThread {
+        private ServerSocketChannel channel;
+        private NIOReactor reactor;
+        private Registry registry;
+        private ConnectionManagerListener callback;
+
+        public NIOReader(ServerSocketChannel channel, NIOReactor reactor, Registry registry, ConnectionManagerListener callback) {
+            this.channel = channel;
+            this.reactor = reactor;
+            this.registry = registry;
+            this.callback = callback;
+        }
+
+        @Override
+        protected boolean work() {
+            try {
+                SocketChannel s = channel.accept();
+                NIOConnection conn = new NIOConnection(s, reactor);
+                if (ConnectionManager.this.isAlive()) {
+                    conn.setRegistry(registry);
+                    callback.newConnection(conn);
+                    conn.startup();
+                }
+            }
+            catch (ClosedByInterruptException e) {
+                // Killed while waiting for a connection
+                return false;
+            }
+            catch (IOException e) {
+                Logger.error("Error listening for connection", e);
+            }
+            return true;
+        }
+
+        @Override
+        protected void cleanup() {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                Logger.error("Error closing server socket channel", e);
+            }
+            reactor.release();
+        }
+    }
 }
@@ -0,0 +1,315 @@
+package rescuecore2.connection;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import rescuecore2.registry.Registry;
+import rescuecore2.log.Logger;
+
+/**
+   Connection implementation that uses a non-blocking SocketChannel. All I/O is done by the selector threads of an NIOReactor and received messages are delivered to listeners by the reactor's dispatch executor, so a connection does not need any threads of its own. The wire format is the same length-prefixed framing as StreamConnection.
+ */
+public class NIOConnection extends AbstractConnection {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FRAME_HEADER_SIZE = 4;
+    private static final long CLOSE_WAIT = 1000;
+
+    private SocketChannel channel;
+    private NIOReactor reactor;
+    private volatile NIOReactor.SelectorThread selectorThread;
+    private volatile SelectionKey key;
+
+    private ByteBuffer readBuffer;
+    private byte[] frame;
+    private int frameOffset;
+
+    private ByteBuffer writeBuffer;
+    private List<byte[]> toWrite;
+    private byte[] writing;
+    private int writingOffset;
+
+    private volatile boolean open;
+    private volatile boolean closing;
+    private boolean acquired;
+    private final CountDownLatch closed;
+
+    /**
+       Make a connection to a specific host on a given port.
+       @param address The address of the host, or null for the local host.
+       @param port The port to connect to.
+       @param reactor The reactor that will perform I/O for this connection.
+       @throws IOException If the host cannot be contacted.
+    */
+    public NIOConnection(String address, int port, NIOReactor reactor) throws IOException {
+        this(SocketChannel.open(new InetSocketAddress(InetAddress.getByName(address), port)), reactor);
+    }
+
+    /**
+       Create an NIOConnection from an existing connected channel.
+       @param channel The channel to attach to.
+       @param reactor The reactor that will perform I/O for this connection.
+    */
+    public NIOConnection(SocketChannel channel, NIOReactor reactor) {
+        super(reactor.getDispatcher());
+        this.channel = channel;
+        this.reactor = reactor;
+        readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        toWrite = new LinkedList<byte[]>();
+        open = true;
+        closing = false;
+        closed = new CountDownLatch(1);
+        setName("NIOConnection: local port " + channel.socket().getLocalPort() + ", endpoint = " + channel.socket().getInetAddress() + ":" + channel.socket().getPort());
+    }
+
+    @Override
+    protected void startupImpl() {
+        Logger.debug("Starting " + this + ". Registry: " + getRegistry());
+        synchronized (this) {
+            acquired = reactor.acquire();
+        }
+        if (!acquired) {
+            Logger.error("Can't start " + this + ": NIO reactor has been shut down");
+            close();
+            return;
+        }
+        try {
+            channel.configureBlocking(false);
+        }
+        catch (IOException e) {
+            Logger.error("Error configuring NIOConnection " + this, e);
+            close();
+            return;
+        }
+        reactor.register(this);
+    }
+
+    @Override
+    public boolean isAlive() {
+        return super.isAlive() && open;
+    }
+
+    @Override
+    protected void shutdownImpl() {
+        Logger.info("Shutting down " + this);
+        closing = true;
+        NIOReactor.SelectorThread t = selectorThread;
+        if (t == null) {
+            close();
+            return;
+        }
+        // Let the selector thread write anything that is still queued
+        t.interestChanged(this);
+        try {
+            if (!closed.await(CLOSE_WAIT, TimeUnit.MILLISECONDS)) {
+                Logger.warn(this + " did not flush before shutdown");
+                close();
+            }
+        }
+        catch (InterruptedException e) {
+            Logger.error("NIOConnection interrupted while shutting down", e);
+            close();
+        }
+    }
+
+    @Override
+    protected void sendBytes(byte[] b) throws IOException {
+        if (!open || closing) {
+            throw new IOException("Connection is closed");
+        }
+        synchronized (toWrite) {
+            toWrite.add(b);
+        }
+        NIOReactor.SelectorThread t = selectorThread;
+        if (t != null) {
+            t.interestChanged(this);
+        }
+    }
+
+    /**
+       Called by the selector thread when this connection has been assigned to it.
+    */
+    void registered(NIOReactor.SelectorThread thread, Selector selector) {
+        if (!open) {
+            closed.countDown();
+            return;
+        }
+        try {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            selectorThread = thread;
+            updateInterest();
+        }
+        catch (IOException e) {
+            Logger.error("Error registering NIOConnection " + this, e);
+            close();
+        }
+    }
+
+    /**
+       Called by the selector thread to update which operations this connection is interested in.
+    */
+    void updateInterest() {
+        SelectionKey k = key;
+        if (k == null || !k.isValid()) {
+            return;
+        }
+        boolean pendingWrites = hasPendingWrites();
+        if (closing && !pendingWrites) {
+            close();
+            return;
+        }
+        k.interestOps(pendingWrites ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+       Called by the selector thread when the channel has data to read.
+    */
+    void readReady() {
+        try {
+            while (true) {
+                int count = channel.read(readBuffer);
+                if (count < 0) {
+                    Logger.debug(this + " closed by remote end");
+                    close();
+                    return;
+                }
+                if (count == 0) {
+                    return;
+                }
+                readBuffer.flip();
+                readFrames();
+                readBuffer.compact();
+            }
+        }
+        catch (IOException e) {
+            Logger.error("Error reading from NIOConnection " + this, e);
+            close();
+        }
+    }
+
+    /**
+       Called by the selector thread when the channel can accept more data.
+    */
+    void writeReady() {
+        try {
+            while (true) {
+                fillWriteBuffer();
+                writeBuffer.flip();
+                if (!writeBuffer.hasRemaining()) {
+                    writeBuffer.clear();
+                    break;
+                }
+                channel.write(writeBuffer);
+                boolean drained = !writeBuffer.hasRemaining();
+                writeBuffer.compact();
+                if (!drained) {
+                    // Socket buffer is full: wait for the next write event
+                    return;
+                }
+            }
+            updateInterest();
+        }
+        catch (IOException e) {
+            Logger.error("Error writing to NIOConnection " + this, e);
+            close();
+        }
+    }
+
+    /**
+       Close the channel. Called by the selector thread, or by shutdown if the selector thread does not respond.
+    */
+    void close() {
+        synchronized (this) {
+            if (acquired) {
+                acquired = false;
+                reactor.release();
+            }
+        }
+        open = false;
+        SelectionKey k = key;
+        if (k != null) {
+            k.cancel();
+        }
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            Logger.error("Error closing NIOConnection " + this, e);
+        }
+        closed.countDown();
+    }
+
+    private void readFrames() {
+        while (true) {
+            if (frame == null) {
+                if (readBuffer.remaining() < FRAME_HEADER_SIZE) {
+                    return;
+                }
+                int size = readBuffer.getInt();
+                if (size <= 0) {
+                    continue;
+                }
+                frame = new byte[size];
+                frameOffset = 0;
+            }
+            int count = Math.min(readBuffer.remaining(), frame.length - frameOffset);
+            readBuffer.get(frame, frameOffset, count);
+            frameOffset += count;
+            if (frameOffset < frame.length) {
+                return;
+            }
+            byte[] complete = frame;
+            frame = null;
+            Registry old = Registry.getCurrentRegistry();
+            Registry.setCurrentRegistry(getRegistry());
+            try {
+                bytesReceived(complete);
+            }
+            finally {
+                Registry.setCurrentRegistry(old);
+            }
+        }
+    }
+
+    private void fillWriteBuffer() {
+        while (writeBuffer.hasRemaining()) {
+            if (writing == null) {
+                if (writeBuffer.remaining() < FRAME_HEADER_SIZE) {
+                    return;
+                }
+                synchronized (toWrite) {
+                    if (toWrite.isEmpty()) {
+                        return;
+                    }
+                    writing = toWrite.remove(0);
+                }
+                writeBuffer.putInt(writing.length);
+                writingOffset = 0;
+            }
+            int count = Math.min(writeBuffer.remaining(), writing.length - writingOffset);
+            writeBuffer.put(writing, writingOffset, count);
+            writingOffset += count;
+            if (writingOffset == writing.length) {
+                writing = null;
+            }
+        }
+    }
+
+    private boolean hasPendingWrites() {
+        if (writing != null || writeBuffer.position() > 0) {
+            return true;
+        }
+        synchronized (toWrite) {
+            return !toWrite.isEmpty();
+        }
+    }
+}
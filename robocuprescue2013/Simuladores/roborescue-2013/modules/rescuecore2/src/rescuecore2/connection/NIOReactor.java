@@ -0,0 +1,295 @@
+package rescuecore2.connection;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import rescuecore2.Constants;
+import rescuecore2.config.Config;
+import rescuecore2.misc.WorkerThread;
+import rescuecore2.log.Logger;
+
+/**
+   A small pool of selector threads that performs the I/O for any number of NIOConnections, and a shared executor that delivers received messages to connection listeners. A reactor created with the public constructor must be shut down by its owner; the shared reactor returned by {@link #getInstance} shuts itself down.
+ */
+public class NIOReactor {
+    private static final int DEFAULT_IO_THREADS = 2;
+    private static final int DEFAULT_DISPATCH_THREADS = 4;
+    private static final long SELECT_WAIT = 1000;
+
+    private static NIOReactor instance;
+
+    private SelectorThread[] selectors;
+    private int nextSelector;
+    private ExecutorService dispatcher;
+    private final boolean shared;
+    private boolean closing;
+    private boolean shutdown;
+    private int users;
+    private Thread keepAlive;
+
+    /**
+       Create and start an NIOReactor.
+       @param ioThreads The number of selector threads.
+       @param dispatchThreads The number of threads that deliver received messages to listeners.
+       @throws IOException If a selector cannot be opened.
+    */
+    public NIOReactor(int ioThreads, int dispatchThreads) throws IOException {
+        this(ioThreads, dispatchThreads, false);
+    }
+
+    private NIOReactor(int ioThreads, int dispatchThreads, boolean shared) throws IOException {
+        this.shared = shared;
+        selectors = new SelectorThread[Math.max(1, ioThreads)];
+        for (int i = 0; i < selectors.length; ++i) {
+            selectors[i] = new SelectorThread(i);
+        }
+        for (SelectorThread next : selectors) {
+            next.start();
+        }
+        nextSelector = 0;
+        dispatcher = Executors.newFixedThreadPool(Math.max(1, dispatchThreads), new ThreadFactory() {
+                private int count;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "NIO dispatch " + (count++));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    }
+
+    /**
+       Get the shared NIOReactor, creating it if necessary. The thread counts are read from the config the first time this is called. The shared reactor shuts itself down once the last connection or listener using it has closed, and a new one is created by the next call.
+       @param config The config to read thread counts from.
+       @return The shared NIOReactor.
+       @throws IOException If the reactor cannot be created.
+    */
+    public static synchronized NIOReactor getInstance(Config config) throws IOException {
+        if (instance == null || instance.isShutdown()) {
+            instance = new NIOReactor(config.getIntValue(Constants.NIO_IO_THREADS_KEY, DEFAULT_IO_THREADS),
+                                      config.getIntValue(Constants.NIO_DISPATCH_THREADS_KEY, DEFAULT_DISPATCH_THREADS),
+                                      true);
+        }
+        return instance;
+    }
+
+    /**
+       Get the executor that delivers received messages to listeners.
+       @return The dispatch executor.
+    */
+    public Executor getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+       Stop all selector and dispatch threads. Any connections that are still open are closed. Calling this more than once has no effect.
+    */
+    public void shutdown() {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            closing = true;
+            notifyAll();
+        }
+        synchronized (NIOReactor.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        for (SelectorThread next : selectors) {
+            try {
+                next.kill();
+            }
+            catch (InterruptedException e) {
+                Logger.error("NIOReactor interrupted while shutting down selector threads", e);
+            }
+        }
+        dispatcher.shutdown();
+    }
+
+    /**
+       Find out if this reactor has been shut down or is shutting down.
+       @return True if the reactor no longer accepts connections.
+    */
+    public synchronized boolean isShutdown() {
+        return closing;
+    }
+
+    /**
+       Notify the reactor that a connection or listener has started using it. All reactor threads are daemons, so while any user is active the reactor runs one non-daemon thread that keeps the JVM alive, just as the reader threads of a TCPConnection do. When the last user of the shared reactor is released that thread shuts the reactor down.
+       @return False if the reactor has already been shut down, in which case the caller must not use it.
+    */
+    synchronized boolean acquire() {
+        if (closing) {
+            return false;
+        }
+        if (users++ == 0 && keepAlive == null) {
+            keepAlive = new KeepAliveThread();
+            keepAlive.start();
+        }
+        return true;
+    }
+
+    /**
+       Notify the reactor that a connection or listener that called {@link #acquire} has stopped using it.
+    */
+    synchronized void release() {
+        if (--users == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+       Start handling I/O for a connection.
+       @param c The connection.
+    */
+    void register(NIOConnection c) {
+        SelectorThread t;
+        synchronized (this) {
+            t = selectors[nextSelector];
+            nextSelector = (nextSelector + 1) % selectors.length;
+        }
+        t.register(c);
+    }
+
+    /**
+       Non-daemon thread that runs while the reactor has users, and shuts the shared reactor down once they have all gone.
+    */
+    private class KeepAliveThread extends Thread {
+        KeepAliveThread() {
+            super("NIO keep-alive");
+        }
+
+        @Override
+        public void run() {
+            synchronized (NIOReactor.this) {
+                try {
+                    while (users > 0 && !closing) {
+                        NIOReactor.this.wait();
+                    }
+                }
+                // CHECKSTYLE:OFF:EmptyBlock OK here
+                catch (InterruptedException e) {
+                    // Fall through and stop keeping the JVM alive
+                }
+                // CHECKSTYLE:ON:EmptyBlock
+                keepAlive = null;
+                if (!shared || closing || users > 0) {
+                    return;
+                }
+                closing = true;
+            }
+            Logger.debug("Last NIO connection closed; shutting down reactor");
+            shutdown();
+        }
+    }
+
+    /**
+       Selector thread that performs the reads and writes for a set of connections.
+    */
+    static class SelectorThread extends WorkerThread {
+        private Selector selector;
+        private List<NIOConnection> pending;
+        private Set<NIOConnection> changed;
+
+        SelectorThread(int index) throws IOException {
+            super();
+            setName("NIO selector " + index);
+            setDaemon(true);
+            selector = Selector.open();
+            pending = new LinkedList<NIOConnection>();
+            changed = new LinkedHashSet<NIOConnection>();
+        }
+
+        /**
+           Add a connection to this selector.
+           @param c The connection.
+        */
+        void register(NIOConnection c) {
+            synchronized (pending) {
+                pending.add(c);
+            }
+            selector.wakeup();
+        }
+
+        /**
+           Notify this thread that a connection has data to write or wants to close.
+           @param c The connection.
+        */
+        void interestChanged(NIOConnection c) {
+            synchronized (changed) {
+                changed.add(c);
+            }
+            selector.wakeup();
+        }
+
+        @Override
+        protected boolean work() throws InterruptedException {
+            try {
+                selector.select(SELECT_WAIT);
+            }
+            catch (IOException e) {
+                Logger.error("NIO selector failed", e);
+                return false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            List<NIOConnection> newConnections;
+            synchronized (pending) {
+                newConnections = new LinkedList<NIOConnection>(pending);
+                pending.clear();
+            }
+            for (NIOConnection next : newConnections) {
+                next.registered(this, selector);
+            }
+            List<NIOConnection> dirty;
+            synchronized (changed) {
+                dirty = new LinkedList<NIOConnection>(changed);
+                changed.clear();
+            }
+            for (NIOConnection next : dirty) {
+                next.updateInterest();
+            }
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                NIOConnection c = (NIOConnection)key.attachment();
+                if (key.isValid() && key.isReadable()) {
+                    c.readReady();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    c.writeReady();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected void cleanup() {
+            for (SelectionKey next : selector.keys()) {
+                ((NIOConnection)next.attachment()).close();
+            }
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                Logger.error("Error closing NIO selector", e);
+            }
+        }
+    }
+}
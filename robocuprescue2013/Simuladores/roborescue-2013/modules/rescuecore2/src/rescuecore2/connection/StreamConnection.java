@@ -6,30 +6,42 @@ import static rescuecore2.misc.EncodingTools.readBytes;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.EOFException;
 import java.io.InterruptedIOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.List;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
 
+import rescuecore2.Constants;
 import rescuecore2.misc.WorkerThread;
 import rescuecore2.misc.Pair;
 import rescuecore2.registry.Registry;
 import rescuecore2.log.Logger;
 
 /**
-   Connection implementation that uses InputStreams and OutputStreams.
+   Connection implementation that uses InputStreams and OutputStreams. Queued messages are written in batches: each time the write thread wakes up it drains as many queued frames as fit in the batch and flushes the output stream once.
  */
 public class StreamConnection extends AbstractConnection {
     private static final int SEND_WAIT = 10000;
+    private static final int FRAME_HEADER_SIZE = 4;
 
     private InputStream in;
     private OutputStream out;
     private ReadThread readThread;
     private WriteThread writeThread;
     private List<byte[]> toWrite;
+    private int queuedBytes;
+
+    private int maxBatchSize;
+    private int maxBatchDelay;
+    private AtomicLong bytesWritten;
+    private AtomicLong framesWritten;
+    private AtomicLong flushes;
 
     /**
        Create a StreamConnection.
@@ -41,11 +53,58 @@ public class StreamConnection extends AbstractConnection {
         this.in = in;
         this.out = out;
         toWrite = new LinkedList<byte[]>();
+        queuedBytes = 0;
+        maxBatchSize = Constants.DEFAULT_WRITE_MAX_BATCH_SIZE;
+        maxBatchDelay = Constants.DEFAULT_WRITE_MAX_DELAY;
+        bytesWritten = new AtomicLong();
+        framesWritten = new AtomicLong();
+        flushes = new AtomicLong();
+    }
+
+    /**
+       Set the maximum number of bytes written between flushes. A single frame larger than this is still written in one piece. This has no effect after the connection has been started.
+       @param bytes The maximum batch size in bytes.
+    */
+    public void setMaxBatchSize(int bytes) {
+        maxBatchSize = Math.max(FRAME_HEADER_SIZE, bytes);
+    }
+
+    /**
+       Set how long the write thread may wait for more messages before flushing a batch that is not full. Zero flushes as soon as the queue has been drained.
+       @param millis The maximum delay in milliseconds.
+    */
+    public void setMaxBatchDelay(int millis) {
+        maxBatchDelay = Math.max(0, millis);
+    }
+
+    /**
+       Get the number of bytes written to the output stream, including frame headers.
+       @return The number of bytes written.
+    */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+       Get the number of frames written to the output stream.
+       @return The number of frames written.
+    */
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    /**
+       Get the number of times the output stream has been flushed.
+       @return The number of flushes.
+    */
+    public long getFlushCount() {
+        return flushes.get();
     }
 
     @Override
     protected void startupImpl() {
         Logger.debug("Starting " + this + ". Registry: " + Registry.getCurrentRegistry());
+        out = new BufferedOutputStream(out, maxBatchSize);
         readThread = new ReadThread();
         writeThread = new WriteThread();
         readThread.start();
@@ -60,6 +119,7 @@ public class StreamConnection extends AbstractConnection {
     @Override
     protected void shutdownImpl() {
         Logger.info("Shutting down " + this);
+        Logger.debug(this + " wrote " + getBytesWritten() + " bytes in " + getFramesWritten() + " frames with " + getFlushCount() + " flushes");
         try {
             readThread.kill();
         }
@@ -96,6 +156,7 @@ public class StreamConnection extends AbstractConnection {
     protected void sendBytes(byte[] b) throws IOException {
         synchronized (toWrite) {
             toWrite.add(b);
+            queuedBytes += b.length + FRAME_HEADER_SIZE;
             toWrite.notifyAll();
         }
     }
@@ -133,23 +194,45 @@ public class StreamConnection extends AbstractConnection {
     private class WriteThread extends WorkerThread {
         @Override
         protected boolean work() throws InterruptedException {
-            byte[] bytes = null;
+            List<byte[]> batch = new ArrayList<byte[]>();
             synchronized (toWrite) {
                 if (toWrite.isEmpty()) {
                     toWrite.wait(SEND_WAIT);
                     return true;
                 }
-                else {
-                    bytes = toWrite.remove(0);
+                if (maxBatchDelay > 0) {
+                    // Give other messages a chance to join this batch
+                    long end = System.currentTimeMillis() + maxBatchDelay;
+                    long wait = maxBatchDelay;
+                    while (wait > 0 && queuedBytes < maxBatchSize) {
+                        toWrite.wait(wait);
+                        wait = end - System.currentTimeMillis();
+                    }
+                }
+                int size = 0;
+                while (!toWrite.isEmpty()) {
+                    byte[] next = toWrite.get(0);
+                    int frameSize = next.length + FRAME_HEADER_SIZE;
+                    if (size > 0 && size + frameSize > maxBatchSize) {
+                        break;
+                    }
+                    toWrite.remove(0);
+                    batch.add(next);
+                    size += frameSize;
+                    queuedBytes -= frameSize;
                 }
-            }
-            if (bytes == null) {
-                return true;
             }
             try {
-                writeInt32(bytes.length, out);
-                out.write(bytes);
+                long size = 0;
+                for (byte[] next : batch) {
+                    writeInt32(next.length, out);
+                    out.write(next);
+                    size += next.length + FRAME_HEADER_SIZE;
+                }
                 out.flush();
+                bytesWritten.addAndGet(size);
+                framesWritten.addAndGet(batch.size());
+                flushes.incrementAndGet();
                 return true;
             }
             catch (IOException e) {
@@ -1,21 +1,97 @@
 package rescuecore2.log;
 
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
 import rescuecore2.registry.Registry;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.worldmodel.DefaultWorldModel;
+import rescuecore2.worldmodel.ChangeSet;
 
 /**
    Abstract base class for LogReader implementations.
 */
 public abstract class AbstractLogReader implements LogReader {
+    /** The default limit on the total number of entities in the world models kept by {@link #replayUpdates(int)}. */
+    public static final long DEFAULT_KEY_FRAME_ENTITIES = 500000;
+
     /**
        The registry to use for reading log entries.
     */
     protected Registry registry;
 
+    private final KeyFrameCache keyFrames;
+    private final NavigableSet<Integer> snapshots;
+
     /**
        Create a new AbstractLogReader.
        @param registry The registry to use for reading log entries.
     */
     protected AbstractLogReader(Registry registry) {
         this.registry = registry;
+        keyFrames = new KeyFrameCache(DEFAULT_KEY_FRAME_ENTITIES);
+        snapshots = new TreeSet<Integer>();
+    }
+
+    /**
+       Note that the log contains the complete world at a timestep, either as the initial conditions at time zero or as a {@link SnapshotRecord}. Subclasses that use {@link #replayUpdates(int)} must call this while indexing and override {@link #readSnapshot(int)}.
+       @param time The timestep of the snapshot.
+    */
+    protected void addSnapshot(int time) {
+        snapshots.add(time);
+    }
+
+    /**
+       Read a world snapshot from the log. The default implementation throws a LogException.
+       @param time The timestep of the snapshot. This will have been passed to {@link #addSnapshot(int)}.
+       @return The world model stored in the log.
+       @throws LogException If there is a problem reading the log.
+    */
+    protected WorldModel<? extends Entity> readSnapshot(int time) throws LogException {
+        throw new LogException("No snapshot at time " + time);
+    }
+
+    /**
+       Rebuild the world model at a particular time. This starts from whichever is later out of the nearest earlier world in the cache and the nearest earlier snapshot in the log, then merges the updates recorded since. The result is cached because the next timestep is likely to be viewed soon; the least recently used worlds are dropped when the cache is full.
+       @param time The timestep to rebuild.
+       @return The world model at the given timestep.
+       @throws LogException If there is a problem reading the log.
+    */
+    protected WorldModel<? extends Entity> replayUpdates(int time) throws LogException {
+        Logger.debug("Getting world model at time " + time);
+        Map.Entry<Integer, WorldModel<? extends Entity>> cached = keyFrames.floorEntry(time);
+        Integer snapshot = snapshots.floor(time);
+        int startTime;
+        WorldModel<? extends Entity> start;
+        if (snapshot != null && (cached == null || snapshot > cached.getKey())) {
+            Logger.trace("Reading snapshot " + snapshot);
+            startTime = snapshot;
+            start = readSnapshot(startTime);
+            keyFrames.put(startTime, start);
+        }
+        else if (cached != null) {
+            Logger.trace("Found key frame " + cached.getKey());
+            startTime = cached.getKey();
+            start = cached.getValue();
+        }
+        else {
+            throw new LogException("Log has no initial conditions or snapshot before time " + time);
+        }
+        WorldModel<? extends Entity> result = new DefaultWorldModel<Entity>(Entity.class);
+        Logger.trace("Cloning key frame");
+        for (Entity next : start) {
+            result.addEntity(next.copy());
+        }
+        // Go through updates and apply them all
+        for (int i = startTime + 1; i <= time; ++i) {
+            ChangeSet updates = getUpdates(i).getChangeSet();
+            Logger.trace("Merging " + updates.getChangedEntities().size() + " updates for timestep " + i);
+            result.merge(updates);
+        }
+        Logger.trace("Done");
+        keyFrames.put(time, result);
+        return result;
     }
 }
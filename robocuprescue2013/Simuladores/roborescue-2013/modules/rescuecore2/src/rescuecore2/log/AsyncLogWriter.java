@@ -0,0 +1,275 @@
+package rescuecore2.log;
+
+import rescuecore2.misc.WorkerThread;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+   A log writer that takes disk writes off the caller's thread. Records are serialised by the caller, so later changes to the objects they refer to cannot leak into the log, and the bytes are handed to a dedicated writer thread through a bounded queue. The writer thread drains everything that is queued, writes it and flushes once per batch. If the queue is full the caller blocks until there is room: records are never dropped.
+ */
+public class AsyncLogWriter extends AbstractLogWriter {
+    /** The default number of records that can be queued before callers block. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final byte[] STOP = new byte[0];
+    private static final long OFFER_WAIT = 100;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final OutputStream out;
+    private final BlockingQueue<byte[]> queue;
+    private final WriterThread writer;
+    private final Object flushLock = new Object();
+
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private long enqueued;
+    private long written;
+
+    private final AtomicLong maxQueueDepth;
+    private final AtomicLong stalls;
+    private final AtomicLong batches;
+    private final AtomicLong totalWriteNanos;
+    private final AtomicLong maxWriteNanos;
+
+    /**
+       Create an asynchronous log writer for a file.
+       @param file The file to write to.
+       @param capacity The maximum number of records that can be queued before callers block.
+       @throws IOException If the log file cannot be opened.
+    */
+    public AsyncLogWriter(File file, int capacity) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(file)), capacity);
+    }
+
+    /**
+       Create an asynchronous log writer.
+       @param stream The stream to write to. It will be closed when this writer is closed.
+       @param capacity The maximum number of records that can be queued before callers block.
+    */
+    public AsyncLogWriter(OutputStream stream, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        out = stream;
+        queue = new ArrayBlockingQueue<byte[]>(capacity);
+        maxQueueDepth = new AtomicLong();
+        stalls = new AtomicLong();
+        batches = new AtomicLong();
+        totalWriteNanos = new AtomicLong();
+        maxWriteNanos = new AtomicLong();
+        writer = new WriterThread();
+        writer.start();
+    }
+
+    @Override
+    protected void write(byte[] bytes) throws LogException {
+        checkFailure();
+        if (closed) {
+            throw new LogException("Log has been closed");
+        }
+        try {
+            enqueue(bytes);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LogException("Interrupted while waiting for space in the log queue");
+        }
+        synchronized (flushLock) {
+            ++enqueued;
+        }
+        updateMax(maxQueueDepth, queue.size());
+    }
+
+    /**
+       Wait until every record written so far has been written to the stream and flushed.
+       @throws LogException If the writer thread failed or the caller was interrupted.
+    */
+    public void flush() throws LogException {
+        synchronized (flushLock) {
+            long target = enqueued;
+            while (written < target && failure == null && writer.isAlive()) {
+                try {
+                    flushLock.wait(OFFER_WAIT);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new LogException("Interrupted while flushing the log");
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            enqueue(STOP);
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logger.warn("Interrupted while closing the log; queued records may be lost");
+        }
+        catch (LogException e) {
+            Logger.error("Log writer stopped before the log was closed", e);
+        }
+        try {
+            out.flush();
+        }
+        catch (IOException e) {
+            Logger.error("Error flushing log stream", e);
+        }
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            Logger.error("Error closing log stream", e);
+        }
+        Logger.debug("Log writer wrote " + getRecordsWritten() + " records in " + batches.get() + " batches; max queue depth " + maxQueueDepth.get() + ", " + stalls.get() + " stalls, mean write latency " + getMeanWriteLatency() + "ms, max " + getMaxWriteLatency() + "ms");
+    }
+
+    /**
+       Get the number of records waiting to be written.
+       @return The current queue depth.
+    */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+       Get the largest queue depth seen so far.
+       @return The maximum queue depth.
+    */
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+       Get the number of times a caller had to wait because the queue was full.
+       @return The number of stalls.
+    */
+    public long getStallCount() {
+        return stalls.get();
+    }
+
+    /**
+       Get the number of records written to the stream so far.
+       @return The number of records written.
+    */
+    public long getRecordsWritten() {
+        synchronized (flushLock) {
+            return written;
+        }
+    }
+
+    /**
+       Get the number of batches written and flushed so far.
+       @return The number of batches.
+    */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+       Get the mean time taken to write and flush a batch.
+       @return The mean write latency in milliseconds.
+    */
+    public double getMeanWriteLatency() {
+        long count = batches.get();
+        return count == 0 ? 0 : totalWriteNanos.get() / NANOS_PER_MILLI / count;
+    }
+
+    /**
+       Get the longest time taken to write and flush a batch.
+       @return The maximum write latency in milliseconds.
+    */
+    public double getMaxWriteLatency() {
+        return maxWriteNanos.get() / NANOS_PER_MILLI;
+    }
+
+    private void enqueue(byte[] bytes) throws InterruptedException, LogException {
+        if (queue.offer(bytes)) {
+            return;
+        }
+        stalls.incrementAndGet();
+        while (!queue.offer(bytes, OFFER_WAIT, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+            if (!writer.isAlive()) {
+                throw new LogException("Log writer thread has stopped");
+            }
+        }
+    }
+
+    private void checkFailure() throws LogException {
+        if (failure != null) {
+            throw new LogException(failure);
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private class WriterThread extends WorkerThread {
+        private final List<byte[]> batch;
+
+        WriterThread() {
+            super();
+            setName("Log writer");
+            setDaemon(true);
+            batch = new ArrayList<byte[]>();
+        }
+
+        @Override
+        protected boolean work() throws InterruptedException {
+            batch.add(queue.take());
+            queue.drainTo(batch);
+            boolean stop = false;
+            long start = System.nanoTime();
+            int count = 0;
+            try {
+                for (byte[] next : batch) {
+                    if (next == STOP) {
+                        stop = true;
+                        break;
+                    }
+                    out.write(next);
+                    ++count;
+                }
+                out.flush();
+            }
+            catch (IOException e) {
+                Logger.error("Error writing log", e);
+                failure = e;
+                stop = true;
+            }
+            long elapsed = System.nanoTime() - start;
+            batch.clear();
+            batches.incrementAndGet();
+            totalWriteNanos.addAndGet(elapsed);
+            updateMax(maxWriteNanos, elapsed);
+            synchronized (flushLock) {
+                written += count;
+                flushLock.notifyAll();
+            }
+            return !stop;
+        }
+    }
+}
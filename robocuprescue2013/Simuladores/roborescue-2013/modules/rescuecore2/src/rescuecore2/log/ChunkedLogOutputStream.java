@@ -0,0 +1,282 @@
+package rescuecore2.log;
+
+import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.INT_32_SIZE;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.DataInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+   An OutputStream that stores a log in the chunked format read by {@link ChunkedLogReader}. The bytes written to this stream must be a log in the usual format, for example as produced by a {@link StreamLogWriter} or an {@link AsyncLogWriter}. Records are collected into chunks of roughly equal size and each chunk is compressed on its own. When the stream is closed a compressed index giving the chunk and position of every record is written after the last chunk, followed by a fixed-size trailer that points at the index.
+   <p>
+   The file layout is a header (magic number, version), then the chunks (uncompressed size, compressed size, deflated records), then the index in the same framing as a chunk, then the trailer (index position, magic number). Decompressing every chunk in order gives back the original log byte for byte.
+   <p>
+   Calling {@link #flush()} does not end the current chunk, so if the kernel dies before the stream is closed the records in the last chunk are lost. The other chunks can still be read.
+ */
+public class ChunkedLogOutputStream extends OutputStream {
+    /** The magic number at the start and end of a chunked log. */
+    // CHECKSTYLE:OFF:MagicNumber
+    public static final int MAGIC = 0x52434C47;
+    // CHECKSTYLE:ON:MagicNumber
+
+    /** The format version written by this class. */
+    public static final int VERSION = 1;
+
+    /** The default uncompressed size of a chunk in bytes. */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    /** The size of the header in bytes. */
+    static final int HEADER_SIZE = 8;
+
+    /** The size of the trailer in bytes. */
+    static final int TRAILER_SIZE = 12;
+
+    /** The size of the framing before the data in each chunk. */
+    static final int CHUNK_HEADER_SIZE = 8;
+
+    /** The size of a record header: record type and size. */
+    static final int RECORD_HEADER_SIZE = 8;
+
+    /** The number of ints in each index entry. */
+    static final int INDEX_ENTRY_SIZE = 5;
+
+    /** The entity ID stored in the index for records that do not belong to an entity. */
+    static final int NO_ENTITY = -1;
+
+    private final DataOutputStream out;
+    private final int chunkSize;
+    private final Deflater deflater;
+    private final ByteArrayOutputStream chunk;
+    private final List<Long> chunkOffsets;
+    private final List<int[]> index;
+    private long position;
+    private int maxTime;
+    private byte[] pending;
+    private int pendingLength;
+    private boolean closed;
+
+    /**
+       Create a ChunkedLogOutputStream that writes to a file.
+       @param file The file to write to.
+       @param chunkSize The uncompressed size at which a chunk is closed.
+       @throws IOException If the file cannot be opened.
+    */
+    public ChunkedLogOutputStream(File file, int chunkSize) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(file)), chunkSize);
+    }
+
+    /**
+       Create a ChunkedLogOutputStream.
+       @param stream The stream to write to. It will be closed when this stream is closed.
+       @param chunkSize The uncompressed size at which a chunk is closed.
+       @throws IOException If the header cannot be written.
+    */
+    public ChunkedLogOutputStream(OutputStream stream, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.out = new DataOutputStream(stream);
+        this.chunkSize = chunkSize;
+        deflater = new Deflater();
+        chunk = new ByteArrayOutputStream();
+        chunkOffsets = new ArrayList<Long>();
+        index = new ArrayList<int[]>();
+        pending = new byte[RECORD_HEADER_SIZE];
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        position = HEADER_SIZE;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte)b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream has been closed");
+        }
+        int end = off + len;
+        int next = off;
+        if (pendingLength > 0) {
+            next = fillPending(b, next, end);
+        }
+        // Whole records that arrived in one piece are handled without copying them into the pending buffer
+        while (pendingLength == 0 && end - next >= RECORD_HEADER_SIZE) {
+            int recordLength = recordLength(b, next);
+            if (end - next < recordLength) {
+                break;
+            }
+            addRecord(b, next, recordLength);
+            next += recordLength;
+        }
+        if (next < end) {
+            fillPending(b, next, end);
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (pendingLength > 0) {
+            Logger.warn("Chunked log closed part way through a record: discarding " + pendingLength + " bytes");
+        }
+        writeChunk();
+        long indexPosition = position;
+        ByteArrayOutputStream gather = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(gather);
+        indexOut.writeInt(chunkOffsets.size());
+        for (long next : chunkOffsets) {
+            indexOut.writeLong(next);
+        }
+        indexOut.writeInt(maxTime);
+        indexOut.writeInt(index.size());
+        for (int[] next : index) {
+            for (int i : next) {
+                indexOut.writeInt(i);
+            }
+        }
+        indexOut.flush();
+        writeCompressed(gather.toByteArray(), gather.size());
+        out.writeLong(indexPosition);
+        out.writeInt(MAGIC);
+        deflater.end();
+        out.close();
+        Logger.debug("Chunked log closed: " + chunkOffsets.size() + " chunks, " + index.size() + " index entries");
+    }
+
+    /**
+       Find out if a file is a chunked log.
+       @param file The file to check.
+       @return True if the file starts with the chunked log magic number.
+       @throws IOException If the file cannot be read.
+    */
+    public static boolean isChunkedLog(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return file.length() >= HEADER_SIZE && in.readInt() == MAGIC;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+       Work out the index entry for a record.
+       @param b The buffer holding the record.
+       @param off The offset of the record header.
+       @return An array containing the record type ID, the timestep and the entity ID, or null if the record does not need an index entry.
+       @throws IOException If the record type is not recognised.
+    */
+    static int[] describeRecord(byte[] b, int off) throws IOException {
+        RecordType type;
+        try {
+            type = RecordType.fromID(readInt32(b, off));
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Unrecognised record type: " + readInt32(b, off));
+        }
+        int data = off + RECORD_HEADER_SIZE;
+        switch (type) {
+        case PERCEPTION:
+            return new int[] {type.getID(), readInt32(b, data + INT_32_SIZE), readInt32(b, data)};
+        case COMMANDS:
+        case UPDATES:
+        case SNAPSHOT:
+            return new int[] {type.getID(), readInt32(b, data), NO_ENTITY};
+        case INITIAL_CONDITIONS:
+        case CONFIG:
+            return new int[] {type.getID(), 0, NO_ENTITY};
+        default:
+            return null;
+        }
+    }
+
+    private int fillPending(byte[] b, int off, int end) throws IOException {
+        int next = off;
+        while (next < end) {
+            int wanted = pendingLength < RECORD_HEADER_SIZE ? RECORD_HEADER_SIZE : recordLength(pending, 0);
+            if (pending.length < wanted) {
+                pending = Arrays.copyOf(pending, wanted);
+            }
+            int count = Math.min(wanted - pendingLength, end - next);
+            System.arraycopy(b, next, pending, pendingLength, count);
+            pendingLength += count;
+            next += count;
+            if (pendingLength >= RECORD_HEADER_SIZE && pendingLength == recordLength(pending, 0)) {
+                addRecord(pending, 0, pendingLength);
+                pendingLength = 0;
+                if (pending.length > chunkSize) {
+                    pending = new byte[RECORD_HEADER_SIZE];
+                }
+                return next;
+            }
+        }
+        return next;
+    }
+
+    private int recordLength(byte[] b, int off) throws IOException {
+        int size = readInt32(b, off + INT_32_SIZE);
+        if (size < 0) {
+            throw new IOException("Invalid record size: " + size);
+        }
+        return RECORD_HEADER_SIZE + size;
+    }
+
+    private void addRecord(byte[] b, int off, int len) throws IOException {
+        int[] description = describeRecord(b, off);
+        if (description != null) {
+            index.add(new int[] {description[0], description[1], description[2], chunkOffsets.size(), chunk.size()});
+            maxTime = Math.max(maxTime, description[1]);
+        }
+        chunk.write(b, off, len);
+        if (chunk.size() >= chunkSize) {
+            writeChunk();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if (chunk.size() == 0) {
+            return;
+        }
+        chunkOffsets.add(position);
+        writeCompressed(chunk.toByteArray(), chunk.size());
+        chunk.reset();
+    }
+
+    private void writeCompressed(byte[] data, int length) throws IOException {
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 1);
+        byte[] buffer = new byte[Math.min(Math.max(length, 1), DEFAULT_CHUNK_SIZE)];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            compressed.write(buffer, 0, count);
+        }
+        out.writeInt(length);
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+        position += CHUNK_HEADER_SIZE + compressed.size();
+    }
+}
@@ -0,0 +1,439 @@
+package rescuecore2.log;
+
+import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.log.ChunkedLogOutputStream.MAGIC;
+import static rescuecore2.log.ChunkedLogOutputStream.VERSION;
+import static rescuecore2.log.ChunkedLogOutputStream.HEADER_SIZE;
+import static rescuecore2.log.ChunkedLogOutputStream.TRAILER_SIZE;
+import static rescuecore2.log.ChunkedLogOutputStream.CHUNK_HEADER_SIZE;
+import static rescuecore2.log.ChunkedLogOutputStream.RECORD_HEADER_SIZE;
+import static rescuecore2.log.ChunkedLogOutputStream.INDEX_ENTRY_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.EOFException;
+import java.io.OutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.zip.Inflater;
+import java.util.zip.DataFormatException;
+
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.config.Config;
+import rescuecore2.registry.Registry;
+
+/**
+   A log reader for logs written by {@link ChunkedLogOutputStream}. Opening the log reads the trailer and the index without decompressing any records, but the index has an entry for every record apart from the start and end markers, so opening still takes time in proportion to the number of records. Records are read by decompressing the chunk that contains them; a few recently used chunks are kept so that stepping through consecutive timesteps does not decompress the same chunk repeatedly.
+   <p>
+   If the log was not closed properly and has no index then the index is rebuilt by decompressing every complete chunk. A record with an impossible size is taken to be damage, and the rest of its chunk is not indexed.
+   <p>
+   This reader is not thread-safe: all reads share one file handle, one inflater and the chunk cache. Unlike a {@link MappedLogReader} it must not be used by several threads at once.
+ */
+public class ChunkedLogReader extends AbstractLogReader {
+    private static final int CHUNK_CACHE_SIZE = 4;
+    private static final int CHUNK_SHIFT = 32;
+    private static final long OFFSET_MASK = 0xFFFFFFFFL;
+
+    private RandomAccessFile file;
+    private Inflater inflater;
+    private long[] chunkOffsets;
+    private int maxTime;
+    private Map<Integer, Map<EntityID, Long>> perceptionIndices;
+    private Map<Integer, Long> updatesIndices;
+    private Map<Integer, Long> commandsIndices;
+    private Long configIndex;
+    private Map<Integer, Long> snapshotIndices;
+    private Config config;
+    private Map<Integer, byte[]> chunkCache;
+
+    /**
+       Construct a new ChunkedLogReader.
+       @param name The name of the file to read.
+       @param registry The registry to use for reading log entries.
+       @throws IOException If the file cannot be read.
+       @throws LogException If there is a problem reading the log.
+    */
+    public ChunkedLogReader(String name, Registry registry) throws IOException, LogException {
+        this(new File(name), registry);
+    }
+
+    /**
+       Construct a new ChunkedLogReader.
+       @param file The file object to read.
+       @param registry The registry to use for reading log entries.
+       @throws IOException If the file cannot be read.
+       @throws LogException If there is a problem reading the log.
+    */
+    public ChunkedLogReader(File file, Registry registry) throws IOException, LogException {
+        super(registry);
+        Logger.info("Reading chunked log: " + file.getAbsolutePath());
+        this.file = new RandomAccessFile(file, "r");
+        inflater = new Inflater();
+        snapshotIndices = new HashMap<Integer, Long>();
+        perceptionIndices = new HashMap<Integer, Map<EntityID, Long>>();
+        updatesIndices = new HashMap<Integer, Long>();
+        commandsIndices = new HashMap<Integer, Long>();
+        chunkCache = new LinkedHashMap<Integer, byte[]>(CHUNK_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > CHUNK_CACHE_SIZE;
+            }
+        };
+        Registry.setCurrentRegistry(registry);
+        readHeader();
+        if (!readIndex()) {
+            Logger.warn("Chunked log has no index; rebuilding it from the chunks");
+            rebuildIndex();
+        }
+    }
+
+    /**
+       Open a log file in whichever format it was written. Only a MappedLogReader is thread-safe, so callers that read from several threads must not share the result.
+       @param file The file to read.
+       @param registry The registry to use for reading log entries.
+       @return A ChunkedLogReader if the file is a chunked log, a MappedLogReader if it is a plain log that can be mapped, otherwise a FileLogReader.
+       @throws IOException If the file cannot be read.
+       @throws LogException If there is a problem reading the log.
+    */
+    public static LogReader open(File file, Registry registry) throws IOException, LogException {
+        return open(file, registry, MappedLogReader.MAX_SIZE);
+    }
+
+    /**
+       Open a log file in whichever format it was written, mapping plain logs only up to a given size.
+       @param file The file to read.
+       @param registry The registry to use for reading log entries.
+       @param maxMappedSize The size in bytes of the biggest plain log to map. Bigger plain logs are read with a FileLogReader.
+       @return A ChunkedLogReader, MappedLogReader or FileLogReader.
+       @throws IOException If the file cannot be read.
+       @throws LogException If there is a problem reading the log.
+    */
+    static LogReader open(File file, Registry registry, long maxMappedSize) throws IOException, LogException {
+        if (ChunkedLogOutputStream.isChunkedLog(file)) {
+            return new ChunkedLogReader(file, registry);
+        }
+        if (file.length() > maxMappedSize) {
+            Logger.info("Log is too big to map (" + file.length() + " bytes); reading it from the file");
+            return new FileLogReader(file, registry);
+        }
+        return new MappedLogReader(file, registry);
+    }
+
+    @Override
+    public Config getConfig() throws LogException {
+        if (config == null && configIndex != null) {
+            try {
+                config = new ConfigRecord(recordStream(configIndex)).getConfig();
+            }
+            catch (IOException e) {
+                throw new LogException(e);
+            }
+        }
+        return config;
+    }
+
+    @Override
+    public int getMaxTimestep() throws LogException {
+        return maxTime;
+    }
+
+    @Override
+    public WorldModel<? extends Entity> getWorldModel(int time) throws LogException {
+        return replayUpdates(time);
+    }
+
+    @Override
+    public Set<EntityID> getEntitiesWithUpdates(int time) throws LogException {
+        Map<EntityID, Long> timestepMap = perceptionIndices.get(time);
+        if (timestepMap == null) {
+            return new HashSet<EntityID>();
+        }
+        return timestepMap.keySet();
+    }
+
+    @Override
+    public PerceptionRecord getPerception(int time, EntityID entity) throws LogException {
+        Map<EntityID, Long> timestepMap = perceptionIndices.get(time);
+        if (timestepMap == null) {
+            return null;
+        }
+        Long l = timestepMap.get(entity);
+        if (l == null) {
+            return null;
+        }
+        try {
+            return new PerceptionRecord(recordStream(l));
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    @Override
+    public CommandsRecord getCommands(int time) throws LogException {
+        Long index = commandsIndices.get(time);
+        if (index == null) {
+            return null;
+        }
+        try {
+            return new CommandsRecord(recordStream(index));
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    @Override
+    public UpdatesRecord getUpdates(int time) throws LogException {
+        Long index = updatesIndices.get(time);
+        if (index == null) {
+            return null;
+        }
+        try {
+            return new UpdatesRecord(recordStream(index));
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    @Override
+    protected WorldModel<? extends Entity> readSnapshot(int time) throws LogException {
+        Long index = snapshotIndices.get(time);
+        if (index == null) {
+            throw new LogException("No snapshot at time " + time);
+        }
+        try {
+            if (time == 0) {
+                return new InitialConditionsRecord(recordStream(index)).getWorldModel();
+            }
+            return new SnapshotRecord(recordStream(index)).getWorldModel();
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    /**
+       Write the log in the usual unchunked format.
+       @param out The stream to write to. It is not closed.
+       @throws LogException If there is a problem reading the log or writing the stream.
+    */
+    public void writeLegacy(OutputStream out) throws LogException {
+        try {
+            for (int i = 0; i < chunkOffsets.length; ++i) {
+                out.write(readChunk(i));
+            }
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    /**
+       Close the log file.
+    */
+    public void close() {
+        inflater.end();
+        try {
+            file.close();
+        }
+        catch (IOException e) {
+            Logger.error("Error closing log file", e);
+        }
+    }
+
+    private void readHeader() throws IOException, LogException {
+        file.seek(0);
+        if (file.length() < HEADER_SIZE || file.readInt() != MAGIC) {
+            throw new LogException("Log does not start with correct magic number");
+        }
+        int version = file.readInt();
+        if (version != VERSION) {
+            throw new LogException("Unsupported chunked log version: " + version);
+        }
+    }
+
+    private boolean readIndex() throws IOException, LogException {
+        long length = file.length();
+        if (length < HEADER_SIZE + TRAILER_SIZE) {
+            return false;
+        }
+        file.seek(length - TRAILER_SIZE);
+        long indexPosition = file.readLong();
+        if (file.readInt() != MAGIC || indexPosition < HEADER_SIZE || indexPosition > length - TRAILER_SIZE) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(inflate(indexPosition)));
+        int chunks = in.readInt();
+        chunkOffsets = new long[chunks];
+        for (int i = 0; i < chunks; ++i) {
+            chunkOffsets[i] = in.readLong();
+        }
+        maxTime = in.readInt();
+        int entries = in.readInt();
+        int[] entry = new int[INDEX_ENTRY_SIZE];
+        for (int i = 0; i < entries; ++i) {
+            for (int j = 0; j < INDEX_ENTRY_SIZE; ++j) {
+                entry[j] = in.readInt();
+            }
+            addIndexEntry(entry[0], entry[1], entry[2], ((long)entry[3] << CHUNK_SHIFT) | (entry[4] & OFFSET_MASK));
+        }
+        return true;
+    }
+
+    private void rebuildIndex() throws IOException, LogException {
+        List<Long> offsets = new ArrayList<Long>();
+        long position = HEADER_SIZE;
+        long length = file.length();
+        while (position + CHUNK_HEADER_SIZE <= length) {
+            file.seek(position);
+            int size = file.readInt();
+            int compressedSize = file.readInt();
+            if (size < 0 || compressedSize < 0 || position + CHUNK_HEADER_SIZE + compressedSize > length) {
+                break;
+            }
+            byte[] data;
+            try {
+                data = inflate(position);
+            }
+            catch (LogException e) {
+                Logger.warn("Ignoring damaged chunk at " + position, e);
+                break;
+            }
+            catch (EOFException e) {
+                Logger.warn("Ignoring truncated chunk at " + position, e);
+                break;
+            }
+            int chunk = offsets.size();
+            offsets.add(position);
+            int off = 0;
+            while (off + RECORD_HEADER_SIZE <= data.length) {
+                int recordSize = readInt32(data, off + RECORD_HEADER_SIZE / 2);
+                if (recordSize < 0 || recordSize > data.length - off - RECORD_HEADER_SIZE) {
+                    Logger.warn("Ignoring damaged record at offset " + off + " in chunk at " + position + ": size " + recordSize);
+                    break;
+                }
+                int[] description;
+                try {
+                    description = ChunkedLogOutputStream.describeRecord(data, off);
+                }
+                catch (IOException e) {
+                    Logger.warn("Ignoring damaged record at offset " + off + " in chunk at " + position, e);
+                    break;
+                }
+                if (description != null) {
+                    addIndexEntry(description[0], description[1], description[2], ((long)chunk << CHUNK_SHIFT) | off);
+                    maxTime = Math.max(maxTime, description[1]);
+                }
+                off += RECORD_HEADER_SIZE + recordSize;
+            }
+            chunkCache.put(chunk, data);
+            position += CHUNK_HEADER_SIZE + compressedSize;
+        }
+        chunkOffsets = new long[offsets.size()];
+        for (int i = 0; i < chunkOffsets.length; ++i) {
+            chunkOffsets[i] = offsets.get(i);
+        }
+    }
+
+    private void addIndexEntry(int typeID, int time, int entity, long location) throws LogException {
+        RecordType type;
+        try {
+            type = RecordType.fromID(typeID);
+        }
+        catch (IllegalArgumentException e) {
+            throw new LogException("Unexpected record type in index: " + typeID);
+        }
+        switch (type) {
+        case INITIAL_CONDITIONS:
+            snapshotIndices.put(0, location);
+            addSnapshot(0);
+            break;
+        case SNAPSHOT:
+            snapshotIndices.put(time, location);
+            addSnapshot(time);
+            break;
+        case CONFIG:
+            configIndex = location;
+            break;
+        case PERCEPTION:
+            Map<EntityID, Long> timestepMap = perceptionIndices.get(time);
+            if (timestepMap == null) {
+                timestepMap = new HashMap<EntityID, Long>();
+                perceptionIndices.put(time, timestepMap);
+            }
+            timestepMap.put(EntityID.valueOf(entity), location);
+            break;
+        case COMMANDS:
+            commandsIndices.put(time, location);
+            break;
+        case UPDATES:
+            updatesIndices.put(time, location);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private InputStream recordStream(long location) throws LogException {
+        int chunk = (int)(location >>> CHUNK_SHIFT);
+        int offset = (int)(location & OFFSET_MASK);
+        byte[] data = readChunk(chunk);
+        int size = readInt32(data, offset + RECORD_HEADER_SIZE / 2);
+        return new ByteArrayInputStream(data, offset + RECORD_HEADER_SIZE, size);
+    }
+
+    private byte[] readChunk(int chunk) throws LogException {
+        byte[] result = chunkCache.get(chunk);
+        if (result == null) {
+            try {
+                result = inflate(chunkOffsets[chunk]);
+            }
+            catch (IOException e) {
+                throw new LogException(e);
+            }
+            chunkCache.put(chunk, result);
+        }
+        return result;
+    }
+
+    private byte[] inflate(long position) throws IOException, LogException {
+        file.seek(position);
+        int size = file.readInt();
+        int compressedSize = file.readInt();
+        byte[] compressed = new byte[compressedSize];
+        file.readFully(compressed);
+        byte[] result = new byte[size];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int count = 0;
+            while (count < size && !inflater.finished()) {
+                int read = inflater.inflate(result, count, size - count);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += read;
+            }
+            if (count != size) {
+                throw new EOFException("Chunk at " + position + " is truncated");
+            }
+        }
+        catch (DataFormatException e) {
+            throw new LogException("Chunk at " + position + " is corrupt", e);
+        }
+        return result;
+    }
+}
@@ -3,6 +3,7 @@ package rescuecore2.log;
 import static rescuecore2.misc.EncodingTools.readBytes;
 import static rescuecore2.misc.EncodingTools.readInt32;
 import static rescuecore2.misc.EncodingTools.reallySkip;
+import static rescuecore2.misc.EncodingTools.INT_32_SIZE;
 
 import java.io.File;
 import java.io.IOException;
@@ -14,14 +15,10 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
-import java.util.NavigableMap;
-import java.util.TreeMap;
 
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.worldmodel.EntityID;
 import rescuecore2.worldmodel.WorldModel;
-import rescuecore2.worldmodel.DefaultWorldModel;
-import rescuecore2.worldmodel.ChangeSet;
 import rescuecore2.config.Config;
 import rescuecore2.registry.Registry;
 
@@ -29,11 +26,9 @@ import rescuecore2.registry.Registry;
    A log reader that reads from a file.
  */
 public class FileLogReader extends AbstractLogReader {
-    private static final int KEY_FRAME_BUFFER_MAX_SIZE = 10;
-
     private RandomAccessFile file;
     private int maxTime;
-    private NavigableMap<Integer, WorldModel<? extends Entity>> keyFrames;
+    private Map<Integer, Long> snapshotIndices;
     private Map<Integer, Map<EntityID, Long>> perceptionIndices;
     private Map<Integer, Long> updatesIndices;
     private Map<Integer, Long> commandsIndices;
@@ -76,29 +71,7 @@ public class FileLogReader extends AbstractLogReader {
 
     @Override
     public WorldModel<? extends Entity> getWorldModel(int time) throws LogException {
-        Logger.debug("Getting world model at time " + time);
-        WorldModel<? extends Entity> result = new DefaultWorldModel<Entity>(Entity.class);
-        // Look for a key frame
-        Map.Entry<Integer, WorldModel<? extends Entity>> entry = keyFrames.floorEntry(time);
-        int startTime = entry.getKey();
-        Logger.trace("Found key frame " + startTime);
-        // Copy the initial conditions
-        Logger.trace("Cloning initial conditions");
-        for (Entity next : entry.getValue()) {
-            result.addEntity(next.copy());
-        }
-        // Go through updates and apply them all
-        for (int i = startTime + 1; i <= time; ++i) {
-            ChangeSet updates = getUpdates(i).getChangeSet();
-            Logger.trace("Merging " + updates.getChangedEntities().size() + " updates for timestep " + i);
-            result.merge(updates);
-        }
-        Logger.trace("Done");
-        // Remove stale key frames
-        removeStaleKeyFrames();
-        // Store this as a key frame - it's quite likely that the next timestep will be viewed soon.
-        keyFrames.put(time, result);
-        return result;
+        return replayUpdates(time);
     }
 
     @Override
@@ -165,10 +138,30 @@ public class FileLogReader extends AbstractLogReader {
         }
     }
 
+    @Override
+    protected WorldModel<? extends Entity> readSnapshot(int time) throws LogException {
+        Long index = snapshotIndices.get(time);
+        if (index == null) {
+            throw new LogException("No snapshot at time " + time);
+        }
+        try {
+            file.seek(index);
+            int size = readInt32(file);
+            byte[] bytes = readBytes(size, file);
+            if (time == 0) {
+                return new InitialConditionsRecord(new ByteArrayInputStream(bytes)).getWorldModel();
+            }
+            return new SnapshotRecord(new ByteArrayInputStream(bytes)).getWorldModel();
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
     private void index() throws LogException {
         try {
             Registry.setCurrentRegistry(registry);
-            keyFrames = new TreeMap<Integer, WorldModel<? extends Entity>>();
+            snapshotIndices = new HashMap<Integer, Long>();
             perceptionIndices = new HashMap<Integer, Map<EntityID, Long>>();
             updatesIndices = new HashMap<Integer, Long>();
             commandsIndices = new HashMap<Integer, Long>();
@@ -216,6 +209,9 @@ public class FileLogReader extends AbstractLogReader {
         case CONFIG:
             indexConfig();
             break;
+        case SNAPSHOT:
+            indexSnapshot();
+            break;
         case END_OF_LOG:
             indexEnd();
             break;
@@ -235,13 +231,26 @@ public class FileLogReader extends AbstractLogReader {
     }
 
     private void indexInitialConditions() throws IOException, LogException {
+        long position = file.getFilePointer();
         int size = readInt32(file);
         if (size < 0) {
             throw new LogException("Invalid initial conditions size: " + size);
         }
-        byte[] bytes = readBytes(size, file);
-        InitialConditionsRecord record = new InitialConditionsRecord(new ByteArrayInputStream(bytes));
-        keyFrames.put(0, record.getWorldModel());
+        reallySkip(file, size);
+        snapshotIndices.put(0, position);
+        addSnapshot(0);
+    }
+
+    private void indexSnapshot() throws IOException, LogException {
+        long position = file.getFilePointer();
+        int size = readInt32(file);
+        if (size < INT_32_SIZE) {
+            throw new LogException("Invalid snapshot size: " + size);
+        }
+        int time = readInt32(file);
+        reallySkip(file, size - INT_32_SIZE);
+        snapshotIndices.put(time, position);
+        addSnapshot(time);
     }
 
     private void indexPerception() throws IOException, LogException {
@@ -285,27 +294,4 @@ public class FileLogReader extends AbstractLogReader {
         ConfigRecord record = new ConfigRecord(new ByteArrayInputStream(bytes));
         config = record.getConfig();
     }
-
-    private void removeStaleKeyFrames() {
-        Logger.trace("Removing stale key frames");
-        int size = keyFrames.size();
-        if (size < KEY_FRAME_BUFFER_MAX_SIZE) {
-            Logger.trace("Key frame buffer is not full: " + size + (size == 1 ? " entry" : " entries"));
-            return;
-        }
-        // Try to balance the number of key frames.
-        int window = maxTime / KEY_FRAME_BUFFER_MAX_SIZE;
-        for (int i = 0; i < maxTime; i += window) {
-            NavigableMap<Integer, WorldModel<? extends Entity>> next = keyFrames.subMap(i, false, i + window, true);
-            Logger.trace("Window " + i + " -> " + (i + window) + " has " + next.size() + " entries");
-            if (next.size() > 1) {
-                // Remove all but the last entry in this window
-                Map.Entry<Integer, WorldModel<? extends Entity>> last = next.lastEntry();
-                next.clear();
-                next.put(last.getKey(), last.getValue());
-                Logger.trace("Retained entry " + last);
-            }
-        }
-        Logger.trace("New key frame set: " + keyFrames);
-    }
 }
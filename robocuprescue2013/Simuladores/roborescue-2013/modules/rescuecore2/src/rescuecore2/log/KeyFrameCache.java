@@ -0,0 +1,80 @@
+package rescuecore2.log;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.WorldModel;
+
+/**
+   A least-recently-used cache of reconstructed world models, indexed by timestep. The cache is bounded by the total number of entities it holds rather than the number of worlds, so it uses about the same amount of memory whatever the map size. The most recently added world is never evicted. This class is thread-safe.
+ */
+class KeyFrameCache {
+    private final long maxEntities;
+    private final NavigableMap<Integer, WorldModel<? extends Entity>> frames;
+    private final LinkedHashMap<Integer, Integer> sizes;
+    private long totalEntities;
+
+    /**
+       Create a KeyFrameCache.
+       @param maxEntities The maximum total number of entities to keep.
+     */
+    KeyFrameCache(long maxEntities) {
+        this.maxEntities = maxEntities;
+        frames = new TreeMap<Integer, WorldModel<? extends Entity>>();
+        sizes = new LinkedHashMap<Integer, Integer>(16, 0.75f, true);
+    }
+
+    /**
+       Find the latest cached world at or before a timestep and mark it as recently used.
+       @param time The timestep.
+       @return The matching entry, or null if no earlier world is cached.
+     */
+    synchronized Map.Entry<Integer, WorldModel<? extends Entity>> floorEntry(int time) {
+        Map.Entry<Integer, WorldModel<? extends Entity>> result = frames.floorEntry(time);
+        if (result != null) {
+            sizes.get(result.getKey());
+        }
+        return result;
+    }
+
+    /**
+       Add a world to the cache, evicting the least recently used worlds if the cache is full.
+       @param time The timestep of the world.
+       @param world The world model.
+     */
+    synchronized void put(int time, WorldModel<? extends Entity> world) {
+        int size = world.getAllEntities().size();
+        remove(time);
+        frames.put(time, world);
+        sizes.put(time, size);
+        totalEntities += size;
+        Iterator<Map.Entry<Integer, Integer>> it = sizes.entrySet().iterator();
+        while (totalEntities > maxEntities && sizes.size() > 1) {
+            Map.Entry<Integer, Integer> eldest = it.next();
+            Logger.trace("Evicting key frame " + eldest.getKey());
+            frames.remove(eldest.getKey());
+            totalEntities -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    /**
+       Get the number of cached worlds.
+       @return The number of worlds.
+     */
+    synchronized int size() {
+        return frames.size();
+    }
+
+    private void remove(int time) {
+        Integer old = sizes.remove(time);
+        if (old != null) {
+            frames.remove(time);
+            totalEntities -= old;
+        }
+    }
+}
@@ -7,9 +7,15 @@ import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -34,6 +40,10 @@ import rescuecore2.worldmodel.WorldModel;
  */
 public class LogExtractor {
     private static final String VIEWERS_KEY = "log.viewers";
+    private static final String TO_CHUNKED_FLAG = "--to-chunked";
+    private static final String TO_LEGACY_FLAG = "--to-legacy";
+    private static final String CHUNK_SIZE_KEY = "kernel.log.chunked.chunk-size";
+    private static final int COPY_BUFFER_SIZE = 65536;
 
     private ScoreFunction scoreFunction;
     private LogReader log;
@@ -169,6 +179,11 @@ public class LogExtractor {
         Config config = new Config();
         try {
             args = CommandLineOptions.processArgs(args, config);
+            if (args.length == 3 && (TO_CHUNKED_FLAG.equals(args[0]) || TO_LEGACY_FLAG.equals(args[0]))) {
+                processJarFiles(config);
+                convert(new File(args[1]), new File(args[2]), TO_CHUNKED_FLAG.equals(args[0]), config);
+                return;
+            }
             if (args.length != 2) {
                 printUsage();
                 return;
@@ -176,7 +191,7 @@ public class LogExtractor {
             String name = args[0];
             String outdir = args[1];
             processJarFiles(config);
-            LogReader reader = new FileLogReader(name, Registry.SYSTEM_REGISTRY);
+            LogReader reader = ChunkedLogReader.open(new File(name), Registry.SYSTEM_REGISTRY);
             LogExtractor log = new LogExtractor(reader, config);
             log.setDimension(1024, 786);
             //viewer.setPreferredSize(new Dimension(VIEWER_SIZE, VIEWER_SIZE));
@@ -227,8 +242,53 @@ public class LogExtractor {
         
     }
 
+    /**
+       Convert a log between the plain format and the chunked format. Converting in either direction keeps every record unchanged.
+       @param in The log to read.
+       @param out The file to write.
+       @param toChunked True to write a chunked log, false to write a plain log.
+       @param config The system configuration. The chunk size is taken from <code>kernel.log.chunked.chunk-size</code> if it is set.
+       @throws IOException If there is a problem reading or writing a file.
+       @throws LogException If the input log cannot be read.
+    */
+    public static void convert(File in, File out, boolean toChunked, Config config) throws IOException, LogException {
+        boolean inChunked = ChunkedLogOutputStream.isChunkedLog(in);
+        if (inChunked == toChunked) {
+            throw new LogException(in + " is already in the " + (toChunked ? "chunked" : "plain") + " format");
+        }
+        if (toChunked) {
+            InputStream input = new BufferedInputStream(new FileInputStream(in));
+            OutputStream output = new ChunkedLogOutputStream(out, config.getIntValue(CHUNK_SIZE_KEY, ChunkedLogOutputStream.DEFAULT_CHUNK_SIZE));
+            try {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, count);
+                }
+            }
+            finally {
+                input.close();
+                output.close();
+            }
+        }
+        else {
+            ChunkedLogReader reader = new ChunkedLogReader(in, Registry.SYSTEM_REGISTRY);
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(out));
+            try {
+                reader.writeLegacy(output);
+            }
+            finally {
+                reader.close();
+                output.close();
+            }
+        }
+        System.out.println("Wrote " + out + " (" + in.length() + " -> " + out.length() + " bytes)");
+    }
+
     private static void printUsage() {
         System.out.println("Usage: LogExtractor <filename> <output directory>");
+        System.out.println("       LogExtractor " + TO_CHUNKED_FLAG + " <filename> <chunked log>");
+        System.out.println("       LogExtractor " + TO_LEGACY_FLAG + " <chunked log> <filename>");
     }
 
     private static void processJarFiles(Config config) throws IOException {
@@ -40,6 +40,7 @@ import javax.swing.Box;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.ChangeEvent;
 
+import java.io.File;
 import java.io.IOException;
 
 import java.util.Dictionary;
@@ -252,7 +253,7 @@ public class LogViewer extends JPanel {
             }
             String name = args[0];
             processJarFiles(config);
-            LogReader reader = new FileLogReader(name, Registry.SYSTEM_REGISTRY);
+            LogReader reader = ChunkedLogReader.open(new File(name), Registry.SYSTEM_REGISTRY);
             LogViewer viewer = new LogViewer(reader, config);
             viewer.setPreferredSize(new Dimension(VIEWER_SIZE, VIEWER_SIZE));
             JFrame frame = new JFrame("Log viewer: " + name);
@@ -52,6 +52,18 @@ public final class Logger {
         queue.removeLast();
     }
 
+    /**
+       Get the name of the current log context for this thread.
+       @return The current log context, or null if no context has been set.
+    */
+    public static String getLogContext() {
+        Deque<org.apache.log4j.Logger> queue = LOG.get();
+        if (queue.isEmpty()) {
+            return null;
+        }
+        return queue.getLast().getName();
+    }
+
     private static org.apache.log4j.Logger get() {
         Deque<org.apache.log4j.Logger> queue = LOG.get();
         if (queue.isEmpty()) {
@@ -0,0 +1,248 @@
+package rescuecore2.log;
+
+import static rescuecore2.misc.EncodingTools.INT_32_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Collections;
+
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.config.Config;
+import rescuecore2.misc.ByteBufferInputStream;
+import rescuecore2.registry.Registry;
+
+/**
+   A log reader that memory-maps a log file. Indexing only reads the record headers and the few fields that say which timestep and agent a record belongs to, and records are decoded straight from the mapped buffer without copying them. This reader is thread-safe: several threads can read the same log at once. World models returned by {@link #getWorldModel(int)} are shared with the reader's cache and must not be modified.
+ */
+public class MappedLogReader extends AbstractLogReader {
+    /** The size in bytes of the biggest log that can be mapped. */
+    public static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private static final int RECORD_HEADER_SIZE = 2 * INT_32_SIZE;
+
+    private final MappedByteBuffer buffer;
+    private final int maxTime;
+    private final Map<Integer, Integer> snapshotIndices;
+    private final Map<Integer, Map<EntityID, Integer>> perceptionIndices;
+    private final Map<Integer, Integer> updatesIndices;
+    private final Map<Integer, Integer> commandsIndices;
+    private final Config config;
+
+    /**
+       Construct a new MappedLogReader.
+       @param name The name of the file to read.
+       @param registry The registry to use for reading log entries.
+       @throws IOException If the file cannot be read.
+       @throws LogException If there is a problem reading the log.
+    */
+    public MappedLogReader(String name, Registry registry) throws IOException, LogException {
+        this(new File(name), registry);
+    }
+
+    /**
+       Construct a new MappedLogReader.
+       @param file The file object to read.
+       @param registry The registry to use for reading log entries.
+       @throws IOException If the file cannot be read.
+       @throws LogException If there is a problem reading the log, or the log is too big to map.
+    */
+    public MappedLogReader(File file, Registry registry) throws IOException, LogException {
+        super(registry);
+        Logger.info("Mapping file log: " + file.getAbsolutePath());
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > MAX_SIZE) {
+                throw new LogException("Log is too big to map: " + channel.size() + " bytes");
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally {
+            raf.close();
+        }
+        snapshotIndices = new HashMap<Integer, Integer>();
+        perceptionIndices = new HashMap<Integer, Map<EntityID, Integer>>();
+        updatesIndices = new HashMap<Integer, Integer>();
+        commandsIndices = new HashMap<Integer, Integer>();
+        int[] found = index();
+        maxTime = found[0];
+        config = found[1] < 0 ? null : new ConfigRecord(stream(found[1])).getConfig();
+    }
+
+    @Override
+    public Config getConfig() {
+        return config;
+    }
+
+    @Override
+    public int getMaxTimestep() throws LogException {
+        return maxTime;
+    }
+
+    @Override
+    public WorldModel<? extends Entity> getWorldModel(int time) throws LogException {
+        return replayUpdates(time);
+    }
+
+    @Override
+    public Set<EntityID> getEntitiesWithUpdates(int time) throws LogException {
+        Map<EntityID, Integer> timestepMap = perceptionIndices.get(time);
+        if (timestepMap == null) {
+            return new HashSet<EntityID>();
+        }
+        return Collections.unmodifiableSet(timestepMap.keySet());
+    }
+
+    @Override
+    public PerceptionRecord getPerception(int time, EntityID entity) throws LogException {
+        Map<EntityID, Integer> timestepMap = perceptionIndices.get(time);
+        if (timestepMap == null) {
+            return null;
+        }
+        Integer index = timestepMap.get(entity);
+        if (index == null) {
+            return null;
+        }
+        try {
+            return new PerceptionRecord(stream(index));
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    @Override
+    public CommandsRecord getCommands(int time) throws LogException {
+        Integer index = commandsIndices.get(time);
+        if (index == null) {
+            return null;
+        }
+        try {
+            return new CommandsRecord(stream(index));
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    @Override
+    public UpdatesRecord getUpdates(int time) throws LogException {
+        Integer index = updatesIndices.get(time);
+        if (index == null) {
+            return null;
+        }
+        try {
+            return new UpdatesRecord(stream(index));
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    @Override
+    protected WorldModel<? extends Entity> readSnapshot(int time) throws LogException {
+        Integer index = snapshotIndices.get(time);
+        if (index == null) {
+            throw new LogException("No snapshot at time " + time);
+        }
+        try {
+            if (time == 0) {
+                return new InitialConditionsRecord(stream(index)).getWorldModel();
+            }
+            return new SnapshotRecord(stream(index)).getWorldModel();
+        }
+        catch (IOException e) {
+            throw new LogException(e);
+        }
+    }
+
+    private ByteBufferInputStream stream(int index) {
+        Registry.setCurrentRegistry(registry);
+        // Each call gets its own view of the buffer so concurrent readers do not share a position
+        ByteBuffer view = buffer.duplicate();
+        int size = view.getInt(index + INT_32_SIZE);
+        view.position(index + RECORD_HEADER_SIZE);
+        view.limit(index + RECORD_HEADER_SIZE + size);
+        return new ByteBufferInputStream(view.slice());
+    }
+
+    // Returns the last timestep and the position of the config record, or -1 if there is no config record
+    private int[] index() throws LogException {
+        int limit = buffer.limit();
+        int position = 0;
+        int max = 0;
+        int configIndex = -1;
+        boolean startFound = false;
+        while (position + RECORD_HEADER_SIZE <= limit) {
+            RecordType type;
+            try {
+                type = RecordType.fromID(buffer.getInt(position));
+            }
+            catch (IllegalArgumentException e) {
+                throw new LogException("Unexpected record type at " + position + ": " + buffer.getInt(position));
+            }
+            if (!startFound) {
+                if (!RecordType.START_OF_LOG.equals(type)) {
+                    throw new LogException("Log does not start with correct magic number");
+                }
+                startFound = true;
+            }
+            int size = buffer.getInt(position + INT_32_SIZE);
+            int data = position + RECORD_HEADER_SIZE;
+            if (size < 0 || data + size > limit) {
+                Logger.warn("Log is truncated at " + position);
+                break;
+            }
+            switch (type) {
+            case INITIAL_CONDITIONS:
+                snapshotIndices.put(0, position);
+                addSnapshot(0);
+                break;
+            case SNAPSHOT:
+                snapshotIndices.put(buffer.getInt(data), position);
+                addSnapshot(buffer.getInt(data));
+                break;
+            case PERCEPTION:
+                // Perception records start with the agent ID and then the time
+                int time = buffer.getInt(data + INT_32_SIZE);
+                Map<EntityID, Integer> timestepMap = perceptionIndices.get(time);
+                if (timestepMap == null) {
+                    timestepMap = new HashMap<EntityID, Integer>();
+                    perceptionIndices.put(time, timestepMap);
+                }
+                timestepMap.put(EntityID.valueOf(buffer.getInt(data)), position);
+                break;
+            case COMMANDS:
+                commandsIndices.put(buffer.getInt(data), position);
+                max = Math.max(max, buffer.getInt(data));
+                break;
+            case UPDATES:
+                updatesIndices.put(buffer.getInt(data), position);
+                max = Math.max(max, buffer.getInt(data));
+                break;
+            case CONFIG:
+                configIndex = position;
+                break;
+            default:
+                break;
+            }
+            position = data + size;
+            if (RecordType.END_OF_LOG.equals(type)) {
+                break;
+            }
+        }
+        return new int[] {max, configIndex};
+    }
+}
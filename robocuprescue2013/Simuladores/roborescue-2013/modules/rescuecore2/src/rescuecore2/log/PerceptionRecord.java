@@ -67,7 +67,7 @@ public class PerceptionRecord implements LogRecord {
 
     @Override
     public void read(InputStream in) throws IOException, LogException {
-        entityID = new EntityID(readInt32(in));
+        entityID = EntityID.valueOf(readInt32(in));
         time = readInt32(in);
         visible = new ChangeSet();
         visible.read(in);
@@ -17,7 +17,9 @@ public enum RecordType {
     /** Updates record. */
     UPDATES(0x04),
     /** Config record. */
-    CONFIG(0x05);
+    CONFIG(0x05),
+    /** World snapshot record. */
+    SNAPSHOT(0x06);
 
     private int id;
 
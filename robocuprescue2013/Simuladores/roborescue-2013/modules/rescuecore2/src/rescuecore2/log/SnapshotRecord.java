@@ -0,0 +1,90 @@
+package rescuecore2.log;
+
+import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeEntity;
+import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readEntity;
+
+import java.io.OutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+
+import java.util.Collection;
+
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.DefaultWorldModel;
+
+/**
+   A record of the complete state of the world at the end of a timestep. Log readers can start from the nearest snapshot instead of replaying every update since the initial conditions.
+*/
+public class SnapshotRecord implements LogRecord {
+    private int time;
+    private WorldModel<Entity> model;
+
+    /**
+       Construct a new SnapshotRecord. The entities are written when the record is written, so the world model must not change until then.
+       @param time The timestep this snapshot belongs to.
+       @param model The world model to record.
+     */
+    public SnapshotRecord(int time, WorldModel<? extends Entity> model) {
+        this.time = time;
+        this.model = DefaultWorldModel.create();
+        this.model.merge(model.getAllEntities());
+    }
+
+    /**
+       Construct a new SnapshotRecord and read data from an InputStream.
+       @param in The InputStream to read from.
+       @throws IOException If there is a problem reading the stream.
+       @throws LogException If there is a problem reading the log record.
+     */
+    public SnapshotRecord(InputStream in) throws IOException, LogException {
+        read(in);
+    }
+
+    @Override
+    public RecordType getRecordType() {
+        return RecordType.SNAPSHOT;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        writeInt32(time, out);
+        Collection<? extends Entity> all = model.getAllEntities();
+        writeInt32(all.size(), out);
+        for (Entity e : all) {
+            writeEntity(e, out);
+        }
+    }
+
+    @Override
+    public void read(InputStream in) throws IOException, LogException {
+        time = readInt32(in);
+        model = DefaultWorldModel.create();
+        int size = readInt32(in);
+        for (int i = 0; i < size; ++i) {
+            Entity e = readEntity(in);
+            if (e == null) {
+                throw new LogException("Could not read entity from stream");
+            }
+            model.addEntity(e);
+        }
+    }
+
+    /**
+       Get the timestep this snapshot belongs to.
+       @return The timestep.
+     */
+    public int getTime() {
+        return time;
+    }
+
+    /**
+       Get the world model.
+       @return The world model.
+     */
+    public WorldModel<Entity> getWorldModel() {
+        return model;
+    }
+}
@@ -137,6 +137,8 @@ public class StreamLogReader extends AbstractLogReader {
         byte[] data = readBytes(size, in);
         InputStream d = new ByteArrayInputStream(data);
         switch (type) {
+        case START_OF_LOG:
+            break;
         case INITIAL_CONDITIONS:
             readInitialConditions(d);
             break;
@@ -152,6 +154,9 @@ public class StreamLogReader extends AbstractLogReader {
         case CONFIG:
             readConfig(d);
             break;
+        case SNAPSHOT:
+            // Every world model is built while reading so snapshots are not needed
+            break;
         case END_OF_LOG:
             return;
         default:
@@ -0,0 +1,20 @@
+package rescuecore2.messages;
+
+import rescuecore2.registry.URNDictionary;
+
+/**
+   Interface for Messages that can switch a connection to a compact URN dictionary. A connection that sends or receives one of these messages with a non-null dictionary uses that dictionary for every message after it.
+ */
+public interface URNDictionaryMessage extends Message {
+    /**
+       Get the dictionary carried by this message.
+       @return The dictionary, or null if this message does not carry one.
+    */
+    URNDictionary getURNDictionary();
+
+    /**
+       Get the number of ChangeSets between keyframes if the connection should also switch to delta-coded ChangeSets. Delta coding is only switched on together with a dictionary.
+       @return The keyframe interval, or zero if ChangeSets should be written in full.
+    */
+    int getChangeSetKeyframeInterval();
+}
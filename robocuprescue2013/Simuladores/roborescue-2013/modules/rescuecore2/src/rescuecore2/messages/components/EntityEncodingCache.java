@@ -0,0 +1,114 @@
+package rescuecore2.messages.components;
+
+import static rescuecore2.misc.EncodingTools.writeEntity;
+
+import rescuecore2.registry.URNDictionary;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.EntityListener;
+import rescuecore2.worldmodel.Property;
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.worldmodel.WorldModelListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+   Keeps the encoded form of the entities in a world model so that messages that carry most of the world, such as the connect replies the kernel sends to every component, encode each entity only once. An entity's encoding is dropped whenever one of its properties changes. Encodings depend on the URN dictionary in use, so an entity written under a different dictionary is encoded again. Entities that are not in the world model are encoded every time. This class is thread-safe.
+*/
+public class EntityEncodingCache {
+    private final WorldModel<? extends Entity> world;
+    private final Map<EntityID, Encoding> encodings;
+    private final AtomicInteger changes;
+
+    /**
+       Construct an EntityEncodingCache for a world model.
+       @param world The world model to track.
+    */
+    public EntityEncodingCache(WorldModel<? extends Entity> world) {
+        this.world = world;
+        encodings = new ConcurrentHashMap<EntityID, Encoding>();
+        changes = new AtomicInteger();
+        final EntityListener entityListener = new EntityListener() {
+                @Override
+                public void propertyChanged(Entity e, Property p, Object oldValue, Object newValue) {
+                    invalidate(e);
+                }
+            };
+        for (Entity next : world) {
+            next.addEntityListener(entityListener);
+        }
+        world.addWorldModelListener(new WorldModelListener<Entity>() {
+                @Override
+                public void entityAdded(WorldModel<? extends Entity> model, Entity e) {
+                    e.addEntityListener(entityListener);
+                    invalidate(e);
+                }
+
+                @Override
+                public void entityRemoved(WorldModel<? extends Entity> model, Entity e) {
+                    e.removeEntityListener(entityListener);
+                    invalidate(e);
+                }
+            });
+    }
+
+    /**
+       Write an entity in the format of {@link rescuecore2.misc.EncodingTools#writeEntity(Entity, OutputStream)}, reusing its encoding if it has not changed since it was last written.
+       @param e The entity to write.
+       @param out The OutputStream to write to.
+       @throws IOException If there is a problem writing to the stream.
+    */
+    public void write(Entity e, OutputStream out) throws IOException {
+        URNDictionary dictionary = URNDictionary.getCurrent();
+        Encoding cached = encodings.get(e.getID());
+        if (cached != null && cached.entity == e && cached.dictionary == dictionary) {
+            out.write(cached.bytes);
+            return;
+        }
+        if (world.getEntity(e.getID()) != e) {
+            // Changes to this entity would not be seen
+            writeEntity(e, out);
+            return;
+        }
+        int before = changes.get();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        writeEntity(e, buffer);
+        byte[] bytes = buffer.toByteArray();
+        encodings.put(e.getID(), new Encoding(e, dictionary, bytes));
+        // Something changed while the entity was being encoded, so the encoding might be out of date
+        if (changes.get() != before) {
+            encodings.remove(e.getID());
+        }
+        out.write(bytes);
+    }
+
+    /**
+       Get the number of entities whose encoding is currently cached.
+       @return The number of cached encodings.
+    */
+    public int size() {
+        return encodings.size();
+    }
+
+    private void invalidate(Entity e) {
+        changes.incrementAndGet();
+        encodings.remove(e.getID());
+    }
+
+    private static class Encoding {
+        final Entity entity;
+        final URNDictionary dictionary;
+        final byte[] bytes;
+
+        Encoding(Entity entity, URNDictionary dictionary, byte[] bytes) {
+            this.entity = entity;
+            this.dictionary = dictionary;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -58,7 +58,7 @@ public class EntityIDComponent extends AbstractMessageComponent {
 
     @Override
     public void read(InputStream in) throws IOException {
-        value = new EntityID(readInt32(in));
+        value = EntityID.valueOf(readInt32(in));
     }
 
     @Override
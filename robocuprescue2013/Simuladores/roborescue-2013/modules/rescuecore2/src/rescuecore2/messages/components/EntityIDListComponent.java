@@ -67,7 +67,7 @@ public class EntityIDListComponent extends AbstractMessageComponent {
         ids.clear();
         int count = readInt32(in);
         for (int i = 0; i < count; ++i) {
-            ids.add(new EntityID(readInt32(in)));
+            ids.add(EntityID.valueOf(readInt32(in)));
         }
     }
 
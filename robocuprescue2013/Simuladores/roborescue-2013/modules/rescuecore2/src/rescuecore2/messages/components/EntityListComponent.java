@@ -22,6 +22,7 @@ import rescuecore2.worldmodel.Entity;
  */
 public class EntityListComponent extends AbstractMessageComponent {
     private List<Entity> entities;
+    private EntityEncodingCache encodings;
 
     /**
        Construct an EntityListComponent with no content.
@@ -58,11 +59,24 @@ public class EntityListComponent extends AbstractMessageComponent {
         this.entities = new ArrayList<Entity>(entities);
     }
 
+    /**
+       Set the cache of entity encodings to write entities from.
+       @param encodings The cache to use, or null to encode every entity when this component is written.
+    */
+    public void setEncodingCache(EntityEncodingCache encodings) {
+        this.encodings = encodings;
+    }
+
     @Override
     public void write(OutputStream out) throws IOException {
         writeInt32(entities.size(), out);
         for (Entity next : entities) {
-            writeEntity(next, out);
+            if (encodings == null) {
+                writeEntity(next, out);
+            }
+            else {
+                encodings.write(next, out);
+            }
         }
     }
 
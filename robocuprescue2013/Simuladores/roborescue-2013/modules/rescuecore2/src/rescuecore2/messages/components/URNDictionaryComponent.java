@@ -0,0 +1,100 @@
+package rescuecore2.messages.components;
+
+import static rescuecore2.misc.EncodingTools.readInt32;
+import static rescuecore2.misc.EncodingTools.readString;
+import static rescuecore2.misc.EncodingTools.writeInt32;
+import static rescuecore2.misc.EncodingTools.writeString;
+
+import rescuecore2.messages.AbstractMessageComponent;
+import rescuecore2.registry.URNDictionary;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+   An optional message component that carries a URNDictionary. The component is written last in a message so that peers that do not know about it ignore it, and reading a message that does not contain it leaves the dictionary null. A dictionary can be followed by a ChangeSet keyframe interval, which is zero if ChangeSets are not delta-coded.
+ */
+public class URNDictionaryComponent extends AbstractMessageComponent {
+    private URNDictionary dictionary;
+    private int keyframeInterval;
+
+    /**
+       Construct a URNDictionaryComponent with no dictionary.
+       @param name The name of the component.
+     */
+    public URNDictionaryComponent(String name) {
+        super(name);
+    }
+
+    /**
+       Get the dictionary.
+       @return The dictionary, or null if there is no dictionary.
+     */
+    public URNDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+       Set the dictionary.
+       @param dictionary The new dictionary, or null for no dictionary.
+     */
+    public void setDictionary(URNDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+       Get the number of ChangeSets between keyframes when ChangeSets are delta-coded.
+       @return The keyframe interval, or zero if ChangeSets are written in full.
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+       Set the number of ChangeSets between keyframes when ChangeSets are delta-coded. This is only sent if there is also a dictionary.
+       @param keyframeInterval The keyframe interval, or zero to write ChangeSets in full.
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        if (dictionary == null) {
+            return;
+        }
+        writeInt32(dictionary.size(), out);
+        for (String next : dictionary.getURNs()) {
+            writeString(next, out);
+        }
+        if (keyframeInterval > 0) {
+            writeInt32(keyframeInterval, out);
+        }
+    }
+
+    @Override
+    public void read(InputStream in) throws IOException {
+        dictionary = null;
+        keyframeInterval = 0;
+        if (in.available() == 0) {
+            return;
+        }
+        int count = readInt32(in);
+        List<String> urns = new ArrayList<String>(count);
+        for (int i = 0; i < count; ++i) {
+            urns.add(readString(in));
+        }
+        dictionary = new URNDictionary(urns);
+        if (in.available() > 0) {
+            keyframeInterval = readInt32(in);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " = " + dictionary + (keyframeInterval > 0 ? " (delta ChangeSets, keyframe every " + keyframeInterval + ")" : "");
+    }
+}
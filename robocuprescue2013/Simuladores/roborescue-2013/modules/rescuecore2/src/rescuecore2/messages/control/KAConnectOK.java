@@ -4,13 +4,17 @@ import java.util.Collection;
 
 import rescuecore2.messages.Control;
 import rescuecore2.messages.AbstractMessage;
+import rescuecore2.messages.URNDictionaryMessage;
 import rescuecore2.messages.components.IntComponent;
 import rescuecore2.messages.components.EntityIDComponent;
 import rescuecore2.messages.components.EntityListComponent;
+import rescuecore2.messages.components.EntityEncodingCache;
 import rescuecore2.messages.components.ConfigComponent;
+import rescuecore2.messages.components.URNDictionaryComponent;
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.worldmodel.EntityID;
 import rescuecore2.config.Config;
+import rescuecore2.registry.URNDictionary;
 
 import java.io.InputStream;
 import java.io.IOException;
@@ -18,11 +22,12 @@ import java.io.IOException;
 /**
    A message for signalling a successful connection to the kernel.
  */
-public class KAConnectOK extends AbstractMessage implements Control {
+public class KAConnectOK extends AbstractMessage implements Control, URNDictionaryMessage {
     private IntComponent requestID;
     private EntityIDComponent agentID;
     private EntityListComponent world;
     private ConfigComponent config;
+    private URNDictionaryComponent dictionary;
 
     /**
        A KAConnectOK message that populates its data from a stream.
@@ -49,16 +54,63 @@ public class KAConnectOK extends AbstractMessage implements Control {
         this.config.setConfig(config);
     }
 
+    /**
+       A populated KAConnectOK message that also switches the connection to a compact URN dictionary.
+       @param requestID The request ID.
+       @param agentID The ID of the Entity that the agent will be controlling.
+       @param allEntities All Entities that the agent knows about, including the controlled object.
+       @param config The Config that the agent knows about.
+       @param dictionary The URN dictionary to use for the rest of the connection, or null to keep using URN strings.
+    */
+    public KAConnectOK(int requestID, EntityID agentID, Collection<? extends Entity> allEntities, Config config, URNDictionary dictionary) {
+        this(requestID, agentID, allEntities, config, dictionary, 0);
+    }
+
+    /**
+       A populated KAConnectOK message that also switches the connection to a compact URN dictionary and, optionally, to delta-coded ChangeSets.
+       @param requestID The request ID.
+       @param agentID The ID of the Entity that the agent will be controlling.
+       @param allEntities All Entities that the agent knows about, including the controlled object.
+       @param config The Config that the agent knows about.
+       @param dictionary The URN dictionary to use for the rest of the connection, or null to keep using URN strings.
+       @param keyframeInterval The number of ChangeSets between keyframes once ChangeSets are delta-coded, or zero to keep writing ChangeSets in full. Ignored if there is no dictionary.
+    */
+    public KAConnectOK(int requestID, EntityID agentID, Collection<? extends Entity> allEntities, Config config, URNDictionary dictionary, int keyframeInterval) {
+        this(requestID, agentID, allEntities, config);
+        this.dictionary.setDictionary(dictionary);
+        if (dictionary != null) {
+            this.dictionary.setKeyframeInterval(keyframeInterval);
+        }
+    }
+
+    /**
+       A populated KAConnectOK message that writes its entities from a cache of entity encodings.
+       @param requestID The request ID.
+       @param agentID The ID of the Entity that the agent will be controlling.
+       @param allEntities All Entities that the agent knows about, including the controlled object.
+       @param config The Config that the agent knows about.
+       @param dictionary The URN dictionary to use for the rest of the connection, or null to keep using URN strings.
+       @param keyframeInterval The number of ChangeSets between keyframes once ChangeSets are delta-coded, or zero to keep writing ChangeSets in full. Ignored if there is no dictionary.
+       @param encodings The cache to write entities from, or null to encode every entity.
+    */
+    public KAConnectOK(int requestID, EntityID agentID, Collection<? extends Entity> allEntities, Config config, URNDictionary dictionary, int keyframeInterval, EntityEncodingCache encodings) {
+        this(requestID, agentID, allEntities, config, dictionary, keyframeInterval);
+        this.world.setEncodingCache(encodings);
+    }
+
     private KAConnectOK() {
         super(ControlMessageURN.KA_CONNECT_OK);
         requestID = new IntComponent("Request ID");
         agentID = new EntityIDComponent("Agent ID");
         world = new EntityListComponent("Entities");
         config = new ConfigComponent("Agent config");
+        dictionary = new URNDictionaryComponent("URN dictionary");
         addMessageComponent(requestID);
         addMessageComponent(agentID);
         addMessageComponent(world);
         addMessageComponent(config);
+        // Must be last: older peers ignore trailing components
+        addMessageComponent(dictionary);
     }
 
     /**
@@ -92,4 +144,14 @@ public class KAConnectOK extends AbstractMessage implements Control {
     public Config getConfig() {
         return config.getConfig();
     }
+
+    @Override
+    public URNDictionary getURNDictionary() {
+        return dictionary.getDictionary();
+    }
+
+    @Override
+    public int getChangeSetKeyframeInterval() {
+        return dictionary.getKeyframeInterval();
+    }
 }
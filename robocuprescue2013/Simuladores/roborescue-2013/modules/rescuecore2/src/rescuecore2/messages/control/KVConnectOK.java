@@ -4,11 +4,15 @@ import java.util.Collection;
 
 import rescuecore2.messages.Control;
 import rescuecore2.messages.AbstractMessage;
+import rescuecore2.messages.URNDictionaryMessage;
 import rescuecore2.messages.components.IntComponent;
 import rescuecore2.messages.components.EntityListComponent;
+import rescuecore2.messages.components.EntityEncodingCache;
 import rescuecore2.messages.components.ConfigComponent;
+import rescuecore2.messages.components.URNDictionaryComponent;
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.config.Config;
+import rescuecore2.registry.URNDictionary;
 
 import java.io.InputStream;
 import java.io.IOException;
@@ -16,11 +20,12 @@ import java.io.IOException;
 /**
    A message for signalling a successful connection to the kernel.
  */
-public class KVConnectOK extends AbstractMessage implements Control {
+public class KVConnectOK extends AbstractMessage implements Control, URNDictionaryMessage {
     private IntComponent viewerID;
     private IntComponent requestID;
     private EntityListComponent world;
     private ConfigComponent config;
+    private URNDictionaryComponent dictionary;
 
     /**
        A KVConnectOK message that populates its data from a stream.
@@ -47,16 +52,63 @@ public class KVConnectOK extends AbstractMessage implements Control {
         this.config.setConfig(config);
     }
 
+    /**
+       A populated KVConnectOK message that also switches the connection to a compact URN dictionary.
+       @param viewerID The viewer ID.
+       @param requestID The request ID.
+       @param allEntities All Entities in the world.
+       @param config The Config that the agent knows about.
+       @param dictionary The URN dictionary to use for the rest of the connection, or null to keep using URN strings.
+    */
+    public KVConnectOK(int viewerID, int requestID, Collection<? extends Entity> allEntities, Config config, URNDictionary dictionary) {
+        this(viewerID, requestID, allEntities, config, dictionary, 0);
+    }
+
+    /**
+       A populated KVConnectOK message that also switches the connection to a compact URN dictionary and, optionally, to delta-coded ChangeSets.
+       @param viewerID The viewer ID.
+       @param requestID The request ID.
+       @param allEntities All Entities in the world.
+       @param config The Config that the agent knows about.
+       @param dictionary The URN dictionary to use for the rest of the connection, or null to keep using URN strings.
+       @param keyframeInterval The number of ChangeSets between keyframes once ChangeSets are delta-coded, or zero to keep writing ChangeSets in full. Ignored if there is no dictionary.
+    */
+    public KVConnectOK(int viewerID, int requestID, Collection<? extends Entity> allEntities, Config config, URNDictionary dictionary, int keyframeInterval) {
+        this(viewerID, requestID, allEntities, config);
+        this.dictionary.setDictionary(dictionary);
+        if (dictionary != null) {
+            this.dictionary.setKeyframeInterval(keyframeInterval);
+        }
+    }
+
+    /**
+       A populated KVConnectOK message that writes its entities from a cache of entity encodings.
+       @param viewerID The viewer ID.
+       @param requestID The request ID.
+       @param allEntities All Entities in the world.
+       @param config The Config that the agent knows about.
+       @param dictionary The URN dictionary to use for the rest of the connection, or null to keep using URN strings.
+       @param keyframeInterval The number of ChangeSets between keyframes once ChangeSets are delta-coded, or zero to keep writing ChangeSets in full. Ignored if there is no dictionary.
+       @param encodings The cache to write entities from, or null to encode every entity.
+    */
+    public KVConnectOK(int viewerID, int requestID, Collection<? extends Entity> allEntities, Config config, URNDictionary dictionary, int keyframeInterval, EntityEncodingCache encodings) {
+        this(viewerID, requestID, allEntities, config, dictionary, keyframeInterval);
+        this.world.setEncodingCache(encodings);
+    }
+
     private KVConnectOK() {
         super(ControlMessageURN.KV_CONNECT_OK);
         viewerID = new IntComponent("Viewer ID");
         requestID = new IntComponent("Request ID");
         world = new EntityListComponent("Entities");
         config = new ConfigComponent("Agent config");
+        dictionary = new URNDictionaryComponent("URN dictionary");
         addMessageComponent(requestID);
         addMessageComponent(viewerID);
         addMessageComponent(world);
         addMessageComponent(config);
+        // Must be last: older peers ignore trailing components
+        addMessageComponent(dictionary);
     }
 
     /**
@@ -90,4 +142,14 @@ public class KVConnectOK extends AbstractMessage implements Control {
     public Config getConfig() {
         return config.getConfig();
     }
+
+    @Override
+    public URNDictionary getURNDictionary() {
+        return dictionary.getDictionary();
+    }
+
+    @Override
+    public int getChangeSetKeyframeInterval() {
+        return dictionary.getKeyframeInterval();
+    }
 }
@@ -0,0 +1,111 @@
+package rescuecore2.misc;
+
+import java.io.InputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+/**
+   An unsynchronized InputStream that reads from a ByteBuffer. Nested structures can be decoded from {@link #slice(int) slices} of the buffer without copying the underlying bytes.
+ */
+public class ByteBufferInputStream extends InputStream {
+    private static final int BYTE_MASK = 0xFF;
+
+    private final ByteBuffer buffer;
+
+    /**
+       Create a ByteBufferInputStream that reads a whole byte array.
+       @param data The data to read.
+    */
+    public ByteBufferInputStream(byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    /**
+       Create a ByteBufferInputStream that reads the remaining bytes of a buffer. The stream takes ownership of the buffer's position.
+       @param buffer The buffer to read.
+    */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+       Get the underlying buffer. The buffer's position is the position of the next byte this stream will read.
+       @return The buffer.
+    */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+       Take the next <code>size</code> bytes as a new stream and skip over them in this one. The bytes are shared, not copied.
+       @param size The number of bytes to take.
+       @return A new ByteBufferInputStream over the next <code>size</code> bytes.
+       @throws EOFException If there are fewer than <code>size</code> bytes remaining.
+    */
+    public ByteBufferInputStream slice(int size) throws EOFException {
+        ensure(size);
+        ByteBuffer result = buffer.slice();
+        result.limit(size);
+        buffer.position(buffer.position() + size);
+        return new ByteBufferInputStream(result);
+    }
+
+    /**
+       Read a big-endian 32-bit integer.
+       @return The next integer.
+       @throws EOFException If there are fewer than four bytes remaining.
+    */
+    public int readInt32() throws EOFException {
+        ensure(EncodingTools.INT_32_SIZE);
+        return buffer.getInt();
+    }
+
+    /**
+       Read a big-endian double.
+       @return The next double.
+       @throws EOFException If there are fewer than eight bytes remaining.
+    */
+    public double readDouble() throws EOFException {
+        ensure(EncodingTools.INT_32_SIZE * 2);
+        return buffer.getDouble();
+    }
+
+    @Override
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return buffer.get() & BYTE_MASK;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int)Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    private void ensure(int size) throws EOFException {
+        if (size < 0 || buffer.remaining() < size) {
+            throw new EOFException("Broken input pipe. Wanted " + size + " bytes but only " + buffer.remaining() + " remain.");
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.EOFException;
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 import rescuecore2.worldmodel.Entity;
@@ -15,6 +16,7 @@ import rescuecore2.worldmodel.EntityID;
 import rescuecore2.worldmodel.Property;
 import rescuecore2.messages.Message;
 import rescuecore2.registry.Registry;
+import rescuecore2.registry.URNDictionary;
 
 /**
  * A bunch of useful tools for encoding and decoding things like integers.
@@ -23,6 +25,12 @@ public final class EncodingTools {
 	/** The size of an INT_32 in bytes. */
 	public static final int INT_32_SIZE = 4;
 
+	/**
+	 * First byte of a URN written as a dictionary code. A string URN never
+	 * starts with this byte because its length would be negative.
+	 */
+	private static final int URN_CODE_MARKER = 0xFF;
+
 	/** Charset for encoding/decoding strings. Should always be UTF-8 */
 	private static final Charset CHARSET = Charset.forName("UTF-8");
 
@@ -101,6 +109,9 @@ public final class EncodingTools {
 	 *             If the end of the stream is reached.
 	 */
 	public static int readInt32(InputStream in) throws IOException {
+		if (in instanceof ByteBufferInputStream) {
+			return ((ByteBufferInputStream) in).readInt32();
+		}
 		int first = in.read();
 		if (first == -1) {
 			throw new EOFException("Broken input pipe. Read 0 bytes of 4.");
@@ -176,8 +187,8 @@ public final class EncodingTools {
 	 * @return The next big-endian, 32-bit integer in the buffer.
 	 */
 	public static int readInt32(byte[] in, int offset) {
-		return (in[offset] << 24) | (in[offset + 1] << 16)
-				| (in[offset + 2] << 8) | (in[offset + 3]);
+		return (in[offset] << 24) | ((in[offset + 1] & 0xFF) << 16)
+				| ((in[offset + 2] & 0xFF) << 8) | (in[offset + 3] & 0xFF);
 	}
 
 	/**
@@ -426,6 +437,9 @@ public final class EncodingTools {
 	 *             If the end of the stream is reached.
 	 */
 	public static double readDouble(InputStream in) throws IOException {
+		if (in instanceof ByteBufferInputStream) {
+			return ((ByteBufferInputStream) in).readDouble();
+		}
 		long[] data = new long[8];
 		for (int i = 0; i < data.length; ++i) {
 			data[i] = in.read();
@@ -653,7 +667,7 @@ public final class EncodingTools {
 		byte[] bytes = gather.toByteArray();
 
 		// Type URN
-		writeString(e.getURN(), out);
+		writeURN(e.getURN(), out);
 		// EntityID
 		writeInt32(e.getID().getValue(), out);
 		// Size
@@ -699,17 +713,17 @@ public final class EncodingTools {
 	 *             If there is a problem reading from the stream.
 	 */
 	public static Entity readEntity(InputStream in) throws IOException {
-		String urn = readString(in);
+		String urn = readURN(in);
 		if ("".equals(urn)) {
 			return null;
 		}
 		int entityID = readInt32(in);
 		int size = readInt32(in);
-		byte[] content = readBytes(size, in);
+		InputStream content = readContent(size, in);
 		Entity result = Registry.getCurrentRegistry().createEntity(urn,
-				new EntityID(entityID));
+				EntityID.valueOf(entityID));
 		if (result != null) {
-			result.read(new ByteArrayInputStream(content));
+			result.read(content);
 		}
 		return result;
 	}
@@ -732,7 +746,7 @@ public final class EncodingTools {
 		int size = readInt32(in);
 		byte[] content = readBytes(size, in);
 		Entity result = Registry.getCurrentRegistry().createEntity(urn,
-				new EntityID(entityID));
+				EntityID.valueOf(entityID));
 		if (result != null) {
 			result.read(new ByteArrayInputStream(content));
 		}
@@ -752,7 +766,7 @@ public final class EncodingTools {
 	public static void writeProperty(Property p, OutputStream out)
 			throws IOException {
 		// Type
-		writeString(p.getURN(), out);
+		writeURN(p.getURN(), out);
 		writeBoolean(p.isDefined(), out);
 		if (p.isDefined()) {
 			ByteArrayOutputStream gather = new ByteArrayOutputStream();
@@ -801,17 +815,35 @@ public final class EncodingTools {
 	 *             If there is a problem reading from the stream.
 	 */
 	public static Property readProperty(InputStream in) throws IOException {
-		String urn = readString(in);
+		String urn = readURN(in);
 		if ("".equals(urn)) {
 			return null;
 		}
-		boolean defined = readBoolean(in);
+		return readPropertyValue(urn, readBoolean(in), in);
+	}
+
+	/**
+	 * Read the value of a property whose URN and defined flag have already
+	 * been read from an InputStream.
+	 * 
+	 * @param urn
+	 *            The property URN.
+	 * @param defined
+	 *            Whether the property has a value in the stream.
+	 * @param in
+	 *            The InputStream to read from.
+	 * @return A new Property, or null if the property URN is not recognised.
+	 * @throws IOException
+	 *             If there is a problem reading from the stream.
+	 */
+	public static Property readPropertyValue(String urn, boolean defined,
+			InputStream in) throws IOException {
 		Property result = Registry.getCurrentRegistry().createProperty(urn);
 		if (defined) {
 			int size = readInt32(in);
-			byte[] content = readBytes(size, in);
+			InputStream content = readContent(size, in);
 			if (result != null) {
-				result.read(new ByteArrayInputStream(content));
+				result.read(content);
 			}
 		}
 		return result;
@@ -862,7 +894,7 @@ public final class EncodingTools {
 		byte[] content = bytes.toByteArray();
 
 		// Type URN
-		writeString(m.getURN(), out);
+		writeURN(m.getURN(), out);
 		// Size
 		writeInt32(content.length, out);
 		// Content
@@ -905,14 +937,14 @@ public final class EncodingTools {
 	 *             If there is a problem reading from the stream.
 	 */
 	public static Message readMessage(InputStream in) throws IOException {
-		String urn = readString(in);
+		String urn = readURN(in);
 		if ("".equals(urn)) {
 			return null;
 		}
 		int size = readInt32(in);
-		byte[] content = readBytes(size, in);
+		InputStream content = readContent(size, in);
 		Message result = Registry.getCurrentRegistry().createMessage(urn,
-				new ByteArrayInputStream(content));
+				content);
 		return result;
 	}
 
@@ -1021,6 +1053,149 @@ public final class EncodingTools {
 		return Float.intBitsToFloat(in.readInt());
 	}
 
+	/**
+	 * Write a URN to an OutputStream. If the current thread has a
+	 * {@link URNDictionary} that contains the URN then a marker byte and the
+	 * varint code are written; otherwise the URN is written as a string.
+	 * 
+	 * @param urn
+	 *            The URN to write.
+	 * @param out
+	 *            The OutputStream to write to.
+	 * @throws IOException
+	 *             If the OutputStream blows up.
+	 */
+	public static void writeURN(String urn, OutputStream out)
+			throws IOException {
+		URNDictionary dictionary = URNDictionary.getCurrent();
+		int code = dictionary == null ? -1 : dictionary.getCode(urn);
+		if (code < 0) {
+			writeString(urn, out);
+			return;
+		}
+		out.write(URN_CODE_MARKER);
+		writeVarint(code, out);
+	}
+
+	/**
+	 * Read a URN written by {@link #writeURN(String, OutputStream)}. Codes are
+	 * decoded with the current thread's {@link URNDictionary}. If the stream
+	 * is a ByteBufferInputStream then string URNs are looked up in the current
+	 * Registry's URN cache instead of allocating a new String.
+	 * 
+	 * @param in
+	 *            The InputStream to read.
+	 * @return The URN.
+	 * @throws IOException
+	 *             If the InputStream blows up or a code is not recognised.
+	 */
+	public static String readURN(InputStream in) throws IOException {
+		if (in instanceof ByteBufferInputStream) {
+			ByteBufferInputStream bin = (ByteBufferInputStream) in;
+			ByteBuffer buffer = bin.getBuffer();
+			if (buffer.hasRemaining()
+					&& (buffer.get(buffer.position()) & 0xFF) == URN_CODE_MARKER) {
+				buffer.get();
+				return lookupURN(readVarint(in));
+			}
+			int length = bin.readInt32();
+			if (length < 0 || length > bin.available()) {
+				throw new EOFException("Broken input pipe. Read 0 bytes of "
+						+ length + ".");
+			}
+			String result = Registry.getCurrentRegistry().internURN(buffer,
+					buffer.position(), length);
+			buffer.position(buffer.position() + length);
+			return result;
+		}
+		int first = in.read();
+		if (first == -1) {
+			throw new EOFException("Broken input pipe. Read 0 bytes of 4.");
+		}
+		if (first == URN_CODE_MARKER) {
+			return lookupURN(readVarint(in));
+		}
+		byte[] rest = readBytes(3, in);
+		int length = (first << 24) | ((rest[0] & 0xFF) << 16)
+				| ((rest[1] & 0xFF) << 8) | (rest[2] & 0xFF);
+		return new String(readBytes(length, in), CHARSET);
+	}
+
+	private static String lookupURN(int code) throws IOException {
+		URNDictionary dictionary = URNDictionary.getCurrent();
+		String result = dictionary == null ? null : dictionary.getURN(code);
+		if (result == null) {
+			throw new IOException("Unrecognised URN code " + code);
+		}
+		return result;
+	}
+
+	/**
+	 * Write a non-negative integer as an unsigned LEB128 varint: seven bits
+	 * per byte, least significant group first, with the top bit set on every
+	 * byte except the last.
+	 * 
+	 * @param value
+	 *            The value to write.
+	 * @param out
+	 *            The OutputStream to write to.
+	 * @throws IOException
+	 *             If the OutputStream blows up.
+	 */
+	public static void writeVarint(int value, OutputStream out)
+			throws IOException {
+		int v = value;
+		while ((v & ~0x7F) != 0) {
+			out.write((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.write(v);
+	}
+
+	/**
+	 * Read an unsigned LEB128 varint.
+	 * 
+	 * @param in
+	 *            The InputStream to read.
+	 * @return The value.
+	 * @throws IOException
+	 *             If the InputStream blows up or the varint is malformed.
+	 */
+	public static int readVarint(InputStream in) throws IOException {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException("Broken input pipe while reading varint.");
+			}
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
 	/** CHECKSTYLE:ON:MagicNumber */
 
+	/**
+	 * Get an InputStream over the next <code>size</code> bytes of another
+	 * stream. ByteBufferInputStreams are sliced without copying; other
+	 * streams are copied into a new array.
+	 * 
+	 * @param size
+	 *            The number of bytes.
+	 * @param in
+	 *            The InputStream to read.
+	 * @return An InputStream over the bytes.
+	 * @throws IOException
+	 *             If the InputStream blows up.
+	 */
+	private static InputStream readContent(int size, InputStream in)
+			throws IOException {
+		if (in instanceof ByteBufferInputStream) {
+			return ((ByteBufferInputStream) in).slice(size);
+		}
+		return new ByteArrayInputStream(readBytes(size, in));
+	}
 }
@@ -0,0 +1,311 @@
+package rescuecore2.misc.collections;
+
+import java.util.Collection;
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.ConcurrentModificationException;
+
+/**
+   A map from primitive ints to objects. While keys are small and mostly contiguous the values are held in a dense array indexed by key; as soon as a key would leave the array too sparse the map switches to an open-addressing hash table with linear probing. Neither form boxes keys. Null values are not allowed. This class is not thread-safe.
+   @param <V> The type of value.
+*/
+public class IntObjectMap<V> {
+    private static final int INITIAL_CAPACITY = 16;
+    /** Keys below this are always held densely. */
+    private static final int MIN_DENSE_LIMIT = 1024;
+    /** The dense array may be at most this many times larger than the number of entries. */
+    private static final int DENSE_FACTOR = 4;
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    // Dense form: values indexed by key. Null if the map is hashed.
+    private Object[] dense;
+    // Hashed form: parallel key and value arrays. Null values mark empty slots.
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int modCount;
+    private Collection<V> valuesView;
+
+    /**
+       Construct an empty IntObjectMap.
+    */
+    public IntObjectMap() {
+        dense = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+       Get the number of entries.
+       @return The number of entries.
+    */
+    public int size() {
+        return size;
+    }
+
+    /**
+       Find out if this map is empty.
+       @return True if there are no entries.
+    */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+       Find out if this map is currently held as a dense array.
+       @return True if values are held in an array indexed by key.
+    */
+    public boolean isDense() {
+        return dense != null;
+    }
+
+    /**
+       Look up a value.
+       @param key The key.
+       @return The value, or null if there is no value for the key.
+    */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (dense != null) {
+            return key >= 0 && key < dense.length ? (V)dense[key] : null;
+        }
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V)values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+       Find out if there is a value for a key.
+       @param key The key.
+       @return True if there is a value for the key.
+    */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+       Add or replace a value.
+       @param key The key.
+       @param value The new value. Must not be null.
+       @return The old value, or null if there was no value for the key.
+    */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not allowed");
+        }
+        if (dense != null) {
+            if (key >= 0 && key < dense.length) {
+                return putDense(key, value);
+            }
+            if (key >= 0 && key < Math.max(MIN_DENSE_LIMIT, DENSE_FACTOR * (size + 1))) {
+                Object[] old = dense;
+                dense = new Object[Math.max(key + 1, old.length * 2)];
+                System.arraycopy(old, 0, dense, 0, old.length);
+                return putDense(key, value);
+            }
+            convertToHash();
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V)values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        ++size;
+        ++modCount;
+        // Keep the load factor at or below one half
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+       Remove a value.
+       @param key The key.
+       @return The removed value, or null if there was no value for the key.
+    */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (dense != null) {
+            if (key < 0 || key >= dense.length || dense[key] == null) {
+                return null;
+            }
+            V old = (V)dense[key];
+            dense[key] = null;
+            --size;
+            ++modCount;
+            return old;
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                break;
+            }
+        }
+        if (values[i] == null) {
+            return null;
+        }
+        V old = (V)values[i];
+        // Shift later entries in the same probe run back so lookups never stop early
+        int gap = i;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        --size;
+        ++modCount;
+        return old;
+    }
+
+    /**
+       Remove all entries. The map goes back to the dense form.
+    */
+    public void clear() {
+        dense = new Object[INITIAL_CAPACITY];
+        keys = null;
+        values = null;
+        size = 0;
+        ++modCount;
+    }
+
+    /**
+       Get a view of the values in this map. The view cannot be modified directly and its iterators fail if the map is modified while iterating.
+       @return A view of the values.
+    */
+    public Collection<V> values() {
+        if (valuesView == null) {
+            valuesView = new AbstractCollection<V>() {
+                @Override
+                public Iterator<V> iterator() {
+                    return new ValueIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return valuesView;
+    }
+
+    private V putDense(int key, V value) {
+        @SuppressWarnings("unchecked")
+        V old = (V)dense[key];
+        dense[key] = value;
+        if (old == null) {
+            ++size;
+            ++modCount;
+        }
+        return old;
+    }
+
+    private void convertToHash() {
+        Object[] old = dense;
+        dense = null;
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < (size + 1) * 2) {
+            capacity *= 2;
+        }
+        keys = new int[capacity];
+        values = new Object[capacity];
+        int count = size;
+        size = 0;
+        for (int i = 0; i < old.length && size < count; ++i) {
+            if (old[i] != null) {
+                insertNew(i, old[i]);
+            }
+        }
+        ++modCount;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] != null) {
+                insertNew(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void insertNew(int key, Object value) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        ++size;
+    }
+
+    private static int hash(int key) {
+        int h = key * HASH_MULTIPLIER;
+        // CHECKSTYLE:OFF:MagicNumber
+        return h ^ (h >>> 16);
+        // CHECKSTYLE:ON:MagicNumber
+    }
+
+    private class ValueIterator implements Iterator<V> {
+        private final Object[] array;
+        private final int expectedModCount;
+        private int index;
+
+        ValueIterator() {
+            array = dense != null ? dense : values;
+            expectedModCount = modCount;
+            index = -1;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < array.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (index >= array.length) {
+                throw new NoSuchElementException();
+            }
+            V result = (V)array[index];
+            advance();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void advance() {
+            do {
+                ++index;
+            } while (index < array.length && array[index] == null);
+        }
+    }
+}
@@ -2,8 +2,12 @@ package rescuecore2.registry;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.ArrayList;
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.worldmodel.EntityID;
@@ -37,6 +41,7 @@ public final class Registry {
 	private final Map<String, EntityFactory> entityFactories;
 	private final Map<String, PropertyFactory> propertyFactories;
 	private final Map<String, MessageFactory> messageFactories;
+	private final URNCache urns;
 
 	private final Registry parent;
 	private final String name;
@@ -83,6 +88,7 @@ public final class Registry {
 		entityFactories = new HashMap<String, EntityFactory>();
 		propertyFactories = new HashMap<String, PropertyFactory>();
 		messageFactories = new HashMap<String, MessageFactory>();
+		urns = new URNCache();
 	}
 
 	/**
@@ -121,6 +127,52 @@ public final class Registry {
 		return name;
 	}
 
+	/**
+	 * Decode a URN from its UTF-8 bytes. Each registry keeps a cache of the
+	 * URNs it has seen so that decoding a known URN does not allocate a new
+	 * String. The buffer position is not changed.
+	 * 
+	 * @param data
+	 *            The buffer containing the URN.
+	 * @param offset
+	 *            The absolute index of the first byte of the URN.
+	 * @param length
+	 *            The length of the URN in bytes.
+	 * @return The URN.
+	 */
+	public String internURN(ByteBuffer data, int offset, int length) {
+		return urns.get(data, offset, length);
+	}
+
+	/**
+	 * Create a URNDictionary that assigns a code to every entity, property
+	 * and message URN known to this registry and its parents. URNs are
+	 * sorted so that registries with the same factories produce the same
+	 * codes.
+	 * 
+	 * @return A new URNDictionary.
+	 */
+	public URNDictionary createURNDictionary() {
+		Set<String> all = new TreeSet<String>();
+		addURNs(all);
+		return new URNDictionary(new ArrayList<String>(all));
+	}
+
+	private void addURNs(Set<String> result) {
+		synchronized (entityFactories) {
+			result.addAll(entityFactories.keySet());
+		}
+		synchronized (propertyFactories) {
+			result.addAll(propertyFactories.keySet());
+		}
+		synchronized (messageFactories) {
+			result.addAll(messageFactories.keySet());
+		}
+		if (parent != null) {
+			parent.addURNs(result);
+		}
+	}
+
 	/**
 	 * Register an entity factory. This will register all entity URNs that the
 	 * factory knows about.
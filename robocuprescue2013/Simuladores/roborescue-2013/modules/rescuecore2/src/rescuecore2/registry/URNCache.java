@@ -0,0 +1,80 @@
+package rescuecore2.registry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A fixed-size table of URN strings keyed by their encoded bytes. Decoding a
+ * URN that is already in the table returns the shared String without creating
+ * any garbage.
+ */
+final class URNCache {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	/** Number of slots. Must be a power of two. */
+	private static final int CAPACITY = 1024;
+	/** Stop adding entries once the table is this full. */
+	private static final int MAX_ENTRIES = CAPACITY / 2;
+	private static final int HASH_MULTIPLIER = 31;
+
+	private final byte[][] keys;
+	private final String[] values;
+	private int size;
+
+	/**
+	 * Create an empty URNCache.
+	 */
+	URNCache() {
+		keys = new byte[CAPACITY][];
+		values = new String[CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * Get the String for some UTF-8 bytes, adding it to the cache if it is not
+	 * already present. The buffer position is not changed.
+	 *
+	 * @param data
+	 *            The buffer containing the bytes.
+	 * @param offset
+	 *            The absolute index of the first byte.
+	 * @param length
+	 *            The number of bytes.
+	 * @return The decoded String.
+	 */
+	synchronized String get(ByteBuffer data, int offset, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; ++i) {
+			hash = hash * HASH_MULTIPLIER + data.get(offset + i);
+		}
+		int slot = (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+		while (keys[slot] != null) {
+			if (matches(keys[slot], data, offset, length)) {
+				return values[slot];
+			}
+			slot = (slot + 1) & (CAPACITY - 1);
+		}
+		byte[] key = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			key[i] = data.get(offset + i);
+		}
+		String result = new String(key, CHARSET).intern();
+		if (size < MAX_ENTRIES) {
+			keys[slot] = key;
+			values[slot] = result;
+			++size;
+		}
+		return result;
+	}
+
+	private static boolean matches(byte[] key, ByteBuffer data, int offset, int length) {
+		if (key.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; ++i) {
+			if (key[i] != data.get(offset + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,102 @@
+package rescuecore2.registry;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Collections;
+
+/**
+ * An immutable mapping between URNs and small integer codes. A dictionary is
+ * negotiated when a component connects to the kernel; after that both ends of
+ * the connection can write URNs as varint codes instead of full strings.
+ */
+public final class URNDictionary {
+	private static final ThreadLocal<URNDictionary> CURRENT = new ThreadLocal<URNDictionary>();
+
+	private final List<String> urns;
+	private final Map<String, Integer> codes;
+
+	/**
+	 * Create a URNDictionary. Each URN is assigned its index in the list.
+	 *
+	 * @param urns
+	 *            The URNs in code order.
+	 */
+	public URNDictionary(List<String> urns) {
+		this.urns = Collections.unmodifiableList(new ArrayList<String>(urns));
+		codes = new HashMap<String, Integer>();
+		for (int i = 0; i < urns.size(); ++i) {
+			codes.put(urns.get(i), i);
+		}
+	}
+
+	/**
+	 * Get the dictionary used to encode and decode URNs on this thread.
+	 *
+	 * @return The current dictionary, or null if URNs should be written as
+	 *         strings.
+	 */
+	public static URNDictionary getCurrent() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Set the dictionary used to encode and decode URNs on this thread.
+	 *
+	 * @param d
+	 *            The new dictionary, or null to write URNs as strings.
+	 */
+	public static void setCurrent(URNDictionary d) {
+		CURRENT.set(d);
+	}
+
+	/**
+	 * Get the code for a URN.
+	 *
+	 * @param urn
+	 *            The URN to look up.
+	 * @return The code, or -1 if the URN is not in this dictionary.
+	 */
+	public int getCode(String urn) {
+		Integer result = codes.get(urn);
+		return result == null ? -1 : result;
+	}
+
+	/**
+	 * Get the URN for a code.
+	 *
+	 * @param code
+	 *            The code to look up.
+	 * @return The URN, or null if the code is not in this dictionary.
+	 */
+	public String getURN(int code) {
+		if (code < 0 || code >= urns.size()) {
+			return null;
+		}
+		return urns.get(code);
+	}
+
+	/**
+	 * Get all URNs in code order.
+	 *
+	 * @return An immutable list of URNs.
+	 */
+	public List<String> getURNs() {
+		return urns;
+	}
+
+	/**
+	 * Get the number of URNs in this dictionary.
+	 *
+	 * @return The number of URNs.
+	 */
+	public int size() {
+		return urns.size();
+	}
+
+	@Override
+	public String toString() {
+		return "URNDictionary (" + urns.size() + " URNs)";
+	}
+}
@@ -1,11 +1,17 @@
 package rescuecore2.worldmodel;
 
 import static rescuecore2.misc.EncodingTools.writeInt32;
-import static rescuecore2.misc.EncodingTools.writeString;
+import static rescuecore2.misc.EncodingTools.writeURN;
 import static rescuecore2.misc.EncodingTools.writeProperty;
 import static rescuecore2.misc.EncodingTools.readInt32;
-import static rescuecore2.misc.EncodingTools.readString;
+import static rescuecore2.misc.EncodingTools.readURN;
 import static rescuecore2.misc.EncodingTools.readProperty;
+import static rescuecore2.misc.EncodingTools.readPropertyValue;
+import static rescuecore2.misc.EncodingTools.writeBoolean;
+import static rescuecore2.misc.EncodingTools.readBoolean;
+import static rescuecore2.misc.EncodingTools.writeVarint;
+import static rescuecore2.misc.EncodingTools.readVarint;
+import static rescuecore2.misc.EncodingTools.readBytes;
 
 import java.util.Set;
 import java.util.HashSet;
@@ -15,16 +21,27 @@ import java.util.Collection;
 import java.util.Iterator;
 
 import java.io.OutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.EOFException;
 
 import rescuecore2.misc.collections.LazyMap;
+import rescuecore2.worldmodel.properties.IntProperty;
+import rescuecore2.worldmodel.properties.EntityRefProperty;
 import rescuecore2.log.Logger;
+import rescuecore2.registry.Registry;
 
 /**
    This class is used for accumulating changes to entities.
  */
 public class ChangeSet {
+    /** First byte of a delta-coded ChangeSet. A full ChangeSet starts with a non-negative entity count so its first byte is never this. */
+    private static final int DELTA_MARKER = 0xFF;
+    private static final int PROPERTY_UNDEFINED = 0;
+    private static final int PROPERTY_FULL = 1;
+    private static final int PROPERTY_DELTA = 2;
+
     private Map<EntityID, Map<String, Property>> changes;
     private Set<EntityID> deleted;
     private Map<EntityID, String> entityURNs;
@@ -163,11 +180,16 @@ public class ChangeSet {
     }
 
     /**
-       Write this ChangeSet to a stream.
+       Write this ChangeSet to a stream. If a {@link ChangeSetDelta} is set for the current thread then integer and entity reference properties are written as varint deltas against the last values written with that state.
        @param out The stream to write to.
        @throws IOException If there is a problem.
     */
     public void write(OutputStream out) throws IOException {
+        ChangeSetDelta delta = ChangeSetDelta.getCurrent();
+        if (delta != null) {
+            writeDelta(delta, out);
+            return;
+        }
         // Number of entity IDs
         writeInt32(changes.size(), out);
         for (Map.Entry<EntityID, Map<String, Property>> next : changes.entrySet()) {
@@ -175,7 +197,7 @@ public class ChangeSet {
             Collection<Property> props = next.getValue().values();
             // EntityID, URN, number of properties
             writeInt32(id.getValue(), out);
-            writeString(getEntityURN(id), out);
+            writeURN(getEntityURN(id), out);
             writeInt32(props.size(), out);
             for (Property prop : props) {
                 writeProperty(prop, out);
@@ -188,17 +210,32 @@ public class ChangeSet {
     }
 
     /**
-       Read this ChangeSet from a stream.
+       Read this ChangeSet from a stream. Both full and delta-coded ChangeSets can be read; delta-coded ChangeSets need the {@link ChangeSetDelta} that matches the sender to be set for the current thread.
        @param in The stream to read from.
        @throws IOException If there is a problem.
     */
     public void read(InputStream in) throws IOException {
         changes.clear();
         deleted.clear();
-        int entityCount = readInt32(in);
+        int first = in.read();
+        if (first == -1) {
+            throw new EOFException("Broken input pipe while reading ChangeSet");
+        }
+        if (first == DELTA_MARKER) {
+            ChangeSetDelta delta = ChangeSetDelta.getCurrent();
+            if (delta == null) {
+                throw new IOException("Delta-coded ChangeSet received without delta state");
+            }
+            readDelta(delta, in);
+            return;
+        }
+        byte[] rest = readBytes(3, in);
+        // CHECKSTYLE:OFF:MagicNumber
+        int entityCount = (first << 24) | ((rest[0] & 0xFF) << 16) | ((rest[1] & 0xFF) << 8) | (rest[2] & 0xFF);
+        // CHECKSTYLE:ON:MagicNumber
         for (int i = 0; i < entityCount; ++i) {
-            EntityID id = new EntityID(readInt32(in));
-            String urn = readString(in);
+            EntityID id = EntityID.valueOf(readInt32(in));
+            String urn = readURN(in);
             int propCount = readInt32(in);
             for (int j = 0; j < propCount; ++j) {
                 Property p = readProperty(in);
@@ -209,11 +246,96 @@ public class ChangeSet {
         }
         int deletedCount = readInt32(in);
         for (int i = 0; i < deletedCount; ++i) {
-            EntityID id = new EntityID(readInt32(in));
+            EntityID id = EntityID.valueOf(readInt32(in));
             deleted.add(id);
         }
     }
 
+    private void writeDelta(ChangeSetDelta delta, OutputStream out) throws IOException {
+        out.write(DELTA_MARKER);
+        writeBoolean(delta.startWrite(), out);
+        writeVarint(changes.size(), out);
+        for (Map.Entry<EntityID, Map<String, Property>> next : changes.entrySet()) {
+            EntityID id = next.getKey();
+            Collection<Property> props = next.getValue().values();
+            writeInt32(id.getValue(), out);
+            writeURN(getEntityURN(id), out);
+            writeVarint(props.size(), out);
+            for (Property prop : props) {
+                String urn = prop.getURN();
+                writeURN(urn, out);
+                if (!prop.isDefined()) {
+                    out.write(PROPERTY_UNDEFINED);
+                }
+                else if (prop instanceof IntProperty) {
+                    out.write(PROPERTY_DELTA);
+                    writeVarint(delta.encode(id, urn, ((IntProperty)prop).getValue()), out);
+                }
+                else if (prop instanceof EntityRefProperty) {
+                    out.write(PROPERTY_DELTA);
+                    writeVarint(delta.encode(id, urn, ((EntityRefProperty)prop).getValue().getValue()), out);
+                }
+                else {
+                    out.write(PROPERTY_FULL);
+                    ByteArrayOutputStream gather = new ByteArrayOutputStream();
+                    prop.write(gather);
+                    writeInt32(gather.size(), out);
+                    gather.writeTo(out);
+                }
+            }
+        }
+        writeVarint(deleted.size(), out);
+        for (EntityID next : deleted) {
+            writeInt32(next.getValue(), out);
+        }
+    }
+
+    private void readDelta(ChangeSetDelta delta, InputStream in) throws IOException {
+        delta.startRead(readBoolean(in));
+        int entityCount = readVarint(in);
+        for (int i = 0; i < entityCount; ++i) {
+            EntityID id = EntityID.valueOf(readInt32(in));
+            String entityURN = readURN(in);
+            int propCount = readVarint(in);
+            for (int j = 0; j < propCount; ++j) {
+                String urn = readURN(in);
+                int kind = in.read();
+                Property p;
+                switch (kind) {
+                case PROPERTY_UNDEFINED:
+                    p = readPropertyValue(urn, false, in);
+                    break;
+                case PROPERTY_FULL:
+                    p = readPropertyValue(urn, true, in);
+                    break;
+                case PROPERTY_DELTA:
+                    // Always decode so that the delta state stays in step with the sender
+                    int value = delta.decode(id, urn, readVarint(in));
+                    p = Registry.getCurrentRegistry().createProperty(urn);
+                    if (p instanceof IntProperty) {
+                        ((IntProperty)p).setValue(value);
+                    }
+                    else if (p instanceof EntityRefProperty) {
+                        ((EntityRefProperty)p).setValue(EntityID.valueOf(value));
+                    }
+                    else if (p != null) {
+                        throw new IOException("Delta-coded value for non-integer property " + urn);
+                    }
+                    break;
+                default:
+                    throw new IOException("Unrecognised property encoding " + kind + " for " + urn);
+                }
+                if (p != null) {
+                    addChange(id, entityURN, p);
+                }
+            }
+        }
+        int deletedCount = readVarint(in);
+        for (int i = 0; i < deletedCount; ++i) {
+            deleted.add(EntityID.valueOf(readInt32(in)));
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
@@ -0,0 +1,129 @@
+package rescuecore2.worldmodel;
+
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+   The state one end of a connection keeps for delta-coded ChangeSets. Integer and entity reference properties are sent as the difference from the last value sent for the same entity and property, so the sender and the receiver each keep one of these and update it in the same order. Every <code>keyframeInterval</code> ChangeSets the state is cleared so that both ends resynchronise and memory for deleted entities is released.
+ */
+public final class ChangeSetDelta {
+    private static final ThreadLocal<ChangeSetDelta> CURRENT = new ThreadLocal<ChangeSetDelta>();
+
+    private final int keyframeInterval;
+    private final Map<EntityID, Map<String, int[]>> lastValues;
+    private int count;
+
+    /**
+       Construct a ChangeSetDelta.
+       @param keyframeInterval The number of ChangeSets between keyframes. Must be positive.
+     */
+    public ChangeSetDelta(int keyframeInterval) {
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+        lastValues = new HashMap<EntityID, Map<String, int[]>>();
+        count = 0;
+    }
+
+    /**
+       Get the number of ChangeSets between keyframes.
+       @return The keyframe interval.
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+       Start writing a ChangeSet.
+       @return True if the ChangeSet should be written as a keyframe. The state has already been cleared if so.
+     */
+    public boolean startWrite() {
+        boolean keyframe = count % keyframeInterval == 0;
+        ++count;
+        if (keyframe) {
+            lastValues.clear();
+        }
+        return keyframe;
+    }
+
+    /**
+       Start reading a ChangeSet.
+       @param keyframe Whether the sender wrote the ChangeSet as a keyframe.
+     */
+    public void startRead(boolean keyframe) {
+        if (keyframe) {
+            lastValues.clear();
+        }
+    }
+
+    /**
+       Encode a value and remember it.
+       @param id The entity the value belongs to.
+       @param urn The property URN.
+       @param value The new value.
+       @return The zigzag-encoded difference from the last value sent.
+     */
+    public int encode(EntityID id, String urn, int value) {
+        int[] last = getLast(id, urn);
+        int delta = value - last[0];
+        last[0] = value;
+        // CHECKSTYLE:OFF:MagicNumber
+        return (delta << 1) ^ (delta >> 31);
+        // CHECKSTYLE:ON:MagicNumber
+    }
+
+    /**
+       Decode a value and remember it.
+       @param id The entity the value belongs to.
+       @param urn The property URN.
+       @param zigzag The zigzag-encoded difference returned by {@link #encode(EntityID, String, int)} on the sender.
+       @return The new value.
+     */
+    public int decode(EntityID id, String urn, int zigzag) {
+        int[] last = getLast(id, urn);
+        int delta = (zigzag >>> 1) ^ -(zigzag & 1);
+        last[0] += delta;
+        return last[0];
+    }
+
+    /**
+       Get the delta state for the current thread.
+       @return The delta state, or null if ChangeSets should be written in full.
+     */
+    public static ChangeSetDelta getCurrent() {
+        return CURRENT.get();
+    }
+
+    /**
+       Set the delta state for the current thread.
+       @param delta The delta state, or null to write ChangeSets in full.
+     */
+    public static void setCurrent(ChangeSetDelta delta) {
+        if (delta == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(delta);
+        }
+    }
+
+    private int[] getLast(EntityID id, String urn) {
+        Map<String, int[]> values = lastValues.get(id);
+        if (values == null) {
+            values = new HashMap<String, int[]>();
+            lastValues.put(id, values);
+        }
+        int[] last = values.get(urn);
+        if (last == null) {
+            last = new int[1];
+            values.put(urn, last);
+        }
+        return last;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSetDelta (keyframe every " + keyframeInterval + ")";
+    }
+}
@@ -8,19 +8,40 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 
+import rescuecore2.misc.collections.IntObjectMap;
+
 /**
-   Default implementation of a WorldModel.
+   Default implementation of a WorldModel. Entities are either kept in a HashMap keyed by EntityID or in an {@link IntObjectMap} keyed by the numeric ID, which avoids hashing EntityID objects on every lookup.
    @param <T> The subclass of Entity that this world model holds.
 */
 public class DefaultWorldModel<T extends Entity> extends AbstractWorldModel<T> {
+    private static volatile boolean intKeyedByDefault;
+
+    // Exactly one of these is non-null
     private Map<EntityID, T> entities;
+    private IntObjectMap<T> table;
 
     /**
-       Construct an empty world model.
+       Construct an empty world model that uses the default storage.
        @param clazz The class of objects that are allowed in this world model. This approach is a workaround for the limitations of Java generics.
+       @see #setIntKeyedByDefault(boolean)
     */
     public DefaultWorldModel(Class<? extends T> clazz) {
-        entities = new HashMap<EntityID, T>();
+        this(clazz, intKeyedByDefault);
+    }
+
+    /**
+       Construct an empty world model.
+       @param clazz The class of objects that are allowed in this world model. This approach is a workaround for the limitations of Java generics.
+       @param intKeyed True to keep entities in a table keyed by numeric ID, false to use a HashMap keyed by EntityID.
+    */
+    public DefaultWorldModel(Class<? extends T> clazz, boolean intKeyed) {
+        if (intKeyed) {
+            table = new IntObjectMap<T>();
+        }
+        else {
+            entities = new HashMap<EntityID, T>();
+        }
         registerAllowedClass(clazz);
     }
 
@@ -32,20 +53,52 @@ public class DefaultWorldModel<T extends Entity> extends AbstractWorldModel<T> {
         return new DefaultWorldModel<Entity>(Entity.class);
     }
 
+    /**
+       Set whether world models constructed without an explicit storage choice keep entities in a table keyed by numeric ID.
+       @param intKeyed True to use int-keyed storage by default.
+    */
+    public static void setIntKeyedByDefault(boolean intKeyed) {
+        intKeyedByDefault = intKeyed;
+    }
+
+    /**
+       Find out whether world models constructed without an explicit storage choice keep entities in a table keyed by numeric ID.
+       @return True if int-keyed storage is the default.
+    */
+    public static boolean isIntKeyedByDefault() {
+        return intKeyedByDefault;
+    }
+
+    /**
+       Find out whether this world model keeps entities in a table keyed by numeric ID.
+       @return True if this world model uses int-keyed storage.
+    */
+    public final boolean isIntKeyed() {
+        return table != null;
+    }
+
     @Override
     public final Collection<T> getAllEntities() {
-        return Collections.unmodifiableCollection(entities.values());
+        return Collections.unmodifiableCollection(table == null ? entities.values() : table.values());
     }
 
     @Override
     public final void addEntityImpl(T e) {
-        entities.put(e.getID(), e);
+        if (table == null) {
+            entities.put(e.getID(), e);
+        }
+        else {
+            table.put(e.getID().getValue(), e);
+        }
         fireEntityAdded(e);
     }
 
     @Override
     public final void removeEntity(EntityID id) {
-        T removed = entities.remove(id);
+        if (id == null) {
+            return;
+        }
+        T removed = table == null ? entities.remove(id) : table.remove(id.getValue());
         if (removed != null) {
             fireEntityRemoved(removed);
         }
@@ -53,8 +106,13 @@ public class DefaultWorldModel<T extends Entity> extends AbstractWorldModel<T> {
 
     @Override
     public final void removeAllEntities() {
-        Set<T> all = new HashSet<T>(entities.values());
-        entities.clear();
+        Set<T> all = new HashSet<T>(table == null ? entities.values() : table.values());
+        if (table == null) {
+            entities.clear();
+        }
+        else {
+            table.clear();
+        }
         for (T next : all) {
             fireEntityRemoved(next);
         }
@@ -62,11 +120,14 @@ public class DefaultWorldModel<T extends Entity> extends AbstractWorldModel<T> {
 
     @Override
     public final T getEntity(EntityID id) {
-        return entities.get(id);
+        if (id == null) {
+            return null;
+        }
+        return table == null ? entities.get(id) : table.get(id.getValue());
     }
 
     @Override
     public final Iterator<T> iterator() {
-        return entities.values().iterator();
+        return table == null ? entities.values().iterator() : table.values().iterator();
     }
 }
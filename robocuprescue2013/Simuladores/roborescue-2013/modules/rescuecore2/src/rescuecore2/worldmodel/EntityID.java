@@ -4,6 +4,13 @@ package rescuecore2.worldmodel;
    A type-safe ID class for entities. IDs are really just integers.
  */
 public final class EntityID {
+    private static final int INITIAL_CACHE_SIZE = 1024;
+    /** IDs at or above this are never cached. */
+    private static final int MAX_CACHE_SIZE = 1 << 20;
+
+    // Entries are filled in lazily and may be raced on; EntityID is immutable so any instance that is seen is fully constructed
+    private static volatile EntityID[] cache = new EntityID[INITIAL_CACHE_SIZE];
+
     private final int id;
 
     /**
@@ -14,8 +21,47 @@ public final class EntityID {
         this.id = id;
     }
 
+    /**
+       Get an EntityID object for a numeric ID. Non-negative IDs are interned so that decoding the same ID many times does not allocate; callers must still compare EntityIDs with equals.
+       @param id The numeric ID.
+       @return An EntityID for the numeric ID.
+     */
+    public static EntityID valueOf(int id) {
+        EntityID[] c = cache;
+        if (id < 0 || id >= MAX_CACHE_SIZE) {
+            return new EntityID(id);
+        }
+        if (id >= c.length) {
+            c = growCache(id);
+        }
+        EntityID result = c[id];
+        if (result == null) {
+            result = new EntityID(id);
+            c[id] = result;
+        }
+        return result;
+    }
+
+    private static synchronized EntityID[] growCache(int id) {
+        EntityID[] c = cache;
+        if (id < c.length) {
+            return c;
+        }
+        int size = c.length;
+        while (size <= id) {
+            size *= 2;
+        }
+        EntityID[] result = new EntityID[Math.min(size, MAX_CACHE_SIZE)];
+        System.arraycopy(c, 0, result, 0, c.length);
+        cache = result;
+        return result;
+    }
+
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if (o instanceof EntityID) {
             return this.id == ((EntityID)o).id;
         }
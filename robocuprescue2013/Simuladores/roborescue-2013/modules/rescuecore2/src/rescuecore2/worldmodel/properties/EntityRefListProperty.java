@@ -136,7 +136,7 @@ public class EntityRefListProperty extends AbstractProperty {
         int count = readInt32(in);
         List<EntityID> newIDs = new ArrayList<EntityID>(count);
         for (int i = 0; i < count; ++i) {
-            newIDs.add(new EntityID(readInt32(in)));
+            newIDs.add(EntityID.valueOf(readInt32(in)));
         }
         setValue(newIDs);
     }
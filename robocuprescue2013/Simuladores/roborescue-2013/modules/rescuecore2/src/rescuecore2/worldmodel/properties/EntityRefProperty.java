@@ -107,7 +107,7 @@ public class EntityRefProperty extends AbstractProperty {
 
     @Override
     public void read(InputStream in) throws IOException {
-        setValue(new EntityID(readInt32(in)));
+        setValue(EntityID.valueOf(readInt32(in)));
     }
 
     @Override
@@ -0,0 +1,96 @@
+package rescuecore2.connection;
+
+import static org.junit.Assert.fail;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import rescuecore2.config.Config;
+import rescuecore2.misc.Pair;
+
+public class NIOConnectionTest extends ConnectionTestCommon {
+    private static final int SERVER_PORT = 19244;
+
+    private static NIOReactor reactor;
+
+    private ServerSocketChannel server;
+
+    @Before
+    @Override
+    public void setup() throws IOException {
+        synchronized (NIOConnectionTest.class) {
+            if (reactor == null) {
+                reactor = new NIOReactor(2, 2);
+            }
+        }
+        server = ServerSocketChannel.open();
+        server.socket().setReuseAddress(true);
+        server.socket().bind(new InetSocketAddress(SERVER_PORT));
+        super.setup();
+    }
+
+    @After
+    public void shutdown() throws IOException {
+        server.close();
+    }
+
+    @AfterClass
+    public static void shutdownReactor() {
+        synchronized (NIOConnectionTest.class) {
+            if (reactor != null) {
+                reactor.shutdown();
+                reactor = null;
+            }
+        }
+    }
+
+    @Test
+    public void testSharedReactorShutsDownAfterLastUser() throws IOException, InterruptedException {
+        Config config = new Config();
+        NIOReactor shared = NIOReactor.getInstance(config);
+        assertTrue(shared.acquire());
+        assertTrue(shared.acquire());
+        shared.release();
+        Thread.sleep(DELAY / 10);
+        assertFalse(shared.isShutdown());
+        shared.release();
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!shared.isShutdown() && System.currentTimeMillis() < end) {
+            Thread.sleep(DELAY / 100);
+        }
+        assertTrue(shared.isShutdown());
+        assertFalse(shared.acquire());
+        NIOReactor next = NIOReactor.getInstance(config);
+        assertNotSame(shared, next);
+        next.shutdown();
+    }
+
+    @Test
+    public void testOwnedReactorStaysUp() throws InterruptedException {
+        assertTrue(reactor.acquire());
+        reactor.release();
+        Thread.sleep(DELAY / 10);
+        assertFalse(reactor.isShutdown());
+    }
+
+    @Override
+    protected Pair<Connection, Connection> makeConnectionPair() throws IOException {
+        Connection client = new NIOConnection("localhost", SERVER_PORT, reactor);
+        SocketChannel accepted = server.accept();
+        if (accepted == null) {
+            fail("No connection made");
+        }
+        Connection server = new NIOConnection(accepted, reactor);
+        return new Pair<Connection, Connection>(client, server);
+    }
+}
@@ -67,6 +67,43 @@ public class StreamConnectionTest extends ConnectionTestCommon {
         assertArrayEquals(EXPECTED_TEST_OUTPUT, bout.toByteArray());
     }
 
+    @Test
+    public void testBatchedWrites() throws IOException, InterruptedException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        TestInputStream in = new TestInputStream();
+        TestOutputStream out = new TestOutputStream(bout);
+        StreamConnection c = new StreamConnection(in, out);
+        // Queue several frames before the write thread starts so they share a flush
+        c.sendBytes(TEST_DATA);
+        c.sendBytes(TEST_DATA);
+        c.sendBytes(TEST_DATA);
+        c.startup();
+        Thread.sleep(DELAY);
+        byte[] expected = new byte[EXPECTED_TEST_OUTPUT.length * 3];
+        for (int i = 0; i < 3; ++i) {
+            System.arraycopy(EXPECTED_TEST_OUTPUT, 0, expected, i * EXPECTED_TEST_OUTPUT.length, EXPECTED_TEST_OUTPUT.length);
+        }
+        assertArrayEquals(expected, bout.toByteArray());
+        assertEquals(3, c.getFramesWritten());
+        assertEquals(expected.length, c.getBytesWritten());
+        assertEquals(1, c.getFlushCount());
+    }
+
+    @Test
+    public void testMaxBatchSize() throws IOException, InterruptedException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        TestInputStream in = new TestInputStream();
+        TestOutputStream out = new TestOutputStream(bout);
+        StreamConnection c = new StreamConnection(in, out);
+        c.setMaxBatchSize(EXPECTED_TEST_OUTPUT.length);
+        c.sendBytes(TEST_DATA);
+        c.sendBytes(TEST_DATA);
+        c.startup();
+        Thread.sleep(DELAY);
+        assertEquals(2, c.getFramesWritten());
+        assertEquals(2, c.getFlushCount());
+    }
+
     @Test
     public void testIOExceptionOnReadSize() throws IOException, InterruptedException {
         TestInputStream in = new TestInputStream(GOOD_INPUT);
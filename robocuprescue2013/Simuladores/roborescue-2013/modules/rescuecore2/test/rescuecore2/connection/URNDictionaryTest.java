@@ -0,0 +1,209 @@
+package rescuecore2.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.After;
+
+import rescuecore2.config.Config;
+import rescuecore2.messages.Command;
+import rescuecore2.messages.control.KAConnectOK;
+import rescuecore2.messages.control.KASense;
+import rescuecore2.misc.ByteBufferInputStream;
+import rescuecore2.misc.EncodingTools;
+import rescuecore2.misc.Pair;
+import rescuecore2.registry.PropertyFactory;
+import rescuecore2.registry.Registry;
+import rescuecore2.registry.URNDictionary;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.ChangeSetDelta;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.Property;
+import rescuecore2.worldmodel.properties.IntProperty;
+
+public class URNDictionaryTest {
+    private static final String PROPERTY_URN = "urn:test:property";
+    private static final String ENTITY_URN = "urn:test:entity";
+    private static final int TIMEOUT = 3000;
+
+    private Registry registry;
+    private AbstractConnection sender;
+    private AbstractConnection receiver;
+    private TestConnectionListener listener;
+
+    @Before
+    public void setup() {
+        registry = new Registry();
+        registry.registerPropertyFactory(new PropertyFactory() {
+                @Override
+                public Property makeProperty(String urn) {
+                    return new IntProperty(urn);
+                }
+
+                @Override
+                public String[] getKnownPropertyURNs() {
+                    return new String[] {PROPERTY_URN};
+                }
+            });
+        Pair<Connection, Connection> pair = StreamConnection.createConnectionPair();
+        sender = (AbstractConnection)pair.first();
+        receiver = (AbstractConnection)pair.second();
+        sender.setRegistry(registry);
+        receiver.setRegistry(registry);
+        listener = new TestConnectionListener();
+        receiver.addConnectionListener(listener);
+        sender.startup();
+        receiver.startup();
+    }
+
+    @After
+    public void shutdown() {
+        sender.shutdown();
+        receiver.shutdown();
+    }
+
+    @Test
+    public void testSwitchAfterConnectOK() throws ConnectionException {
+        URNDictionary dictionary = registry.createURNDictionary();
+        assertTrue(dictionary.getCode(PROPERTY_URN) >= 0);
+        sender.sendMessage(new KAConnectOK(1, new EntityID(1), new ArrayList<Entity>(), new Config(), dictionary));
+        ChangeSet changes = new ChangeSet();
+        changes.addChange(new EntityID(2), ENTITY_URN, new IntProperty(PROPERTY_URN, 42));
+        sender.sendMessage(new KASense(new EntityID(1), 1, changes, new ArrayList<Command>()));
+        listener.waitForMessages(2, TIMEOUT);
+        assertEquals(2, listener.getMessageCount());
+        assertEquals(dictionary, sender.getURNDictionary());
+        assertEquals(dictionary.getURNs(), receiver.getURNDictionary().getURNs());
+        KASense sense = (KASense)listener.getMessage(1);
+        assertEquals(ENTITY_URN, sense.getChangeSet().getEntityURN(new EntityID(2)));
+        assertEquals(42, ((IntProperty)sense.getChangeSet().getChangedProperty(new EntityID(2), PROPERTY_URN)).getValue().intValue());
+    }
+
+    @Test
+    public void testDeltaChangeSets() throws ConnectionException {
+        URNDictionary dictionary = registry.createURNDictionary();
+        sender.sendMessage(new KAConnectOK(1, new EntityID(1), new ArrayList<Entity>(), new Config(), dictionary, 2));
+        int[] values = {42, 40, -7, -7, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (int i = 0; i < values.length; ++i) {
+            ChangeSet changes = new ChangeSet();
+            changes.addChange(new EntityID(2), ENTITY_URN, new IntProperty(PROPERTY_URN, values[i]));
+            sender.sendMessage(new KASense(new EntityID(1), i, changes, new ArrayList<Command>()));
+        }
+        listener.waitForMessages(1 + values.length, TIMEOUT);
+        assertEquals(1 + values.length, listener.getMessageCount());
+        assertTrue(sender.isChangeSetDeltaEnabled());
+        assertTrue(receiver.isChangeSetDeltaEnabled());
+        for (int i = 0; i < values.length; ++i) {
+            KASense sense = (KASense)listener.getMessage(i + 1);
+            assertEquals(values[i], ((IntProperty)sense.getChangeSet().getChangedProperty(new EntityID(2), PROPERTY_URN)).getValue().intValue());
+        }
+    }
+
+    @Test
+    public void testDeltaEncoding() throws IOException {
+        Registry oldRegistry = Registry.getCurrentRegistry();
+        Registry.setCurrentRegistry(registry);
+        try {
+            checkDeltaEncoding();
+        }
+        finally {
+            Registry.setCurrentRegistry(oldRegistry);
+        }
+    }
+
+    private void checkDeltaEncoding() throws IOException {
+        ChangeSet changes = new ChangeSet();
+        changes.addChange(new EntityID(2), ENTITY_URN, new IntProperty(PROPERTY_URN, 100000));
+        ChangeSetDelta sendState = new ChangeSetDelta(2);
+        ChangeSetDelta receiveState = new ChangeSetDelta(2);
+        byte[][] encoded = new byte[3][];
+        for (int i = 0; i < encoded.length; ++i) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ChangeSetDelta.setCurrent(sendState);
+            try {
+                changes.write(out);
+            }
+            finally {
+                ChangeSetDelta.setCurrent(null);
+            }
+            encoded[i] = out.toByteArray();
+            ChangeSet read = new ChangeSet();
+            ChangeSetDelta.setCurrent(receiveState);
+            try {
+                read.read(new ByteBufferInputStream(encoded[i]));
+            }
+            finally {
+                ChangeSetDelta.setCurrent(null);
+            }
+            assertEquals(100000, ((IntProperty)read.getChangedProperty(new EntityID(2), PROPERTY_URN)).getValue().intValue());
+        }
+        // An unchanged value costs one byte after the keyframe, and the next keyframe sends it in full again
+        assertTrue(encoded[1].length < encoded[0].length);
+        assertEquals(encoded[0].length, encoded[2].length);
+        // Full ChangeSets can still be read with delta state set
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        changes.write(out);
+        ChangeSet read = new ChangeSet();
+        ChangeSetDelta.setCurrent(receiveState);
+        try {
+            read.read(new ByteBufferInputStream(out.toByteArray()));
+        }
+        finally {
+            ChangeSetDelta.setCurrent(null);
+        }
+        assertEquals(100000, ((IntProperty)read.getChangedProperty(new EntityID(2), PROPERTY_URN)).getValue().intValue());
+    }
+
+    @Test
+    public void testNoDictionary() throws ConnectionException {
+        sender.sendMessage(new KAConnectOK(1, new EntityID(1), new ArrayList<Entity>(), new Config()));
+        listener.waitForMessages(1, TIMEOUT);
+        assertEquals(1, listener.getMessageCount());
+        assertNull(sender.getURNDictionary());
+        assertNull(receiver.getURNDictionary());
+        assertFalse(sender.isChangeSetDeltaEnabled());
+    }
+
+    @Test
+    public void testURNEncoding() throws IOException {
+        URNDictionary dictionary = new URNDictionary(Arrays.asList("a", PROPERTY_URN));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        URNDictionary.setCurrent(dictionary);
+        try {
+            EncodingTools.writeURN(PROPERTY_URN, out);
+            EncodingTools.writeURN(ENTITY_URN, out);
+            byte[] bytes = out.toByteArray();
+            // Marker and one byte code, then a length-prefixed string
+            assertEquals(2 + EncodingTools.INT_32_SIZE + ENTITY_URN.length(), bytes.length);
+            ByteBufferInputStream in = new ByteBufferInputStream(bytes);
+            assertEquals(PROPERTY_URN, EncodingTools.readURN(in));
+            assertEquals(ENTITY_URN, EncodingTools.readURN(in));
+        }
+        finally {
+            URNDictionary.setCurrent(null);
+        }
+    }
+
+    @Test
+    public void testVarint() throws IOException {
+        int[] values = {0, 1, 127, 128, 300, 16384, Integer.MAX_VALUE};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int next : values) {
+            EncodingTools.writeVarint(next, out);
+        }
+        ByteBufferInputStream in = new ByteBufferInputStream(out.toByteArray());
+        for (int next : values) {
+            assertEquals(next, EncodingTools.readVarint(in));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package rescuecore2.log;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import rescuecore2.config.Config;
+
+public class AsyncLogWriterTest {
+    private static final int RECORDS = 50;
+    private static final int SLOW_WRITE = 2;
+
+    @Test
+    public void testSameBytesAsStreamWriter() throws LogException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        StreamLogWriter sync = new StreamLogWriter(expected);
+        AsyncLogWriter async = new AsyncLogWriter(actual, AsyncLogWriter.DEFAULT_CAPACITY);
+        writeRecords(sync);
+        writeRecords(async);
+        sync.close();
+        async.close();
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        assertEquals(RECORDS + 2, async.getRecordsWritten());
+    }
+
+    @Test
+    public void testBackpressure() throws LogException {
+        SlowStream slow = new SlowStream();
+        AsyncLogWriter async = new AsyncLogWriter(slow, 1);
+        writeRecords(async);
+        async.flush();
+        assertEquals(RECORDS + 2, async.getRecordsWritten());
+        assertEquals(0, async.getQueueDepth());
+        assertTrue(async.getStallCount() > 0);
+        assertTrue(async.getMaxQueueDepth() <= 1);
+        async.close();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        StreamLogWriter sync = new StreamLogWriter(expected);
+        writeRecords(sync);
+        sync.close();
+        assertArrayEquals(expected.toByteArray(), slow.toByteArray());
+    }
+
+    @Test(expected = LogException.class)
+    public void testWriteAfterClose() throws LogException {
+        AsyncLogWriter async = new AsyncLogWriter(new ByteArrayOutputStream(), 1);
+        async.close();
+        async.writeRecord(new EndLogRecord());
+    }
+
+    private void writeRecords(LogWriter writer) throws LogException {
+        writer.writeRecord(new StartLogRecord());
+        for (int i = 0; i < RECORDS; ++i) {
+            Config config = new Config();
+            config.setIntValue("test.record", i);
+            writer.writeRecord(new ConfigRecord(config));
+        }
+        writer.writeRecord(new EndLogRecord());
+    }
+
+    private static class SlowStream extends ByteArrayOutputStream {
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            try {
+                Thread.sleep(SLOW_WRITE);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void write(byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+    }
+}
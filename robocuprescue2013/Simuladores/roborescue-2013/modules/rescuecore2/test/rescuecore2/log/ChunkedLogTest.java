@@ -0,0 +1,174 @@
+package rescuecore2.log;
+
+import static rescuecore2.misc.EncodingTools.readInt32;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rescuecore2.config.Config;
+import rescuecore2.messages.Command;
+import rescuecore2.registry.Registry;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.DefaultWorldModel;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+
+public class ChunkedLogTest {
+    private static final int TIMESTEPS = 40;
+    private static final int AGENT = 7;
+    private static final int CHUNK_SIZE = 64;
+    private static final int PIECE_SIZE = 5;
+
+    private byte[] legacy;
+    private File legacyFile;
+    private File chunkedFile;
+
+    @Before
+    public void setup() throws LogException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StreamLogWriter writer = new StreamLogWriter(bytes);
+        writer.writeRecord(new StartLogRecord());
+        writer.writeRecord(new InitialConditionsRecord(new DefaultWorldModel<Entity>(Entity.class)));
+        Config config = new Config();
+        config.setValue("test.key", "chunked");
+        writer.writeRecord(new ConfigRecord(config));
+        for (int i = 1; i <= TIMESTEPS; ++i) {
+            writer.writeRecord(new PerceptionRecord(i, new EntityID(AGENT), new ChangeSet(), new ArrayList<Command>()));
+            writer.writeRecord(new CommandsRecord(i, new ArrayList<Command>()));
+            writer.writeRecord(new UpdatesRecord(i, new ChangeSet()));
+        }
+        writer.writeRecord(new EndLogRecord());
+        writer.close();
+        legacy = bytes.toByteArray();
+        legacyFile = File.createTempFile("legacy", ".log");
+        chunkedFile = File.createTempFile("chunked", ".log");
+        FileOutputStream out = new FileOutputStream(legacyFile);
+        out.write(legacy);
+        out.close();
+        // Feed the log in small pieces so records are split across writes
+        OutputStream chunked = new ChunkedLogOutputStream(chunkedFile, CHUNK_SIZE);
+        for (int i = 0; i < legacy.length; i += PIECE_SIZE) {
+            chunked.write(legacy, i, Math.min(PIECE_SIZE, legacy.length - i));
+        }
+        chunked.close();
+    }
+
+    @After
+    public void cleanup() {
+        legacyFile.delete();
+        chunkedFile.delete();
+    }
+
+    @Test
+    public void testSameContentsAsFileLog() throws LogException, IOException {
+        assertTrue(ChunkedLogOutputStream.isChunkedLog(chunkedFile));
+        assertFalse(ChunkedLogOutputStream.isChunkedLog(legacyFile));
+        LogReader expected = new FileLogReader(legacyFile, Registry.SYSTEM_REGISTRY);
+        LogReader actual = ChunkedLogReader.open(chunkedFile, Registry.SYSTEM_REGISTRY);
+        assertTrue(actual instanceof ChunkedLogReader);
+        assertEquals(expected.getMaxTimestep(), actual.getMaxTimestep());
+        assertEquals("chunked", actual.getConfig().getValue("test.key"));
+        assertTrue(actual.getWorldModel(TIMESTEPS).getAllEntities().isEmpty());
+        for (int i = 1; i <= TIMESTEPS; ++i) {
+            assertEquals(i, actual.getUpdates(i).getTime());
+            assertEquals(i, actual.getCommands(i).getTime());
+            assertEquals(expected.getEntitiesWithUpdates(i), actual.getEntitiesWithUpdates(i));
+            assertEquals(new EntityID(AGENT), actual.getPerception(i, new EntityID(AGENT)).getEntityID());
+        }
+        assertNull(actual.getUpdates(TIMESTEPS + 1));
+    }
+
+    @Test
+    public void testConvertBack() throws LogException, IOException {
+        ChunkedLogReader reader = new ChunkedLogReader(chunkedFile, Registry.SYSTEM_REGISTRY);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reader.writeLegacy(out);
+        reader.close();
+        assertArrayEquals(legacy, out.toByteArray());
+    }
+
+    @Test
+    public void testMissingIndex() throws LogException, IOException {
+        // Chop off the index and trailer as if the kernel had died before closing the log
+        RandomAccessFile raf = new RandomAccessFile(chunkedFile, "rw");
+        raf.seek(raf.length() - ChunkedLogOutputStream.TRAILER_SIZE);
+        long indexPosition = raf.readLong();
+        raf.setLength(indexPosition);
+        raf.close();
+        ChunkedLogReader reader = new ChunkedLogReader(chunkedFile, Registry.SYSTEM_REGISTRY);
+        assertEquals(TIMESTEPS, reader.getMaxTimestep());
+        assertEquals(TIMESTEPS, reader.getUpdates(TIMESTEPS).getTime());
+        assertEquals("chunked", reader.getConfig().getValue("test.key"));
+        reader.close();
+    }
+
+    @Test
+    public void testMissingIndexWithNegativeRecordSize() throws LogException, IOException {
+        writeDamagedLog(-ChunkedLogOutputStream.RECORD_HEADER_SIZE);
+        checkDamagedLog();
+    }
+
+    @Test
+    public void testMissingIndexWithOversizedRecord() throws LogException, IOException {
+        writeDamagedLog(Integer.MAX_VALUE);
+        checkDamagedLog();
+    }
+
+    /*
+     * Write an unindexed log whose first chunk holds the start record and then
+     * the header of a record with the given size, followed by a chunk holding
+     * the rest of the log.
+     */
+    private void writeDamagedLog(int size) throws IOException {
+        int first = ChunkedLogOutputStream.RECORD_HEADER_SIZE + readInt32(legacy, ChunkedLogOutputStream.RECORD_HEADER_SIZE / 2);
+        ByteArrayOutputStream damaged = new ByteArrayOutputStream();
+        damaged.write(legacy, 0, first);
+        DataOutputStream header = new DataOutputStream(damaged);
+        header.writeInt(RecordType.UPDATES.getID());
+        header.writeInt(size);
+        header.writeInt(TIMESTEPS + 1);
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(chunkedFile));
+        out.writeInt(ChunkedLogOutputStream.MAGIC);
+        out.writeInt(ChunkedLogOutputStream.VERSION);
+        writeChunk(out, damaged.toByteArray());
+        writeChunk(out, Arrays.copyOfRange(legacy, first, legacy.length));
+        out.close();
+    }
+
+    private void checkDamagedLog() throws LogException, IOException {
+        ChunkedLogReader reader = new ChunkedLogReader(chunkedFile, Registry.SYSTEM_REGISTRY);
+        assertEquals(TIMESTEPS, reader.getMaxTimestep());
+        assertEquals(TIMESTEPS, reader.getUpdates(TIMESTEPS).getTime());
+        assertEquals("chunked", reader.getConfig().getValue("test.key"));
+        reader.close();
+    }
+
+    private static void writeChunk(DataOutputStream out, byte[] data) throws IOException {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[data.length * 2 + 64];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        out.writeInt(data.length);
+        out.writeInt(length);
+        out.write(buffer, 0, length);
+    }
+}
@@ -0,0 +1,127 @@
+package rescuecore2.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rescuecore2.config.Config;
+import rescuecore2.messages.Command;
+import rescuecore2.registry.Registry;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.DefaultWorldModel;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+
+public class MappedLogReaderTest {
+    private static final int TIMESTEPS = 30;
+    private static final int AGENTS = 4;
+    private static final int THREADS = 4;
+
+    private File file;
+
+    @Before
+    public void setup() throws IOException, LogException {
+        file = File.createTempFile("mapped", ".log");
+        StreamLogWriter writer = new StreamLogWriter(new FileOutputStream(file));
+        writer.writeRecord(new StartLogRecord());
+        writer.writeRecord(new InitialConditionsRecord(new DefaultWorldModel<Entity>(Entity.class)));
+        Config config = new Config();
+        config.setValue("test.key", "mapped");
+        writer.writeRecord(new ConfigRecord(config));
+        for (int i = 1; i <= TIMESTEPS; ++i) {
+            for (int j = 0; j < AGENTS; ++j) {
+                writer.writeRecord(new PerceptionRecord(i, new EntityID(j), new ChangeSet(), new ArrayList<Command>()));
+            }
+            writer.writeRecord(new CommandsRecord(i, new ArrayList<Command>()));
+            writer.writeRecord(new UpdatesRecord(i, new ChangeSet()));
+        }
+        writer.writeRecord(new EndLogRecord());
+        writer.close();
+    }
+
+    @After
+    public void cleanup() {
+        file.delete();
+    }
+
+    @Test
+    public void testSameContentsAsFileLog() throws IOException, LogException {
+        LogReader expected = new FileLogReader(file, Registry.SYSTEM_REGISTRY);
+        LogReader actual = new MappedLogReader(file, Registry.SYSTEM_REGISTRY);
+        assertEquals(expected.getMaxTimestep(), actual.getMaxTimestep());
+        assertEquals("mapped", actual.getConfig().getValue("test.key"));
+        for (int i = 1; i <= TIMESTEPS; ++i) {
+            assertEquals(expected.getEntitiesWithUpdates(i), actual.getEntitiesWithUpdates(i));
+            assertEquals(i, actual.getPerception(i, new EntityID(1)).getTime());
+            assertEquals(i, actual.getCommands(i).getTime());
+            assertEquals(i, actual.getUpdates(i).getTime());
+        }
+        assertNull(actual.getPerception(1, new EntityID(AGENTS)));
+        assertTrue(actual.getWorldModel(TIMESTEPS).getAllEntities().isEmpty());
+    }
+
+    @Test
+    public void testOpenFallsBackToFileLogForBigLogs() throws IOException, LogException {
+        assertTrue(ChunkedLogReader.open(file, Registry.SYSTEM_REGISTRY) instanceof MappedLogReader);
+        LogReader reader = ChunkedLogReader.open(file, Registry.SYSTEM_REGISTRY, file.length() - 1);
+        assertTrue(reader instanceof FileLogReader);
+        assertEquals(TIMESTEPS, reader.getMaxTimestep());
+        assertEquals("mapped", reader.getConfig().getValue("test.key"));
+        assertEquals(TIMESTEPS, reader.getUpdates(TIMESTEPS).getTime());
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final LogReader reader = new MappedLogReader(file, Registry.SYSTEM_REGISTRY);
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger reads = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; ++t) {
+            final int offset = t;
+            threads.add(new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 1; i <= TIMESTEPS; ++i) {
+                                int time = (i + offset * TIMESTEPS / THREADS) % TIMESTEPS + 1;
+                                for (EntityID next : reader.getEntitiesWithUpdates(time)) {
+                                    if (reader.getPerception(time, next).getTime() != time) {
+                                        errors.incrementAndGet();
+                                    }
+                                    reads.incrementAndGet();
+                                }
+                                if (reader.getUpdates(time).getTime() != time) {
+                                    errors.incrementAndGet();
+                                }
+                                reader.getWorldModel(time);
+                            }
+                        }
+                        // CHECKSTYLE:OFF:IllegalCatch
+                        catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        // CHECKSTYLE:ON:IllegalCatch
+                    }
+                });
+        }
+        for (Thread next : threads) {
+            next.start();
+        }
+        for (Thread next : threads) {
+            next.join();
+        }
+        assertEquals(0, errors.get());
+        assertEquals(THREADS * TIMESTEPS * AGENTS, reads.get());
+    }
+}
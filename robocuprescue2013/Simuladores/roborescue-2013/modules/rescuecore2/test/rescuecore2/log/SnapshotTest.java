@@ -0,0 +1,112 @@
+package rescuecore2.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rescuecore2.config.Config;
+import rescuecore2.messages.Command;
+import rescuecore2.registry.Registry;
+import rescuecore2.worldmodel.AbstractEntity;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.DefaultWorldModel;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.WorldModel;
+
+public class SnapshotTest {
+    private static final int SNAPSHOT_TIME = 5;
+    private static final int TIMESTEPS = 10;
+
+    private File plain;
+    private File chunked;
+
+    @Before
+    public void setup() throws IOException, LogException {
+        plain = File.createTempFile("snapshot", ".log");
+        chunked = File.createTempFile("snapshot-chunked", ".log");
+        writeLog(new FileOutputStream(plain));
+        writeLog(new ChunkedLogOutputStream(chunked, ChunkedLogOutputStream.DEFAULT_CHUNK_SIZE));
+    }
+
+    @After
+    public void cleanup() {
+        plain.delete();
+        chunked.delete();
+    }
+
+    @Test
+    public void testSeekFromSnapshot() throws IOException, LogException {
+        // The updates before the snapshot are missing, so these only work if the readers start from the snapshot
+        assertTrue(new FileLogReader(plain, Registry.SYSTEM_REGISTRY).getWorldModel(TIMESTEPS).getAllEntities().isEmpty());
+        assertTrue(new ChunkedLogReader(chunked, Registry.SYSTEM_REGISTRY).getWorldModel(TIMESTEPS).getAllEntities().isEmpty());
+        assertTrue(new MappedLogReader(plain, Registry.SYSTEM_REGISTRY).getWorldModel(TIMESTEPS).getAllEntities().isEmpty());
+        assertEquals(TIMESTEPS, new FileLogReader(plain, Registry.SYSTEM_REGISTRY).getMaxTimestep());
+    }
+
+    @Test
+    public void testKeyFrameCacheEviction() {
+        KeyFrameCache cache = new KeyFrameCache(4);
+        cache.put(0, makeWorld(2));
+        cache.put(3, makeWorld(2));
+        assertEquals(2, cache.size());
+        // Using time 0 makes time 3 the least recently used
+        assertEquals(Integer.valueOf(0), cache.floorEntry(2).getKey());
+        cache.put(6, makeWorld(2));
+        assertEquals(2, cache.size());
+        assertEquals(Integer.valueOf(0), cache.floorEntry(5).getKey());
+        assertEquals(Integer.valueOf(6), cache.floorEntry(7).getKey());
+        // A single world larger than the limit is still kept
+        cache.put(8, makeWorld(10));
+        assertEquals(1, cache.size());
+        assertNull(cache.floorEntry(7));
+    }
+
+    private void writeLog(OutputStream out) throws LogException {
+        StreamLogWriter writer = new StreamLogWriter(out);
+        writer.writeRecord(new StartLogRecord());
+        writer.writeRecord(new InitialConditionsRecord(new DefaultWorldModel<Entity>(Entity.class)));
+        writer.writeRecord(new ConfigRecord(new Config()));
+        writer.writeRecord(new SnapshotRecord(SNAPSHOT_TIME, new DefaultWorldModel<Entity>(Entity.class)));
+        for (int i = SNAPSHOT_TIME + 1; i <= TIMESTEPS; ++i) {
+            writer.writeRecord(new CommandsRecord(i, new ArrayList<Command>()));
+            writer.writeRecord(new UpdatesRecord(i, new ChangeSet()));
+        }
+        writer.writeRecord(new EndLogRecord());
+        writer.close();
+    }
+
+    private WorldModel<? extends Entity> makeWorld(int size) {
+        WorldModel<Entity> world = new DefaultWorldModel<Entity>(Entity.class);
+        for (int i = 0; i < size; ++i) {
+            world.addEntity(new TestEntity(new EntityID(i)));
+        }
+        return world;
+    }
+
+    private static class TestEntity extends AbstractEntity {
+        TestEntity(EntityID id) {
+            super(id);
+        }
+
+        @Override
+        protected Entity copyImpl() {
+            return new TestEntity(getID());
+        }
+
+        @Override
+        public String getURN() {
+            return "urn:rescuecore2:test:entity";
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package rescuecore2.messages.components;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rescuecore2.misc.EncodingTools;
+import rescuecore2.worldmodel.AbstractEntity;
+import rescuecore2.worldmodel.DefaultWorldModel;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.worldmodel.properties.IntProperty;
+
+public class EntityEncodingCacheTest {
+    private WorldModel<Entity> world;
+    private TestEntity entity;
+    private EntityEncodingCache cache;
+
+    @Before
+    public void setup() {
+        world = new DefaultWorldModel<Entity>(Entity.class);
+        entity = new TestEntity(new EntityID(1));
+        entity.value.setValue(1);
+        world.addEntity(entity);
+        cache = new EntityEncodingCache(world);
+    }
+
+    @Test
+    public void testSameEncoding() throws IOException {
+        assertArrayEquals(encode(entity), cached(entity));
+        assertEquals(1, cache.size());
+        assertArrayEquals(encode(entity), cached(entity));
+    }
+
+    @Test
+    public void testPropertyChange() throws IOException {
+        cached(entity);
+        entity.value.setValue(2);
+        assertEquals(0, cache.size());
+        assertArrayEquals(encode(entity), cached(entity));
+    }
+
+    @Test
+    public void testEntityNotInWorld() throws IOException {
+        TestEntity copy = new TestEntity(entity.getID());
+        copy.value.setValue(3);
+        assertArrayEquals(encode(copy), cached(copy));
+        assertEquals(0, cache.size());
+        world.removeEntity(entity);
+        world.addEntity(copy);
+        assertArrayEquals(encode(copy), cached(copy));
+        assertEquals(1, cache.size());
+    }
+
+    private byte[] encode(Entity e) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncodingTools.writeEntity(e, out);
+        return out.toByteArray();
+    }
+
+    private byte[] cached(Entity e) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.write(e, out);
+        return out.toByteArray();
+    }
+
+    private static class TestEntity extends AbstractEntity {
+        private IntProperty value;
+
+        TestEntity(EntityID id) {
+            super(id);
+            value = new IntProperty("urn:rescuecore2:test:property");
+            registerProperties(value);
+        }
+
+        @Override
+        protected Entity copyImpl() {
+            return new TestEntity(getID());
+        }
+
+        @Override
+        public String getURN() {
+            return "urn:rescuecore2:test:entity";
+        }
+    }
+}
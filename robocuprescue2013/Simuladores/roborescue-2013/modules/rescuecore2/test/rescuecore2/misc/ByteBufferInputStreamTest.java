@@ -0,0 +1,49 @@
+package rescuecore2.misc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class ByteBufferInputStreamTest {
+    @Test
+    public void testReadPrimitives() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncodingTools.writeInt32(-12345, out);
+        EncodingTools.writeDouble(2.5, out);
+        EncodingTools.writeString("urn:test", out);
+        ByteBufferInputStream in = new ByteBufferInputStream(out.toByteArray());
+        assertEquals(-12345, EncodingTools.readInt32(in));
+        assertEquals(2.5, EncodingTools.readDouble(in), 0);
+        assertEquals("urn:test", EncodingTools.readString(in));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testSlice() throws IOException {
+        ByteBufferInputStream in = new ByteBufferInputStream(new byte[] {1, 2, 3, 4, 5});
+        assertEquals(1, in.read());
+        ByteBufferInputStream slice = in.slice(2);
+        assertEquals(2, slice.available());
+        assertEquals(2, slice.read());
+        assertEquals(3, slice.read());
+        assertEquals(-1, slice.read());
+        assertEquals(4, in.read());
+        assertEquals(1, in.available());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testSliceTooLong() throws IOException {
+        ByteBufferInputStream in = new ByteBufferInputStream(new byte[] {1, 2, 3});
+        in.slice(4);
+    }
+
+    @Test(expected = EOFException.class)
+    public void testReadInt32TooShort() throws IOException {
+        ByteBufferInputStream in = new ByteBufferInputStream(new byte[] {1, 2, 3});
+        EncodingTools.readInt32(in);
+    }
+}
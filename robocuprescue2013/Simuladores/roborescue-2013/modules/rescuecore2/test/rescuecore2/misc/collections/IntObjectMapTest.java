@@ -0,0 +1,92 @@
+package rescuecore2.misc.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.ConcurrentModificationException;
+
+import org.junit.Test;
+
+import rescuecore2.worldmodel.EntityID;
+
+public class IntObjectMapTest {
+    private static final int COUNT = 5000;
+
+    @Test
+    public void testDense() {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+        for (int i = 0; i < COUNT; ++i) {
+            assertNull(map.put(i, "v" + i));
+        }
+        assertTrue(map.isDense());
+        assertEquals(COUNT, map.size());
+        assertEquals("v17", map.get(17));
+        assertEquals("v17", map.put(17, "x"));
+        assertEquals("x", map.remove(17));
+        assertNull(map.get(17));
+        assertNull(map.get(-1));
+        assertNull(map.get(COUNT));
+        assertEquals(COUNT - 1, map.size());
+        assertEquals(COUNT - 1, map.values().size());
+    }
+
+    @Test
+    public void testSparseKeysSwitchToHash() {
+        IntObjectMap<Integer> map = new IntObjectMap<Integer>();
+        map.put(1, 1);
+        map.put(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        map.put(-5, -5);
+        assertFalse(map.isDense());
+        assertEquals(Integer.valueOf(1), map.get(1));
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), map.get(Integer.MAX_VALUE));
+        assertEquals(Integer.valueOf(-5), map.get(-5));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        IntObjectMap<Integer> map = new IntObjectMap<Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random random = new Random(1);
+        for (int i = 0; i < COUNT * 4; ++i) {
+            int key = random.nextInt(COUNT) * 37;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int i = 0; i < COUNT; ++i) {
+            assertEquals(expected.get(i * 37), map.get(i * 37));
+        }
+        Set<Integer> values = new HashSet<Integer>(map.values());
+        assertEquals(new HashSet<Integer>(expected.values()), values);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testModificationDuringIteration() {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+        map.put(1, "a");
+        map.put(2, "b");
+        for (String next : map.values()) {
+            map.put(3, "c");
+        }
+    }
+
+    @Test
+    public void testEntityIDValueOf() {
+        assertSame(EntityID.valueOf(1234), EntityID.valueOf(1234));
+        assertEquals(new EntityID(99999), EntityID.valueOf(99999));
+        assertEquals(new EntityID(-3), EntityID.valueOf(-3));
+    }
+}
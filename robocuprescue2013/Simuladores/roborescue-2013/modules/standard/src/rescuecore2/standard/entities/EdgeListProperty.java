@@ -146,7 +146,7 @@ public class EdgeListProperty extends AbstractProperty {
             EntityID neighbour = null;
             int id = readInt32(in);
             if (id != 0) {
-                neighbour = new EntityID(id);
+                neighbour = EntityID.valueOf(id);
             }
             edges.add(new Edge(startX, startY, endX, endY, neighbour));
         }
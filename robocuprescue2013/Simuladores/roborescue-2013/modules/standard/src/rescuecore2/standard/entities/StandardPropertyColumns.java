@@ -0,0 +1,289 @@
+package rescuecore2.standard.entities;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+
+import rescuecore2.misc.collections.IntObjectMap;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityListener;
+import rescuecore2.worldmodel.Property;
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.worldmodel.WorldModelListener;
+import rescuecore2.worldmodel.properties.IntProperty;
+import rescuecore2.worldmodel.properties.BooleanProperty;
+import rescuecore2.worldmodel.properties.EntityRefProperty;
+
+/**
+   A column-oriented copy of the integer, boolean and entity reference properties of every entity in a StandardWorldModel. Entities of each type are given dense slots in an {@link EntityTable} and each property is held in a primitive {@link IntColumn} indexed by slot, so scans over all buildings or all civilians read arrays instead of chasing property objects. The entities remain the authoritative copy: the columns are kept up to date through world model and entity listeners, and the usual accessors such as {@link Building#getTemperature()} keep working. This class is not thread-safe; read the columns from the thread that updates the world model.
+   <p>
+   This is deliberately a read-side mirror rather than the backing store for the properties. Making the columns the backing store would change every property class and every entity, and entities are also created and updated outside any world model, for example while decoding messages. The mirror has costs of its own: every entity in the world model carries one extra entity listener, every property change on such an entity runs that listener to look up the slot and copy the value into its column, and each tracked property takes an int and a bit per entity on top of the property object. None of this is paid until {@link StandardWorldModel#getPropertyColumns()} is first called, so only world models that are scanned in bulk, such as the kernel's, carry the mirror.
+ */
+public class StandardPropertyColumns {
+    private final Map<StandardEntityURN, EntityTable> tables;
+    private final ColumnUpdater updater;
+
+    /**
+       Construct a StandardPropertyColumns that tracks a world model.
+       @param world The world model to track.
+     */
+    StandardPropertyColumns(StandardWorldModel world) {
+        tables = new EnumMap<StandardEntityURN, EntityTable>(StandardEntityURN.class);
+        updater = new ColumnUpdater();
+        for (StandardEntity next : world) {
+            add(next);
+        }
+        world.addWorldModelListener(updater);
+    }
+
+    /**
+       Get the table for a type of entity.
+       @param type The entity type.
+       @return The table, or null if the world has never contained an entity of that type.
+     */
+    public EntityTable getTable(StandardEntityURN type) {
+        return tables.get(type);
+    }
+
+    /**
+       Get the tables for every entity type that is a subclass of a given class, for example all the building types for <code>Building.class</code>.
+       @param clazz The class of entity.
+       @return The matching tables.
+     */
+    public List<EntityTable> getTables(Class<? extends StandardEntity> clazz) {
+        List<EntityTable> result = new ArrayList<EntityTable>();
+        for (EntityTable next : tables.values()) {
+            if (clazz.isAssignableFrom(next.entityClass)) {
+                result.add(next);
+            }
+        }
+        return result;
+    }
+
+    private void add(StandardEntity e) {
+        EntityTable table = tables.get(e.getStandardURN());
+        if (table == null) {
+            table = new EntityTable(e.getClass());
+            tables.put(e.getStandardURN(), table);
+        }
+        table.add(e);
+        e.addEntityListener(updater);
+    }
+
+    private void remove(StandardEntity e) {
+        EntityTable table = tables.get(e.getStandardURN());
+        if (table != null) {
+            table.remove(e);
+        }
+        e.removeEntityListener(updater);
+    }
+
+    private static boolean isColumnProperty(Property p) {
+        return p instanceof IntProperty || p instanceof BooleanProperty || p instanceof EntityRefProperty;
+    }
+
+    private static int getColumnValue(Property p) {
+        if (p instanceof IntProperty) {
+            return ((IntProperty)p).getValue();
+        }
+        if (p instanceof BooleanProperty) {
+            return ((BooleanProperty)p).getValue() ? 1 : 0;
+        }
+        return ((EntityRefProperty)p).getValue().getValue();
+    }
+
+    /**
+       The entities of one type and their property columns. Slots are dense: they run from zero to {@link #size()} - 1, and removing an entity moves the entity in the last slot into the gap.
+     */
+    public static final class EntityTable {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final Class<? extends StandardEntity> entityClass;
+        private StandardEntity[] entities;
+        private int size;
+        private final IntObjectMap<Integer> slots;
+        private final Map<String, IntColumn> columns;
+
+        private EntityTable(Class<? extends StandardEntity> entityClass) {
+            this.entityClass = entityClass;
+            entities = new StandardEntity[INITIAL_CAPACITY];
+            slots = new IntObjectMap<Integer>();
+            columns = new HashMap<String, IntColumn>();
+        }
+
+        /**
+           Get the number of entities in this table.
+           @return The number of entities.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+           Get the entity in a slot.
+           @param slot The slot.
+           @return The entity.
+         */
+        public StandardEntity getEntity(int slot) {
+            return entities[slot];
+        }
+
+        /**
+           Get a property column.
+           @param urn The property URN.
+           @return The column, or null if entities in this table do not have an integer, boolean or entity reference property with that URN.
+         */
+        public IntColumn getColumn(StandardPropertyURN urn) {
+            return columns.get(urn.toString());
+        }
+
+        private void add(StandardEntity e) {
+            int id = e.getID().getValue();
+            if (slots.containsKey(id)) {
+                return;
+            }
+            if (size == entities.length) {
+                entities = Arrays.copyOf(entities, size * 2);
+                for (IntColumn next : columns.values()) {
+                    next.grow(size * 2);
+                }
+            }
+            int slot = size++;
+            entities[slot] = e;
+            slots.put(id, slot);
+            for (Property p : e.getProperties()) {
+                if (!isColumnProperty(p)) {
+                    continue;
+                }
+                IntColumn column = columns.get(p.getURN());
+                if (column == null) {
+                    column = new IntColumn(entities.length);
+                    columns.put(p.getURN(), column);
+                }
+                column.set(slot, p);
+            }
+        }
+
+        private void remove(StandardEntity e) {
+            Integer slot = slots.remove(e.getID().getValue());
+            if (slot == null) {
+                return;
+            }
+            int last = --size;
+            if (slot != last) {
+                entities[slot] = entities[last];
+                slots.put(entities[slot].getID().getValue(), slot);
+                for (IntColumn next : columns.values()) {
+                    next.move(last, slot);
+                }
+            }
+            entities[last] = null;
+            for (IntColumn next : columns.values()) {
+                next.clear(last);
+            }
+        }
+
+        private void update(Entity e, Property p) {
+            Integer slot = slots.get(e.getID().getValue());
+            if (slot == null) {
+                return;
+            }
+            IntColumn column = columns.get(p.getURN());
+            if (column != null) {
+                column.set(slot, p);
+            }
+        }
+    }
+
+    /**
+       The values of one property for every entity in an {@link EntityTable}, indexed by slot. Booleans are stored as 1 or 0 and entity references as the numeric ID.
+     */
+    public static final class IntColumn {
+        // CHECKSTYLE:OFF:MagicNumber
+        private static final int BITS_PER_WORD = 64;
+        private static final int WORD_SHIFT = 6;
+        // CHECKSTYLE:ON:MagicNumber
+
+        private int[] values;
+        private long[] defined;
+
+        private IntColumn(int capacity) {
+            values = new int[capacity];
+            defined = new long[(capacity + BITS_PER_WORD - 1) / BITS_PER_WORD];
+        }
+
+        /**
+           Find out if the property is defined for the entity in a slot.
+           @param slot The slot.
+           @return True if the property is defined.
+         */
+        public boolean isDefined(int slot) {
+            return (defined[slot >>> WORD_SHIFT] & (1L << slot)) != 0;
+        }
+
+        /**
+           Get the value of the property for the entity in a slot.
+           @param slot The slot.
+           @return The value, or zero if the property is undefined.
+         */
+        public int get(int slot) {
+            return values[slot];
+        }
+
+        private void set(int slot, Property p) {
+            if (p.isDefined()) {
+                values[slot] = getColumnValue(p);
+                defined[slot >>> WORD_SHIFT] |= 1L << slot;
+            }
+            else {
+                clear(slot);
+            }
+        }
+
+        private void clear(int slot) {
+            values[slot] = 0;
+            defined[slot >>> WORD_SHIFT] &= ~(1L << slot);
+        }
+
+        private void move(int from, int to) {
+            if (isDefined(from)) {
+                values[to] = values[from];
+                defined[to >>> WORD_SHIFT] |= 1L << to;
+            }
+            else {
+                clear(to);
+            }
+        }
+
+        private void grow(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+            defined = Arrays.copyOf(defined, (capacity + BITS_PER_WORD - 1) / BITS_PER_WORD);
+        }
+    }
+
+    private class ColumnUpdater implements WorldModelListener<StandardEntity>, EntityListener {
+        @Override
+        public void entityAdded(WorldModel<? extends StandardEntity> model, StandardEntity e) {
+            add(e);
+        }
+
+        @Override
+        public void entityRemoved(WorldModel<? extends StandardEntity> model, StandardEntity e) {
+            remove(e);
+        }
+
+        @Override
+        public void propertyChanged(Entity e, Property p, Object oldValue, Object newValue) {
+            if (!isColumnProperty(p)) {
+                return;
+            }
+            EntityTable table = tables.get(((StandardEntity)e).getStandardURN());
+            if (table != null) {
+                table.update(e, p);
+            }
+        }
+    }
+}
@@ -33,8 +33,9 @@ public class StandardWorldModel extends DefaultWorldModel<StandardEntity> {
     private Map<StandardEntityURN, Collection<StandardEntity>> storedTypes;
     private Set<StandardEntity> unindexedEntities;
     private Map<Human, Rectangle> humanRectangles;
+    private StandardPropertyColumns columns;
 
-    private boolean indexed;
+    private volatile boolean indexed;
     private int minX;
     private int maxX;
     private int minY;
@@ -44,7 +45,15 @@ public class StandardWorldModel extends DefaultWorldModel<StandardEntity> {
        Create a StandardWorldModel.
     */
     public StandardWorldModel() {
-        super(StandardEntity.class);
+        this(isIntKeyedByDefault());
+    }
+
+    /**
+       Create a StandardWorldModel.
+       @param intKeyed True to keep entities in a table keyed by numeric ID, false to use a HashMap keyed by EntityID.
+    */
+    public StandardWorldModel(boolean intKeyed) {
+        super(StandardEntity.class, intKeyed);
         storedTypes = new EnumMap<StandardEntityURN, Collection<StandardEntity>>(StandardEntityURN.class);
         unindexedEntities = new HashSet<StandardEntity>();
         humanRectangles = new HashMap<Human, Rectangle>();
@@ -85,9 +94,9 @@ public class StandardWorldModel extends DefaultWorldModel<StandardEntity> {
     }
 
     /**
-       Re-index the world model.
+       Re-index the world model. This is synchronized so that concurrent readers triggering the lazy index do not build it twice.
     */
-    public void index() {
+    public synchronized void index() {
         if (indexed && unindexedEntities.isEmpty()) {
             Logger.debug("Not bothering with reindex: No entities are currently unindexed");
             return;
@@ -176,7 +185,7 @@ public class StandardWorldModel extends DefaultWorldModel<StandardEntity> {
         index.intersects(r, new IntProcedure() {
                 @Override
                 public boolean execute(int id) {
-                    StandardEntity e = getEntity(new EntityID(id));
+                    StandardEntity e = getEntity(EntityID.valueOf(id));
                     if (e != null) {
                         result.add(e);
                     }
@@ -199,6 +208,17 @@ public class StandardWorldModel extends DefaultWorldModel<StandardEntity> {
         return storedTypes.get(urn);
     }
 
+    /**
+       Get the column-oriented view of entity properties for bulk scans. The view is created on first use and then kept up to date as the world model changes, which adds a listener to every entity and work to every property change from then on; see {@link StandardPropertyColumns}.
+       @return The property columns for this world model.
+    */
+    public synchronized StandardPropertyColumns getPropertyColumns() {
+        if (columns == null) {
+            columns = new StandardPropertyColumns(this);
+        }
+        return columns;
+    }
+
     /**
        Get all entities of a set of types.
        @param urns The type urns to look up.
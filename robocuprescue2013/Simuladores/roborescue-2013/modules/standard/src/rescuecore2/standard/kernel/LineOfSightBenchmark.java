@@ -0,0 +1,147 @@
+package rescuecore2.standard.kernel;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+
+import kernel.KernelConstants;
+import kernel.KernelException;
+import kernel.WorldModelCreator;
+
+import rescuecore2.config.Config;
+import rescuecore2.config.ConfigException;
+import rescuecore2.misc.CommandLineOptions;
+import rescuecore2.misc.java.JavaTools;
+import rescuecore2.worldmodel.ChangeSet;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.Property;
+import rescuecore2.worldmodel.WorldModel;
+import rescuecore2.log.Logger;
+
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.Human;
+
+import java.io.IOException;
+
+/**
+   Timing test for line of sight perception. Loads a map through the configured GIS, computes what every human can see with and without the spatial index and reports rays per second for each. Also checks that both methods produce the same perception, and reports how often the sightline cache is hit when nothing moves.
+*/
+public final class LineOfSightBenchmark {
+    private static final String ITERATIONS_KEY = "perception.los.benchmark.iterations";
+    private static final int DEFAULT_ITERATIONS = 5;
+
+    private static final String RAY_COUNT_KEY = "perception.los.ray-count";
+    private static final int DEFAULT_RAY_COUNT = 720;
+
+    private static final String SPATIAL_INDEX_KEY = "perception.los.spatial-index";
+    private static final String CACHE_KEY = "perception.los.cache";
+    private static final String GIS_AUTO_KEY = KernelConstants.GIS_KEY + ".auto";
+
+    private static final double MS_PER_SECOND = 1000.0;
+
+    private LineOfSightBenchmark() {}
+
+    /**
+       Run the benchmark.
+       @param args Command line arguments: -c config-file [--perception.los.benchmark.iterations=n] [--gis.map.dir=dir]
+    */
+    public static void main(String[] args) {
+        Config config = new Config();
+        try {
+            CommandLineOptions.processArgs(args, config);
+            WorldModelCreator gis = JavaTools.instantiate(config.getValue(GIS_AUTO_KEY), WorldModelCreator.class);
+            if (gis == null) {
+                Logger.error("Could not create GIS " + config.getValue(GIS_AUTO_KEY));
+                return;
+            }
+            WorldModel<? extends Entity> model = gis.buildWorldModel(config);
+            StandardWorldModel world = StandardWorldModel.createStandardWorldModel(model);
+            List<StandardEntity> viewers = new ArrayList<StandardEntity>();
+            for (StandardEntity next : world) {
+                if (next instanceof Human) {
+                    viewers.add(next);
+                }
+            }
+            int iterations = config.getIntValue(ITERATIONS_KEY, DEFAULT_ITERATIONS);
+            long rays = (long)iterations * viewers.size() * config.getIntValue(RAY_COUNT_KEY, DEFAULT_RAY_COUNT);
+            System.out.println(config.getValue("gis.map.dir", "") + ": " + world.getAllEntities().size() + " entities, " + viewers.size() + " viewers, " + iterations + " iterations");
+
+            config.setBooleanValue(CACHE_KEY, false);
+            config.setBooleanValue(SPATIAL_INDEX_KEY, false);
+            LineOfSightPerception plain = new LineOfSightPerception();
+            plain.initialise(config, world);
+            config.setBooleanValue(SPATIAL_INDEX_KEY, true);
+            LineOfSightPerception indexed = new LineOfSightPerception();
+            indexed.initialise(config, world);
+
+            List<ChangeSet> expected = new ArrayList<ChangeSet>();
+            long plainTime = time(plain, viewers, iterations, expected);
+            List<ChangeSet> actual = new ArrayList<ChangeSet>();
+            long indexedTime = time(indexed, viewers, iterations, actual);
+            report("Brute force", rays, plainTime);
+            report("Spatial index", rays, indexedTime);
+            config.setBooleanValue(CACHE_KEY, true);
+            LineOfSightPerception cached = new LineOfSightPerception();
+            cached.initialise(config, world);
+            List<ChangeSet> cachedResults = new ArrayList<ChangeSet>();
+            long cachedTime = time(cached, viewers, iterations, cachedResults);
+            report("Spatial index and cache", rays, cachedTime);
+            System.out.println("Cache: " + cached.getCacheHits() + " hits, " + cached.getCacheMisses() + " misses");
+            int mismatches = 0;
+            for (int i = 0; i < viewers.size(); ++i) {
+                if (!sameChanges(expected.get(i), actual.get(i)) || !sameChanges(expected.get(i), cachedResults.get(i))) {
+                    System.out.println("Perception differs for " + viewers.get(i));
+                    ++mismatches;
+                }
+            }
+            System.out.println(mismatches == 0 ? "Perception identical" : mismatches + " viewers have different perception");
+        }
+        catch (IOException e) {
+            Logger.error("Error reading config", e);
+        }
+        catch (ConfigException e) {
+            Logger.error("Config error", e);
+        }
+        catch (KernelException e) {
+            Logger.error("Error building world model", e);
+        }
+    }
+
+    private static long time(LineOfSightPerception perception, List<StandardEntity> viewers, int iterations, List<ChangeSet> results) {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < iterations; ++i) {
+            for (StandardEntity next : viewers) {
+                ChangeSet changes = perception.getVisibleEntities(next);
+                if (i == iterations - 1) {
+                    results.add(changes);
+                }
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void report(String name, long rays, long time) {
+        double raysPerSecond = time == 0 ? Double.POSITIVE_INFINITY : rays * MS_PER_SECOND / time;
+        System.out.println(name + ": " + rays + " rays in " + time + "ms (" + (long)raysPerSecond + " rays/sec)");
+    }
+
+    private static boolean sameChanges(ChangeSet a, ChangeSet b) {
+        if (!a.getChangedEntities().equals(b.getChangedEntities())) {
+            return false;
+        }
+        for (EntityID id : a.getChangedEntities()) {
+            for (Property p : a.getChangedProperties(id)) {
+                Property other = b.getChangedProperty(id, p.getURN());
+                if (other == null || !Arrays.deepEquals(new Object[] {p.getValue()}, new Object[] {other.getValue()})) {
+                    return false;
+                }
+            }
+            if (a.getChangedProperties(id).size() != b.getChangedProperties(id).size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
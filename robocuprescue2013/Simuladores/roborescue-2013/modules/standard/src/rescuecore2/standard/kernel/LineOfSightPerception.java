@@ -7,9 +7,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import kernel.Perception;
 import kernel.AgentProxy;
+import kernel.Kernel;
+import kernel.KernelListenerAdapter;
 
 import rescuecore2.worldmodel.Entity;
 import rescuecore2.worldmodel.EntityID;
@@ -29,6 +34,7 @@ import rescuecore2.misc.geometry.Vector2D;
 import rescuecore2.misc.geometry.GeometryTools2D;
 import rescuecore2.log.Logger;
 import rescuecore2.GUIComponent;
+import rescuecore2.Timestep;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
@@ -47,6 +53,7 @@ import rescuecore2.standard.entities.Human;
 import rescuecore2.standard.entities.AmbulanceTeam;
 import rescuecore2.standard.entities.FireBrigade;
 import rescuecore2.standard.entities.StandardEntityURN;
+import rescuecore2.standard.entities.StandardPropertyURN;
 import rescuecore2.standard.view.StandardWorldModelViewer;
 import rescuecore2.standard.view.StandardViewLayer;
 import rescuecore2.standard.view.BuildingLayer;
@@ -55,18 +62,22 @@ import rescuecore2.standard.view.RoadBlockageLayer;
 import rescuecore2.standard.view.HumanLayer;
 
 /**
-   Line of sight perception.
+   Line of sight perception. The rays cast from each agent are cached until the agent moves or the geometry around it changes.
  */
-public class LineOfSightPerception implements Perception, GUIComponent {
+public class LineOfSightPerception extends KernelListenerAdapter implements Perception, GUIComponent {
     private static final int DEFAULT_VIEW_DISTANCE = 30000;
     private static final int DEFAULT_HP_PRECISION = 1000;
     private static final int DEFAULT_DAMAGE_PRECISION = 100;
     private static final int DEFAULT_RAY_COUNT = 720;
+    private static final int DEFAULT_CACHE_TOLERANCE = 0;
 
     private static final String VIEW_DISTANCE_KEY = "perception.los.max-distance";
     private static final String RAY_COUNT_KEY = "perception.los.ray-count";
     private static final String HP_PRECISION_KEY = "perception.los.precision.hp";
     private static final String DAMAGE_PRECISION_KEY = "perception.los.precision.damage";
+    private static final String SPATIAL_INDEX_KEY = "perception.los.spatial-index";
+    private static final String CACHE_KEY = "perception.los.cache";
+    private static final String CACHE_TOLERANCE_KEY = "perception.los.cache.tolerance";
 
     private static final IntersectionSorter INTERSECTION_SORTER = new IntersectionSorter();
 
@@ -74,6 +85,17 @@ public class LineOfSightPerception implements Perception, GUIComponent {
     private int hpPrecision;
     private int damagePrecision;
     private int rayCount;
+    private boolean useSpatialIndex;
+    private boolean useCache;
+    private int cacheTolerance;
+
+    /** Cached sightlines for each agent. Access must be synchronized on this map. */
+    private Map<EntityID, Sightlines> cache;
+    /** The epoch at which the geometry of each entity last changed. */
+    private Map<EntityID, Integer> geometryChanges;
+    private int epoch;
+    private AtomicLong cacheHits;
+    private AtomicLong cacheMisses;
 
     private StandardWorldModel world;
     private Config config;
@@ -94,6 +116,14 @@ public class LineOfSightPerception implements Perception, GUIComponent {
         hpPrecision = config.getIntValue(HP_PRECISION_KEY, DEFAULT_HP_PRECISION);
         damagePrecision = config.getIntValue(DAMAGE_PRECISION_KEY, DEFAULT_DAMAGE_PRECISION);
         rayCount = config.getIntValue(RAY_COUNT_KEY, DEFAULT_RAY_COUNT);
+        useSpatialIndex = config.getBooleanValue(SPATIAL_INDEX_KEY, true);
+        useCache = config.getBooleanValue(CACHE_KEY, true);
+        cacheTolerance = config.getIntValue(CACHE_TOLERANCE_KEY, DEFAULT_CACHE_TOLERANCE);
+        cache = new HashMap<EntityID, Sightlines>();
+        geometryChanges = new HashMap<EntityID, Integer>();
+        epoch = 0;
+        cacheHits = new AtomicLong();
+        cacheMisses = new AtomicLong();
         view = null;
     }
 
@@ -122,11 +152,65 @@ public class LineOfSightPerception implements Perception, GUIComponent {
             view.clear();
             view.refresh();
         }
+        if (useCache) {
+            Logger.debug("Line of sight cache: " + cacheHits.get() + " hits, " + cacheMisses.get() + " misses");
+        }
+    }
+
+    @Override
+    public void timestepCompleted(Kernel kernel, Timestep time) {
+        ChangeSet changes = time.getChangeSet();
+        if (changes == null) {
+            return;
+        }
+        synchronized (cache) {
+            ++epoch;
+            for (EntityID next : changes.getChangedEntities()) {
+                if (StandardEntityURN.BLOCKADE.toString().equals(changes.getEntityURN(next))
+                    || changes.getChangedProperty(next, StandardPropertyURN.EDGES.toString()) != null) {
+                    geometryChanges.put(next, epoch);
+                }
+            }
+            for (EntityID next : changes.getDeletedEntities()) {
+                geometryChanges.put(next, epoch);
+            }
+        }
+    }
+
+    @Override
+    public void simulationEnded(Kernel kernel) {
+        if (useCache) {
+            Logger.info("Line of sight cache: " + cacheHits.get() + " hits, " + cacheMisses.get() + " misses");
+        }
+    }
+
+    /**
+       Get the number of times cached sightlines have been reused.
+       @return The number of cache hits.
+    */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+       Get the number of times sightlines have had to be recomputed.
+       @return The number of cache misses.
+    */
+    public long getCacheMisses() {
+        return cacheMisses.get();
     }
 
     @Override
     public ChangeSet getVisibleEntities(AgentProxy agent) {
-        StandardEntity agentEntity = (StandardEntity)agent.getControlledEntity();
+        return getVisibleEntities((StandardEntity)agent.getControlledEntity());
+    }
+
+    /**
+       Determine what an entity can see.
+       @param agentEntity The entity that is perceiving the world.
+       @return The visible entities and properties.
+    */
+    ChangeSet getVisibleEntities(StandardEntity agentEntity) {
         Logger.debug("Finding visible entities for " + agentEntity);
         ChangeSet result = new ChangeSet();
         // Look for objects within range
@@ -268,45 +352,109 @@ public class LineOfSightPerception implements Perception, GUIComponent {
     private Collection<StandardEntity> findVisible(StandardEntity agentEntity, Point2D location, Collection<StandardEntity> nearby) {
         Logger.debug("Finding visible entities from " + location);
         Logger.debug(nearby.size() + " nearby entities");
-        Collection<LineInfo> lines = getAllLines(nearby);
+        Sightlines sight = getSightlines(agentEntity, location, nearby);
+        Collection<StandardEntity> result = new HashSet<StandardEntity>(sight.getRayHits());
+        // Now look for humans
+        for (StandardEntity next : nearby) {
+            if (next instanceof Human) {
+                Human h = (Human)next;
+                if (canSee(agentEntity, location, h, sight.getLines(), sight.getGrid())) {
+                    result.add(h);
+                }
+            }
+        }
+        // Add self
+        result.add(agentEntity);
+        Logger.debug(agentEntity + " can see " + result);
+        return result;
+    }
+
+    private Sightlines getSightlines(StandardEntity agentEntity, Point2D location, Collection<StandardEntity> nearby) {
+        Set<StandardEntity> owners = new HashSet<StandardEntity>();
+        for (StandardEntity next : nearby) {
+            if (next instanceof Area || next instanceof Blockade) {
+                owners.add(next);
+            }
+        }
+        if (!useCache) {
+            return castRays(agentEntity, location, owners);
+        }
+        Sightlines result;
+        synchronized (cache) {
+            result = cache.get(agentEntity.getID());
+            if (result != null && !isValid(result, location, owners)) {
+                result = null;
+            }
+        }
+        if (result != null) {
+            cacheHits.incrementAndGet();
+            if (view != null) {
+                for (Ray next : result.getRays()) {
+                    view.addRay(agentEntity, next);
+                }
+            }
+            return result;
+        }
+        cacheMisses.incrementAndGet();
+        result = castRays(agentEntity, location, owners);
+        synchronized (cache) {
+            cache.put(agentEntity.getID(), result);
+        }
+        return result;
+    }
+
+    private boolean isValid(Sightlines sight, Point2D location, Set<StandardEntity> owners) {
+        if (Math.abs(location.getX() - sight.getOrigin().getX()) > cacheTolerance
+            || Math.abs(location.getY() - sight.getOrigin().getY()) > cacheTolerance) {
+            return false;
+        }
+        if (!sight.getOwners().equals(owners)) {
+            return false;
+        }
+        for (StandardEntity next : owners) {
+            Integer changed = geometryChanges.get(next.getID());
+            if (changed != null && changed > sight.getEpoch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Sightlines castRays(StandardEntity agentEntity, Point2D location, Set<StandardEntity> owners) {
+        int created;
+        synchronized (cache) {
+            created = epoch;
+        }
+        List<LineInfo> lines = getAllLines(owners);
+        LineGrid grid = useSpatialIndex ? new LineGrid(lines, location, viewDistance) : null;
         // Cast rays
         // CHECKSTYLE:OFF:MagicNumber
         double dAngle = Math.PI * 2 / rayCount;
         // CHECKSTYLE:ON:MagicNumber
-        Collection<StandardEntity> result = new HashSet<StandardEntity>();
+        Collection<StandardEntity> hits = new HashSet<StandardEntity>();
+        List<Ray> rays = new ArrayList<Ray>();
         for (int i = 0; i < rayCount; ++i) {
             double angle = i * dAngle;
             Vector2D vector = new Vector2D(Math.sin(angle), Math.cos(angle)).scale(viewDistance);
-            Ray ray = new Ray(new Line2D(location, vector), lines);
+            Ray ray = new Ray(new Line2D(location, vector), lines, grid);
             for (LineInfo hit : ray.getLinesHit()) {
                 StandardEntity e = hit.getEntity();
-                result.add(e);
+                hits.add(e);
             }
             if (view != null) {
                 view.addRay(agentEntity, ray);
+                rays.add(ray);
             }
         }
-        // Now look for humans
-        for (StandardEntity next : nearby) {
-            if (next instanceof Human) {
-                Human h = (Human)next;
-                if (canSee(agentEntity, location, h, lines)) {
-                    result.add(h);
-                }
-            }
-        }
-        // Add self
-        result.add(agentEntity);
-        Logger.debug(agentEntity + " can see " + result);
-        return result;
+        return new Sightlines(location, owners, created, lines, grid, hits, rays);
     }
 
-    private boolean canSee(StandardEntity agent, Point2D location, Human h, Collection<LineInfo> lines) {
+    private boolean canSee(StandardEntity agent, Point2D location, Human h, List<LineInfo> lines, LineGrid grid) {
         if (h.isXDefined() && h.isYDefined()) {
             int x = h.getX();
             int y = h.getY();
             Point2D humanLocation = new Point2D(x, y);
-            Ray ray = new Ray(new Line2D(location, humanLocation), lines);
+            Ray ray = new Ray(new Line2D(location, humanLocation), lines, grid);
             if (ray.getVisibleLength() >= 1) {
                 if (view != null) {
                     view.addRay(agent, ray);
@@ -320,13 +468,13 @@ public class LineOfSightPerception implements Perception, GUIComponent {
             }
             Entity e = world.getEntity(h.getPosition());
             if (e instanceof AmbulanceTeam) {
-                return canSee(agent, location, (Human)e, lines);
+                return canSee(agent, location, (Human)e, lines, grid);
             }
         }
         return false;
     }
 
-    private Collection<LineInfo> getAllLines(Collection<StandardEntity> entities) {
+    private List<LineInfo> getAllLines(Collection<StandardEntity> entities) {
         Collection<LineInfo> result = new HashSet<LineInfo>();
         for (StandardEntity next : entities) {
             if (next instanceof Building) {
@@ -353,7 +501,63 @@ public class LineOfSightPerception implements Perception, GUIComponent {
                 continue;
             }
         }
-        return result;
+        // Number the lines so that rays can break distance ties in the same order whether or not they use the grid
+        List<LineInfo> ordered = new ArrayList<LineInfo>(result);
+        for (int i = 0; i < ordered.size(); ++i) {
+            ordered.get(i).setIndex(i);
+        }
+        return ordered;
+    }
+
+    /**
+       The result of casting rays from a point: the lines around the point and the entities the rays hit.
+    */
+    private static class Sightlines {
+        private Point2D origin;
+        private Set<StandardEntity> owners;
+        private int epoch;
+        private List<LineInfo> lines;
+        private LineGrid grid;
+        private Collection<StandardEntity> rayHits;
+        private List<Ray> rays;
+
+        public Sightlines(Point2D origin, Set<StandardEntity> owners, int epoch, List<LineInfo> lines, LineGrid grid, Collection<StandardEntity> rayHits, List<Ray> rays) {
+            this.origin = origin;
+            this.owners = owners;
+            this.epoch = epoch;
+            this.lines = lines;
+            this.grid = grid;
+            this.rayHits = rayHits;
+            this.rays = rays;
+        }
+
+        public Point2D getOrigin() {
+            return origin;
+        }
+
+        public Set<StandardEntity> getOwners() {
+            return owners;
+        }
+
+        public int getEpoch() {
+            return epoch;
+        }
+
+        public List<LineInfo> getLines() {
+            return lines;
+        }
+
+        public LineGrid getGrid() {
+            return grid;
+        }
+
+        public Collection<StandardEntity> getRayHits() {
+            return Collections.unmodifiableCollection(rayHits);
+        }
+
+        public List<Ray> getRays() {
+            return Collections.unmodifiableList(rays);
+        }
     }
 
     private static class Ray {
@@ -364,15 +568,17 @@ public class LineOfSightPerception implements Perception, GUIComponent {
         /** List of lines hit in order. */
         private List<LineInfo> hit;
 
-        public Ray(Line2D ray, Collection<LineInfo> otherLines) {
+        public Ray(Line2D ray, List<LineInfo> otherLines, LineGrid grid) {
             this.ray = ray;
-            List<Pair<LineInfo, Double>> intersections = new ArrayList<Pair<LineInfo, Double>>();
-            // Find intersections with other lines
-            for (LineInfo other : otherLines) {
-                double d1 = ray.getIntersection(other.getLine());
-                double d2 = other.getLine().getIntersection(ray);
-                if (d2 >= 0 && d2 <= 1 && d1 > 0 && d1 <= 1) {
-                    intersections.add(new Pair<LineInfo, Double>(other, d1));
+            List<Pair<LineInfo, Double>> intersections;
+            if (grid != null && grid.contains(ray)) {
+                intersections = grid.getIntersections(ray);
+            }
+            else {
+                // Find intersections with all other lines
+                intersections = new ArrayList<Pair<LineInfo, Double>>();
+                for (LineInfo other : otherLines) {
+                    addIntersection(ray, other, intersections);
                 }
             }
             Collections.sort(intersections, INTERSECTION_SORTER);
@@ -392,6 +598,20 @@ public class LineOfSightPerception implements Perception, GUIComponent {
             return ray;
         }
 
+        /**
+           Test a ray against a line and record the intersection if there is one.
+           @return The distance along the ray of the intersection, or NaN if the ray does not hit the line.
+        */
+        static double addIntersection(Line2D ray, LineInfo other, List<Pair<LineInfo, Double>> intersections) {
+            double d1 = ray.getIntersection(other.getLine());
+            double d2 = other.getLine().getIntersection(ray);
+            if (d2 >= 0 && d2 <= 1 && d1 > 0 && d1 <= 1) {
+                intersections.add(new Pair<LineInfo, Double>(other, d1));
+                return d1;
+            }
+            return Double.NaN;
+        }
+
         public double getVisibleLength() {
             return length;
         }
@@ -405,6 +625,7 @@ public class LineOfSightPerception implements Perception, GUIComponent {
         private Line2D line;
         private StandardEntity entity;
         private boolean blocking;
+        private int index;
 
         public LineInfo(Line2D line, StandardEntity entity, boolean blocking) {
             this.line = line;
@@ -423,6 +644,155 @@ public class LineOfSightPerception implements Perception, GUIComponent {
         public boolean isBlocking() {
             return blocking;
         }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public void setIndex(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+       A uniform grid of lines around a viewpoint. Rays walk the cells they pass through in order and stop once they are past the nearest blocking line, so each ray is only tested against nearby lines.
+    */
+    private static class LineGrid {
+        private static final int MAX_CELLS_PER_SIDE = 64;
+        /** Lines are registered with cells this close to them so that rays crossing cell corners cannot miss them due to rounding. */
+        private static final double SLACK = 1;
+
+        private double minX;
+        private double minY;
+        private double maxX;
+        private double maxY;
+        private double cellSize;
+        private int cellsPerSide;
+        private List<List<LineInfo>> cells;
+        private int[] tested;
+        private int stamp;
+
+        public LineGrid(List<LineInfo> lines, Point2D centre, double radius) {
+            minX = centre.getX() - radius - SLACK;
+            minY = centre.getY() - radius - SLACK;
+            maxX = centre.getX() + radius + SLACK;
+            maxY = centre.getY() + radius + SLACK;
+            cellsPerSide = Math.max(1, Math.min(MAX_CELLS_PER_SIDE, (int)Math.ceil(Math.sqrt(lines.size()))));
+            cellSize = (maxX - minX) / cellsPerSide;
+            cells = new ArrayList<List<LineInfo>>(cellsPerSide * cellsPerSide);
+            for (int i = 0; i < cellsPerSide * cellsPerSide; ++i) {
+                cells.add(null);
+            }
+            for (LineInfo next : lines) {
+                Point2D a = next.getLine().getOrigin();
+                Point2D b = next.getLine().getEndPoint();
+                double x1 = Math.min(a.getX(), b.getX()) - SLACK;
+                double y1 = Math.min(a.getY(), b.getY()) - SLACK;
+                double x2 = Math.max(a.getX(), b.getX()) + SLACK;
+                double y2 = Math.max(a.getY(), b.getY()) + SLACK;
+                if (x2 < minX || y2 < minY || x1 > maxX || y1 > maxY) {
+                    continue;
+                }
+                for (int x = cellX(x1); x <= cellX(x2); ++x) {
+                    for (int y = cellY(y1); y <= cellY(y2); ++y) {
+                        int cell = (y * cellsPerSide) + x;
+                        List<LineInfo> bucket = cells.get(cell);
+                        if (bucket == null) {
+                            bucket = new ArrayList<LineInfo>();
+                            cells.set(cell, bucket);
+                        }
+                        bucket.add(next);
+                    }
+                }
+            }
+            tested = new int[lines.size()];
+            stamp = 0;
+        }
+
+        /**
+           Find out if a ray lies entirely inside this grid.
+           @param ray The ray.
+           @return True if the grid can answer queries for this ray.
+        */
+        public boolean contains(Line2D ray) {
+            return inside(ray.getOrigin()) && inside(ray.getEndPoint());
+        }
+
+        /**
+           Find all lines a ray hits, up to and including the nearest blocking line. Lines beyond the nearest blocking line may also be returned.
+           @param ray The ray.
+           @return The lines hit and the distance along the ray of each hit.
+        */
+        public List<Pair<LineInfo, Double>> getIntersections(Line2D ray) {
+            ++stamp;
+            List<Pair<LineInfo, Double>> result = new ArrayList<Pair<LineInfo, Double>>();
+            double ox = ray.getOrigin().getX();
+            double oy = ray.getOrigin().getY();
+            double dx = ray.getDirection().getX();
+            double dy = ray.getDirection().getY();
+            int x = cellX(ox);
+            int y = cellY(oy);
+            int endX = cellX(ray.getEndPoint().getX());
+            int endY = cellY(ray.getEndPoint().getY());
+            int stepX = (int)Math.signum(dx);
+            int stepY = (int)Math.signum(dy);
+            double tMaxX = stepX == 0 ? Double.POSITIVE_INFINITY : (minX + ((x + Math.max(stepX, 0)) * cellSize) - ox) / dx;
+            double tMaxY = stepY == 0 ? Double.POSITIVE_INFINITY : (minY + ((y + Math.max(stepY, 0)) * cellSize) - oy) / dy;
+            double tDeltaX = stepX == 0 ? Double.POSITIVE_INFINITY : cellSize / Math.abs(dx);
+            double tDeltaY = stepY == 0 ? Double.POSITIVE_INFINITY : cellSize / Math.abs(dy);
+            double length = Math.hypot(dx, dy);
+            double slack = length == 0 ? 0 : SLACK / length;
+            double nearestBlock = Double.POSITIVE_INFINITY;
+            double tEnter = 0;
+            while (tEnter <= nearestBlock + slack) {
+                List<LineInfo> bucket = cells.get((y * cellsPerSide) + x);
+                if (bucket != null) {
+                    for (LineInfo next : bucket) {
+                        if (tested[next.getIndex()] == stamp) {
+                            continue;
+                        }
+                        tested[next.getIndex()] = stamp;
+                        double d = Ray.addIntersection(ray, next, result);
+                        if (next.isBlocking() && d < nearestBlock) {
+                            nearestBlock = d;
+                        }
+                    }
+                }
+                if (x == endX && y == endY) {
+                    break;
+                }
+                if (tMaxX < tMaxY) {
+                    tEnter = tMaxX;
+                    tMaxX += tDeltaX;
+                    x += stepX;
+                }
+                else {
+                    tEnter = tMaxY;
+                    tMaxY += tDeltaY;
+                    y += stepY;
+                }
+                if (tEnter > 1 || x < 0 || y < 0 || x >= cellsPerSide || y >= cellsPerSide) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        private boolean inside(Point2D p) {
+            return p.getX() >= minX && p.getX() <= maxX && p.getY() >= minY && p.getY() <= maxY;
+        }
+
+        private int cellX(double x) {
+            return clamp((int)Math.floor((x - minX) / cellSize));
+        }
+
+        private int cellY(double y) {
+            return clamp((int)Math.floor((y - minY) / cellSize));
+        }
+
+        private int clamp(int cell) {
+            return Math.max(0, Math.min(cellsPerSide - 1, cell));
+        }
     }
 
     private static class IntersectionSorter implements Comparator<Pair<LineInfo, Double>>, java.io.Serializable {
@@ -436,7 +806,8 @@ public class LineOfSightPerception implements Perception, GUIComponent {
             if (d1 > d2) {
                 return 1;
             }
-            return 0;
+            // Break ties by line order so the result does not depend on the order the lines were tested
+            return a.first().getIndex() - b.first().getIndex();
         }
     }
 
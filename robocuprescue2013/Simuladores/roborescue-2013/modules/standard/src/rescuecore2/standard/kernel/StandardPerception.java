@@ -20,6 +20,8 @@ import rescuecore2.worldmodel.properties.IntProperty;
 import rescuecore2.config.Config;
 import rescuecore2.misc.Pair;
 import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.standard.entities.StandardPropertyColumns;
+import rescuecore2.standard.entities.StandardPropertyURN;
 import rescuecore2.standard.entities.StandardEntity;
 import rescuecore2.standard.entities.Road;
 import rescuecore2.standard.entities.Area;
@@ -98,10 +100,11 @@ public class StandardPerception implements Perception, GUIComponent {
         ignitionTimes = new HashMap<Building, Integer>();
         unburntBuildings = new HashSet<Building>();
         time = 0;
-        for (StandardEntity next : world) {
-            if (next instanceof Building) {
-                Building b = (Building)next;
-                if (!b.isFierynessDefined() || b.getFieryness() == 0) {
+        for (StandardPropertyColumns.EntityTable table : world.getPropertyColumns().getTables(Building.class)) {
+            StandardPropertyColumns.IntColumn fieryness = table.getColumn(StandardPropertyURN.FIERYNESS);
+            for (int i = 0; i < table.size(); ++i) {
+                Building b = (Building)table.getEntity(i);
+                if (!fieryness.isDefined(i) || fieryness.get(i) == 0) {
                     unburntBuildings.add(b);
                 }
                 else {
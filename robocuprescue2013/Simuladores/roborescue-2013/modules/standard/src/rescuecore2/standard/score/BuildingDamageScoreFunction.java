@@ -11,6 +11,9 @@ import java.util.EnumMap;
 
 import rescuecore2.standard.entities.Building;
 import rescuecore2.standard.entities.StandardEntityConstants;
+import rescuecore2.standard.entities.StandardPropertyColumns;
+import rescuecore2.standard.entities.StandardPropertyURN;
+import rescuecore2.standard.entities.StandardWorldModel;
 
 /**
    Score function that measures the amount of damage done to buildings by fire.
@@ -53,6 +56,9 @@ public class BuildingDamageScoreFunction extends AbstractScoreFunction {
 
     @Override
     public double score(WorldModel<? extends Entity> world, Timestep timestep) {
+        if (world instanceof StandardWorldModel) {
+            return score(((StandardWorldModel)world).getPropertyColumns());
+        }
         double sum = 0;
         double max = 0;
         for (Entity next : world) {
@@ -82,4 +88,30 @@ public class BuildingDamageScoreFunction extends AbstractScoreFunction {
             return sum / max;
         }
     }
+
+    private double score(StandardPropertyColumns columns) {
+        StandardEntityConstants.Fieryness[] fierynessValues = StandardEntityConstants.Fieryness.values();
+        double sum = 0;
+        double max = 0;
+        for (StandardPropertyColumns.EntityTable table : columns.getTables(Building.class)) {
+            StandardPropertyColumns.IntColumn totalArea = table.getColumn(StandardPropertyURN.BUILDING_AREA_TOTAL);
+            StandardPropertyColumns.IntColumn importance = table.getColumn(StandardPropertyURN.IMPORTANCE);
+            StandardPropertyColumns.IntColumn fieryness = table.getColumn(StandardPropertyURN.FIERYNESS);
+            for (int i = 0; i < table.size(); ++i) {
+                if (!totalArea.isDefined(i)) {
+                    continue;
+                }
+                double area = totalArea.get(i) * (importance.isDefined(i) ? importance.get(i) : 1);
+                double factor = fieryness.isDefined(i) ? factors.get(fierynessValues[fieryness.get(i)]) : 1;
+                sum += area * factor;
+                max += area;
+            }
+        }
+        if (absolute) {
+            return sum;
+        }
+        else {
+            return sum / max;
+        }
+    }
 }
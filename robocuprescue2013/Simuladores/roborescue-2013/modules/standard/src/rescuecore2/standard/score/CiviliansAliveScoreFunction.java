@@ -7,6 +7,9 @@ import rescuecore2.worldmodel.Entity;
 import rescuecore2.Timestep;
 
 import rescuecore2.standard.entities.Civilian;
+import rescuecore2.standard.entities.StandardPropertyColumns;
+import rescuecore2.standard.entities.StandardPropertyURN;
+import rescuecore2.standard.entities.StandardWorldModel;
 
 /**
    Score function that measures the number of living civilians. One point per civilian still alive.
@@ -25,6 +28,9 @@ public class CiviliansAliveScoreFunction extends AbstractScoreFunction {
 
     @Override
     public double score(WorldModel<? extends Entity> world, Timestep timestep) {
+        if (world instanceof StandardWorldModel) {
+            return score(((StandardWorldModel)world).getPropertyColumns());
+        }
         double sum = 0;
         for (Entity next : world) {
             if (next instanceof Civilian) {
@@ -36,4 +42,17 @@ public class CiviliansAliveScoreFunction extends AbstractScoreFunction {
         }
         return sum;
     }
+
+    private double score(StandardPropertyColumns columns) {
+        double sum = 0;
+        for (StandardPropertyColumns.EntityTable table : columns.getTables(Civilian.class)) {
+            StandardPropertyColumns.IntColumn hp = table.getColumn(StandardPropertyURN.HP);
+            for (int i = 0; i < table.size(); ++i) {
+                if (hp.isDefined(i) && hp.get(i) > 0) {
+                    ++sum;
+                }
+            }
+        }
+        return sum;
+    }
 }
@@ -7,6 +7,9 @@ import rescuecore2.worldmodel.Entity;
 import rescuecore2.Timestep;
 
 import rescuecore2.standard.entities.Civilian;
+import rescuecore2.standard.entities.StandardPropertyColumns;
+import rescuecore2.standard.entities.StandardPropertyURN;
+import rescuecore2.standard.entities.StandardWorldModel;
 
 /**
    Score function that measures the health of living civilians.
@@ -32,6 +35,9 @@ public class HealthScoreFunction extends AbstractScoreFunction {
 
     @Override
     public double score(WorldModel<? extends Entity> world, Timestep timestep) {
+        if (world instanceof StandardWorldModel) {
+            return score(((StandardWorldModel)world).getPropertyColumns());
+        }
         double sum = 0;
         double max = 0;
         for (Entity next : world) {
@@ -50,4 +56,24 @@ public class HealthScoreFunction extends AbstractScoreFunction {
             return sum / max;
         }
     }
+
+    private double score(StandardPropertyColumns columns) {
+        double sum = 0;
+        double max = 0;
+        for (StandardPropertyColumns.EntityTable table : columns.getTables(Civilian.class)) {
+            StandardPropertyColumns.IntColumn hp = table.getColumn(StandardPropertyURN.HP);
+            for (int i = 0; i < table.size(); ++i) {
+                if (hp.isDefined(i)) {
+                    sum += hp.get(i);
+                }
+                max += MAX;
+            }
+        }
+        if (absolute) {
+            return sum;
+        }
+        else {
+            return sum / max;
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package rescuecore2.standard.entities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Before;
+
+import rescuecore2.worldmodel.EntityID;
+
+public class StandardPropertyColumnsTest {
+    private StandardWorldModel world;
+    private Civilian first;
+    private Civilian second;
+
+    @Before
+    public void setup() {
+        world = new StandardWorldModel();
+        first = new Civilian(new EntityID(1));
+        first.setHP(1000);
+        second = new Civilian(new EntityID(2));
+        world.addEntity(first);
+        world.addEntity(second);
+    }
+
+    @Test
+    public void testInitialValues() {
+        StandardPropertyColumns.EntityTable table = world.getPropertyColumns().getTable(StandardEntityURN.CIVILIAN);
+        assertEquals(2, table.size());
+        StandardPropertyColumns.IntColumn hp = table.getColumn(StandardPropertyURN.HP);
+        int firstSlot = table.getEntity(0) == first ? 0 : 1;
+        assertTrue(hp.isDefined(firstSlot));
+        assertEquals(1000, hp.get(firstSlot));
+        assertFalse(hp.isDefined(1 - firstSlot));
+    }
+
+    @Test
+    public void testUpdates() {
+        StandardPropertyColumns columns = world.getPropertyColumns();
+        second.setHP(500);
+        first.undefineHP();
+        world.removeEntity(first);
+        Building b = new Building(new EntityID(3));
+        b.setFieryness(2);
+        world.addEntity(b);
+        Refuge r = new Refuge(new EntityID(4));
+        world.addEntity(r);
+
+        StandardPropertyColumns.EntityTable civilians = columns.getTable(StandardEntityURN.CIVILIAN);
+        assertEquals(1, civilians.size());
+        assertSame(second, civilians.getEntity(0));
+        assertEquals(500, civilians.getColumn(StandardPropertyURN.HP).get(0));
+
+        List<StandardPropertyColumns.EntityTable> buildings = columns.getTables(Building.class);
+        assertEquals(2, buildings.size());
+        StandardPropertyColumns.EntityTable buildingTable = columns.getTable(StandardEntityURN.BUILDING);
+        assertEquals(2, buildingTable.getColumn(StandardPropertyURN.FIERYNESS).get(0));
+        b.setFieryness(3);
+        assertEquals(3, buildingTable.getColumn(StandardPropertyURN.FIERYNESS).get(0));
+    }
+}
@@ -0,0 +1,121 @@
+package traffic3.manager;
+
+import traffic3.objects.TrafficAgent;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+   A uniform grid of square cells that records which agents are in each cell. Agents are moved between cells as they move so that finding the agents near a point only looks at the nine cells around it. The grid can be read by several threads at once as long as no agents are moved at the same time.
+*/
+public class AgentGrid {
+    private static final int CELL_SHIFT = 32;
+    private static final long CELL_MASK = 0xFFFFFFFFL;
+
+    private double cellSize;
+    private Map<Long, List<TrafficAgent>> cells;
+    private Map<TrafficAgent, Long> agentCells;
+
+    /**
+       Construct an empty AgentGrid.
+       @param cellSize The width and height of each cell in mm.
+    */
+    public AgentGrid(double cellSize) {
+        this.cellSize = cellSize;
+        cells = new HashMap<Long, List<TrafficAgent>>();
+        agentCells = new HashMap<TrafficAgent, Long>();
+    }
+
+    /**
+       Get the width and height of each cell.
+       @return The cell size in mm.
+    */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+       Add an agent to the grid at its current location.
+       @param agent The agent to add.
+    */
+    public void add(TrafficAgent agent) {
+        long key = key(agent.getX(), agent.getY());
+        agentCells.put(agent, key);
+        getCell(key).add(agent);
+    }
+
+    /**
+       Update the cell of an agent after it has moved. Agents that have not been added to the grid are ignored.
+       @param agent The agent that moved.
+       @param x The new X coordinate.
+       @param y The new Y coordinate.
+    */
+    public void move(TrafficAgent agent, double x, double y) {
+        Long old = agentCells.get(agent);
+        if (old == null) {
+            return;
+        }
+        long key = key(x, y);
+        if (old.longValue() == key) {
+            return;
+        }
+        List<TrafficAgent> oldCell = cells.get(old);
+        oldCell.remove(agent);
+        if (oldCell.isEmpty()) {
+            cells.remove(old);
+        }
+        agentCells.put(agent, key);
+        getCell(key).add(agent);
+    }
+
+    /**
+       Find all agents in the cells within one cell of a point. This includes every agent within one cell size of the point along each axis, and possibly some further away.
+       @param x The X coordinate.
+       @param y The Y coordinate.
+       @param result The collection to add the agents to.
+    */
+    public void getAgentsNear(double x, double y, Collection<TrafficAgent> result) {
+        int cx = cell(x);
+        int cy = cell(y);
+        for (int i = cx - 1; i <= cx + 1; ++i) {
+            for (int j = cy - 1; j <= cy + 1; ++j) {
+                List<TrafficAgent> cell = cells.get(key(i, j));
+                if (cell != null) {
+                    result.addAll(cell);
+                }
+            }
+        }
+    }
+
+    /**
+       Remove all agents from the grid.
+    */
+    public void clear() {
+        cells.clear();
+        agentCells.clear();
+    }
+
+    private List<TrafficAgent> getCell(long key) {
+        List<TrafficAgent> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ArrayList<TrafficAgent>();
+            cells.put(key, cell);
+        }
+        return cell;
+    }
+
+    private int cell(double d) {
+        return (int)Math.floor(d / cellSize);
+    }
+
+    private long key(double x, double y) {
+        return key(cell(x), cell(y));
+    }
+
+    private long key(int cx, int cy) {
+        return ((long)cx << CELL_SHIFT) | (cy & CELL_MASK);
+    }
+}
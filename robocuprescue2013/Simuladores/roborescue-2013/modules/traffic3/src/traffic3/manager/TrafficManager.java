@@ -13,6 +13,7 @@ import java.util.HashMap;
 import java.util.Properties;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Iterator;
 
 import rescuecore2.standard.entities.Human;
 import rescuecore2.standard.entities.Area;
@@ -33,6 +34,8 @@ import com.infomatiq.jsi.rtree.RTree;
    The traffic manager maintains information about traffic simulator objects.
 */
 public class TrafficManager {
+    private static final double DEFAULT_AGENT_GRID_CELL_SIZE = 10000;
+
     private Map<Integer, TrafficArea> areaByID;
     private Map<Integer, TrafficBlockade> blockadeByID;
     private Map<Area, TrafficArea> areas;
@@ -41,6 +44,7 @@ public class TrafficManager {
     private Map<TrafficArea, Collection<TrafficArea>> areaNeighbours;
 
     private SpatialIndex index;
+    private AgentGrid agentGrid;
 
     /**
        Construct a new TrafficManager.
@@ -59,6 +63,7 @@ public class TrafficManager {
         };
         index = new RTree();
         index.init(new Properties());
+        agentGrid = new AgentGrid(DEFAULT_AGENT_GRID_CELL_SIZE);
     }
 
     /**
@@ -108,6 +113,46 @@ public class TrafficManager {
         return result;
     }
 
+    /**
+       Get the agents in the same area or a neighbouring area as an agent that are no more than one agent grid cell away along each axis. This is the subset of {@link #getNearbyAgents(TrafficAgent)} that can be within the agent force cutoff when the grid cell size is set to that cutoff, and only looks at the grid cells around the agent.
+       @param agent The agent to look up.
+       @param result The list to fill in. This will be cleared first.
+    */
+    public void getNearbyAgents(TrafficAgent agent, List<TrafficAgent> result) {
+        result.clear();
+        TrafficArea area = agent.getArea();
+        Collection<TrafficArea> neighbours = getNeighbours(area);
+        agentGrid.getAgentsNear(agent.getX(), agent.getY(), result);
+        Iterator<TrafficAgent> it = result.iterator();
+        while (it.hasNext()) {
+            TrafficAgent next = it.next();
+            if (next == agent || (next.getArea() != area && !neighbours.contains(next.getArea()))) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+       Set the size of the agent grid cells. This should be the largest distance at which agents affect each other.
+       @param size The new cell size in mm.
+    */
+    public void setAgentGridCellSize(double size) {
+        agentGrid = new AgentGrid(size);
+        for (TrafficAgent next : agents.values()) {
+            agentGrid.add(next);
+        }
+    }
+
+    /**
+       Notify the manager that an agent is about to move so the agent grid can be updated.
+       @param agent The agent that is moving.
+       @param x The new X coordinate.
+       @param y The new Y coordinate.
+    */
+    public void agentMoved(TrafficAgent agent, double x, double y) {
+        agentGrid.move(agent, x, y);
+    }
+
     /**
        Remove all objects from this manager.
     */
@@ -118,6 +163,7 @@ public class TrafficManager {
         areaNeighbours.clear();
         areaByID.clear();
         blockadeByID.clear();
+        agentGrid.clear();
         index = new RTree();
         index.init(new Properties());
     }
@@ -139,6 +185,7 @@ public class TrafficManager {
     */
     public void register(TrafficAgent agent) {
         agents.put(agent.getHuman(), agent);
+        agentGrid.add(agent);
     }
 
     /**
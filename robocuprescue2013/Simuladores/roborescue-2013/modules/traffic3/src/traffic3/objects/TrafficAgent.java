@@ -1,7 +1,7 @@
 package traffic3.objects;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -12,7 +12,6 @@ import rescuecore2.log.Logger;
 import rescuecore2.misc.geometry.GeometryTools2D;
 import rescuecore2.misc.geometry.Line2D;
 import rescuecore2.misc.geometry.Point2D;
-import rescuecore2.misc.geometry.Vector2D;
 import rescuecore2.standard.entities.Building;
 import rescuecore2.standard.entities.Civilian;
 import rescuecore2.standard.entities.Human;
@@ -37,9 +36,11 @@ public class TrafficAgent {
 		private TrafficArea area;
 		private double distance;
 		private Point2D closest;
-		private Point2D origin;
+		private double originX;
+		private double originY;
 		private Line2D line;
-		private Vector2D vector;
+		private double vectorX;
+		private double vectorY;
 
 		/**
 		 * Create a new WallInfo object from a Line2D in a TrafficArea.
@@ -54,7 +55,6 @@ public class TrafficAgent {
 			this.area = area;
 			this.distance = -1;
 			this.closest = null;
-			this.origin = null;
 		}
 
 		/**
@@ -71,18 +71,33 @@ public class TrafficAgent {
 		 * Recompute the distance to the agent and the closest point on the
 		 * line.
 		 *
-		 * @param from
-		 *            The position of the agent.
+		 * @param x
+		 *            The X coordinate of the agent.
+		 * @param y
+		 *            The Y coordinate of the agent.
 		 */
-		public void computeClostestPoint(Point2D from) {
-			if (from.equals(origin) && distance >= 0 && closest != null) {
+		public void computeClostestPoint(double x, double y) {
+			if (x == originX && y == originY && distance >= 0 && closest != null) {
 				return;
 			}
-			origin = from;
-			closest = GeometryTools2D.getClosestPointOnSegment(wall, origin);
-			line = new Line2D(origin, closest);
-			vector = line.getDirection();
-			distance = vector.getLength();
+			originX = x;
+			originY = y;
+			// Same as GeometryTools2D.getClosestPointOnSegment without creating a Point2D for the agent
+			Point2D p1 = wall.getOrigin();
+			Point2D p2 = wall.getEndPoint();
+			double length = wall.getDirection().getLength();
+			double u = (((x - p1.getX()) * (p2.getX() - p1.getX())) + ((y - p1.getY()) * (p2.getY() - p1.getY()))) / (length * length);
+			if (u <= 0) {
+				closest = p1;
+			} else if (u >= 1) {
+				closest = p2;
+			} else {
+				closest = wall.getPoint(u);
+			}
+			line = null;
+			vectorX = closest.getX() - x;
+			vectorY = closest.getY() - y;
+			distance = Math.hypot(vectorX, vectorY);
 		}
 
 		/**
@@ -119,16 +134,30 @@ public class TrafficAgent {
 		 * @return Line2D to wall.
 		 */
 		public Line2D getLine() {
+			if (line == null) {
+				line = new Line2D(new Point2D(originX, originY), closest);
+			}
 			return line;
 		}
 
 		/**
-		 * Get the vector from the agent to the closest point on the wall.
+		 * Get the X component of the vector from the agent to the closest point
+		 * on the wall.
+		 *
+		 * @return The X component of the vector to the wall.
+		 */
+		public double getVectorX() {
+			return vectorX;
+		}
+
+		/**
+		 * Get the Y component of the vector from the agent to the closest point
+		 * on the wall.
 		 *
-		 * @return Vector2D to wall.
+		 * @return The Y component of the vector to the wall.
 		 */
-		public Vector2D getVector() {
-			return vector;
+		public double getVectorY() {
+			return vectorY;
 		}
 
 		/**
@@ -145,6 +174,8 @@ public class TrafficAgent {
 
 	private static final int DEFAULT_POSITION_HISTORY_FREQUENCY = 60;
 
+	private static final int INITIAL_POSITION_HISTORY_SIZE = 32;
+
 	private static final double NEARBY_THRESHOLD_SQUARED = 1000000;
 
 	// Force towards destination
@@ -168,6 +199,9 @@ public class TrafficAgent {
 	// List of blocking lines near the agent.
 	private List<WallInfo> blockingLines;
 
+	// Reused for the list of agents near this agent.
+	private List<TrafficAgent> nearbyAgents;
+
 	private double radius;
 	private double velocityLimit;
 
@@ -184,7 +218,9 @@ public class TrafficAgent {
 	// The area the agent is currently in.
 	private TrafficArea currentArea;
 
-	private List<Point2D> positionHistory;
+	// Position history as x1, y1, x2, y2...
+	private double[] positionHistory;
+	private int positionHistorySize;
 	private double totalDistance;
 	private boolean savePositionHistory;
 	private int positionHistoryFrequency;
@@ -217,12 +253,14 @@ public class TrafficAgent {
 		this.radius = radius;
 		this.velocityLimit = velocityLimit;
 		path = new LinkedList<PathElement>();
-		positionHistory = new ArrayList<Point2D>();
+		positionHistory = new double[INITIAL_POSITION_HISTORY_SIZE];
+		positionHistorySize = 0;
 		savePositionHistory = true;
 		historyCount = 0;
 		positionHistoryFrequency = DEFAULT_POSITION_HISTORY_FREQUENCY;
 		mobile = true;
 		blockingLines = new ArrayList<WallInfo>();
+		nearbyAgents = new ArrayList<TrafficAgent>();
 	}
 
 	/**
@@ -268,7 +306,25 @@ public class TrafficAgent {
 	 * @return The position history.
 	 */
 	public List<Point2D> getPositionHistory() {
-		return Collections.unmodifiableList(positionHistory);
+		List<Point2D> result = new ArrayList<Point2D>(positionHistorySize / 2);
+		for (int i = 0; i < positionHistorySize; i += 2) {
+			result.add(new Point2D(positionHistory[i], positionHistory[i + 1]));
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Get the position history in the form used by the position history
+	 * property: x1, y1, x2, y2...
+	 *
+	 * @return The position history coordinates in mm.
+	 */
+	public int[] getPositionHistoryArray() {
+		int[] result = new int[positionHistorySize];
+		for (int i = 0; i < positionHistorySize; ++i) {
+			result[i] = (int) positionHistory[i];
+		}
+		return result;
 	}
 
 	/**
@@ -284,7 +340,7 @@ public class TrafficAgent {
 	 * Clear the position history and distance travelled.
 	 */
 	public void clearPositionHistory() {
-		positionHistory.clear();
+		positionHistorySize = 0;
 		historyCount = 0;
 		totalDistance = 0;
 	}
@@ -497,7 +553,11 @@ public class TrafficAgent {
 		// Save position history
 		if (savePositionHistory) {
 			if (historyCount % positionHistoryFrequency == 0) {
-				positionHistory.add(new Point2D(x, y));
+				if (positionHistorySize == positionHistory.length) {
+					positionHistory = Arrays.copyOf(positionHistory, positionHistory.length * 2);
+				}
+				positionHistory[positionHistorySize++] = x;
+				positionHistory[positionHistorySize++] = y;
 			}
 			historyCount++;
 
@@ -506,6 +566,7 @@ public class TrafficAgent {
 			double dy = y - location[1];
 			totalDistance += Math.hypot(dx, dy);
 		}
+		manager.agentMoved(this, x, y);
 		location[0] = x;
 		location[1] = y;
 	}
@@ -540,7 +601,45 @@ public class TrafficAgent {
 		if (mobile) {
 			updateWalls(dt);
 			updateGoals();
-			computeForces(dt);
+			computeForces(dt, false);
+			updatePosition(dt);
+		}
+	}
+
+	/**
+	 * Execute the first half of a double-buffered microstep: work out the
+	 * forces on this agent. This only changes the state of this agent and only
+	 * reads the positions of other agents, so it can be called for many agents
+	 * at once provided that no agent is moved until every agent has computed
+	 * its forces. Call {@link #applyStep(double)} afterwards.
+	 *
+	 * @param dt
+	 *            The amount of time to simulate in ms.
+	 */
+	public void computeStep(double dt) {
+		if (mobile) {
+			updateWalls(dt);
+			updateGoals();
+			computeForces(dt, true);
+		}
+	}
+
+	/**
+	 * Execute the second half of a double-buffered microstep: move this agent
+	 * using the forces found by {@link #computeStep(double)}. This changes the
+	 * areas the agent is in, so it must be called for one agent at a time and
+	 * in the same order every microstep to give repeatable results.
+	 *
+	 * @param dt
+	 *            The amount of time to simulate in ms.
+	 */
+	public void applyStep(double dt) {
+		if (mobile) {
+			if (colocated) {
+				// Random nudges are drawn here so the sequence does not depend on thread scheduling
+				limitAgentsForce(TrafficConstants.getColocatedAgentNudge(), TrafficConstants.getColocatedAgentNudge(), agentsForce);
+				sumForces();
+			}
 			updatePosition(dt);
 		}
 	}
@@ -640,7 +739,11 @@ public class TrafficAgent {
 			// Assume we're heading for the target edge.
 			currentDestination = currentPathElement.getGoal();
 			Point2D current = new Point2D(location[0], location[1]);
-			Vector2D vectorToEdge = currentDestination.minus(current).normalised();
+			double edgeX = currentDestination.getX() - location[0];
+			double edgeY = currentDestination.getY() - location[1];
+			double edgeScale = 1.0 / Math.hypot(edgeX, edgeY);
+			edgeX *= edgeScale;
+			edgeY *= edgeScale;
 			if (verbose) {
 				Logger.debug(this + " finding goal point");
 				Logger.debug(this + " current path element: " + currentPathElement);
@@ -652,11 +755,15 @@ public class TrafficAgent {
 					Logger.debug(this + " next possible goal: " + next);
 				}
 				if (next != currentPathElement.getGoal()) {
-					Vector2D vectorToNext = next.minus(current).normalised();
-					double dot = vectorToNext.dot(vectorToEdge);
+					double nextX = next.getX() - location[0];
+					double nextY = next.getY() - location[1];
+					double nextScale = 1.0 / Math.hypot(nextX, nextY);
+					nextX *= nextScale;
+					nextY *= nextScale;
+					double dot = nextX * edgeX + nextY * edgeY;
 					if (dot < 0 || dot > 1) {
 						if (verbose) {
-							Logger.debug("Dot product of " + vectorToNext + " and " + vectorToEdge + " is " + dot);
+							Logger.debug("Dot product of " + nextX + ", " + nextY + " and " + edgeX + ", " + edgeY + " is " + dot);
 							Logger.debug(this + " next point is " + (dot < 0 ? "backwards" : "too distant") + "; ignoring");
 						}
 						continue;
@@ -674,14 +781,19 @@ public class TrafficAgent {
 		}
 	}
 
-	private void computeForces(double dt) {
+	private void computeForces(double dt, boolean deferNudge) {
 		colocated = false;
-		computeAgentsForce(agentsForce);
+		computeAgentsForce(agentsForce, deferNudge);
 		if (!colocated) {
 			computeDestinationForce(destinationForce);
 			computeWallsForce(wallsForce, dt);
 		}
+		if (!colocated || !deferNudge) {
+			sumForces();
+		}
+	}
 
+	private void sumForces() {
 		force[0] = destinationForce[0] + agentsForce[0] + wallsForce[0];
 		force[1] = destinationForce[1] + agentsForce[1] + wallsForce[1];
 
@@ -734,7 +846,7 @@ public class TrafficAgent {
 	}
 
 	private boolean hasLos(WallInfo target, List<WallInfo> blocking) {
-		Line2D line = target.getLine();
+		Point2D closest = target.getClosestPoint();
 
 		for (WallInfo wall : blocking) {
 			if (wall == target) {
@@ -742,7 +854,7 @@ public class TrafficAgent {
 			}
 
 			Line2D next = wall.getWall();
-			if (target.getClosestPoint().equals(next.getOrigin()) || target.getClosestPoint().equals(next.getEndPoint())) {
+			if (closest.equals(next.getOrigin()) || closest.equals(next.getEndPoint())) {
 				continue;
 			}
 
@@ -757,12 +869,12 @@ public class TrafficAgent {
 			// be
 			// acute (because they intersect at the closest point), so we never
 			// prune real intersections here.
-			double dotp = line.getDirection().dot(wall.getVector());
+			double dotp = target.getVectorX() * wall.getVectorX() + target.getVectorY() * wall.getVectorY();
 			if (dotp < wall.getDistance() * wall.getDistance()) {
 				continue;
 			}
 
-			if (GeometryTools2D.getSegmentIntersectionPoint(line, next) != null) {
+			if (GeometryTools2D.getSegmentIntersectionPoint(target.getLine(), next) != null) {
 				return false;
 			}
 		}
@@ -852,7 +964,6 @@ public class TrafficAgent {
 	}
 
 	private void updateWalls(double dt) {
-		Point2D position = new Point2D(location[0], location[1]);
 		double crossingCutoff = dt * this.velocityLimit;
 		double forceCutoff = TrafficConstants.getWallDistanceCutoff();
 		double cutoff = Math.max(forceCutoff, crossingCutoff);
@@ -862,7 +973,7 @@ public class TrafficAgent {
 			if (wall.getDistance() > cutoff) {
 				continue;
 			}
-			wall.computeClostestPoint(position);
+			wall.computeClostestPoint(location[0], location[1]);
 		}
 
 		// Hand coded, in-sito insertion sort is much faster than
@@ -931,7 +1042,7 @@ public class TrafficAgent {
 		}
 	}
 
-	private void computeAgentsForce(double[] result) {
+	private void computeAgentsForce(double[] result, boolean deferNudge) {
 		result[0] = 0;
 		result[1] = 0;
 		if (currentArea == null) {
@@ -945,10 +1056,9 @@ public class TrafficAgent {
 		double a = TrafficConstants.getAgentForceCoefficientA();
 		double b = TrafficConstants.getAgentForceCoefficientB();
 		double k = TrafficConstants.getAgentForceCoefficientK();
-		double forceLimit = TrafficConstants.getAgentForceLimit();
 
-		Collection<TrafficAgent> nearby = manager.getNearbyAgents(this);
-		for (TrafficAgent agent : nearby) {
+		manager.getNearbyAgents(this, nearbyAgents);
+		for (TrafficAgent agent : nearbyAgents) {
 			if (!agent.isMobile()) {
 				continue;
 			}
@@ -966,10 +1076,13 @@ public class TrafficAgent {
 			double distanceSquared = dx * dx + dy * dy;
 
 			if (distanceSquared == 0) {
-				xSum = TrafficConstants.getColocatedAgentNudge();
-				ySum = TrafficConstants.getColocatedAgentNudge();
 				colocated = true;
 				Logger.debug(this + " is co-located with " + agent);
+				if (deferNudge) {
+					return;
+				}
+				xSum = TrafficConstants.getColocatedAgentNudge();
+				ySum = TrafficConstants.getColocatedAgentNudge();
 				break;
 			}
 			double distance = Math.sqrt(distanceSquared);
@@ -989,7 +1102,13 @@ public class TrafficAgent {
 				ySum += -k * negativeSeparation * dyN;
 			}
 		}
+		limitAgentsForce(xSum, ySum, result);
+	}
 
+	private void limitAgentsForce(double x, double y, double[] result) {
+		double xSum = x;
+		double ySum = y;
+		double forceLimit = TrafficConstants.getAgentForceLimit();
 		double forceSum = Math.hypot(xSum, ySum);
 		if (forceSum > forceLimit) {
 			forceSum /= forceLimit;
@@ -1017,10 +1136,9 @@ public class TrafficAgent {
 			double cutoff = TrafficConstants.getWallDistanceCutoff();
 			// double a = TrafficConstants.getWallForceCoefficientA();
 			double b = TrafficConstants.getWallForceCoefficientB();
-			Point2D position = new Point2D(location[0], location[1]);
 			if (verbose) {
 				Logger.debug("Computing wall forces for " + this);
-				Logger.debug("Position: " + position);
+				Logger.debug("Position: " + location[0] + ", " + location[1]);
 			}
 
 			for (WallInfo wall : blockingLines) {
@@ -1071,13 +1189,14 @@ public class TrafficAgent {
 				double currentFY = destinationForce[1] + agentsForce[1];
 				double expectedVX = currentVX + dt * currentFX;
 				double expectedVY = currentVY + dt * currentFY;
-				Vector2D expectedVelocity = new Vector2D(expectedVX, expectedVY);
-				Vector2D wallForceVector = wall.getVector().scale(-1.0 / dist);
+				double scale = -1.0 / dist;
+				double wallForceX = wall.getVectorX() * scale;
+				double wallForceY = wall.getVectorY() * scale;
 				double radii = dist / r;
 				// Compute the stopping force
 				// Magnitude is the multiple of wallForceVector required to
 				// bring the agent to a stop.
-				double magnitude = -expectedVelocity.dot(wallForceVector);
+				double magnitude = -(expectedVX * wallForceX + expectedVY * wallForceY);
 				if (magnitude < 0 || radii >= 1) {
 					magnitude = 0;
 					// Agent is moving away or far enough away - no stopping
@@ -1093,14 +1212,16 @@ public class TrafficAgent {
 						magnitude /= 2;
 					}
 				}
-				Vector2D stopForce = wallForceVector.scale(magnitude / dt);
+				double stopScale = magnitude / dt;
+				double stopForceX = wallForceX * stopScale;
+				double stopForceY = wallForceY * stopScale;
 				// Compute the repulsion force
 				// Decreases exponentially with distance in terms of agent
 				// radii.
 				// double factor = a * Math.min(1, Math.exp(-(radii - 1) * b));
 				// Vector2D repulsionForce = wallForceVector.scale(factor / dt);
-				xSum += stopForce.getX();
-				ySum += stopForce.getY();
+				xSum += stopForceX;
+				ySum += stopForceY;
 				// xSum += repulsionForce.getX();
 				// ySum += repulsionForce.getY();
 				if (verbose) {
@@ -1108,10 +1229,10 @@ public class TrafficAgent {
 					Logger.debug("Distance to wall : " + radii + " radii");
 					Logger.debug("Current velocity : " + currentVX + ", " + currentVY);
 					Logger.debug("Current force    : " + currentFX + ", " + currentFY);
-					Logger.debug("Expected velocity: " + expectedVelocity);
-					Logger.debug("Wall force       : " + wallForceVector);
+					Logger.debug("Expected velocity: " + expectedVX + ", " + expectedVY);
+					Logger.debug("Wall force       : " + wallForceX + ", " + wallForceY);
 					Logger.debug("Magnitude        : " + magnitude);
-					Logger.debug("Stop force       : " + stopForce);
+					Logger.debug("Stop force       : " + stopForceX + ", " + stopForceY);
 					// Logger.debug("Factor           : " + factor + " (e^" +
 					// (-(dist / r) * b) + ")");
 					// Logger.debug("Repulsion force  : " + repulsionForce);
@@ -1130,6 +1251,12 @@ public class TrafficAgent {
 		result[1] = ySum;
 	}
 
+	@Override
+	public int hashCode() {
+		// Hash on the entity ID so that hash sets of agents iterate in the same order every run
+		return human.getID().getValue();
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer("TrafficAgent[");
@@ -11,7 +11,7 @@ import java.awt.geom.Rectangle2D;
 
 import org.apache.log4j.NDC;
 
-//import rescuecore2.log.Logger;
+import rescuecore2.log.Logger;
 
 import rescuecore2.misc.geometry.GeometryTools2D;
 import rescuecore2.misc.geometry.Line2D;
@@ -21,6 +21,7 @@ import rescuecore2.misc.gui.ShapeDebugFrame;
 
 import rescuecore2.standard.entities.Area;
 import rescuecore2.standard.entities.Edge;
+import traffic3.simulator.Dijkstra;
 import traffic3.simulator.TrafficSimulator;
 
 import com.infomatiq.jsi.Rectangle;
@@ -44,6 +45,8 @@ public class TrafficArea {
 	private Vector2D baseVector;
 	private ArrayList<Line2D> openLines;
 	private int[][] graph;
+	// Shortest routes across the graph, one entry per starting open line
+	private Dijkstra[] paths;
 
 	/**
 	 * Construct a TrafficArea.
@@ -219,6 +222,7 @@ public class TrafficArea {
 		allBlockingLines = null;
 		openLines = null;
 		graph=null;
+		paths = null;
 	}
 
 	/**
@@ -292,6 +296,67 @@ public class TrafficArea {
 		return graph;
 	}
 
+	/**
+	 * Get the cost of the cheapest route across this area from one open line
+	 * to another using the graph from {@link #getGraph()}. Routes from each
+	 * open line are worked out the first time they are needed and kept until
+	 * the blockades in this area change.
+	 *
+	 * @param src
+	 *            The index of the open line to start from.
+	 * @param end
+	 *            The index of the open line to reach.
+	 * @return The route cost, or Long.MAX_VALUE if the end cannot be reached.
+	 */
+	public long getShortestPathCost(int src, int end) {
+		Dijkstra dijkstra = getPaths(src);
+		if (dijkstra == null || !isReachable(dijkstra, end)) {
+			return Long.MAX_VALUE;
+		}
+		return dijkstra.getWeight(end);
+	}
+
+	/**
+	 * Get the cheapest route across this area from one open line to another.
+	 * See {@link #getShortestPathCost(int, int)}.
+	 *
+	 * @param src
+	 *            The index of the open line to start from.
+	 * @param end
+	 *            The index of the open line to reach.
+	 * @return The indices of the open lines along the route including src
+	 *         and end, or null if the end cannot be reached.
+	 */
+	public List<Integer> getShortestPath(int src, int end) {
+		Dijkstra dijkstra = getPaths(src);
+		if (dijkstra == null || !isReachable(dijkstra, end)) {
+			return null;
+		}
+		return Collections.unmodifiableList(dijkstra.getpathArray(end));
+	}
+
+	private boolean isReachable(Dijkstra dijkstra, int end) {
+		return dijkstra.getWeight(end) < Long.MAX_VALUE / 2;
+	}
+
+	private Dijkstra getPaths(int src) {
+		int[][] g = getGraph();
+		if (paths == null) {
+			paths = new Dijkstra[g.length];
+		}
+		if (paths[src] == null) {
+			Dijkstra dijkstra = new Dijkstra(g.length);
+			try {
+				dijkstra.Run(g, src);
+			} catch (Exception e) {
+				Logger.error("Error finding routes across " + this, e);
+				return null;
+			}
+			paths[src] = dijkstra;
+		}
+		return paths[src];
+	}
+
 	private Point2D getMidPoint(Point2D p1, Point2D p2) {
 		return new Point2D((p1.getX() + p2.getX()) / 2, (p1.getY() + p2.getY()) / 2);
 	}
@@ -0,0 +1,128 @@
+package traffic3.simulator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import traffic3.objects.TrafficAgent;
+
+/**
+ * Runs the microsteps of a timestep. Agents are either stepped one after
+ * another, so each agent sees the agents moved before it, or double-buffered:
+ * the forces on every agent are computed in parallel from the positions left
+ * by the previous microstep and then the agents are moved one at a time.
+ * Agents are always moved in entity ID order, so double-buffered results are
+ * the same for any number of threads.
+ */
+class MicrostepRunner {
+	private static final int AGENTS_PER_TASK = 16;
+
+	private ForkJoinPool pool;
+	private List<TrafficAgent> agents;
+
+	/**
+	 * Construct a runner that steps agents one after another.
+	 */
+	MicrostepRunner() {
+		agents = new ArrayList<TrafficAgent>();
+	}
+
+	/**
+	 * Construct a runner for double-buffered microsteps.
+	 *
+	 * @param threads
+	 *            The number of threads to compute forces with.
+	 */
+	MicrostepRunner(int threads) {
+		this();
+		pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Set the agents to step. Call this at the start of every timestep.
+	 *
+	 * @param all
+	 *            The agents.
+	 */
+	void setAgents(Collection<TrafficAgent> all) {
+		agents = new ArrayList<TrafficAgent>(all);
+		Collections.sort(agents, new Comparator<TrafficAgent>() {
+			@Override
+			public int compare(TrafficAgent a1, TrafficAgent a2) {
+				return a1.getHuman().getID().getValue() - a2.getHuman().getID().getValue();
+			}
+		});
+	}
+
+	/**
+	 * Run one microstep for all agents.
+	 *
+	 * @param dt
+	 *            The amount of time to simulate in ms.
+	 */
+	void microstep(double dt) {
+		if (pool == null) {
+			for (TrafficAgent agent : agents) {
+				agent.step(dt);
+			}
+		}
+		else {
+			// Every agent sees the positions from the end of the last microstep
+			pool.invoke(new ComputeStepTask(dt, 0, agents.size()));
+			// Moving agents changes the agent lists of the areas so this phase is serial
+			for (TrafficAgent agent : agents) {
+				agent.applyStep(dt);
+			}
+		}
+	}
+
+	/**
+	 * Stop the worker threads, if any.
+	 */
+	void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Computes the forces on a range of agents in parallel.
+	 */
+	private class ComputeStepTask extends RecursiveAction {
+		private double dt;
+		private int start;
+		private int end;
+
+		/**
+		 * Construct a task for a range of agents.
+		 *
+		 * @param dt
+		 *            The amount of time to simulate in ms.
+		 * @param start
+		 *            The index of the first agent.
+		 * @param end
+		 *            The index after the last agent.
+		 */
+		ComputeStepTask(double dt, int start, int end) {
+			this.dt = dt;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= AGENTS_PER_TASK) {
+				for (int i = start; i < end; ++i) {
+					agents.get(i).computeStep(dt);
+				}
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new ComputeStepTask(dt, start, middle), new ComputeStepTask(dt, middle, end));
+		}
+	}
+}
@@ -8,6 +8,7 @@ import java.util.Iterator;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Shape;
 import java.awt.geom.Path2D;
@@ -41,7 +42,6 @@ import rescuecore2.misc.geometry.Vector2D;
 import rescuecore2.misc.gui.ScreenTransform;
 import rescuecore2.misc.gui.ShapeDebugFrame;
 import rescuecore2.misc.gui.ShapeDebugFrame.AWTShapeInfo;
-import rescuecore2.misc.gui.ShapeDebugFrame.Line2DShapeInfo;
 import rescuecore2.misc.gui.ShapeDebugFrame.Point2DShapeInfo;
 import rescuecore2.standard.entities.Area;
 import rescuecore2.standard.entities.Blockade;
@@ -80,6 +80,10 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 
 	private static final int RESCUE_AGENT_RADIUS = 500;
 	private static final int CIVILIAN_RADIUS = 200;
+
+	private static final String HEADLESS_KEY = "traffic3.headless";
+	private static final String DOUBLE_BUFFERED_KEY = "traffic3.microstep.double-buffered";
+	private static final String THREADS_KEY = "traffic3.microstep.threads";
 	private static final double RESCUE_AGENT_VELOCITY_MEAN = 0.7;
 	private static final double RESCUE_AGENT_VELOCITY_SD = 0.1;
 	private static final double CIVILIAN_VELOCITY_MEAN = 0.2;
@@ -94,6 +98,9 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 
 	private TrafficManager manager;
 
+	private boolean headless;
+	private MicrostepRunner microsteps;
+
 	/**
 	 * Construct a new TrafficSimulator.
 	 */
@@ -116,6 +123,25 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 	protected void postConnect() {
 		TrafficConstants.init(config);
 		manager.clear();
+		manager.setAgentGridCellSize(TrafficConstants.getAgentDistanceCutoff());
+		headless = config.getBooleanValue(HEADLESS_KEY, GraphicsEnvironment.isHeadless());
+		if (headless) {
+			Logger.info("Running headless: the traffic simulator GUI will not be updated");
+		}
+		if (microsteps != null) {
+			microsteps.shutdown();
+		}
+		if (config.getBooleanValue(DOUBLE_BUFFERED_KEY, false)) {
+			int threads = config.getIntValue(THREADS_KEY, 0);
+			if (threads <= 0) {
+				threads = Runtime.getRuntime().availableProcessors();
+			}
+			microsteps = new MicrostepRunner(threads);
+			Logger.info("Using double-buffered microsteps with " + threads + " threads");
+		}
+		else {
+			microsteps = new MicrostepRunner();
+		}
 		for (StandardEntity next : model) {
 			if (next instanceof Area) {
 				convertAreaToTrafficArea((Area) next);
@@ -149,7 +175,9 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 				}
 			}
 		});
-		gui.initialise();
+		if (!headless) {
+			gui.initialise();
+		}
 		manager.cacheInformation(model);
 	}
 
@@ -229,12 +257,7 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 				changes.addChange(human, human.getTravelDistanceProperty());
 				continue;
 			}
-			Point2D[] history = agent.getPositionHistory().toArray(new Point2D[0]);
-			int[] historyArray = new int[history.length * 2];
-			for (int i = 0; i < history.length; ++i) {
-				historyArray[i * 2] = (int) history[i].getX();
-				historyArray[(i * 2) + 1] = (int) history[i].getY();
-			}
+			int[] historyArray = agent.getPositionHistoryArray();
 			double x = agent.getX();
 			double y = agent.getY();
 			TrafficArea location = agent.getArea();
@@ -501,7 +524,7 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 
 	}
 
-	public static ShapeDebugFrame debug = new ShapeDebugFrame();
+	public static ShapeDebugFrame debug = GraphicsEnvironment.isHeadless() ? null : new ShapeDebugFrame();
 
 	private Collection<? extends PathElement> getPathElements2(Human human, Area lastArea, Edge lastEdge, Area nextArea, Edge nextEdge) {
 		// if (human instanceof Civilian)
@@ -515,42 +538,10 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 			start = new Point2D(human.getX(), human.getY());
 		else
 			start = getBestPoint(lastEdge);
-		Point2D startpoint;
-		if (lastEdge == null)
-			startpoint = start;
-		else
-			startpoint = getMidPoint(lastEdge.getStart(), lastEdge.getEnd());
 		Point2D edgePoint = getBestPoint(nextEdge);
-		Point2D centrePoint = new Point2D(lastArea.getX(), lastArea.getY());
-
-		List<ShapeDebugFrame.ShapeInfo> resultGraph = new ArrayList<ShapeDebugFrame.ShapeInfo>();
-		//
-		// resultGraph.add(new AWTShapeInfo(lastArea.getShape(), "path lastarea"
-		// + lastArea, Color.blue, false));
-		// resultGraph.add(new AWTShapeInfo(nextArea.getShape(), "path nextArea"
-		// + nextArea, Color.red, false));
-		resultGraph.add(new Line2DShapeInfo(new Line2D(startpoint, centrePoint), "path start to center", Color.black, false, true));
-		resultGraph.add(new Line2DShapeInfo(new Line2D(centrePoint, getMidPoint(nextEdge.getStart(), nextEdge.getEnd())), "path center to end", Color.white, false, true));
-		// resultGraph.add(new Point2DShapeInfo(start, "Choosedstart",
-		// Color.magenta, true));
-		// resultGraph.add(new Point2DShapeInfo(edgePoint, "Choosedend",
-		// Color.magenta.brighter(), true));
 
 		TrafficArea trafficArea = manager.getTrafficArea(lastArea);
-		int[][] graph = manager.getTrafficArea(lastArea).getGraph();
-		List<Line2D> oLines = manager.getTrafficArea(lastArea).getOpenLines();
-		List<Line2D> graphline = new ArrayList<>();
-		resultGraph.add(new Line2DShapeInfo(oLines, "openLines", Color.green, false, false));
-		for (int i = 0; i < graph.length; i++) {
-			for (int j = 0; j < graph.length; j++) {
-				if (graph[i][j] > 10000)
-					continue;
-				Line2D line = new Line2D(getMidPoint(oLines.get(i).getOrigin(), oLines.get(i).getEndPoint()), getMidPoint(oLines.get(j).getOrigin(), oLines.get(j).getEndPoint()));
-				graphline.add(line);
-			}
-		}
-		// resultGraph.add(new ShapeDebugFrame.Line2DShapeInfo(graphline,
-		// "graph", Color.yellow, false, false));
+		List<Line2D> oLines = trafficArea.getOpenLines();
 		int src = trafficArea.getNearestLineIndex(start);
 		int end = trafficArea.getNearestLineIndex(edgePoint);
 		// if (src != -1)
@@ -561,14 +552,9 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 		// Color.cyan, true, false));
 
 		if (src != end && src != -1 && end != -1) {
-			Dijkstra dijkstra = new Dijkstra(graph.length);
-			try {
-				dijkstra.Run(graph, src);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			ArrayList<Integer> path = dijkstra.getpathArray(end);
-			if (dijkstra.getWeight(end) < 1000 && path.size() > 2) {
+			// Routes across the area are cached until its blockades change
+			List<Integer> path = trafficArea.getShortestPath(src, end);
+			if (path != null && trafficArea.getShortestPathCost(src, end) < 1000 && path.size() > 2) {
 				List<Point2D> points = new ArrayList<Point2D>();
 				for (Integer integer : path) {
 					// resultGraph.add(new Line2DShapeInfo(oLines.get(integer),
@@ -856,6 +842,7 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 		for (TrafficAgent agent : manager.getAgents()) {
 			agent.beginTimestep();
 		}
+		microsteps.setAgents(manager.getAgents());
 		long pre = System.currentTimeMillis();
 		Logger.debug("Running " + MICROSTEPS + " microsteps");
 		for (int i = 0; i < MICROSTEPS; i++) {
@@ -876,9 +863,9 @@ public class TrafficSimulator extends StandardSimulator implements GUIComponent
 	}
 
 	private void microstep() {
-		for (TrafficAgent agent : manager.getAgents()) {
-			agent.step(STEP_TIME_MS);
+		microsteps.microstep(STEP_TIME_MS);
+		if (!headless) {
+			gui.refresh();
 		}
-		gui.refresh();
 	}
 }
@@ -0,0 +1,141 @@
+package traffic3.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import rescuecore2.Constants;
+import rescuecore2.config.Config;
+import rescuecore2.misc.geometry.Point2D;
+import rescuecore2.standard.entities.Civilian;
+import rescuecore2.standard.entities.Edge;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.worldmodel.EntityID;
+
+import traffic3.manager.TrafficManager;
+import traffic3.objects.TrafficAgent;
+import traffic3.objects.TrafficArea;
+
+public class MicrostepRunnerTest {
+	private static final int ROADS = 3;
+	private static final int ROAD_LENGTH = 20000;
+	private static final int ROAD_WIDTH = 6000;
+	private static final int AGENTS = 200;
+	private static final int COLOCATED = 20;
+	private static final int MICROSTEPS = 300;
+	private static final double STEP_TIME_MS = 100;
+	private static final int THREADS = 4;
+	private static final long SEED = 42;
+
+	@Test
+	public void testDoubleBufferedSameForAnyThreadCount() {
+		double[] single = run(new MicrostepRunner(1));
+		double[] parallel = run(new MicrostepRunner(THREADS));
+		for (int i = 0; i < single.length; ++i) {
+			assertEquals(single[i], parallel[i], 0);
+		}
+	}
+
+	@Test
+	public void testSequentialRepeatable() {
+		double[] first = run(new MicrostepRunner());
+		double[] second = run(new MicrostepRunner());
+		for (int i = 0; i < first.length; ++i) {
+			assertEquals(first[i], second[i], 0);
+		}
+	}
+
+	@Test
+	public void testAgentsMove() {
+		double[] start = run(new MicrostepRunner(THREADS), 0);
+		double[] end = run(new MicrostepRunner(THREADS));
+		int moved = 0;
+		for (int i = 0; i < start.length; i += 2) {
+			if (Math.hypot(end[i] - start[i], end[i + 1] - start[i + 1]) > 1000) {
+				++moved;
+			}
+		}
+		assertTrue(moved > AGENTS / 2);
+	}
+
+	private double[] run(MicrostepRunner runner) {
+		return run(runner, MICROSTEPS);
+	}
+
+	/*
+	 * Crowd agents into a row of roads, some of them on top of each other,
+	 * and send them all to the far end.
+	 */
+	private double[] run(MicrostepRunner runner, int microsteps) {
+		Config config = new Config();
+		config.setValue(Constants.RANDOM_SEED_KEY, String.valueOf(SEED));
+		TrafficConstants.init(config);
+		StandardWorldModel world = new StandardWorldModel();
+		for (int i = 0; i < ROADS; ++i) {
+			world.addEntity(createRoad(i));
+		}
+		TrafficManager manager = new TrafficManager();
+		manager.setAgentGridCellSize(TrafficConstants.getAgentDistanceCutoff());
+		for (StandardEntity next : world) {
+			manager.register(new TrafficArea((Road) next));
+		}
+		Random random = new Random(SEED);
+		Point2D goal = new Point2D(ROADS * ROAD_LENGTH - ROAD_LENGTH / 4, ROAD_WIDTH / 2);
+		List<TrafficAgent> agents = new ArrayList<TrafficAgent>();
+		for (int i = 0; i < AGENTS; ++i) {
+			Civilian civilian = new Civilian(new EntityID(ROADS + 1 + i));
+			world.addEntity(civilian);
+			TrafficAgent agent = new TrafficAgent(civilian, manager, i % 2 == 0 ? 200 : 500, 0.7);
+			if (i < COLOCATED) {
+				agent.setLocation(ROAD_LENGTH / 2, ROAD_WIDTH / 2);
+			}
+			else {
+				agent.setLocation(1000 + random.nextInt(ROAD_LENGTH * 2 - 2000), 1000 + random.nextInt(ROAD_WIDTH - 2000));
+			}
+			agent.setPath(Collections.singletonList(new PathElement(new EntityID(ROADS), null, goal)));
+			manager.register(agent);
+			agents.add(agent);
+		}
+		manager.cacheInformation(world);
+		for (TrafficAgent agent : agents) {
+			agent.beginTimestep();
+		}
+		runner.setAgents(manager.getAgents());
+		for (int i = 0; i < microsteps; ++i) {
+			runner.microstep(STEP_TIME_MS);
+		}
+		runner.shutdown();
+		double[] result = new double[AGENTS * 2];
+		for (int i = 0; i < AGENTS; ++i) {
+			result[i * 2] = agents.get(i).getX();
+			result[i * 2 + 1] = agents.get(i).getY();
+		}
+		return result;
+	}
+
+	private Road createRoad(int i) {
+		int x1 = i * ROAD_LENGTH;
+		int x2 = x1 + ROAD_LENGTH;
+		EntityID previous = i == 0 ? null : new EntityID(i);
+		EntityID next = i == ROADS - 1 ? null : new EntityID(i + 2);
+		List<Edge> edges = new ArrayList<Edge>();
+		edges.add(new Edge(x1, 0, x2, 0));
+		edges.add(new Edge(x2, 0, x2, ROAD_WIDTH, next));
+		edges.add(new Edge(x2, ROAD_WIDTH, x1, ROAD_WIDTH));
+		edges.add(new Edge(x1, ROAD_WIDTH, x1, 0, previous));
+		Road road = new Road(new EntityID(i + 1));
+		road.setEdges(edges);
+		road.setX((x1 + x2) / 2);
+		road.setY(ROAD_WIDTH / 2);
+		road.setBlockades(new ArrayList<EntityID>());
+		return road;
+	}
+}
@@ -0,0 +1,178 @@
+package traffic3.simulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import kernel.KernelConstants;
+import kernel.KernelException;
+import kernel.WorldModelCreator;
+
+import rescuecore2.config.Config;
+import rescuecore2.config.ConfigException;
+import rescuecore2.log.Logger;
+import rescuecore2.misc.CommandLineOptions;
+import rescuecore2.misc.java.JavaTools;
+import rescuecore2.standard.entities.Area;
+import rescuecore2.standard.entities.Civilian;
+import rescuecore2.standard.entities.Human;
+import rescuecore2.standard.entities.Road;
+import rescuecore2.standard.entities.StandardEntity;
+import rescuecore2.standard.entities.StandardWorldModel;
+import rescuecore2.worldmodel.Entity;
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.worldmodel.WorldModel;
+
+import traffic3.manager.TrafficManager;
+import traffic3.objects.TrafficAgent;
+import traffic3.objects.TrafficArea;
+
+/**
+ * Timing test for finding the agents near each agent. Loads a map through the
+ * configured GIS, adds extra civilians on random roads and then finds the
+ * neighbours of every agent using the area lists and using the agent grid.
+ * Also checks that both methods find the same agents within the agent force
+ * cutoff.
+ * <p>
+ * This lives with the tests because it needs the kernel to build the world
+ * and the simulator does not. Run it from the boot directory with
+ * build/traffic3/test on the classpath after the tests have been compiled.
+ */
+public final class NeighbourBenchmark {
+	private static final String ITERATIONS_KEY = "traffic3.benchmark.iterations";
+	private static final int DEFAULT_ITERATIONS = 100;
+	private static final String AGENTS_KEY = "traffic3.benchmark.agents";
+	private static final int DEFAULT_AGENTS = 2000;
+
+	private static final String GIS_AUTO_KEY = KernelConstants.GIS_KEY + ".auto";
+	private static final double AGENT_RADIUS = 200;
+	private static final double VELOCITY_LIMIT = 0.2;
+	private static final double SPREAD = 2000;
+
+	private NeighbourBenchmark() {
+	}
+
+	/**
+	 * Run the benchmark.
+	 *
+	 * @param args
+	 *            Command line arguments: -c config-file
+	 *            [--traffic3.benchmark.iterations=n]
+	 *            [--traffic3.benchmark.agents=n] [--gis.map.dir=dir]
+	 */
+	public static void main(String[] args) {
+		Config config = new Config();
+		try {
+			CommandLineOptions.processArgs(args, config);
+			WorldModelCreator gis = JavaTools.instantiate(config.getValue(GIS_AUTO_KEY), WorldModelCreator.class);
+			if (gis == null) {
+				Logger.error("Could not create GIS " + config.getValue(GIS_AUTO_KEY));
+				return;
+			}
+			WorldModel<? extends Entity> model = gis.buildWorldModel(config);
+			StandardWorldModel world = StandardWorldModel.createStandardWorldModel(model);
+			TrafficConstants.init(config);
+			double cutoff = TrafficConstants.getAgentDistanceCutoff();
+			TrafficManager manager = new TrafficManager();
+			manager.setAgentGridCellSize(cutoff);
+			List<Road> roads = new ArrayList<Road>();
+			int maxID = 0;
+			for (StandardEntity next : world) {
+				if (next instanceof Area) {
+					manager.register(new TrafficArea((Area) next));
+				}
+				if (next instanceof Road) {
+					roads.add((Road) next);
+				}
+				maxID = Math.max(maxID, next.getID().getValue());
+			}
+			manager.cacheInformation(world);
+			List<TrafficAgent> agents = new ArrayList<TrafficAgent>();
+			for (StandardEntity next : world) {
+				if (next instanceof Human) {
+					Human h = (Human) next;
+					agents.add(createAgent(manager, h, h.getX(), h.getY()));
+				}
+			}
+			Random random = config.getRandom();
+			int extra = config.getIntValue(AGENTS_KEY, DEFAULT_AGENTS);
+			for (int i = 0; i < extra && !roads.isEmpty(); ++i) {
+				Road road = roads.get(random.nextInt(roads.size()));
+				double x = road.getX() + (random.nextDouble() - 0.5) * SPREAD;
+				double y = road.getY() + (random.nextDouble() - 0.5) * SPREAD;
+				if (!manager.getTrafficArea(road).contains(x, y)) {
+					x = road.getX();
+					y = road.getY();
+				}
+				agents.add(createAgent(manager, new Civilian(new EntityID(++maxID)), x, y));
+			}
+			List<TrafficAgent> located = new ArrayList<TrafficAgent>();
+			for (TrafficAgent next : agents) {
+				if (next.getArea() != null) {
+					located.add(next);
+				}
+			}
+			int iterations = config.getIntValue(ITERATIONS_KEY, DEFAULT_ITERATIONS);
+			System.out.println(config.getValue("gis.map.dir", "") + ": " + located.size() + " agents, " + iterations + " iterations");
+
+			long found = 0;
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < iterations; ++i) {
+				for (TrafficAgent next : located) {
+					found += manager.getNearbyAgents(next).size();
+				}
+			}
+			long areaTime = System.currentTimeMillis() - start;
+			System.out.println("Area lists: " + areaTime + "ms (" + (found / iterations) + " agents per iteration)");
+
+			List<TrafficAgent> nearby = new ArrayList<TrafficAgent>();
+			found = 0;
+			start = System.currentTimeMillis();
+			for (int i = 0; i < iterations; ++i) {
+				for (TrafficAgent next : located) {
+					manager.getNearbyAgents(next, nearby);
+					found += nearby.size();
+				}
+			}
+			long gridTime = System.currentTimeMillis() - start;
+			System.out.println("Agent grid: " + gridTime + "ms (" + (found / iterations) + " agents per iteration)");
+
+			int mismatches = 0;
+			for (TrafficAgent next : located) {
+				manager.getNearbyAgents(next, nearby);
+				if (!withinCutoff(next, manager.getNearbyAgents(next), cutoff).equals(withinCutoff(next, nearby, cutoff))) {
+					System.out.println("Neighbours differ for " + next);
+					++mismatches;
+				}
+			}
+			System.out.println(mismatches == 0 ? "Neighbours identical" : mismatches + " agents have different neighbours");
+		} catch (IOException e) {
+			Logger.error("Error reading config", e);
+		} catch (ConfigException e) {
+			Logger.error("Config error", e);
+		} catch (KernelException e) {
+			Logger.error("Error building world model", e);
+		}
+	}
+
+	private static TrafficAgent createAgent(TrafficManager manager, Human h, double x, double y) {
+		TrafficAgent agent = new TrafficAgent(h, manager, AGENT_RADIUS, VELOCITY_LIMIT);
+		agent.setLocation(x, y);
+		manager.register(agent);
+		return agent;
+	}
+
+	private static Set<TrafficAgent> withinCutoff(TrafficAgent agent, Collection<TrafficAgent> candidates, double cutoff) {
+		Set<TrafficAgent> result = new HashSet<TrafficAgent>();
+		for (TrafficAgent next : candidates) {
+			if (Math.abs(next.getX() - agent.getX()) <= cutoff && Math.abs(next.getY() - agent.getY()) <= cutoff) {
+				result.add(next);
+			}
+		}
+		return result;
+	}
+}
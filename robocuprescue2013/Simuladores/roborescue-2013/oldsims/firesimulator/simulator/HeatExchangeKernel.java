@@ -0,0 +1,346 @@
+package firesimulator.simulator;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import firesimulator.world.Building;
+import firesimulator.world.World;
+
+/**
+ * Runs the air grid update and the building heat exchange on a worker pool.
+ * The air grid is double buffered and the per building values are kept in
+ * flat arrays that are reused between steps. Every value is computed with
+ * the same operations in the same order as the serial code in
+ * {@link Simulator}, so the results are identical.
+ */
+class HeatExchangeKernel {
+    private static final int GRID_ROWS = 0;
+    private static final int WIND_ROWS = 1;
+    private static final int TEMPERATURES = 2;
+    private static final int AIR_CELLS = 3;
+    private static final int AIR_BUILDINGS = 4;
+    private static final int RADIATION = 5;
+    private static final int RECEIVE = 6;
+
+    private static final int ROWS_PER_TASK = 4;
+    private static final int CELLS_PER_TASK = 256;
+    private static final int BUILDINGS_PER_TASK = 64;
+
+    private static final int SELF = -1;
+
+    private World world;
+    private ForkJoinPool pool;
+
+    // Air grid buffers
+    private double[][] source;
+    private double[][] target;
+    private double[][] spare;
+    private WindShift wind;
+
+    // Buildings in the order the world iterates over them
+    private Building[] buildings;
+    private double[] temperature;
+    private double[] airDelta;
+    private double[] radiation;
+    // Cells covered by each building: slots cellStart[i] to cellStart[i+1]
+    private int[] cellStart;
+    private int[] slotBuilding;
+    private double[] slotCover;
+    private double[] transfer;
+    // Slots touching each occupied air cell, in building order
+    private int columns;
+    private int[] occupied;
+    private int[] occupiedStart;
+    private int[] occupiedSlots;
+    // Radiation received by each building: ops opStart[i] to opStart[i+1]
+    private int[] opStart;
+    private int[] ops;
+    private int[] connectionSource;
+    private float[] connectionValue;
+
+    /**
+     * Create a kernel for a world.
+     * @param world the world to update
+     * @param threads the number of worker threads, or 0 for one per processor
+     */
+    HeatExchangeKernel(World world, int threads) {
+        this.world = world;
+        pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    int getThreads() {
+        return pool.getParallelism();
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    void updateGrid(Simulator sim) {
+        source = world.getAirTemp();
+        target = buffer(source);
+        pool.invoke(new StepTask(GRID_ROWS, 0, source.length));
+        world.setAirTemp(target);
+        spare = source;
+        wind = sim.getWindShift();
+        if (!wind.isStill()) {
+            source = target;
+            target = buffer(source);
+            pool.invoke(new StepTask(WIND_ROWS, 0, source.length));
+            world.setAirTemp(target);
+            spare = source;
+        }
+        source = null;
+        target = null;
+    }
+
+    void exchangeBuilding(EnergyHistory energyHistory) {
+        prepare();
+        int n = buildings.length;
+        source = world.getAirTemp();
+        pool.invoke(new StepTask(TEMPERATURES, 0, n));
+        pool.invoke(new StepTask(AIR_CELLS, 0, occupied.length));
+        pool.invoke(new StepTask(AIR_BUILDINGS, 0, n));
+        source = null;
+        for (int i = 0; i < n; i++) {
+            energyHistory.registerAir(buildings[i], airDelta[i]);
+        }
+        pool.invoke(new StepTask(RADIATION, 0, n));
+        pool.invoke(new StepTask(RECEIVE, 0, n));
+        for (int i = 0; i < n; i++) {
+            for (int k = opStart[i]; k < opStart[i + 1]; k++) {
+                int op = ops[k];
+                if (op == SELF) {
+                    energyHistory.registerRadiationLoss(buildings[i], -radiation[i]);
+                }
+                else {
+                    double connectionValue = this.connectionValue[op];
+                    energyHistory.registerRadiationGain(buildings[i], radiation[connectionSource[op]] * connectionValue);
+                }
+            }
+        }
+    }
+
+    private double[][] buffer(double[][] like) {
+        if (spare != null && spare != like && spare.length == like.length && spare[0].length == like[0].length) {
+            return spare;
+        }
+        return new double[like.length][like[0].length];
+    }
+
+    /*
+     * Index the buildings, their air cells and their radiation connections.
+     * Buildings are only ever added to the world, so the index is rebuilt
+     * whenever the number of buildings changes.
+     */
+    private void prepare() {
+        Collection<Building> all = world.getBuildings();
+        double[][] air = world.getAirTemp();
+        if (buildings != null && buildings.length == all.size() && columns == air[0].length) {
+            return;
+        }
+        int n = all.size();
+        buildings = all.toArray(new Building[n]);
+        temperature = new double[n];
+        airDelta = new double[n];
+        radiation = new double[n];
+        Map<Building, Integer> index = new HashMap<Building, Integer>();
+        cellStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            index.put(buildings[i], i);
+            cellStart[i + 1] = cellStart[i] + buildings[i].cells.length;
+        }
+        int slots = cellStart[n];
+        slotBuilding = new int[slots];
+        slotCover = new double[slots];
+        transfer = new double[slots];
+        int[] slotCell = new int[slots];
+        columns = air[0].length;
+        int[] count = new int[air.length * columns + 1];
+        for (int i = 0; i < n; i++) {
+            int[][] cells = buildings[i].cells;
+            for (int c = 0; c < cells.length; c++) {
+                int slot = cellStart[i] + c;
+                slotBuilding[slot] = i;
+                slotCover[slot] = cells[c][2] / 100.0;
+                slotCell[slot] = cells[c][0] * columns + cells[c][1];
+                count[slotCell[slot] + 1]++;
+            }
+        }
+        int used = 0;
+        for (int cell = 0; cell < count.length - 1; cell++) {
+            if (count[cell + 1] > 0) {
+                used++;
+            }
+            count[cell + 1] += count[cell];
+        }
+        occupied = new int[used];
+        occupiedStart = new int[used + 1];
+        occupiedSlots = new int[slots];
+        used = 0;
+        for (int cell = 0; cell < count.length - 1; cell++) {
+            if (count[cell + 1] > count[cell]) {
+                occupied[used] = cell;
+                occupiedStart[used + 1] = count[cell + 1];
+                used++;
+            }
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            occupiedSlots[count[slotCell[slot]]++] = slot;
+        }
+        int connections = 0;
+        int[] received = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Building[] bs = buildings[i].connectedBuilding;
+            for (int c = 0; c < bs.length; c++) {
+                received[index.get(bs[c]) + 1]++;
+            }
+            received[i + 1]++;
+            connections += bs.length;
+        }
+        for (int i = 0; i < n; i++) {
+            received[i + 1] += received[i];
+        }
+        opStart = received.clone();
+        ops = new int[received[n]];
+        connectionSource = new int[connections];
+        connectionValue = new float[connections];
+        connections = 0;
+        for (int i = 0; i < n; i++) {
+            Building[] bs = buildings[i].connectedBuilding;
+            float[] vs = buildings[i].connectedValues;
+            for (int c = 0; c < bs.length; c++) {
+                connectionSource[connections] = i;
+                connectionValue[connections] = vs[c];
+                ops[received[index.get(bs[c])]++] = connections;
+                connections++;
+            }
+            ops[received[i]++] = SELF;
+        }
+    }
+
+    private void gridRows(int from, int to) {
+        for (int x = from; x < to; x++) {
+            for (int y = 0; y < source[0].length; y++) {
+                target[x][y] = Simulator.nextAirTemp(source, x, y);
+            }
+        }
+    }
+
+    private void temperatures(int from, int to) {
+        for (int i = from; i < to; i++) {
+            temperature[i] = buildings[i].getTemperature();
+        }
+    }
+
+    private void airCells(int from, int to) {
+        for (int i = from; i < to; i++) {
+            int x = occupied[i] / columns;
+            int y = occupied[i] % columns;
+            double cellTemp = source[x][y];
+            for (int k = occupiedStart[i]; k < occupiedStart[i + 1]; k++) {
+                int slot = occupiedSlots[k];
+                double dT = cellTemp - temperature[slotBuilding[slot]];
+                double energyTransferToBuilding = dT * Simulator.AIR_TO_BUILDING_COEFFICIENT * Simulator.TIME_STEP_LENGTH * slotCover[slot] * world.SAMPLE_SIZE;
+                transfer[slot] = energyTransferToBuilding;
+                cellTemp = cellTemp - energyTransferToBuilding / (Simulator.AIR_CELL_HEAT_CAPACITY * world.SAMPLE_SIZE);
+            }
+            source[x][y] = cellTemp;
+        }
+    }
+
+    private void airBuildings(int from, int to) {
+        for (int i = from; i < to; i++) {
+            double oldEnergy = buildings[i].getEnergy();
+            double energyDelta = 0;
+            for (int slot = cellStart[i]; slot < cellStart[i + 1]; slot++) {
+                energyDelta += transfer[slot];
+            }
+            buildings[i].setEnergy(oldEnergy + energyDelta);
+            airDelta[i] = energyDelta;
+        }
+    }
+
+    private void radiation(int from, int to) {
+        for (int i = from; i < to; i++) {
+            radiation[i] = buildings[i].getRadiationEnergy();
+        }
+    }
+
+    private void receive(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Building b = buildings[i];
+            for (int k = opStart[i]; k < opStart[i + 1]; k++) {
+                int op = ops[k];
+                if (op == SELF) {
+                    b.setEnergy(b.getEnergy() - radiation[i]);
+                }
+                else {
+                    double connectionValue = this.connectionValue[op];
+                    double a = radiation[connectionSource[op]] * connectionValue;
+                    b.setEnergy(b.getEnergy() + a);
+                }
+            }
+        }
+    }
+
+    private class StepTask extends RecursiveAction {
+        private int phase;
+        private int from;
+        private int to;
+
+        StepTask(int phase, int from, int to) {
+            this.phase = phase;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int grain;
+            switch (phase) {
+            case GRID_ROWS:
+            case WIND_ROWS:
+                grain = ROWS_PER_TASK;
+                break;
+            case AIR_CELLS:
+                grain = CELLS_PER_TASK;
+                break;
+            default:
+                grain = BUILDINGS_PER_TASK;
+                break;
+            }
+            if (to - from > grain) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new StepTask(phase, from, mid), new StepTask(phase, mid, to));
+                return;
+            }
+            switch (phase) {
+            case GRID_ROWS:
+                gridRows(from, to);
+                break;
+            case WIND_ROWS:
+                wind.shift(source, target, from, to);
+                break;
+            case TEMPERATURES:
+                temperatures(from, to);
+                break;
+            case AIR_CELLS:
+                airCells(from, to);
+                break;
+            case AIR_BUILDINGS:
+                airBuildings(from, to);
+                break;
+            case RADIATION:
+                radiation(from, to);
+                break;
+            default:
+                receive(from, to);
+                break;
+            }
+        }
+    }
+}
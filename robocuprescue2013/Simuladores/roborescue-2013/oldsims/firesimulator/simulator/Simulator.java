@@ -35,12 +35,14 @@ public class Simulator {
     public static float TIME_STEP_LENGTH=1f; 		
     public static float WEIGHT_GRID = 0.2f;
     public static float AIR_CELL_HEAT_CAPACITY = 1f;
+    public static int   THREADS = 0;
 	
     public Set monitors;
     public static boolean verbose;
     private static Simulator me;
 
     private EnergyHistory energyHistory;
+    private HeatExchangeKernel kernel;
 
     public Simulator(World world){
         me = this;
@@ -177,6 +179,10 @@ public class Simulator {
     }
 
     private void exchangeBuilding() {	    
+        if (kernel != null) {
+            kernel.exchangeBuilding(energyHistory);
+            return;
+        }
         for(Iterator i=world.getBuildings().iterator();i.hasNext();){
             Building b=(Building)i.next();
             exchangeWithAir(b);
@@ -286,36 +292,45 @@ public class Simulator {
 
     private void updateGrid() {
         LOG.debug("Updating air grid");
+        if (kernel != null) {
+            kernel.updateGrid(this);
+            return;
+        }
         double[][] airtemp=world.getAirTemp();
         double[][] newairtemp = new double[airtemp.length][airtemp[0].length];
         for(int x=0;x<airtemp.length;x++){
             for(int y=0;y<airtemp[0].length;y++){
-                double dt = (averageTemp(x,y)-airtemp[x][y]);
-                double change = (dt * AIR_TO_AIR_COEFFICIENT * TIME_STEP_LENGTH);
-                newairtemp[x][y] = relTemp(airtemp[x][y] + change);
-                //                if (newairtemp[x][y] > 0.000001 || airtemp[x][y] > 0.000001) {
-                //                    LOG.debug("Cell " + x + ", " + y + " old temperature: " + airtemp[x][y] + ", dt: " + dt + ", change: " + change + ", new temp: " + newairtemp[x][y]);
-                //                }
-                if(!(newairtemp[x][y]>-Double.MAX_VALUE&&newairtemp[x][y]<Double.MAX_VALUE)){
-                    LOG.warn("Value is not sensible: " + newairtemp[x][y]);
-                    newairtemp[x][y]=Double.MAX_VALUE*0.75;
-                }
-                if(newairtemp[x][y] == Double.NEGATIVE_INFINITY || newairtemp[x][y] == Double.POSITIVE_INFINITY) {
-                    LOG.warn("aha");
-                }
+                newairtemp[x][y] = nextAirTemp(airtemp, x, y);
             }
         }
         world.setAirTemp(newairtemp);		
         world.setAirTemp(getWindShift().shift(world.getAirTemp(),this));
     }
+
+    static double nextAirTemp(double[][] airtemp, int x, int y) {
+        double dt = (averageTemp(airtemp,x,y)-airtemp[x][y]);
+        double change = (dt * AIR_TO_AIR_COEFFICIENT * TIME_STEP_LENGTH);
+        double newtemp = relTemp(airtemp[x][y] + change);
+        //        if (newtemp > 0.000001 || airtemp[x][y] > 0.000001) {
+        //            LOG.debug("Cell " + x + ", " + y + " old temperature: " + airtemp[x][y] + ", dt: " + dt + ", change: " + change + ", new temp: " + newtemp);
+        //        }
+        if(!(newtemp>-Double.MAX_VALUE&&newtemp<Double.MAX_VALUE)){
+            LOG.warn("Value is not sensible: " + newtemp);
+            newtemp=Double.MAX_VALUE*0.75;
+        }
+        if(newtemp == Double.NEGATIVE_INFINITY || newtemp == Double.POSITIVE_INFINITY) {
+            LOG.warn("aha");
+        }
+        return newtemp;
+    }
     
-    private double relTemp(double deltaT){
+    private static double relTemp(double deltaT){
         return Math.max(0, deltaT*ENERGY_LOSS*TIME_STEP_LENGTH);
     }
 	
-    private double averageTemp(int x, int y) {
+    private static double averageTemp(double[][] airtemp, int x, int y) {
         //        double rv = (neighbourCellAverage(x,y)+buildingAverage(x,y))/(weightSummBuilding(x,y)+weightSummCells(x,y));
-        double rv = neighbourCellAverage(x, y) / weightSummCells(x, y);
+        double rv = neighbourCellAverage(airtemp, x, y) / weightSummCells(x, y);
         return rv;
     }
 
@@ -353,26 +368,30 @@ public class Simulator {
       }
     */
 
-    private double neighbourCellAverage(int x, int y) {
-        double total=getTempAt(x+1,y-1);
-        total+=getTempAt(x+1,y);
-        total+=getTempAt(x+1,y+1);
-        total+=getTempAt(x,y-1);
-        total+=getTempAt(x,y+1);
-        total+=getTempAt(x-1,y-1);
-        total+=getTempAt(x-1,y);
-        total+=getTempAt(x-1,y+1);		
+    private static double neighbourCellAverage(double[][] airtemp, int x, int y) {
+        double total=getTempAt(airtemp,x+1,y-1);
+        total+=getTempAt(airtemp,x+1,y);
+        total+=getTempAt(airtemp,x+1,y+1);
+        total+=getTempAt(airtemp,x,y-1);
+        total+=getTempAt(airtemp,x,y+1);
+        total+=getTempAt(airtemp,x-1,y-1);
+        total+=getTempAt(airtemp,x-1,y);
+        total+=getTempAt(airtemp,x-1,y+1);		
         return total*WEIGHT_GRID;
     }
 	
-    private float weightSummCells(int x,int y){
+    private static float weightSummCells(int x,int y){
         return 8 * WEIGHT_GRID;
     }
 	
     protected double getTempAt(int x,int y){
-        if(x<0||y<0||x>=world.getAirTemp().length||y>=world.getAirTemp()[0].length)
+        return getTempAt(world.getAirTemp(),x,y);
+    }
+
+    static double getTempAt(double[][] airtemp,int x,int y){
+        if(x<0||y<0||x>=airtemp.length||y>=airtemp[0].length)
             return 0;
-        return world.getAirTemp()[x][y];
+        return airtemp[x][y];
     }
 
     public void setWind(float direction,float speed){
@@ -415,6 +434,7 @@ public class Simulator {
         GAMMA=new Float(Configuration.getValue("resq-fire.gamma")).floatValue();
         Rnd.setSeed(new Long(Configuration.getValue("resq-fire.randomseed")).longValue());
         java.util.Random random = new java.util.Random(new Long(Configuration.getValue("resq-fire.randomseed")).longValue());
+        THREADS = Integer.parseInt(Configuration.getValue("resq-fire.threads"));
         Building.burnRate = new GaussianGenerator(new Double(Configuration.getValue("resq-fire.burn-rate-average")).doubleValue(),
                                                   new Double(Configuration.getValue("resq-fire.burn-rate-variance")).doubleValue(),
                                                   random);
@@ -429,11 +449,24 @@ public class Simulator {
         }
 			
         world.initialize();
+        createKernel();
     }
 	
     public void reset(){
         loadVars();
         world.reset();
+        createKernel();
         informReset();
     }
+
+    private void createKernel(){
+        if (kernel != null) {
+            kernel.shutdown();
+            kernel = null;
+        }
+        if (THREADS != 1) {
+            kernel = new HeatExchangeKernel(world, THREADS);
+            LOG.info("Using " + kernel.getThreads() + " threads for heat exchange");
+        }
+    }
 }
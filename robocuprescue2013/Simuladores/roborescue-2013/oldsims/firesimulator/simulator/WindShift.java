@@ -50,19 +50,27 @@ public class WindShift{
 		return directionDg;
 	}
 	
+	public boolean isStill(){
+		return speed==0;
+	}
+	
 	public double[][] shift(double[][] source,Simulator sim){
 		if(speed==0)
 			return source;
 		double[][]result=new double[source.length][source[0].length];		
-		for(int x=0;x<source.length;x++)
+		shift(source,result,0,source.length);
+		return result;
+	}
+	
+	void shift(double[][] source,double[][] result,int fromX,int toX){
+		for(int x=fromX;x<toX;x++)
 			for(int y=0;y<source[0].length;y++){
 				float temp=0;
 				for(int c=0;c<4;c++){
-					temp+=sim.getTempAt(x-grid[c][0],y-grid[c][1])*weights[c];
+					temp+=Simulator.getTempAt(source,x-grid[c][0],y-grid[c][1])*weights[c];
 				}
 				result[x][y]=temp;
 			}
-		return result;
 	}
 		
 }
@@ -4,6 +4,7 @@ import java.awt.Point;
 import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.awt.geom.Point2D;
+import java.util.Random;
 
 import firesimulator.world.StationaryObject;
 
@@ -126,6 +127,29 @@ public class Geometry {
 		return rtv;
 	}
 	
+    /**
+     * Returns a random point on a line, using the given random number generator
+     * @param a One point defineing the line
+     * @param b The other point defineing the line
+     * @param random The random number generator
+     * @return A point between a and b
+     */
+	public static Point getRndPoint(Point a, Point b, Random random){		
+		float[] mb=Geometry.getAffineFunction((float)a.x,(float)a.y,(float)b.x,(float)b.y);		
+		float dx=(Math.max((float)a.x,(float)b.x)-Math.min((float)a.x,(float)b.x));
+		dx*=random.nextDouble();
+		dx+=Math.min((float)a.x,(float)b.x);		
+		if(mb==null){
+            //vertical line
+            int p = Math.max(a.y,b.y)-Math.min(a.y,b.y);
+            p = (int) (p*random.nextDouble());
+            p = p + Math.min(a.y,b.y);
+            return new Point(a.x,p);
+        }
+		float y=mb[0]*dx+mb[1];
+		return new Point((int)dx,(int)y);
+	}
+	
 	public static Point getRndPoint(Point a, double length){		
 		double angel=Rnd.get01()*2d*Math.PI;
 		double x=Math.sin(angel)*length;
@@ -133,6 +157,13 @@ public class Geometry {
 		return new Point((int)x+a.x,(int)y+a.y);
 	}
 
+	public static Point getRndPoint(Point a, double length, Random random){		
+		double angel=random.nextDouble()*2d*Math.PI;
+		double x=Math.sin(angel)*length;
+		double y=Math.cos(angel)*length;		
+		return new Point((int)x+a.x,(int)y+a.y);
+	}
+
 	public static int dist(StationaryObject o1, StationaryObject o2){
 	    double x = o1.getX()-o2.getX();
 	    double y = o1.getY()-o2.getY();
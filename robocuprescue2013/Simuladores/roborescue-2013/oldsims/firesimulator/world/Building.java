@@ -8,6 +8,7 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Random;
 
 import rescuecore.OutputBuffer;
 
@@ -194,14 +195,14 @@ public class Building extends StationaryObject {
         return id;
     }
 	
-    public void initWallValues(World world){			
+    public void initWallValues(WallIndex.Searcher allWalls, Random random){			
         int totalHits=0;
         int totalRays=0;
         int selfHits=0;
         int strange=0;
         for(Iterator w=walls.iterator();w.hasNext();){
             Wall wall=(Wall)w.next();			
-            wall.findHits(world);
+            wall.findHits(allWalls, random);
             totalHits+=wall.hits;
             selfHits+=wall.selfHits;
             totalRays+=wall.rays;
@@ -0,0 +1,127 @@
+package firesimulator.world;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.logging.Log;
+
+/**
+ * Reads and writes the connected buildings of all buildings in a binary
+ * file. The file records the ray rate and maximum ray distance it was
+ * sampled with and is ignored if they no longer match the configuration.
+ */
+public class RayCache {
+    private static final Log LOG = LogFactory.getLog(RayCache.class);
+
+    private static final int MAGIC = 0x52415953; // "RAYS"
+    private static final int VERSION = 1;
+
+    private RayCache() {
+    }
+
+    /**
+     * Read the connected buildings from a file.
+     * @param file the file to read
+     * @param buildings all buildings of the world
+     * @return true if the file was read, false if it does not exist or does not match the world or configuration
+     */
+    public static boolean load(File file, Collection<Building> buildings) {
+        if (!file.exists()) {
+            return false;
+        }
+        Map<Integer, Building> byID = new HashMap<Integer, Building>();
+        for (Building b : buildings) {
+            byID.put(b.getID(), b);
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    LOG.warn("\"" + file + "\" is not a version " + VERSION + " radiation sample file");
+                    return false;
+                }
+                float rayRate = in.readFloat();
+                int maxDistance = in.readInt();
+                if (rayRate != Wall.RAY_RATE || maxDistance != Wall.MAX_SAMPLE_DISTANCE) {
+                    LOG.info("\"" + file + "\" was sampled with ray rate " + rayRate + " and distance " + maxDistance);
+                    return false;
+                }
+                int count = in.readInt();
+                if (count != buildings.size()) {
+                    LOG.warn("\"" + file + "\" has " + count + " buildings, expected " + buildings.size());
+                    return false;
+                }
+                Building[][] connected = new Building[count][];
+                float[][] values = new float[count][];
+                Building[] owners = new Building[count];
+                for (int i = 0; i < count; i++) {
+                    owners[i] = byID.get(in.readInt());
+                    int quantity = in.readInt();
+                    connected[i] = new Building[quantity];
+                    values[i] = new float[quantity];
+                    for (int c = 0; c < quantity; c++) {
+                        connected[i][c] = byID.get(in.readInt());
+                        values[i][c] = in.readFloat();
+                        if (connected[i][c] == null) {
+                            owners[i] = null;
+                        }
+                    }
+                    if (owners[i] == null) {
+                        LOG.warn("\"" + file + "\" refers to unknown buildings");
+                        return false;
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    owners[i].connectedBuilding = connected[i];
+                    owners[i].connectedValues = values[i];
+                }
+                return true;
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            LOG.warn("unable to read radiation sample file \"" + file + "\"", e);
+            return false;
+        }
+    }
+
+    /**
+     * Write the connected buildings to a file.
+     * @param file the file to write
+     * @param buildings all buildings of the world
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(File file, Collection<Building> buildings) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeFloat(Wall.RAY_RATE);
+            out.writeInt(Wall.MAX_SAMPLE_DISTANCE);
+            out.writeInt(buildings.size());
+            for (Building b : buildings) {
+                out.writeInt(b.getID());
+                out.writeInt(b.connectedBuilding.length);
+                for (int c = 0; c < b.connectedBuilding.length; c++) {
+                    out.writeInt(b.connectedBuilding[c].getID());
+                    out.writeFloat(b.connectedValues[c]);
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+}
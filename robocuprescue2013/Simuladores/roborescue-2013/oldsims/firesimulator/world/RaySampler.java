@@ -0,0 +1,106 @@
+package firesimulator.world;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.logging.Log;
+
+/**
+ * Emits the radiation sample rays of all buildings on a worker pool. Each
+ * building is sampled by a single task with its own random number generator
+ * seeded from the building ID, so the result does not depend on the number
+ * of threads.
+ */
+public class RaySampler {
+    private static final Log LOG = LogFactory.getLog(RaySampler.class);
+
+    private static final int WALL_CELL_SIZE = 10000;
+    private static final long SEED_MULTIPLIER = 1000003L;
+    private static final int PROGRESS_INTERVAL = 100;
+
+    private WallIndex index;
+    private ForkJoinPool pool;
+    private long seed;
+    private Building[] buildings;
+    private AtomicInteger done;
+    private long startTime;
+    private ThreadLocal<WallIndex.Searcher> searchers;
+
+    /**
+     * Create a sampler.
+     * @param walls all walls of the world
+     * @param threads the number of worker threads, or 0 for one per processor
+     * @param seed the random seed, or a value less than or equal to zero for a random one
+     */
+    public RaySampler(Collection walls, int threads, long seed) {
+        this.seed = seed;
+        index = new WallIndex(walls, WALL_CELL_SIZE);
+        pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        searchers = new ThreadLocal<WallIndex.Searcher>() {
+            @Override
+            protected WallIndex.Searcher initialValue() {
+                return index.newSearcher();
+            }
+        };
+    }
+
+    /**
+     * Sample the rays of some buildings and set up their connected buildings.
+     * @param all the buildings to sample
+     */
+    public void sample(Collection<Building> all) {
+        buildings = all.toArray(new Building[all.size()]);
+        done = new AtomicInteger();
+        startTime = System.currentTimeMillis();
+        LOG.info("sampling " + buildings.length + " buildings on " + pool.getParallelism() + " threads");
+        try {
+            pool.invoke(new SampleTask(0, buildings.length));
+        }
+        finally {
+            pool.shutdown();
+        }
+        LOG.info("sampled " + buildings.length + " buildings in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    private void sample(Building b) {
+        Random random = seed > 0 ? new Random(seed * SEED_MULTIPLIER + b.getID()) : new Random();
+        b.initWallValues(searchers.get(), random);
+        int n = done.incrementAndGet();
+        if (n % PROGRESS_INTERVAL == 0) {
+            long dt = System.currentTimeMillis() - startTime;
+            dt = dt / n;
+            dt = dt * (buildings.length - n);
+            long sec = dt / 1000;
+            long min = (sec / 60) % 60;
+            long hour = sec / (60 * 60);
+            sec = sec % 60;
+            LOG.info(n + " of " + buildings.length + " buildings sampled, time left: ca. " + hour + ":" + min + ":" + sec);
+        }
+    }
+
+    private class SampleTask extends RecursiveAction {
+        private int from;
+        private int to;
+
+        SampleTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SampleTask(from, mid), new SampleTask(mid, to));
+                return;
+            }
+            if (to > from) {
+                sample(buildings[from]);
+            }
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package firesimulator.world;
 
 import java.awt.Point;
-import java.util.Iterator;
+import java.util.Random;
 
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.Log;
@@ -27,6 +27,7 @@ public class Wall {
 	public double length;
 	Point a;
 	Point b;	
+	int index;
 	
 	public Wall(int x1, int y1, int x2, int y2, Building owner){		
 		this.x1=x1;
@@ -45,32 +46,20 @@ public class Wall {
 		return!(a.x==b.x&&a.y==b.y);
 	}
 
-	public void findHits(World world) {
+	public void findHits(WallIndex.Searcher walls, Random random) {
 		selfHits=0;
 		strange=0;
 		for(int emitted=0;emitted<rays;emitted++){			
 			//creating ray
-			Point start=firesimulator.util.Geometry.getRndPoint(a,b);
+			Point start=firesimulator.util.Geometry.getRndPoint(a,b,random);
 			if(start==null){
 				strange++;
 				LOG.debug("strange -> "+a.x+","+a.y+"/"+b.x+","+b.y);
 				continue;
 			}
-			Point end=firesimulator.util.Geometry.getRndPoint(start,MAX_SAMPLE_DISTANCE);			
+			Point end=firesimulator.util.Geometry.getRndPoint(start,MAX_SAMPLE_DISTANCE,random);			
 			//intersect
-			Wall closest=null;
-			double minDist=Double.MAX_VALUE;
-			for(Iterator it=world.allWalls.iterator();it.hasNext();){				
-				Wall other=(Wall)it.next();
-				if(other==this) continue;
-				Point cross=firesimulator.util.Geometry.intersect(start,end,other.a,other.b);
-				if(cross!=null){
-					if(cross.distance(start)<minDist){
-						minDist=cross.distance(start);
-						closest=other;
-					}
-				}				
-			}			
+			Wall closest=walls.closest(this,start,end);
             if(closest == null){
                 //Nothing was hit
                 continue;
@@ -0,0 +1,166 @@
+package firesimulator.world;
+
+import java.awt.Point;
+import java.util.Collection;
+import java.util.Iterator;
+
+import firesimulator.util.Geometry;
+
+/**
+ * A uniform grid over all walls of the world. Each wall is stored in every
+ * cell its bounding box touches, so finding the wall a ray hits first only
+ * tests the walls in the cells the ray passes through.
+ */
+public class WallIndex {
+    private Wall[] walls;
+    private int cellSize;
+    private int minX;
+    private int minY;
+    private int columns;
+    private int rows;
+    // Walls of cell (x, y) are cellWalls[cellStart[x*rows+y]] to cellWalls[cellStart[x*rows+y+1]-1]
+    private int[] cellStart;
+    private Wall[] cellWalls;
+
+    /**
+     * Create an index.
+     * @param all the walls to index
+     * @param cellSize the width and height of each cell in mm
+     */
+    public WallIndex(Collection all, int cellSize) {
+        this.cellSize = cellSize;
+        walls = new Wall[all.size()];
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        int n = 0;
+        for (Iterator i = all.iterator(); i.hasNext();) {
+            Wall w = (Wall)i.next();
+            w.index = n;
+            walls[n++] = w;
+            minX = Math.min(minX, Math.min(w.x1, w.x2));
+            minY = Math.min(minY, Math.min(w.y1, w.y2));
+            maxX = Math.max(maxX, Math.max(w.x1, w.x2));
+            maxY = Math.max(maxY, Math.max(w.y1, w.y2));
+        }
+        if (n == 0) {
+            minX = 0;
+            minY = 0;
+            maxX = 0;
+            maxY = 0;
+        }
+        columns = cell(maxX - minX) + 1;
+        rows = cell(maxY - minY) + 1;
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < n; i++) {
+            Wall w = walls[i];
+            for (int x = column(Math.min(w.x1, w.x2)); x <= column(Math.max(w.x1, w.x2)); x++) {
+                for (int y = row(Math.min(w.y1, w.y2)); y <= row(Math.max(w.y1, w.y2)); y++) {
+                    cellStart[x * rows + y + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellWalls = new Wall[cellStart[columns * rows]];
+        int[] next = cellStart.clone();
+        for (int i = 0; i < n; i++) {
+            Wall w = walls[i];
+            for (int x = column(Math.min(w.x1, w.x2)); x <= column(Math.max(w.x1, w.x2)); x++) {
+                for (int y = row(Math.min(w.y1, w.y2)); y <= row(Math.max(w.y1, w.y2)); y++) {
+                    cellWalls[next[x * rows + y]++] = w;
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a searcher for this index. Searchers are not thread-safe, so
+     * each thread needs its own.
+     * @return a new searcher
+     */
+    public Searcher newSearcher() {
+        return new Searcher();
+    }
+
+    private int cell(double d) {
+        return (int)Math.floor(d / cellSize);
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, cell(x - minX)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, cell(y - minY)));
+    }
+
+    public class Searcher {
+        private int[] visited;
+        private int stamp;
+
+        private Searcher() {
+            visited = new int[walls.length];
+            stamp = 0;
+        }
+
+        /**
+         * Find the wall a ray hits first.
+         * @param source a wall to ignore, usually the one that emitted the ray
+         * @param start the start of the ray
+         * @param end the end of the ray
+         * @return the wall whose crossing is closest to start, or null if the ray hits nothing
+         */
+        public Wall closest(Wall source, Point start, Point end) {
+            stamp++;
+            Wall closest = null;
+            double minDist = Double.MAX_VALUE;
+            int fromX = Math.min(start.x, end.x);
+            int toX = Math.max(start.x, end.x);
+            if (toX < minX || fromX > minX + columns * cellSize) {
+                return null;
+            }
+            double slope = start.x == end.x ? 0 : (end.y - start.y) / (double)(end.x - start.x);
+            for (int x = column(fromX); x <= column(toX); x++) {
+                double y1;
+                double y2;
+                if (start.x == end.x) {
+                    y1 = start.y;
+                    y2 = end.y;
+                }
+                else {
+                    double left = Math.max(fromX, minX + (double)x * cellSize);
+                    double right = Math.min(toX, minX + (double)(x + 1) * cellSize);
+                    y1 = start.y + (left - start.x) * slope;
+                    y2 = start.y + (right - start.x) * slope;
+                }
+                // Pad by a millimetre so crossings rounded onto a cell border are still found
+                int fromY = row(Math.min(y1, y2) - 1);
+                int toY = row(Math.max(y1, y2) + 1);
+                for (int y = fromY; y <= toY; y++) {
+                    for (int k = cellStart[x * rows + y]; k < cellStart[x * rows + y + 1]; k++) {
+                        Wall other = cellWalls[k];
+                        if (visited[other.index] == stamp) {
+                            continue;
+                        }
+                        visited[other.index] = stamp;
+                        if (other == source) {
+                            continue;
+                        }
+                        Point cross = Geometry.intersect(start, end, other.a, other.b);
+                        if (cross != null) {
+                            double d = cross.distance(start);
+                            if (d < minDist) {
+                                minDist = d;
+                                closest = other;
+                            }
+                        }
+                    }
+                }
+            }
+            return closest;
+        }
+    }
+}
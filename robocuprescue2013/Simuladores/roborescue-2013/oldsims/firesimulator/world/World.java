@@ -1,10 +1,9 @@
 package firesimulator.world;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Hashtable;
@@ -183,8 +182,13 @@ public class World implements WorldConstants {
 	
     private void initRayValues() {		
         long hash=hash();
-        boolean loaded=false;
-        String fname=Configuration.getValue("resq-fire.rays.dir") + "/" + hash + ".rays";			
+        String dir=Configuration.getValue("resq-fire.rays.dir");
+        File binary=new File(dir, hash + ".bin.rays");
+        if(RayCache.load(binary, buildings)){
+            LOG.info("loaded radiation sample file \""+binary+"\"");
+            return;
+        }
+        String fname=dir + "/" + hash + ".rays";			
         try{
             File f=new File(fname);
             BufferedReader br=new BufferedReader(new FileReader(f));
@@ -206,46 +210,18 @@ public class World implements WorldConstants {
                 b.connectedBuilding=bl;
                 b.connectedValues=wght;
             }
-            loaded=true;
             LOG.info("loaded radiation sample file \""+fname+"\"");
         }catch(Exception e){			
             LOG.warn("unable to load radiation sample file \""+fname+"\", sampling:");
-            int n=0;
-            long t1=System.currentTimeMillis();
-            for (Building b : buildings) {
-                LOG.info("building "+b.getID()+" ("+(n++)+" of "+buildings.size()+") ");
-                b.initWallValues(this);
-                long dt=System.currentTimeMillis()-t1;
-                dt=dt/n;
-                dt=dt*(buildings.size()-n);
-                long sec=dt/(1000);
-                long min=(sec/60)%60;
-                long hour=sec/(60*60);
-                sec=sec%60;				
-                LOG.info(" time left: ca. "+hour+":"+min+":"+sec);
-            }	
+            int threads=Integer.parseInt(Configuration.getValue("resq-fire.threads"));
+            long seed=Long.parseLong(Configuration.getValue("resq-fire.randomseed"));
+            new RaySampler(allWalls, threads, seed).sample(buildings);
         }		
         try{
-            if(!loaded){
-                File f=new File(fname);
-                f.createNewFile();				
-                BufferedWriter bw=new BufferedWriter(new FileWriter(f));				
-                bw.write(Wall.RAY_RATE+"\n");
-                for(Building b : buildings) {
-                    bw.write(b.getX()+"\n");
-                    bw.write(b.getY()+"\n");
-                    bw.write(b.connectedBuilding.length+"\n");
-                    for(int c=0;c<b.connectedBuilding.length;c++){
-                        bw.write(b.connectedBuilding[c].getX()+"\n");
-                        bw.write(b.connectedBuilding[c].getY()+"\n");
-                        bw.write(b.connectedValues[c]+"\n");
-                    }
-                }
-                bw.close();
-                LOG.info("wrote radiation sample file \""+fname+"\"");
-            }			
-        }catch(Exception e){
-            LOG.error("error while writting radiation sample file \""+fname+"\"", e);
+            RayCache.save(binary, buildings);
+            LOG.info("wrote radiation sample file \""+binary+"\"");
+        }catch(IOException e){
+            LOG.error("error while writting radiation sample file \""+binary+"\"", e);
         }
     }
 
@@ -458,7 +458,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			return;
 		
 		BuildingEntranceCleared building = (BuildingEntranceCleared) param;
-		EntityID e = new EntityID(building.getBuildingID());
+		EntityID e = EntityID.valueOf(building.getBuildingID());
 		if (!buildingEntrancesCleared.contains(e))
 			buildingEntrancesCleared.add(e);
 	}
@@ -533,7 +533,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			return;
 		
 		BuildingBurnt fire = (BuildingBurnt) param;
-		EntityID buildingID = new EntityID(fire.getBuilding());
+		EntityID buildingID = EntityID.valueOf(fire.getBuilding());
 
 		if (changed.getChangedEntities().contains(buildingID))
 			return;
@@ -559,7 +559,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			return;
 		
 		FireExtinguished fire = (FireExtinguished) param;
-		EntityID buildingID = new EntityID(fire.getBuilding());
+		EntityID buildingID = EntityID.valueOf(fire.getBuilding());
 
 		if (changed.getChangedEntities().contains(buildingID))
 			return;
@@ -585,7 +585,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			return;
 		
 		VictimRescued victim = (VictimRescued) param;
-		EntityID victimID = new EntityID(victim.getVictim());
+		EntityID victimID = EntityID.valueOf(victim.getVictim());
 
 		if (changed.getChangedEntities().contains(victimID))
 			return;
@@ -626,7 +626,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			return;
 		
 		VictimDied victim = (VictimDied) param;
-		EntityID victimID = new EntityID(victim.getVictim());
+		EntityID victimID = EntityID.valueOf(victim.getVictim());
 
 		if (changed.getChangedEntities().contains(victimID))
 			return;
@@ -665,7 +665,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			return;
 		
 		BlockadeCleared blockade = (BlockadeCleared) param;
-		EntityID blockadeID = new EntityID(
+		EntityID blockadeID = EntityID.valueOf(
 				blockade.getBlockade());
 
 		if (model.getEntity(blockadeID) != null
@@ -686,7 +686,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			return;
 		
 		TaskPickup task = (TaskPickup) param;
-		EntityID taskID = new EntityID(task.getTask());
+		EntityID taskID = EntityID.valueOf(task.getTask());
 
 		for (Set<EntityID> s : taskTable.values())
 			s.remove(cmd.getAgentID());
@@ -708,7 +708,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			 return;
 		 
 		TaskDrop task = (TaskDrop) param;
-		EntityID taskID = new EntityID(task.getTask());
+		EntityID taskID = EntityID.valueOf(task.getTask());
 		
 		if (taskTable.containsKey(taskID))
 			taskTable.get(taskID).remove(cmd.getAgentID());
@@ -724,7 +724,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			return;
 		
 		Victim victim = (Victim) param;
-		EntityID victimID = new EntityID(victim.getVictim());
+		EntityID victimID = EntityID.valueOf(victim.getVictim());
 
 		if (changed.getChangedEntities().contains(victimID))
 			return;
@@ -762,7 +762,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			}
 		}
 
-		human.setPosition(new EntityID(victim.getPosition()));
+		human.setPosition(EntityID.valueOf(victim.getPosition()));
 		human.setHP(victim.getHP());
 		human.setDamage(victim.getDamage());
 		human.setBuriedness(victim.getBuriedness());
@@ -794,7 +794,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			return;
 		
 		lti.message.type.Blockade blockade = (lti.message.type.Blockade) param;
-		EntityID blockadeID = new EntityID(blockade.getBlockade());
+		EntityID blockadeID = EntityID.valueOf(blockade.getBlockade());
 
 		if (changed.getChangedEntities().contains(blockadeID))
 			return;
@@ -807,7 +807,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 		else
 			block = new Blockade(blockadeID);
 		
-		block.setPosition(new EntityID(blockade.getRoad()));
+		block.setPosition(EntityID.valueOf(blockade.getRoad()));
 		block.setX(blockade.getX());
 		block.setY(blockade.getY());
 		block.setRepairCost(blockade.getCost());
@@ -828,7 +828,7 @@ public abstract class AbstractLTIAgent<E extends StandardEntity> extends
 			return;
 		
 		Fire fire = (Fire) param;
-		EntityID buildingID = new EntityID(fire.getBuilding());
+		EntityID buildingID = EntityID.valueOf(fire.getBuilding());
 
 		if (changed.getChangedEntities().contains(buildingID))
 			return;